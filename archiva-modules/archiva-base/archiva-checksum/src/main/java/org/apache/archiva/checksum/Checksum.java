@@ -88,7 +88,7 @@ public void reset()
 
     public Checksum update( byte[] buffer, int offset, int size )
     {
-        md.update( buffer, 0, size );
+        md.update( buffer, offset, size );
         return this;
     }
 
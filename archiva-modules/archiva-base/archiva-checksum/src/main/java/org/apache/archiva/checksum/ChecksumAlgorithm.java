@@ -30,7 +30,8 @@
  */
 public enum ChecksumAlgorithm {
     SHA1("SHA-1", "sha1", "SHA1"),
-    MD5("MD5", "md5", "MD5");
+    MD5("MD5", "md5", "MD5"),
+    SHA256("SHA-256", "sha256", "SHA256");
 
     public static ChecksumAlgorithm getByExtension( File file )
     {
@@ -43,6 +44,10 @@ else if ( ChecksumAlgorithm.MD5.getExt().equals( ext ) )
         {
             return ChecksumAlgorithm.MD5;
         }
+        else if ( ChecksumAlgorithm.SHA256.getExt().equals( ext ) )
+        {
+            return ChecksumAlgorithm.SHA256;
+        }
 
         throw new IllegalArgumentException( "Filename " + file.getName() + " has no associated extension." );
     }
@@ -0,0 +1,77 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * ChecksumCache - the checksums calculated while a file was being written (eg. during a deployment) or read (eg. by a
+ * consumer of a scan), so that the consumers processing the file afterwards don't have to read it again.
+ * <p>
+ * The checksums of a file are tied to its length and modification time: once the file is replaced or changed, they
+ * are forgotten and calculated from its content again.
+ * </p>
+ *
+ * @since 2.2.3
+ */
+public interface ChecksumCache
+{
+    /**
+     * Register the checksums of the current content of a file.
+     *
+     * @param file      the file the checksums were calculated for
+     * @param checksums the hex encoded checksums by algorithm
+     */
+    void put( File file, Map<ChecksumAlgorithm, String> checksums );
+
+    /**
+     * Register checksums calculated from the content of a file, along with the checksums already registered for the
+     * same content. They are ignored if the file has changed since its length and modification time were taken before
+     * reading it, as they might not match its current content.
+     *
+     * @param file         the file the checksums were calculated for
+     * @param length       the length of the file before it was read
+     * @param lastModified the modification time of the file before it was read
+     * @param checksums    the hex encoded checksums by algorithm
+     */
+    void add( File file, long length, long lastModified, Map<ChecksumAlgorithm, String> checksums );
+
+    /**
+     * Get the checksums registered for a file.
+     *
+     * @param file the file
+     * @return the checksums by algorithm, empty if none are known for the current content of the file
+     */
+    Map<ChecksumAlgorithm, String> get( File file );
+
+    /**
+     * Get a checksum registered for a file.
+     *
+     * @param file      the file
+     * @param algorithm the algorithm
+     * @return the hex encoded checksum, or <code>null</code> if it is not known for the current content of the file
+     */
+    String get( File file, ChecksumAlgorithm algorithm );
+
+    void remove( File file );
+
+    void clear();
+}
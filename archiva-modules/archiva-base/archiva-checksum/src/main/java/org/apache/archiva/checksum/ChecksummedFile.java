@@ -30,7 +30,11 @@
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,14 +59,29 @@
 
     private final File referenceFile;
 
+    private final ChecksumCache checksumCache;
+
     /**
      * Construct a ChecksummedFile object.
      *
      * @param referenceFile
      */
     public ChecksummedFile( final File referenceFile )
+    {
+        this( referenceFile, null );
+    }
+
+    /**
+     * Construct a ChecksummedFile object sharing the checksums it calculates through a cache.
+     *
+     * @param referenceFile
+     * @param checksumCache the checksums already known for the file, <code>null</code> to always calculate them
+     * @since 2.2.3
+     */
+    public ChecksummedFile( final File referenceFile, ChecksumCache checksumCache )
     {
         this.referenceFile = referenceFile;
+        this.checksumCache = checksumCache;
     }
 
     /**
@@ -75,12 +94,26 @@ public ChecksummedFile( final File referenceFile )
     public String calculateChecksum( ChecksumAlgorithm checksumAlgorithm )
         throws IOException
     {
+        String cached = checksumCache != null ? checksumCache.get( referenceFile, checksumAlgorithm ) : null;
+        if ( cached != null )
+        {
+            return cached;
+        }
 
+        long length = referenceFile.length();
+        long lastModified = referenceFile.lastModified();
         try (InputStream fis = Files.newInputStream( referenceFile.toPath() ))
         {
             Checksum checksum = new Checksum( checksumAlgorithm );
             checksum.update( fis );
-            return checksum.getChecksum();
+            String result = checksum.getChecksum();
+            if ( checksumCache != null )
+            {
+                // the next consumers of the file get it from the cache
+                checksumCache.add( referenceFile, length, lastModified,
+                                   Collections.singletonMap( checksumAlgorithm, result ) );
+            }
+            return result;
         }
     }
 
@@ -141,72 +174,116 @@ public boolean isValidChecksum( ChecksumAlgorithm algorithm )
      */
     public boolean isValidChecksums( ChecksumAlgorithm algorithms[] )
     {
+        List<ChecksumAlgorithm> present = new ArrayList<>( algorithms.length );
+        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
+        {
+            File checksumFile = getChecksumFile( checksumAlgorithm );
 
-        try (InputStream fis = Files.newInputStream( referenceFile.toPath() ))
+            // Only add algorithm if checksum file exists.
+            if ( checksumFile.exists() )
+            {
+                present.add( checksumAlgorithm );
+            }
+        }
+
+        // Any checksums?
+        if ( present.isEmpty() )
         {
-            List<Checksum> checksums = new ArrayList<>( algorithms.length );
-            // Create checksum object for each algorithm.
-            for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
+            // No checksum objects, no checksum files, default to is invalid.
+            return false;
+        }
+
+        Map<ChecksumAlgorithm, String> actualChecksums;
+        try
+        {
+            actualChecksums = calculateChecksums( present );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to update checksum:{}", e.getMessage() );
+            return false;
+        }
+
+        boolean valid = true;
+
+        // check the checksum files
+        try
+        {
+            for ( ChecksumAlgorithm checksumAlgorithm : present )
             {
                 File checksumFile = getChecksumFile( checksumAlgorithm );
 
-                // Only add algorithm if checksum file exists.
-                if ( checksumFile.exists() )
+                String rawChecksum = FileUtils.readFileToString( checksumFile );
+                String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
+
+                if ( !StringUtils.equalsIgnoreCase( expectedChecksum, actualChecksums.get( checksumAlgorithm ) ) )
                 {
-                    checksums.add( new Checksum( checksumAlgorithm ) );
+                    valid = false;
                 }
             }
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to read / parse checksum: {}", e.getMessage() );
+            return false;
+        }
 
-            // Any checksums?
-            if ( checksums.isEmpty() )
-            {
-                // No checksum objects, no checksum files, default to is invalid.
-                return false;
-            }
+        return valid;
+    }
 
-            // Parse file once, for all checksums.
-            try
+    /**
+     * Calculate the checksums of the reference file for several algorithms, reading the file at most once. Checksums
+     * already known from the {@link ChecksumCache} for the current content of the file are not calculated again.
+     *
+     * @param algorithms the algorithms to use.
+     * @return the checksum string by algorithm.
+     * @throws IOException if unable to read the reference file.
+     */
+    public Map<ChecksumAlgorithm, String> calculateChecksums( List<ChecksumAlgorithm> algorithms )
+        throws IOException
+    {
+        Map<ChecksumAlgorithm, String> result = new EnumMap<>( ChecksumAlgorithm.class );
+        Map<ChecksumAlgorithm, String> cached = Collections.emptyMap();
+        if ( checksumCache != null )
+        {
+            cached = checksumCache.get( referenceFile );
+        }
+
+        List<Checksum> checksums = new ArrayList<>( algorithms.size() );
+        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
+        {
+            String checksum = cached.get( checksumAlgorithm );
+            if ( checksum != null )
             {
-                Checksum.update( checksums, fis );
+                result.put( checksumAlgorithm, checksum );
             }
-            catch ( IOException e )
+            else
             {
-                log.warn( "Unable to update checksum:{}", e.getMessage() );
-                return false;
+                checksums.add( new Checksum( checksumAlgorithm ) );
             }
+        }
 
-            boolean valid = true;
-
-            // check the checksum files
-            try
+        if ( !checksums.isEmpty() )
+        {
+            long length = referenceFile.length();
+            long lastModified = referenceFile.lastModified();
+            try (InputStream fis = Files.newInputStream( referenceFile.toPath() ))
             {
-                for ( Checksum checksum : checksums )
-                {
-                    ChecksumAlgorithm checksumAlgorithm = checksum.getAlgorithm();
-                    File checksumFile = getChecksumFile( checksumAlgorithm );
-
-                    String rawChecksum = FileUtils.readFileToString( checksumFile );
-                    String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
-
-                    if ( !StringUtils.equalsIgnoreCase( expectedChecksum, checksum.getChecksum() ) )
-                    {
-                        valid = false;
-                    }
-                }
+                // Parse file once, for all checksums.
+                Checksum.update( checksums, fis );
             }
-            catch ( IOException e )
+            Map<ChecksumAlgorithm, String> calculated = new EnumMap<>( ChecksumAlgorithm.class );
+            for ( Checksum checksum : checksums )
             {
-                log.warn( "Unable to read / parse checksum: {}", e.getMessage() );
-                return false;
+                calculated.put( checksum.getAlgorithm(), checksum.getChecksum() );
             }
-
-            return valid;
-        }
-        catch ( IOException e )
-        {
-            log.warn( "Unable to read / parse checksum: {}", e.getMessage() );
-            return false;
+            if ( checksumCache != null )
+            {
+                checksumCache.add( referenceFile, length, lastModified, calculated );
+            }
+            result.putAll( calculated );
         }
+        return result;
     }
 
     /**
@@ -217,24 +294,17 @@ public boolean isValidChecksums( ChecksumAlgorithm algorithms[] )
      */
     public boolean fixChecksums( ChecksumAlgorithm[] algorithms )
     {
-        List<Checksum> checksums = new ArrayList<>( algorithms.length );
-        // Create checksum object for each algorithm.
-        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
-        {
-            checksums.add( new Checksum( checksumAlgorithm ) );
-        }
-
         // Any checksums?
-        if ( checksums.isEmpty() )
+        if ( algorithms.length == 0 )
         {
             // No checksum objects, no checksum files, default to is valid.
             return true;
         }
 
-        try (InputStream fis = Files.newInputStream( referenceFile.toPath() ))
+        Map<ChecksumAlgorithm, String> checksums;
+        try
         {
-            // Parse file once, for all checksums.
-            Checksum.update( checksums, fis );
+            checksums = calculateChecksums( Arrays.asList( algorithms ) );
         }
         catch ( IOException e )
         {
@@ -245,13 +315,12 @@ public boolean fixChecksums( ChecksumAlgorithm[] algorithms )
         boolean valid = true;
 
         // check the hash files
-        for ( Checksum checksum : checksums )
+        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
         {
-            ChecksumAlgorithm checksumAlgorithm = checksum.getAlgorithm();
             try
             {
                 File checksumFile = getChecksumFile( checksumAlgorithm );
-                String actualChecksum = checksum.getChecksum();
+                String actualChecksum = checksums.get( checksumAlgorithm );
 
                 if ( checksumFile.exists() )
                 {
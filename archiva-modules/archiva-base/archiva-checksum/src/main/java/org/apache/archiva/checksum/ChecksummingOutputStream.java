@@ -0,0 +1,105 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ChecksummingOutputStream - updates a set of checksums with every byte written to the underlying stream, so the
+ * checksums of a file are known as soon as it has been written, without reading it again.
+ */
+public class ChecksummingOutputStream
+    extends FilterOutputStream
+{
+    private final List<Checksum> checksums;
+
+    private long count;
+
+    public ChecksummingOutputStream( OutputStream out, ChecksumAlgorithm... algorithms )
+    {
+        super( out );
+        this.checksums = new ArrayList<>( algorithms.length );
+        for ( ChecksumAlgorithm algorithm : algorithms )
+        {
+            checksums.add( new Checksum( algorithm ) );
+        }
+    }
+
+    /**
+     * Continue updating existing checksums, eg. when a file is written in several parts.
+     *
+     * @param out       the stream to write to
+     * @param checksums the checksums to update
+     */
+    public ChecksummingOutputStream( OutputStream out, List<Checksum> checksums )
+    {
+        super( out );
+        this.checksums = checksums;
+    }
+
+    @Override
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[]{ (byte) b }, 0, 1 );
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        out.write( b, off, len );
+        for ( Checksum checksum : checksums )
+        {
+            checksum.update( b, off, len );
+        }
+        count += len;
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Get the checksums of the bytes written. This completes the digests, so it must only be called once all the
+     * content has been written.
+     *
+     * @return the hex encoded checksum for each algorithm.
+     */
+    public Map<ChecksumAlgorithm, String> getChecksums()
+    {
+        Map<ChecksumAlgorithm, String> result = new EnumMap<>( ChecksumAlgorithm.class );
+        for ( Checksum checksum : checksums )
+        {
+            result.put( checksum.getAlgorithm(), checksum.getChecksum() );
+        }
+        return result;
+    }
+}
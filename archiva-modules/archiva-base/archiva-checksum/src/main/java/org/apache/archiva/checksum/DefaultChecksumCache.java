@@ -0,0 +1,134 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.cache.Cache;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * DefaultChecksumCache - keeps the checksums in the <code>cache#checksums</code> cache, whose bounds are set in its
+ * bean definition, by absolute path of the file.
+ *
+ * @since 2.2.3
+ */
+@Service( "checksumCache#default" )
+public class DefaultChecksumCache
+    implements ChecksumCache
+{
+    private final Cache<String, CachedChecksums> cache;
+
+    @Inject
+    public DefaultChecksumCache( @Named( "cache#checksums" ) Cache<String, CachedChecksums> cache )
+    {
+        this.cache = cache;
+    }
+
+    @Override
+    public void put( File file, Map<ChecksumAlgorithm, String> checksums )
+    {
+        if ( file == null || checksums == null || checksums.isEmpty() || !file.isFile() )
+        {
+            return;
+        }
+        cache.put( file.getAbsolutePath(),
+                   new CachedChecksums( file.length(), file.lastModified(), new EnumMap<>( checksums ) ) );
+    }
+
+    @Override
+    public void add( File file, long length, long lastModified, Map<ChecksumAlgorithm, String> checksums )
+    {
+        if ( checksums.isEmpty() || file.length() != length || file.lastModified() != lastModified )
+        {
+            return;
+        }
+        String key = file.getAbsolutePath();
+        Map<ChecksumAlgorithm, String> merged = new EnumMap<>( checksums );
+        // merging with the checksums of another algorithm registered at the same time isn't worth a lock
+        CachedChecksums entry = cache.get( key );
+        if ( entry != null && entry.length == length && entry.lastModified == lastModified )
+        {
+            merged.putAll( entry.checksums );
+        }
+        cache.put( key, new CachedChecksums( length, lastModified, merged ) );
+    }
+
+    @Override
+    public Map<ChecksumAlgorithm, String> get( File file )
+    {
+        String key = file.getAbsolutePath();
+        CachedChecksums entry = cache.get( key );
+        if ( entry == null )
+        {
+            return Collections.emptyMap();
+        }
+        if ( entry.length != file.length() || entry.lastModified != file.lastModified() )
+        {
+            cache.remove( key );
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap( entry.checksums );
+    }
+
+    @Override
+    public String get( File file, ChecksumAlgorithm algorithm )
+    {
+        return get( file ).get( algorithm );
+    }
+
+    @Override
+    public void remove( File file )
+    {
+        cache.remove( file.getAbsolutePath() );
+    }
+
+    @Override
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * The checksums of a file, with the length and modification time it had when they were calculated.
+     */
+    public static class CachedChecksums
+        implements Serializable
+    {
+        private final long length;
+
+        private final long lastModified;
+
+        private final Map<ChecksumAlgorithm, String> checksums;
+
+        CachedChecksums( long length, long lastModified, Map<ChecksumAlgorithm, String> checksums )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksums = checksums;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * ChecksummingOutputStreamTest
+ */
+public class ChecksummingOutputStreamTest
+    extends AbstractChecksumTestCase
+{
+    private static final byte[] CONTENT = ( "You know, I'm sick of following my dreams, man. "
+        + "I'm just going to ask where they're going and hook up with 'em later. - Mitch Hedberg" ).getBytes();
+
+    @Test
+    public void testChecksumsWhileWriting()
+        throws IOException
+    {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        ChecksummingOutputStream stream =
+            new ChecksummingOutputStream( target, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 );
+
+        // write in pieces with offsets, as a copy loop would
+        stream.write( CONTENT, 0, 10 );
+        stream.write( CONTENT[10] );
+        stream.write( CONTENT, 11, CONTENT.length - 11 );
+        stream.close();
+
+        assertEquals( CONTENT.length, stream.getCount() );
+        assertEquals( CONTENT.length, target.toByteArray().length );
+
+        Map<ChecksumAlgorithm, String> checksums = stream.getChecksums();
+        assertEquals( "e396119ae0542e85a74759602fd2f81e5d36d762", checksums.get( ChecksumAlgorithm.SHA1 ) );
+        assertEquals( "21c2c5ca87ec018adacb2e2fb3432219", checksums.get( ChecksumAlgorithm.MD5 ) );
+        assertNull( checksums.get( ChecksumAlgorithm.SHA256 ) );
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void testCachedChecksumsUsedUntilFileChanges()
+        throws IOException
+    {
+        File file = new File( getTestOutputDir(), "cached.txt" );
+        FileUtils.writeByteArrayToFile( file, CONTENT );
+
+        EhcacheCache cache = new EhcacheCache();
+        cache.setName( "checksums-test" );
+        cache.setMaxElementsInMemory( 16 );
+        cache.initialize();
+        ChecksumCache checksumCache = new DefaultChecksumCache( cache );
+
+        ChecksummedFile checksummedFile = new ChecksummedFile( file, checksumCache );
+        String sha1 = checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 );
+
+        // a known checksum is returned without reading the file
+        Map<ChecksumAlgorithm, String> fake = new EnumMap<>( ChecksumAlgorithm.class );
+        fake.put( ChecksumAlgorithm.SHA1, "cafebabe" );
+        checksumCache.put( file, fake );
+        assertEquals( "cafebabe", checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+        // without the cache the file is read
+        assertEquals( sha1, new ChecksummedFile( file ).calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+
+        // a modified file invalidates the cached entry
+        FileUtils.writeByteArrayToFile( file, "changed".getBytes() );
+        assertFalse( "cafebabe".equals( checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) ) );
+        assertFalse( sha1.equals( checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) ) );
+
+        cache.dispose();
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void testChecksumsOfReplacedContentNotCached()
+        throws IOException
+    {
+        File file = new File( getTestOutputDir(), "replaced.txt" );
+        FileUtils.writeByteArrayToFile( file, CONTENT );
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        EhcacheCache cache = new EhcacheCache();
+        cache.setName( "replaced-checksums-test" );
+        cache.setMaxElementsInMemory( 16 );
+        cache.initialize();
+        ChecksumCache checksumCache = new DefaultChecksumCache( cache );
+
+        Map<ChecksumAlgorithm, String> checksums = new EnumMap<>( ChecksumAlgorithm.class );
+        checksums.put( ChecksumAlgorithm.SHA1, "e396119ae0542e85a74759602fd2f81e5d36d762" );
+
+        // another deployment replaced the file before the checksums of the first one were registered
+        FileUtils.writeByteArrayToFile( file, "replaced".getBytes() );
+        checksumCache.add( file, length, lastModified, checksums );
+        assertTrue( checksumCache.get( file ).isEmpty() );
+
+        checksumCache.add( file, file.length(), file.lastModified(), checksums );
+        assertEquals( checksums, checksumCache.get( file ) );
+
+        cache.dispose();
+    }
+}
@@ -0,0 +1,45 @@
+package org.apache.archiva.consumers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A consumer that can defer the processing of the files of a scan, and that completes it when the scan records a
+ * checkpoint: a scan resumed from its checkpoint doesn't process the files walked before the checkpoint again.
+ *
+ * @since 2.2.3
+ */
+public interface CheckpointableConsumer
+    extends RepositoryContentConsumer
+{
+    /**
+     * Event that triggers before the scan records a checkpoint, once all the files walked so far have been given to
+     * the consumer. The processing of these files must be complete when this method returns.
+     *
+     * @throws ConsumerException if the processing of the files could not be completed
+     */
+    void checkpoint()
+        throws ConsumerException;
+
+    /**
+     * Event that triggers when the scan resumes from the checkpoint of a previous scan, before the first file is given
+     * to the consumer. The files walked before the checkpoint are not given to the consumer again.
+     */
+    void resume();
+}
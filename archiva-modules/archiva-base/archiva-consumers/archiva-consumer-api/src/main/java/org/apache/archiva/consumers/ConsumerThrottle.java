@@ -0,0 +1,38 @@
+package org.apache.archiva.consumers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Limits the pace at which the consumers of a scan process the files, so that the scans don't starve the artifacts
+ * being served from the same disks.
+ *
+ * @since 2.2.3
+ */
+public interface ConsumerThrottle
+{
+    /**
+     * Wait until a file can be processed.
+     *
+     * @param bytes the bytes expected to be read
+     * @throws InterruptedException if the scan is interrupted while waiting
+     */
+    void acquire( long bytes )
+        throws InterruptedException;
+}
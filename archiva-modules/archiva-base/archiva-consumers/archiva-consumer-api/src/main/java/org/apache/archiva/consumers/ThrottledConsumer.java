@@ -0,0 +1,37 @@
+package org.apache.archiva.consumers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A consumer that processes some of the files of a scan in threads of its own, which must be limited by the throttle
+ * of the scan as the thread of the scan is.
+ *
+ * @since 2.2.3
+ */
+public interface ThrottledConsumer
+    extends RepositoryContentConsumer
+{
+    /**
+     * Event that triggers when the scan starts, before the first file is given to the consumer.
+     *
+     * @param throttle the throttle of the scan, <code>null</code> if the scan is not throttled
+     */
+    void setThrottle( ConsumerThrottle throttle );
+}
@@ -21,6 +21,7 @@
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.FileTypes;
@@ -34,6 +35,7 @@
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -74,6 +76,10 @@
 
     private List<String> includes = new ArrayList<>( 0 );
 
+    @Inject
+    @Named( value = "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     @Inject
     public ArtifactMissingChecksumsConsumer( ArchivaConfiguration configuration, FileTypes filetypes )
     {
@@ -157,7 +163,7 @@ private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm
 
         if ( checksumFile.exists() )
         {
-            checksum = new ChecksummedFile( artifactFile );
+            checksum = new ChecksummedFile( artifactFile, checksumCache );
             try
             {
                 if ( !checksum.isValidChecksum( checksumAlgorithm ) )
@@ -176,7 +182,7 @@ private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm
         }
         else if ( !checksumFile.exists() )
         {
-            checksum = new ChecksummedFile( artifactFile );
+            checksum = new ChecksummedFile( artifactFile, checksumCache );
             try
             {
                 checksum.createChecksum( checksumAlgorithm );
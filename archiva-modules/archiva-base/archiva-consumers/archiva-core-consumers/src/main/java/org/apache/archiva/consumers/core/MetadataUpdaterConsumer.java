@@ -24,8 +24,11 @@
 import org.apache.archiva.configuration.ConfigurationNames;
 import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
+import org.apache.archiva.consumers.CheckpointableConsumer;
 import org.apache.archiva.consumers.ConsumerException;
+import org.apache.archiva.consumers.ConsumerThrottle;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.archiva.consumers.ThrottledConsumer;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.model.ProjectReference;
 import org.apache.archiva.model.VersionedReference;
@@ -50,7 +53,16 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MetadataUpdaterConsumer will create and update the metadata present within the repository.
@@ -61,7 +73,7 @@
 @Scope( "prototype" )
 public class MetadataUpdaterConsumer
     extends AbstractMonitoredConsumer
-    implements KnownRepositoryContentConsumer
+    implements KnownRepositoryContentConsumer, CheckpointableConsumer, ThrottledConsumer
     // it's prototype bean so we assume configuration won't change during a run
     //, RegistryListener
 {
@@ -100,6 +112,40 @@
 
     private long scanStartTimestamp = 0;
 
+    /**
+     * Number of threads regenerating the metadata of the projects during a scan of an entire repository.
+     */
+    private int threads = Integer.getInteger( "archiva.metadata.updater.threads", 4 );
+
+    private boolean executeOnEntireRepo;
+
+    /**
+     * Regenerates the metadata of the projects done with during a scan of an entire repository, <code>null</code>
+     * when the metadata is regenerated as the files are processed.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Throttle of the scan, the threads of the scan regenerating the metadata have to wait for it too.
+     */
+    private volatile ConsumerThrottle throttle;
+
+    /**
+     * Project of the files being processed, whose metadata has not been regenerated yet.
+     */
+    private ProjectReference pendingProject;
+
+    /**
+     * Versions of the pending project seen by the files processed, by version.
+     */
+    private Map<String, VersionedReference> pendingVersions = new LinkedHashMap<>();
+
+    /**
+     * Projects whose metadata is being regenerated, as <code>groupId:artifactId</code>. A project walked again later
+     * in the scan is flushed again, and its metadata files must not be written by two threads at once.
+     */
+    private final Set<String> projectsInProgress = new HashSet<>();
+
     @Override
     public String getDescription()
     {
@@ -126,6 +172,8 @@ public void beginScan( ManagedRepository repoConfig, Date whenGathered )
             this.repository = repositoryFactory.getManagedRepositoryContent( repoConfig.getId() );
             this.repositoryDir = new File( repository.getRepoRoot() );
             this.scanStartTimestamp = System.currentTimeMillis();
+            this.pendingProject = null;
+            this.pendingVersions.clear();
         }
         catch ( RepositoryNotFoundException e )
         {
@@ -142,12 +190,93 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
         throws ConsumerException
     {
         beginScan( repository, whenGathered );
+        this.executeOnEntireRepo = executeOnEntireRepo;
+        if ( executor != null )
+        {
+            // left over by a scan that did not complete
+            executor.shutdown();
+            executor = null;
+        }
+        if ( executeOnEntireRepo && threads > 1 )
+        {
+            executor = createExecutor();
+        }
+    }
+
+    private ExecutorService createExecutor()
+    {
+        // a full queue makes the scan regenerate the metadata itself rather than running ahead of the threads
+        return new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                       new ArrayBlockingQueue<Runnable>( threads * 4 ), new RunInScanThread() );
+    }
+
+    @Override
+    public void setThrottle( ConsumerThrottle throttle )
+    {
+        this.throttle = throttle;
     }
 
     @Override
     public void completeScan()
     {
-        /* do nothing here */
+        flush();
+        awaitMetadata();
+    }
+
+    /**
+     * Regenerate the metadata of the projects processed so far, so that a scan resumed from the checkpoint doesn't
+     * miss them.
+     */
+    @Override
+    public void checkpoint()
+        throws ConsumerException
+    {
+        flush();
+        if ( executor != null )
+        {
+            if ( !awaitMetadata() )
+            {
+                throw new ConsumerException(
+                    "Interrupted while waiting for the metadata of the repository " + repository.getId() );
+            }
+            executor = createExecutor();
+        }
+    }
+
+    @Override
+    public void resume()
+    {
+        // the metadata of the projects walked before the checkpoint was regenerated by the previous scan
+    }
+
+    /**
+     * Wait for the threads of the scan to regenerate the metadata of the projects given to them, and stop them.
+     *
+     * @return <code>false</code> if interrupted while waiting
+     */
+    private boolean awaitMetadata()
+    {
+        boolean written = true;
+        if ( executor != null )
+        {
+            executor.shutdown();
+            try
+            {
+                while ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) )
+                {
+                    log.debug( "Waiting for the metadata of the repository {} to be written", repository.getId() );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                log.warn( "Interrupted while waiting for the metadata of the repository {} to be written",
+                          repository.getId() );
+                Thread.currentThread().interrupt();
+                written = false;
+            }
+            executor = null;
+        }
+        return written;
     }
 
     @Override
@@ -178,8 +307,33 @@ public void processFile( String path )
             try
             {
                 ArtifactReference artifact = repository.toArtifactReference( path );
-                updateVersionMetadata( artifact, path );
-                updateProjectMetadata( artifact, path );
+
+                // the files of a project are walked together, so its metadata is regenerated once the scan leaves it
+                if ( pendingProject != null && !( pendingProject.getGroupId().equals( artifact.getGroupId() )
+                    && pendingProject.getArtifactId().equals( artifact.getArtifactId() ) ) )
+                {
+                    flush();
+                }
+                if ( pendingProject == null )
+                {
+                    pendingProject = new ProjectReference();
+                    pendingProject.setGroupId( artifact.getGroupId() );
+                    pendingProject.setArtifactId( artifact.getArtifactId() );
+                }
+                if ( !pendingVersions.containsKey( artifact.getVersion() ) )
+                {
+                    VersionedReference versionRef = new VersionedReference();
+                    versionRef.setGroupId( artifact.getGroupId() );
+                    versionRef.setArtifactId( artifact.getArtifactId() );
+                    versionRef.setVersion( artifact.getVersion() );
+                    pendingVersions.put( artifact.getVersion(), versionRef );
+                }
+
+                // only the scans of an entire repository coalesce the files of a project
+                if ( !executeOnEntireRepo )
+                {
+                    flush();
+                }
             }
             catch ( LayoutException e )
             {
@@ -195,11 +349,125 @@ public void processFile( String path, boolean executeOnEntireRepo )
         processFile( path );
     }
 
-    private void updateProjectMetadata( ArtifactReference artifact, String path )
+    /**
+     * Regenerate the metadata of the pending project and of its versions, with the threads of the scan if any.
+     */
+    private void flush()
+    {
+        if ( pendingProject == null )
+        {
+            return;
+        }
+
+        final ProjectReference projectRef = pendingProject;
+        final List<VersionedReference> versionRefs = new ArrayList<>( pendingVersions.values() );
+        pendingProject = null;
+        pendingVersions.clear();
+
+        Runnable update = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                String key = projectRef.getGroupId() + ":" + projectRef.getArtifactId();
+                if ( !startProject( key ) )
+                {
+                    return;
+                }
+                try
+                {
+                    for ( VersionedReference versionRef : versionRefs )
+                    {
+                        if ( !acquire() )
+                        {
+                            return;
+                        }
+                        updateVersionMetadata( versionRef );
+                    }
+                    if ( acquire() )
+                    {
+                        updateProjectMetadata( projectRef );
+                    }
+                }
+                finally
+                {
+                    endProject( key );
+                }
+            }
+        };
+        if ( executor != null )
+        {
+            executor.execute( update );
+        }
+        else
+        {
+            update.run();
+        }
+    }
+
+    /**
+     * Wait for another thread to be done with the metadata of the project, and mark it in progress. The thread waited
+     * for is running, not queued, so it always completes.
+     *
+     * @return <code>false</code> if interrupted while waiting
+     */
+    private boolean startProject( String key )
+    {
+        synchronized ( projectsInProgress )
+        {
+            while ( !projectsInProgress.add( key ) )
+            {
+                try
+                {
+                    projectsInProgress.wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    log.warn( "Interrupted while regenerating the metadata of the repository {}", repository.getId() );
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void endProject( String key )
+    {
+        synchronized ( projectsInProgress )
+        {
+            projectsInProgress.remove( key );
+            projectsInProgress.notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the throttle of the scan before regenerating a metadata file.
+     *
+     * @return <code>false</code> if interrupted while waiting
+     */
+    private boolean acquire()
+    {
+        ConsumerThrottle throttle = this.throttle;
+        if ( throttle != null )
+        {
+            try
+            {
+                throttle.acquire( 0 );
+            }
+            catch ( InterruptedException e )
+            {
+                log.warn( "Interrupted while regenerating the metadata of the repository {}", repository.getId() );
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateProjectMetadata( ProjectReference projectRef )
     {
-        ProjectReference projectRef = new ProjectReference();
-        projectRef.setGroupId( artifact.getGroupId() );
-        projectRef.setArtifactId( artifact.getArtifactId() );
+        String path = projectRef.getGroupId() + ":" + projectRef.getArtifactId();
 
         try
         {
@@ -245,12 +513,9 @@ private void updateProjectMetadata( ArtifactReference artifact, String path )
         }
     }
 
-    private void updateVersionMetadata( ArtifactReference artifact, String path )
+    private void updateVersionMetadata( VersionedReference versionRef )
     {
-        VersionedReference versionRef = new VersionedReference();
-        versionRef.setGroupId( artifact.getGroupId() );
-        versionRef.setArtifactId( artifact.getArtifactId() );
-        versionRef.setVersion( artifact.getVersion() );
+        String path = versionRef.getGroupId() + ":" + versionRef.getArtifactId() + ":" + versionRef.getVersion();
 
         try
         {
@@ -313,6 +578,16 @@ public void beforeConfigurationChange( Registry registry, String propertyName, O
     }
     */
 
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
     private void initIncludes()
     {
         includes = new ArrayList<>( filetypes.getFileTypePatterns( FileTypes.ARTIFACTS ) );
@@ -325,4 +600,18 @@ public void initialize()
 
         initIncludes();
     }
+
+    /**
+     * Regenerates the metadata in the thread of the scan when the threads are busy, or when they are stopped: unlike
+     * {@link ThreadPoolExecutor.CallerRunsPolicy}, the metadata of a project given after the shutdown isn't dropped.
+     */
+    private static class RunInScanThread
+        implements RejectedExecutionHandler
+    {
+        @Override
+        public void rejectedExecution( Runnable r, ThreadPoolExecutor executor )
+        {
+            r.run();
+        }
+    }
 }
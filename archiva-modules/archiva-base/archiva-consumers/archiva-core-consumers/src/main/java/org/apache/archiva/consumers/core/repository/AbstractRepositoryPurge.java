@@ -21,6 +21,7 @@
 
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.common.utils.VersionUtil;
+import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.maven2.MavenArtifactFacet;
 import org.apache.archiva.metadata.repository.MetadataRepository;
@@ -28,21 +29,39 @@
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.model.ArtifactReference;
+import org.apache.archiva.model.VersionedReference;
 import org.apache.archiva.repository.ContentNotFoundException;
 import org.apache.archiva.repository.ManagedRepositoryContent;
 import org.apache.archiva.repository.events.RepositoryListener;
+import org.apache.archiva.repository.layout.LayoutException;
+import org.apache.archiva.repository.metadata.MetadataTools;
+import org.apache.archiva.repository.metadata.RepositoryMetadataException;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Base class for all repository purge tasks.
+ * <p>
+ * The purges plan the deletions of a version directory from a single listing of it, once per scan, then execute the
+ * plan at once: see {@link #createPlan(ArtifactReference)} and {@link #purge(PurgePlan)}.
  */
 public abstract class AbstractRepositoryPurge
     implements RepositoryPurge
@@ -59,6 +78,29 @@
 
     private static final char DELIM = ' ';
 
+    private static final int DELETION_BATCH_SIZE = 100;
+
+    private static final String[] SUPPORT_FILE_EXTENSIONS = { ".md5", ".sha1", ".sha256", ".sha512", ".asc" };
+
+    /**
+     * The version directories already planned during the scan.
+     */
+    private final Set<String> plannedDirectories = new HashSet<>();
+
+    private boolean dryRun;
+
+    private ExecutorService deletionExecutor;
+
+    private FileTypes fileTypes;
+
+    private MetadataTools metadataTools;
+
+    private long purgedArtifactCount;
+
+    private long purgedFileCount;
+
+    private long reclaimedBytes;
+
     public AbstractRepositoryPurge( ManagedRepositoryContent repository, RepositorySession repositorySession,
                                     List<RepositoryListener> listeners )
     {
@@ -68,37 +110,235 @@ public AbstractRepositoryPurge( ManagedRepositoryContent repository, RepositoryS
     }
 
     /**
-     * Purge the repo. Update db and index of removed artifacts.
+     * Read the artifacts of the version directory of an artifact, once per scan.
      *
-     * @param references
+     * @return the plan of the purge of the directory, or <code>null</code> if it was already planned
+     * @throws ContentNotFoundException if the directory doesn't exist
      */
-    protected void purge( Set<ArtifactReference> references )
+    protected PurgePlan createPlan( ArtifactReference artifact )
+        throws ContentNotFoundException
     {
-        if ( references != null && !references.isEmpty() )
+        String path = repository.toPath( artifact );
+        String directoryPath = path.substring( 0, path.lastIndexOf( '/' ) + 1 );
+        File directory = new File( repository.getRepoRoot(), directoryPath );
+        if ( !plannedDirectories.add( directory.getAbsolutePath() ) )
         {
-            MetadataRepository metadataRepository = repositorySession.getRepository();
-            for ( ArtifactReference reference : references )
-            {
-                File artifactFile = repository.toFile( reference );
+            return null;
+        }
+
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            throw new ContentNotFoundException(
+                "Unable to get versions on a non-directory: " + directory.getAbsolutePath() );
+        }
 
-                for ( RepositoryListener listener : listeners )
+        Map<String, ArtifactReference> artifacts = new TreeMap<>();
+        List<File> supportFiles = new ArrayList<>();
+        for ( File file : files )
+        {
+            if ( !file.isFile() )
+            {
+                continue;
+            }
+            if ( !isArtifactFile( directoryPath + file.getName() ) )
+            {
+                supportFiles.add( file );
+                continue;
+            }
+            try
+            {
+                ArtifactReference reference = repository.toArtifactReference( directoryPath + file.getName() );
+                if ( reference.getGroupId().equals( artifact.getGroupId() ) &&
+                    reference.getArtifactId().equals( artifact.getArtifactId() ) )
                 {
-                    listener.deleteArtifact( metadataRepository, repository.getId(), reference.getGroupId(),
-                                             reference.getArtifactId(), reference.getVersion(),
-                                             artifactFile.getName() );
+                    artifacts.put( file.getName(), reference );
                 }
+            }
+            catch ( LayoutException e )
+            {
+                log.debug( "Not processing file that is not an artifact: {}", e.getMessage() );
+            }
+        }
 
-                // TODO: this needs to be logged
-                artifactFile.delete();
-                try
+        Map<String, List<File>> artifactFiles = new HashMap<>();
+        for ( String name : artifacts.keySet() )
+        {
+            artifactFiles.put( name, new ArrayList<>( Collections.singletonList( new File( directory, name ) ) ) );
+        }
+        for ( File supportFile : supportFiles )
+        {
+            // a support file belongs to the artifact with the longest matching name, eg. foo.tar.gz for foo.tar.gz.asc
+            String owner = null;
+            for ( String name : artifacts.keySet() )
+            {
+                if ( supportFile.getName().startsWith( name ) && ( owner == null || name.length() > owner.length() ) )
                 {
-                    repository.deleteArtifact( reference );
+                    owner = name;
                 }
-                catch ( ContentNotFoundException e )
+            }
+            if ( owner != null )
+            {
+                artifactFiles.get( owner ).add( supportFile );
+            }
+        }
+
+        PurgePlan plan = new PurgePlan( directory );
+        for ( Map.Entry<String, ArtifactReference> entry : artifacts.entrySet() )
+        {
+            plan.addArtifact( entry.getValue(), artifactFiles.get( entry.getKey() ) );
+        }
+        return plan;
+    }
+
+    /**
+     * @return <code>true</code> if the file matches the artifact patterns, or without them isn't metadata, a checksum
+     *         or a signature
+     */
+    private boolean isArtifactFile( String path )
+    {
+        if ( fileTypes != null )
+        {
+            return fileTypes.matchesArtifactPattern( path );
+        }
+        String name = path.substring( path.lastIndexOf( '/' ) + 1 );
+        if ( name.startsWith( "maven-metadata" ) )
+        {
+            return false;
+        }
+        for ( String extension : SUPPORT_FILE_EXTENSIONS )
+        {
+            if ( name.endsWith( extension ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Purge the artifacts of a plan, with their support files, from the repository, the metadata repository and the
+     * listeners, eg. the index. The files are deleted in parallel batches when an executor is set. In a dry run, the
+     * plan is only reported.
+     *
+     * @param plan the plan of the purge of a version directory
+     */
+    protected void purge( PurgePlan plan )
+    {
+        if ( plan == null || plan.isEmpty() )
+        {
+            return;
+        }
+
+        List<ArtifactReference> references = plan.getPurgedArtifacts();
+        List<File> files = plan.getPurgedFiles();
+        long bytes = plan.getReclaimedBytes();
+        purgedArtifactCount += references.size();
+        purgedFileCount += files.size();
+        reclaimedBytes += bytes;
+
+        if ( dryRun )
+        {
+            log.info( "Dry run of the purge of [{}]: {} artifacts of the versions {} in {}, {} files, {} bytes",
+                      repository.getId(), references.size(), plan.getPurgedVersions(), plan.getDirectory(),
+                      files.size(), bytes );
+            return;
+        }
+
+        MetadataRepository metadataRepository = repositorySession.getRepository();
+        for ( ArtifactReference reference : references )
+        {
+            String fileName = plan.getFiles( reference ).get( 0 ).getName();
+            for ( RepositoryListener listener : listeners )
+            {
+                listener.deleteArtifact( metadataRepository, repository.getId(), reference.getGroupId(),
+                                         reference.getArtifactId(), reference.getVersion(), fileName );
+            }
+        }
+
+        deleteFiles( files );
+
+        removeMetadata( metadataRepository, references );
+        repositorySession.save();
+
+        for ( ArtifactReference reference : references )
+        {
+            List<File> artifactFiles = plan.getFiles( reference );
+            triggerAuditEvent( repository.getRepository().getId(), ArtifactReference.toKey( reference ),
+                               AuditEvent.PURGE_ARTIFACT );
+            for ( File supportFile : artifactFiles.subList( 1, artifactFiles.size() ) )
+            {
+                triggerAuditEvent( repository.getRepository().getId(), supportFile.getName(),
+                                   AuditEvent.PURGE_FILE );
+            }
+        }
+
+        updateMetadata( references.get( 0 ) );
+    }
+
+    private void deleteFiles( List<File> files )
+    {
+        if ( deletionExecutor == null || files.size() <= DELETION_BATCH_SIZE )
+        {
+            deleteBatch( files );
+            return;
+        }
+
+        List<Future<?>> batches = new ArrayList<>();
+        for ( int i = 0; i < files.size(); i += DELETION_BATCH_SIZE )
+        {
+            final List<File> batch = files.subList( i, Math.min( i + DELETION_BATCH_SIZE, files.size() ) );
+            batches.add( deletionExecutor.submit( new Runnable()
+            {
+                @Override
+                public void run()
                 {
-                    log.warn( "skip error deleting artifact {}: {}", reference, e.getMessage() );
+                    deleteBatch( batch );
                 }
+            } ) );
+        }
+        for ( Future<?> batch : batches )
+        {
+            try
+            {
+                batch.get();
+            }
+            catch ( InterruptedException e )
+            {
+                // the batches already submitted are still deleted
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch ( ExecutionException e )
+            {
+                log.warn( "Unable to purge files of [{}]: {}", repository.getId(), e.getCause().getMessage() );
+            }
+        }
+    }
+
+    private void deleteBatch( List<File> files )
+    {
+        for ( File file : files )
+        {
+            if ( !file.delete() && file.exists() )
+            {
+                log.warn( "Unable to purge the file {}", file );
+            }
+        }
+    }
 
+    /**
+     * Remove the artifacts from the metadata repository, reading the artifacts of each snapshot version once.
+     */
+    private void removeMetadata( MetadataRepository metadataRepository, List<ArtifactReference> references )
+    {
+        Set<String> removedVersions = new HashSet<>();
+        Map<String, List<ArtifactReference>> snapshots = new LinkedHashMap<>();
+        for ( ArtifactReference reference : references )
+        {
+            if ( removedVersions.add( reference.getGroupId() + ":" + reference.getArtifactId() + ":" +
+                                          reference.getVersion() ) )
+            {
                 try
                 {
                     metadataRepository.removeProjectVersion( repository.getId(), reference.getGroupId(),
@@ -108,111 +348,175 @@ protected void purge( Set<ArtifactReference> references )
                 {
                     log.warn( "skip error removeProjectVersion artifact {}: {}", reference, e.getMessage() );
                 }
+            }
 
-                boolean snapshotVersion = VersionUtil.isSnapshot( reference.getVersion() );
-
-                try
+            if ( VersionUtil.isSnapshot( reference.getVersion() ) )
+            {
+                String key = reference.getGroupId() + ":" + reference.getArtifactId() + ":" +
+                    VersionUtil.getBaseVersion( reference.getVersion() );
+                List<ArtifactReference> snapshotReferences = snapshots.get( key );
+                if ( snapshotReferences == null )
                 {
-                    if ( snapshotVersion )
-                    {
-                        String baseVersion = VersionUtil.getBaseVersion( reference.getVersion() );
-                        Collection<ArtifactMetadata> artifacts =
-                            metadataRepository.getArtifacts( repository.getId(), reference.getGroupId(),
-                                                             reference.getArtifactId(), baseVersion );
-                        if ( artifacts != null )
-                        {
-                            // cleanup snapshots metadata
-                            for ( ArtifactMetadata artifactMetadata : artifacts )
-                            {
-
-                                // TODO: mismatch between artifact (snapshot) version and project (base) version here
-                                if ( artifactMetadata.getVersion().equals( reference.getVersion() ) )
-                                {
-                                    if ( StringUtils.isNotBlank( reference.getClassifier() ) )
-                                    {
-
-                                        // cleanup facet which contains classifier information
-                                        MavenArtifactFacet mavenArtifactFacet =
-                                            (MavenArtifactFacet) artifactMetadata.getFacet(
-                                                MavenArtifactFacet.FACET_ID );
-
-                                        if ( StringUtils.equals( reference.getClassifier(),
-                                                                 mavenArtifactFacet.getClassifier() ) )
-                                        {
-                                            artifactMetadata.removeFacet( MavenArtifactFacet.FACET_ID );
-                                            String groupId = reference.getGroupId(), artifactId =
-                                                reference.getArtifactId(),
-                                                version = reference.getVersion();
-                                            MavenArtifactFacet mavenArtifactFacetToCompare = new MavenArtifactFacet();
-                                            mavenArtifactFacetToCompare.setClassifier( reference.getClassifier() );
-                                            metadataRepository.removeArtifact( repository.getId(), groupId, artifactId,
-                                                                               version, mavenArtifactFacetToCompare );
-                                            metadataRepository.save();
-                                        }
-
-                                    }
-                                    else
-                                    {
-                                        metadataRepository.removeArtifact( artifactMetadata, VersionUtil.getBaseVersion(
-                                            reference.getVersion() ) );
-                                    }
-
-                                }
-                            }
-                        }
-                    }
+                    snapshotReferences = new ArrayList<>();
+                    snapshots.put( key, snapshotReferences );
                 }
-                catch ( MetadataResolutionException e )
+                snapshotReferences.add( reference );
+            }
+        }
+
+        for ( List<ArtifactReference> snapshotReferences : snapshots.values() )
+        {
+            ArtifactReference first = snapshotReferences.get( 0 );
+            String baseVersion = VersionUtil.getBaseVersion( first.getVersion() );
+            try
+            {
+                Collection<ArtifactMetadata> artifacts =
+                    metadataRepository.getArtifacts( repository.getId(), first.getGroupId(), first.getArtifactId(),
+                                                     baseVersion );
+                if ( artifacts != null )
                 {
-                    log.warn( "skip error deleting metadata {}: {}", reference, e.getMessage() );
+                    removeSnapshotMetadata( metadataRepository, snapshotReferences, artifacts, baseVersion );
                 }
-                catch ( MetadataRepositoryException e )
+            }
+            catch ( MetadataResolutionException e )
+            {
+                log.warn( "skip error deleting metadata {}: {}", first, e.getMessage() );
+            }
+            catch ( MetadataRepositoryException e )
+            {
+                log.warn( "skip error deleting metadata {}: {}", first, e.getMessage() );
+            }
+        }
+    }
+
+    private void removeSnapshotMetadata( MetadataRepository metadataRepository, List<ArtifactReference> references,
+                                         Collection<ArtifactMetadata> artifacts, String baseVersion )
+        throws MetadataRepositoryException
+    {
+        Set<ArtifactMetadata> removed = Collections.newSetFromMap( new IdentityHashMap<ArtifactMetadata, Boolean>() );
+        for ( ArtifactReference reference : references )
+        {
+            // cleanup snapshots metadata
+            for ( ArtifactMetadata artifactMetadata : artifacts )
+            {
+                // TODO: mismatch between artifact (snapshot) version and project (base) version here
+                if ( !artifactMetadata.getVersion().equals( reference.getVersion() ) )
                 {
-                    log.warn( "skip error deleting metadata {}: {}", reference, e.getMessage() );
+                    continue;
                 }
+                if ( StringUtils.isNotBlank( reference.getClassifier() ) )
+                {
+                    // cleanup facet which contains classifier information
+                    MavenArtifactFacet mavenArtifactFacet =
+                        (MavenArtifactFacet) artifactMetadata.getFacet( MavenArtifactFacet.FACET_ID );
 
-                repositorySession.save();
-
-                triggerAuditEvent( repository.getRepository().getId(), ArtifactReference.toKey( reference ),
-                                   AuditEvent.PURGE_ARTIFACT );
-                purgeSupportFiles( artifactFile );
+                    if ( mavenArtifactFacet != null &&
+                        StringUtils.equals( reference.getClassifier(), mavenArtifactFacet.getClassifier() ) )
+                    {
+                        artifactMetadata.removeFacet( MavenArtifactFacet.FACET_ID );
+                        MavenArtifactFacet mavenArtifactFacetToCompare = new MavenArtifactFacet();
+                        mavenArtifactFacetToCompare.setClassifier( reference.getClassifier() );
+                        metadataRepository.removeArtifact( repository.getId(), reference.getGroupId(),
+                                                           reference.getArtifactId(), reference.getVersion(),
+                                                           mavenArtifactFacetToCompare );
+                        metadataRepository.save();
+                    }
+                }
+                else if ( removed.add( artifactMetadata ) )
+                {
+                    metadataRepository.removeArtifact( artifactMetadata, baseVersion );
+                }
             }
         }
     }
 
     /**
-     * <p>
-     * This find support files for the artifactFile and deletes them.
-     * </p>
-     * <p>
-     * Support Files are things like ".sha1", ".md5", ".asc", etc.
-     * </p>
-     *
-     * @param artifactFile the file to base off of.
+     * Regenerate the metadata of the version directory once its artifacts are purged, if the metadata tools are set.
      */
-    private void purgeSupportFiles( File artifactFile )
+    private void updateMetadata( ArtifactReference artifact )
     {
-        File parentDir = artifactFile.getParentFile();
-
-        if ( !parentDir.exists() )
+        if ( metadataTools == null )
         {
             return;
         }
+        VersionedReference versionRef = new VersionedReference();
+        versionRef.setGroupId( artifact.getGroupId() );
+        versionRef.setArtifactId( artifact.getArtifactId() );
+        versionRef.setVersion( VersionUtil.getBaseVersion( artifact.getVersion() ) );
+        try
+        {
+            metadataTools.updateMetadata( repository, versionRef );
+        }
+        catch ( ContentNotFoundException e )
+        {
+            // Ignore. (Just means we have no versions left to reference).
+        }
+        catch ( RepositoryMetadataException | IOException | LayoutException e )
+        {
+            log.warn( "Unable to update the metadata of {} after the purge: {}", versionRef, e.getMessage() );
+        }
+    }
+
+    public boolean isDryRun()
+    {
+        return dryRun;
+    }
 
-        FilenameFilter filter = new ArtifactFilenameFilter( artifactFile.getName() );
+    /**
+     * @param dryRun <code>true</code> to report the artifacts that would be purged without deleting them
+     */
+    public void setDryRun( boolean dryRun )
+    {
+        this.dryRun = dryRun;
+    }
 
-        File[] files = parentDir.listFiles( filter );
+    /**
+     * @param deletionExecutor the executor deleting the files in parallel batches, <code>null</code> to delete them
+     *                         in the calling thread
+     */
+    public void setDeletionExecutor( ExecutorService deletionExecutor )
+    {
+        this.deletionExecutor = deletionExecutor;
+    }
 
-        for ( File file : files )
-        {
-            if ( file.exists() && file.isFile() )
-            {
-                String fileName = file.getName();
-                file.delete();
-                // TODO: log that it was deleted
-                triggerAuditEvent( repository.getRepository().getId(), fileName, AuditEvent.PURGE_FILE );
-            }
-        }
+    /**
+     * @param fileTypes the file types telling the artifacts from the other files of a directory
+     */
+    public void setFileTypes( FileTypes fileTypes )
+    {
+        this.fileTypes = fileTypes;
+    }
+
+    /**
+     * @param metadataTools the tools regenerating the metadata of the versions purged, <code>null</code> to leave it
+     */
+    public void setMetadataTools( MetadataTools metadataTools )
+    {
+        this.metadataTools = metadataTools;
+    }
+
+    /**
+     * @return the number of artifacts purged, or that would be in a dry run
+     */
+    public long getPurgedArtifactCount()
+    {
+        return purgedArtifactCount;
+    }
+
+    /**
+     * @return the number of files purged, including the support files
+     */
+    public long getPurgedFileCount()
+    {
+        return purgedFileCount;
+    }
+
+    /**
+     * @return the bytes of the files purged
+     */
+    public long getReclaimedBytes()
+    {
+        return reclaimedBytes;
     }
 
     private void triggerAuditEvent( String repoId, String resource, String action )
@@ -25,7 +25,6 @@
 import org.apache.archiva.common.utils.VersionComparator;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.model.ArtifactReference;
-import org.apache.archiva.model.VersionedReference;
 import org.apache.archiva.repository.ContentNotFoundException;
 import org.apache.archiva.repository.ManagedRepositoryContent;
 import org.apache.archiva.repository.layout.LayoutException;
@@ -38,7 +37,6 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 import java.util.regex.Matcher;
 
 /**
@@ -78,16 +76,18 @@ public void process( String path )
 
             ArtifactReference artifact = repository.toArtifactReference( path );
 
+            // the whole version directory is planned at once
+            PurgePlan plan = createPlan( artifact );
+            if ( plan == null )
+            {
+                return;
+            }
+
             Calendar olderThanThisDate = Calendar.getInstance( DateUtils.UTC_TIME_ZONE );
             olderThanThisDate.add( Calendar.DATE, -daysOlder );
 
             // respect retention count
-            VersionedReference reference = new VersionedReference();
-            reference.setGroupId( artifact.getGroupId() );
-            reference.setArtifactId( artifact.getArtifactId() );
-            reference.setVersion( artifact.getVersion() );
-
-            List<String> versions = new ArrayList<>( repository.getVersions( reference ) );
+            List<String> versions = new ArrayList<>( plan.getVersions() );
 
             Collections.sort( versions, VersionComparator.getInstance() );
 
@@ -117,7 +117,7 @@ public void process( String path )
                 {
                     if ( newArtifactFile.lastModified() < olderThanThisDate.getTimeInMillis() )
                     {
-                        doPurgeAllRelated( newArtifactReference );
+                        plan.purgeVersion( version );
                     }
                 }
                 // Is this a timestamp snapshot "1.0-20070822.123456-42" ?
@@ -127,10 +127,12 @@ else if ( VersionUtil.isUniqueSnapshot( newArtifactReference.getVersion() ) )
 
                     if ( timestampCal.getTimeInMillis() < olderThanThisDate.getTimeInMillis() )
                     {
-                        doPurgeAllRelated( newArtifactReference );
+                        plan.purgeVersion( version );
                     }
                 }
             }
+
+            purge( plan );
         }
         catch ( ContentNotFoundException e )
         {
@@ -174,18 +176,4 @@ private Calendar uniqueSnapshotToCalendar( String version )
         }
         return null;
     }
-
-    private void doPurgeAllRelated( ArtifactReference reference )
-    {
-        try
-        {
-            Set<ArtifactReference> related = repository.getRelatedArtifacts( reference );
-            purge( related );
-        }
-        catch ( ContentNotFoundException e )
-        {
-            // Nothing to do here - it means the repository would have been constructed incorrectly
-            log.debug( e.getMessage(), e );
-        }
-    }
 }
@@ -0,0 +1,155 @@
+package org.apache.archiva.consumers.core.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.model.ArtifactReference;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PurgePlan - the artifacts of a version directory, read from a single listing of the directory, and the ones to purge
+ * with their support files (checksums, signatures), so that the purge doesn't list the directory again for every
+ * version it removes.
+ *
+ * @since 2.2.3
+ */
+public class PurgePlan
+{
+    private final File directory;
+
+    /**
+     * The artifacts of the directory by version, with their files.
+     */
+    private final Map<String, Map<ArtifactReference, List<File>>> artifacts = new LinkedHashMap<>();
+
+    private final Set<String> purgedVersions = new LinkedHashSet<>();
+
+    public PurgePlan( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Add an artifact found in the directory.
+     *
+     * @param artifact the artifact
+     * @param files    the file of the artifact followed by its support files
+     */
+    public void addArtifact( ArtifactReference artifact, List<File> files )
+    {
+        Map<ArtifactReference, List<File>> versionArtifacts = artifacts.get( artifact.getVersion() );
+        if ( versionArtifacts == null )
+        {
+            versionArtifacts = new LinkedHashMap<>();
+            artifacts.put( artifact.getVersion(), versionArtifacts );
+        }
+        versionArtifacts.put( artifact, files );
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the versions of the artifacts found in the directory
+     */
+    public Set<String> getVersions()
+    {
+        return Collections.unmodifiableSet( artifacts.keySet() );
+    }
+
+    /**
+     * Purge all the artifacts of a version.
+     */
+    public void purgeVersion( String version )
+    {
+        if ( artifacts.containsKey( version ) )
+        {
+            purgedVersions.add( version );
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return purgedVersions.isEmpty();
+    }
+
+    public Set<String> getPurgedVersions()
+    {
+        return Collections.unmodifiableSet( purgedVersions );
+    }
+
+    public List<ArtifactReference> getPurgedArtifacts()
+    {
+        List<ArtifactReference> purged = new ArrayList<>();
+        for ( String version : purgedVersions )
+        {
+            purged.addAll( artifacts.get( version ).keySet() );
+        }
+        return purged;
+    }
+
+    /**
+     * @return the files of an artifact to purge, the file of the artifact first
+     */
+    public List<File> getFiles( ArtifactReference artifact )
+    {
+        Map<ArtifactReference, List<File>> versionArtifacts = artifacts.get( artifact.getVersion() );
+        List<File> files = versionArtifacts == null ? null : versionArtifacts.get( artifact );
+        return files == null ? Collections.<File>emptyList() : files;
+    }
+
+    /**
+     * @return the files of the artifacts to purge and their support files
+     */
+    public List<File> getPurgedFiles()
+    {
+        List<File> files = new ArrayList<>();
+        for ( String version : purgedVersions )
+        {
+            for ( List<File> artifactFiles : artifacts.get( version ).values() )
+            {
+                files.addAll( artifactFiles );
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the bytes the files to purge take
+     */
+    public long getReclaimedBytes()
+    {
+        long bytes = 0;
+        for ( File file : getPurgedFiles() )
+        {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+}
@@ -37,6 +37,8 @@
 import org.apache.archiva.repository.events.RepositoryListener;
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.redback.components.registry.RegistryListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
@@ -48,10 +50,17 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Consumer for removing old snapshots in the repository based on the criteria
  * specified by the user.
+ * <p>
+ * With the system property <code>archiva.repositoryPurge.dryRun</code> set to <code>true</code>, nothing is deleted:
+ * the artifacts, files and bytes the purge would have reclaimed are reported at the end of the scan instead.
  */
 @Service( "knownRepositoryContentConsumer#repository-purge" )
 @Scope( "prototype" )
@@ -59,6 +68,8 @@
     extends AbstractMonitoredConsumer
     implements KnownRepositoryContentConsumer, RegistryListener
 {
+    private Logger log = LoggerFactory.getLogger( RepositoryPurgeConsumer.class );
+
     /**
      * default-value="repository-purge"
      */
@@ -110,6 +121,23 @@
 
     private RepositorySession repositorySession;
 
+    /**
+     * Report what would be purged rather than deleting it.
+     */
+    private boolean dryRun = Boolean.getBoolean( "archiva.repositoryPurge.dryRun" );
+
+    /**
+     * Number of threads deleting the files of large purges.
+     */
+    private int threads = Integer.getInteger( "archiva.repositoryPurge.threads", 4 );
+
+    private String repositoryId;
+
+    /**
+     * Deletes the files of large purges in parallel batches, <code>null</code> when they are deleted by the scan.
+     */
+    private ExecutorService executor;
+
     @Override
     public String getId()
     {
@@ -154,18 +182,39 @@ public void beginScan( ManagedRepository repository, Date whenGathered )
 
         repositorySession = repositorySessionFactory.createSession();
 
+        AbstractRepositoryPurge purge;
         if ( repository.getDaysOlder() != 0 )
         {
-            repoPurge = new DaysOldRepositoryPurge( repositoryContent, repository.getDaysOlder(),
-                                                    repository.getRetentionCount(), repositorySession, listeners );
+            purge = new DaysOldRepositoryPurge( repositoryContent, repository.getDaysOlder(),
+                                                repository.getRetentionCount(), repositorySession, listeners );
         }
         else
         {
-            repoPurge =
+            purge =
                 new RetentionCountRepositoryPurge( repositoryContent, repository.getRetentionCount(), repositorySession,
                                                    listeners );
         }
 
+        if ( executor != null )
+        {
+            // left over by a scan that did not complete
+            executor.shutdown();
+            executor = null;
+        }
+        if ( threads > 1 && !dryRun )
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads, 30L, TimeUnit.SECONDS,
+                                                              new LinkedBlockingQueue<Runnable>() );
+            pool.allowCoreThreadTimeOut( true );
+            executor = pool;
+        }
+        purge.setDryRun( dryRun );
+        purge.setDeletionExecutor( executor );
+        purge.setFileTypes( filetypes );
+        purge.setMetadataTools( metadataTools );
+        repoPurge = purge;
+        repositoryId = repository.getId();
+
         cleanUp = new CleanupReleasedSnapshotsRepositoryPurge( repositoryContent, metadataTools, managedRepositoryAdmin,
                                                                repositoryContentFactory, repositorySession, listeners );
 
@@ -185,7 +234,8 @@ public void processFile( String path )
     {
         try
         {
-            if ( deleteReleasedSnapshots )
+            // the released snapshots are deleted as they are found, there is nothing to report on a dry run
+            if ( deleteReleasedSnapshots && !dryRun )
             {
                 cleanUp.process( path );
             }
@@ -208,6 +258,26 @@ public void processFile( String path, boolean executeOnEntireRepo )
     @Override
     public void completeScan()
     {
+        if ( repoPurge instanceof AbstractRepositoryPurge )
+        {
+            AbstractRepositoryPurge purge = (AbstractRepositoryPurge) repoPurge;
+            if ( dryRun )
+            {
+                log.info( "Dry run of the purge of [{}]: {} artifacts, {} files, {} bytes would be reclaimed",
+                          repositoryId, purge.getPurgedArtifactCount(), purge.getPurgedFileCount(),
+                          purge.getReclaimedBytes() );
+            }
+            else if ( purge.getPurgedArtifactCount() > 0 )
+            {
+                log.info( "Purged [{}]: {} artifacts, {} files, {} bytes reclaimed", repositoryId,
+                          purge.getPurgedArtifactCount(), purge.getPurgedFileCount(), purge.getReclaimedBytes() );
+            }
+        }
+        if ( executor != null )
+        {
+            executor.shutdown();
+            executor = null;
+        }
         repositorySession.close();
     }
 
@@ -322,6 +392,16 @@ public void setDeleteReleasedSnapshots( boolean deleteReleasedSnapshots )
         this.deleteReleasedSnapshots = deleteReleasedSnapshots;
     }
 
+    public boolean isDryRun()
+    {
+        return dryRun;
+    }
+
+    public void setDryRun( boolean dryRun )
+    {
+        this.dryRun = dryRun;
+    }
+
     public RepositorySessionFactory getRepositorySessionFactory()
     {
         return repositorySessionFactory;
@@ -24,7 +24,6 @@
 import org.apache.archiva.common.utils.VersionComparator;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.model.ArtifactReference;
-import org.apache.archiva.model.VersionedReference;
 import org.apache.archiva.repository.ContentNotFoundException;
 import org.apache.archiva.repository.ManagedRepositoryContent;
 import org.apache.archiva.repository.layout.LayoutException;
@@ -33,7 +32,6 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Purge the repository by retention count. Retain only the specified number of snapshots.
@@ -67,12 +65,14 @@ public void process( String path )
 
             if ( VersionUtil.isSnapshot( artifact.getVersion() ) )
             {
-                VersionedReference reference = new VersionedReference();
-                reference.setGroupId( artifact.getGroupId() );
-                reference.setArtifactId( artifact.getArtifactId() );
-                reference.setVersion( artifact.getVersion() );
+                // the whole version directory is planned at once
+                PurgePlan plan = createPlan( artifact );
+                if ( plan == null )
+                {
+                    return;
+                }
 
-                List<String> versions = new ArrayList<>( repository.getVersions( reference ) );
+                List<String> versions = new ArrayList<>( plan.getVersions() );
 
                 Collections.sort( versions, VersionComparator.getInstance() );
 
@@ -91,8 +91,10 @@ public void process( String path )
                         break;
                     }
 
-                    doPurgeAllRelated( artifact, version );
+                    plan.purgeVersion( version );
                 }
+
+                purge( plan );
             }
         }
         catch ( LayoutException le )
@@ -105,26 +107,4 @@ public void process( String path )
             // TODO: Log this condition?
         }
     }
-
-    private void doPurgeAllRelated( ArtifactReference reference, String version )
-        throws LayoutException
-    {
-        ArtifactReference artifact = new ArtifactReference();
-        artifact.setGroupId( reference.getGroupId() );
-        artifact.setArtifactId( reference.getArtifactId() );
-        artifact.setVersion( version );
-        artifact.setClassifier( reference.getClassifier() );
-        artifact.setType( reference.getType() );
-
-        try
-        {
-            Set<ArtifactReference> related = repository.getRelatedArtifacts( artifact );
-            purge( related );
-        }
-        catch ( ContentNotFoundException e )
-        {
-            // Nothing to do here.
-            // TODO: Log this?
-        }
-    }
 }
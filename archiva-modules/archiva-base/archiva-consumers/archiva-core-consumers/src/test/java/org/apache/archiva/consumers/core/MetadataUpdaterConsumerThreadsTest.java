@@ -0,0 +1,321 @@
+package org.apache.archiva.consumers.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.consumers.ConsumerThrottle;
+import org.apache.archiva.model.ArtifactReference;
+import org.apache.archiva.model.ProjectReference;
+import org.apache.archiva.model.VersionedReference;
+import org.apache.archiva.repository.ManagedRepositoryContent;
+import org.apache.archiva.repository.RepositoryContentFactory;
+import org.apache.archiva.repository.metadata.MetadataTools;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the regeneration of the metadata of the projects by the {@link MetadataUpdaterConsumer} during the scans of
+ * an entire repository, with the threads of the scan or without.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MetadataUpdaterConsumerThreadsTest
+    extends TestCase
+{
+    private static final String TEST_REPO_ID = "test-repo";
+
+    @Mock
+    private RepositoryContentFactory repositoryFactory;
+
+    @Mock
+    private MetadataTools metadataTools;
+
+    @Mock
+    private ManagedRepositoryContent repositoryContent;
+
+    @InjectMocks
+    private MetadataUpdaterConsumer consumer;
+
+    private ManagedRepository repository;
+
+    /**
+     * The references whose metadata was regenerated, as <code>groupId:artifactId[:version]</code>.
+     */
+    private List<String> updates = Collections.synchronizedList( new ArrayList<String>() );
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        MockitoAnnotations.initMocks( this );
+
+        repository = new ManagedRepository();
+        repository.setId( TEST_REPO_ID );
+
+        when( repositoryFactory.getManagedRepositoryContent( TEST_REPO_ID ) ).thenReturn( repositoryContent );
+        when( repositoryContent.getId() ).thenReturn( TEST_REPO_ID );
+        when( repositoryContent.getRepoRoot() ).thenReturn( "target/test-metadata-updater/test-repo" );
+        doAnswer( new Answer<ArtifactReference>()
+        {
+            @Override
+            public ArtifactReference answer( InvocationOnMock invocation )
+            {
+                String[] parts = ( (String) invocation.getArguments()[0] ).split( "/" );
+                ArtifactReference artifact = new ArtifactReference();
+                artifact.setGroupId( StringUtils.join( parts, '.', 0, parts.length - 3 ) );
+                artifact.setArtifactId( parts[parts.length - 3] );
+                artifact.setVersion( parts[parts.length - 2] );
+                return artifact;
+            }
+        } ).when( repositoryContent ).toArtifactReference( Matchers.anyString() );
+
+        // the metadata files don't exist, so they are always regenerated
+        when( metadataTools.toPath( Matchers.any( ProjectReference.class ) ) ).thenReturn( "maven-metadata.xml" );
+        when( metadataTools.toPath( Matchers.any( VersionedReference.class ) ) ).thenReturn( "maven-metadata.xml" );
+        doAnswer( new Answer<Void>()
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+            {
+                ProjectReference reference = (ProjectReference) invocation.getArguments()[1];
+                updates.add( reference.getGroupId() + ":" + reference.getArtifactId() );
+                return null;
+            }
+        } ).when( metadataTools ).updateMetadata( Matchers.any( ManagedRepositoryContent.class ),
+                                                  Matchers.any( ProjectReference.class ) );
+        doAnswer( new Answer<Void>()
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+            {
+                VersionedReference reference = (VersionedReference) invocation.getArguments()[1];
+                updates.add(
+                    reference.getGroupId() + ":" + reference.getArtifactId() + ":" + reference.getVersion() );
+                return null;
+            }
+        } ).when( metadataTools ).updateMetadata( Matchers.any( ManagedRepositoryContent.class ),
+                                                  Matchers.any( VersionedReference.class ) );
+    }
+
+    @Test
+    public void testMetadataRegeneratedOncePerVersionAndProject()
+        throws Exception
+    {
+        consumer.setThreads( 4 );
+
+        consumer.beginScan( repository, new Date(), true );
+        processProjects();
+        consumer.completeScan( true );
+
+        // completing the scan waits for the threads
+        assertUpdates();
+    }
+
+    @Test
+    public void testMetadataRegeneratedOncePerVersionAndProjectWithoutThreads()
+        throws Exception
+    {
+        consumer.setThreads( 1 );
+
+        consumer.beginScan( repository, new Date(), true );
+        processProjects();
+        consumer.completeScan( true );
+
+        assertUpdates();
+    }
+
+    @Test
+    public void testProjectRegeneratedWhenTheScanLeavesIt()
+        throws Exception
+    {
+        consumer.setThreads( 1 );
+
+        consumer.beginScan( repository, new Date(), true );
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.jar", true );
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.pom", true );
+        consumer.processFile( "org/foo/bar/1.1/bar-1.1.jar", true );
+        assertTrue( updates.isEmpty() );
+
+        consumer.processFile( "org/foo/baz/2.0/baz-2.0.jar", true );
+        assertEquals( 3, updates.size() );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:bar:1.0" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:bar:1.1" ) );
+        assertEquals( "org.foo:bar", updates.get( 2 ) );
+
+        consumer.completeScan( true );
+        assertEquals( 5, updates.size() );
+        assertEquals( "org.foo:baz:2.0", updates.get( 3 ) );
+        assertEquals( "org.foo:baz", updates.get( 4 ) );
+    }
+
+    @Test
+    public void testCheckpointWaitsForTheThreads()
+        throws Exception
+    {
+        consumer.setThreads( 4 );
+
+        consumer.beginScan( repository, new Date(), true );
+        processProjects();
+        consumer.checkpoint();
+        assertUpdates();
+
+        // the threads are started again for the rest of the scan
+        consumer.processFile( "org/foo/qux/1.0/qux-1.0.jar", true );
+        consumer.completeScan( true );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:qux:1.0" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:qux" ) );
+    }
+
+    @Test
+    public void testMetadataRegeneratedThroughTheThrottleOfTheScan()
+        throws Exception
+    {
+        ConsumerThrottle throttle = mock( ConsumerThrottle.class );
+        consumer.setThreads( 4 );
+        consumer.setThrottle( throttle );
+
+        consumer.beginScan( repository, new Date(), true );
+        processProjects();
+        consumer.completeScan( true );
+
+        // once per metadata file regenerated by the threads
+        verify( throttle, times( 5 ) ).acquire( 0 );
+        assertUpdates();
+    }
+
+    @Test
+    public void testProjectWalkedTwiceNotRegeneratedByTwoThreadsAtOnce()
+        throws Exception
+    {
+        final AtomicInteger writing = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        Answer<Void> slowWrite = new Answer<Void>()
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+                throws InterruptedException
+            {
+                Object reference = invocation.getArguments()[1];
+                String artifactId = reference instanceof ProjectReference
+                    ? ( (ProjectReference) reference ).getArtifactId()
+                    : ( (VersionedReference) reference ).getArtifactId();
+                updates.add( artifactId );
+                if ( "bar".equals( artifactId ) )
+                {
+                    if ( writing.incrementAndGet() > 1 )
+                    {
+                        overlapped.set( true );
+                    }
+                    Thread.sleep( 20 );
+                    writing.decrementAndGet();
+                }
+                return null;
+            }
+        };
+        doAnswer( slowWrite ).when( metadataTools ).updateMetadata( Matchers.any( ManagedRepositoryContent.class ),
+                                                                    Matchers.any( ProjectReference.class ) );
+        doAnswer( slowWrite ).when( metadataTools ).updateMetadata( Matchers.any( ManagedRepositoryContent.class ),
+                                                                    Matchers.any( VersionedReference.class ) );
+        consumer.setThreads( 4 );
+
+        // the files of the project are not walked together, so it is flushed to the threads several times
+        consumer.beginScan( repository, new Date(), true );
+        for ( int i = 0; i < 4; i++ )
+        {
+            consumer.processFile( "org/foo/bar/1." + i + "/bar-1." + i + ".jar", true );
+            consumer.processFile( "org/foo/baz/2." + i + "/baz-2." + i + ".jar", true );
+        }
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.pom", true );
+        consumer.completeScan( true );
+
+        // each of the nine flushes regenerates the metadata of a version and of its project
+        assertEquals( 18, updates.size() );
+        assertEquals( 10, Collections.frequency( updates, "bar" ) );
+        // the metadata of the project is written by one thread at a time, whichever threads it was flushed to
+        assertFalse( overlapped.get() );
+    }
+
+    @Test
+    public void testDeployedArtifactMetadataRegeneratedStraightAway()
+        throws Exception
+    {
+        consumer.setThreads( 4 );
+
+        consumer.beginScan( repository, new Date(), false );
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.jar", false );
+        assertEquals( 2, updates.size() );
+        assertEquals( "org.foo:bar:1.0", updates.get( 0 ) );
+        assertEquals( "org.foo:bar", updates.get( 1 ) );
+        consumer.completeScan( false );
+    }
+
+    /**
+     * Give the consumer the files of a project with versions of several files each, then of another project.
+     */
+    private void processProjects()
+        throws Exception
+    {
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.jar", true );
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0.pom", true );
+        consumer.processFile( "org/foo/bar/1.0/bar-1.0-sources.jar", true );
+        consumer.processFile( "org/foo/bar/1.1/bar-1.1.jar", true );
+        consumer.processFile( "org/foo/bar/1.1/bar-1.1.pom", true );
+        consumer.processFile( "org/foo/baz/2.0/baz-2.0.jar", true );
+        consumer.processFile( "org/foo/baz/2.0/baz-2.0.pom", true );
+    }
+
+    private void assertUpdates()
+    {
+        assertEquals( updates.toString(), 5, updates.size() );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:bar:1.0" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:bar:1.1" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:bar" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:baz:2.0" ) );
+        assertEquals( 1, Collections.frequency( updates, "org.foo:baz" ) );
+
+        // the metadata of a project is regenerated after the metadata of its versions
+        assertTrue( updates.indexOf( "org.foo:bar" ) > updates.indexOf( "org.foo:bar:1.1" ) );
+        assertTrue( updates.indexOf( "org.foo:baz" ) > updates.indexOf( "org.foo:baz:2.0" ) );
+    }
+}
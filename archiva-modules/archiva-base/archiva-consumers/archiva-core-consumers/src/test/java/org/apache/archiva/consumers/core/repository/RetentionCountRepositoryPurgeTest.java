@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
@@ -27,6 +28,8 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * Test RetentionsCountRepositoryPurgeTest
  */
@@ -124,6 +127,45 @@ public void testIfAJarWasFound()
         assertExists( versionRoot + "/jruby-rake-plugin-1.0RC1-20070506.090132-4.pom.sha1" );
     }
 
+    /**
+     * Test that a dry run reports the artifacts to be purged without deleting them.
+     */
+    @Test
+    public void testDryRun()
+        throws Exception
+    {
+        String repoRoot = prepareTestRepos();
+
+        // no listener is told about a deletion
+        listenerControl.replay();
+
+        AbstractRepositoryPurge purge = (AbstractRepositoryPurge) repoPurge;
+        purge.setDryRun( true );
+        purge.process( PATH_TO_BY_RETENTION_COUNT_ARTIFACT );
+
+        listenerControl.verify();
+
+        // the jar, pom and javadoc jar and zip of the two older snapshots, with the checksums of the jar and pom
+        assertEquals( 8, purge.getPurgedArtifactCount() );
+        assertEquals( 16, purge.getPurgedFileCount() );
+
+        String versionRoot = repoRoot + "/org/jruby/plugins/jruby-rake-plugin/1.0RC1-SNAPSHOT";
+        long bytes = 0;
+        for ( File file : new File( versionRoot ).listFiles() )
+        {
+            if ( file.getName().contains( "20070504." ) )
+            {
+                bytes += file.length();
+            }
+        }
+        assertEquals( bytes, purge.getReclaimedBytes() );
+
+        assertExists( versionRoot + "/jruby-rake-plugin-1.0RC1-20070504.153317-1.jar" );
+        assertExists( versionRoot + "/jruby-rake-plugin-1.0RC1-20070504.153317-1.jar.md5" );
+        assertExists( versionRoot + "/jruby-rake-plugin-1.0RC1-20070504.160758-2.pom" );
+        assertExists( versionRoot + "/jruby-rake-plugin-1.0RC1-20070504.160758-2-javadoc.zip" );
+    }
+
     /**
      * Test if the artifact to be processed is a pom
      */
@@ -25,13 +25,15 @@
 import org.apache.archiva.configuration.ConfigurationNames;
 import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
+import org.apache.archiva.consumers.CheckpointableConsumer;
 import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
-import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
-import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
+import org.apache.archiva.metadata.repository.NamespaceTreeCache;
+import org.apache.archiva.metadata.repository.ProjectVersionCacheEventListener;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
@@ -50,8 +52,12 @@
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Take an artifact off of disk and put it into the metadata repository.
@@ -60,7 +66,7 @@
 @Scope ("prototype")
 public class ArchivaMetadataCreationConsumer
     extends AbstractMonitoredConsumer
-    implements KnownRepositoryContentConsumer, RegistryListener
+    implements KnownRepositoryContentConsumer, CheckpointableConsumer, RegistryListener
 {
     private String id = "create-archiva-metadata";
 
@@ -90,10 +96,54 @@
     @Named (value = "repositoryStorage#maven2")
     private RepositoryStorage repositoryStorage;
 
+    /**
+     * Evicts the project versions resolved for browsing as their metadata is written.
+     */
+    @Inject
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
+
+    @Inject
+    private NamespaceTreeCache namespaceTreeCache;
+
     private static final Logger log = LoggerFactory.getLogger( ArchivaMetadataCreationConsumer.class );
 
     private String repoId;
 
+    /**
+     * Number of artifacts whose metadata is written together during a scan of an entire repository.
+     */
+    private int batchSize = Integer.getInteger( "archiva.metadata.consumer.batchSize", 100 );
+
+    /**
+     * Maximum time in milliseconds the updates of a scan of an entire repository are held before being written, so
+     * that a slow scan still makes its progress visible.
+     */
+    private long batchTime = Long.getLong( "archiva.metadata.consumer.batchTime", 10000L );
+
+    /**
+     * Updates read from the files processed and not written yet, by path of the file.
+     */
+    private final Map<String, MetadataUpdate> pendingUpdates = new LinkedHashMap<>();
+
+    private long batchStartTime;
+
+    private boolean executeOnEntireRepo;
+
+    /**
+     * Session writing the updates of the scan, opened with the first batch and closed when the scan completes.
+     */
+    private RepositorySession repositorySession;
+
+    private int commitCount;
+
+    private int committedUpdateCount;
+
+    private int failedUpdateCount;
+
+    private long totalCommitTime;
+
+    private long maxCommitTime;
+
     @Override
     public String getId()
     {
@@ -124,6 +174,12 @@ public void beginScan( ManagedRepository repo, Date whenGathered )
     {
         repoId = repo.getId();
         this.whenGathered = whenGathered;
+
+        commitCount = 0;
+        committedUpdateCount = 0;
+        failedUpdateCount = 0;
+        totalCommitTime = 0;
+        maxCommitTime = 0;
     }
 
     @Override
@@ -131,14 +187,13 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
         throws ConsumerException
     {
         beginScan( repository, whenGathered );
+        this.executeOnEntireRepo = executeOnEntireRepo;
     }
 
     @Override
     public void processFile( String path )
         throws ConsumerException
     {
-
-        RepositorySession repositorySession = repositorySessionFactory.createSession();
         try
         {
             // note that we do minimal processing including checksums and POM information for performance of
@@ -147,16 +202,8 @@ public void processFile( String path )
 
             ArtifactMetadata artifact = repositoryStorage.readArtifactMetadataFromPath( repoId, path );
 
-            ProjectMetadata project = new ProjectMetadata();
-            project.setNamespace( artifact.getNamespace() );
-            project.setId( artifact.getProject() );
-
             String projectVersion = VersionUtil.getBaseVersion( artifact.getVersion() );
 
-            MetadataRepository metadataRepository = repositorySession.getRepository();
-
-            boolean createVersionMetadata = false;
-
             // FIXME: maybe not too efficient since it may have already been read and stored for this artifact
             ProjectVersionMetadata versionMetadata = null;
             try
@@ -165,7 +212,6 @@ public void processFile( String path )
                     new ReadMetadataRequest().repositoryId( repoId ).namespace( artifact.getNamespace() ).projectId(
                         artifact.getProject() ).projectVersion( projectVersion );
                 versionMetadata = repositoryStorage.readProjectVersionMetadata( readMetadataRequest );
-                createVersionMetadata = true;
             }
             catch ( RepositoryStorageMetadataNotFoundException e )
             {
@@ -175,7 +221,6 @@ public void processFile( String path )
                 versionMetadata = new ProjectVersionMetadata();
                 versionMetadata.setId( projectVersion );
                 versionMetadata.setIncomplete( true );
-                createVersionMetadata = true;
             }
             catch ( RepositoryStorageMetadataInvalidException e )
             {
@@ -185,34 +230,107 @@ public void processFile( String path )
 
             // read the metadata and update it if it is newer or doesn't exist
             artifact.setWhenGathered( whenGathered );
-            metadataRepository.updateArtifact( repoId, project.getNamespace(), project.getId(), projectVersion,
-                                               artifact );
-            if ( createVersionMetadata )
+            if ( pendingUpdates.isEmpty() )
             {
-                metadataRepository.updateProjectVersion( repoId, project.getNamespace(), project.getId(),
-                                                         versionMetadata );
+                batchStartTime = System.currentTimeMillis();
             }
-            metadataRepository.updateProject( repoId, project );
-            repositorySession.save();
-        }
-        catch ( MetadataRepositoryException e )
-        {
-            log.warn(
-                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" ,
-                path, repoId, e.getMessage(), e );
-            repositorySession.revert();
+            pendingUpdates.put( path,
+                                new MetadataUpdate( artifact.getNamespace(), artifact.getProject(), projectVersion,
+                                                    artifact, versionMetadata ) );
         }
         catch ( RepositoryStorageRuntimeException e )
         {
             log.warn(
                 "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
                 path, repoId, e.getMessage(), e );
+        }
+
+        // only the scans of an entire repository batch their updates, the others write each artifact straight away
+        // and don't keep the session open until the scan completes
+        if ( !executeOnEntireRepo )
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                closeSession();
+            }
+        }
+        else if ( pendingUpdates.size() >= batchSize || System.currentTimeMillis() - batchStartTime >= batchTime )
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Write the pending updates with a single commit. If the batch fails, its updates are written one at a time so
+     * that a single bad artifact does not lose the metadata of the others.
+     */
+    private void flush()
+    {
+        if ( pendingUpdates.isEmpty() )
+        {
+            return;
+        }
+
+        if ( repositorySession == null )
+        {
+            repositorySession = repositorySessionFactory.createSession();
+        }
+
+        try
+        {
+            commit( pendingUpdates.values() );
+        }
+        catch ( MetadataRepositoryException | RuntimeException e )
+        {
+            log.warn( "Error occurred persisting metadata for {} artifacts (repository:{}), retrying them one at a "
+                          + "time; message: {}", pendingUpdates.size(), repoId, e.getMessage() );
             repositorySession.revert();
+
+            for ( Map.Entry<String, MetadataUpdate> entry : pendingUpdates.entrySet() )
+            {
+                try
+                {
+                    commit( Collections.singletonList( entry.getValue() ) );
+                }
+                catch ( MetadataRepositoryException | RuntimeException ex )
+                {
+                    log.warn( "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
+                              entry.getKey(), repoId, ex.getMessage(), ex );
+                    repositorySession.revert();
+                    failedUpdateCount++;
+                }
+            }
         }
         finally
         {
-            repositorySession.close();
+            pendingUpdates.clear();
+        }
+    }
+
+    private void commit( Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        long startTime = System.currentTimeMillis();
+        repositorySession.getRepository().updateMetadata( repoId, updates );
+        repositorySession.save();
+        long time = System.currentTimeMillis() - startTime;
+
+        for ( MetadataUpdate update : updates )
+        {
+            projectVersionCacheEventListener.evict( repoId, update.getNamespace(), update.getProjectId(),
+                                                    update.getProjectVersion() );
+            namespaceTreeCache.projectVersionAdded( repoId, update.getNamespace(), update.getProjectId(),
+                                                    update.getProjectVersion() );
         }
+
+        commitCount++;
+        committedUpdateCount += updates.size();
+        totalCommitTime += time;
+        maxCommitTime = Math.max( maxCommitTime, time );
     }
 
     @Override
@@ -225,7 +343,31 @@ public void processFile( String path, boolean executeOnEntireRepo )
     @Override
     public void completeScan()
     {
-        /* do nothing */
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            closeSession();
+        }
+
+        if ( executeOnEntireRepo && commitCount > 0 )
+        {
+            log.info( "Metadata of {} artifacts written with {} commits (repository:{}); average batch size: {}; "
+                          + "commit time total: {}ms, average: {}ms, max: {}ms; failed artifacts: {}",
+                      committedUpdateCount, commitCount, repoId, committedUpdateCount / commitCount, totalCommitTime,
+                      totalCommitTime / commitCount, maxCommitTime, failedUpdateCount );
+        }
+    }
+
+    private void closeSession()
+    {
+        if ( repositorySession != null )
+        {
+            repositorySession.closeQuietly();
+            repositorySession = null;
+        }
     }
 
     @Override
@@ -234,6 +376,22 @@ public void completeScan( boolean executeOnEntireRepo )
         completeScan();
     }
 
+    /**
+     * Write the pending updates, so that a scan resumed from the checkpoint doesn't miss the artifacts processed so
+     * far.
+     */
+    @Override
+    public void checkpoint()
+    {
+        flush();
+    }
+
+    @Override
+    public void resume()
+    {
+        // the artifacts walked before the checkpoint were written by the previous scan
+    }
+
     @Override
     public void afterConfigurationChange( Registry registry, String propertyName, Object propertyValue )
     {
@@ -254,6 +412,50 @@ private void initIncludes()
         includes = new ArrayList<String>( filetypes.getFileTypePatterns( FileTypes.ARTIFACTS ) );
     }
 
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTime()
+    {
+        return batchTime;
+    }
+
+    public void setBatchTime( long batchTime )
+    {
+        this.batchTime = batchTime;
+    }
+
+    /**
+     * @return the number of commits of the current or last scan
+     */
+    public int getCommitCount()
+    {
+        return commitCount;
+    }
+
+    /**
+     * @return the number of artifacts written by the current or last scan
+     */
+    public int getCommittedUpdateCount()
+    {
+        return committedUpdateCount;
+    }
+
+    /**
+     * @return the number of artifacts the current or last scan failed to write
+     */
+    public int getFailedUpdateCount()
+    {
+        return failedUpdateCount;
+    }
+
     @PostConstruct
     public void initialize()
     {
@@ -0,0 +1,281 @@
+package org.apache.archiva.consumers.metadata;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataResolver;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
+import org.apache.archiva.metadata.repository.NamespaceTreeCache;
+import org.apache.archiva.metadata.repository.ProjectVersionCacheEventListener;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorage;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ArchivaMetadataCreationConsumerTest
+    extends TestCase
+{
+    private static final String TEST_REPO = "test-repo";
+
+    private static final String TEST_NAMESPACE = "org.example";
+
+    private static final String TEST_PROJECT = "test-project";
+
+    @Mock
+    private RepositorySessionFactory repositorySessionFactory;
+
+    @Mock
+    private RepositoryStorage repositoryStorage;
+
+    @Mock
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
+
+    @Mock
+    private NamespaceTreeCache namespaceTreeCache;
+
+    @Mock
+    private MetadataRepository metadataRepository;
+
+    @Mock
+    private MetadataResolver metadataResolver;
+
+    @InjectMocks
+    private ArchivaMetadataCreationConsumer consumer;
+
+    /**
+     * the consumer of a scan resuming the scan of {@link #consumer}
+     */
+    @InjectMocks
+    private ArchivaMetadataCreationConsumer resumedScanConsumer;
+
+    private ManagedRepository repository;
+
+    /**
+     * the artifacts of each successful call to {@link MetadataRepository#updateMetadata(String, Collection)}, the
+     * calls with an artifact named <code>bad</code> fail
+     */
+    private final List<List<String>> updates = new ArrayList<>();
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        MockitoAnnotations.initMocks( this );
+
+        repository = new ManagedRepository();
+        repository.setId( TEST_REPO );
+
+        when( repositorySessionFactory.createSession() ).thenReturn(
+            new RepositorySession( metadataRepository, metadataResolver ),
+            new RepositorySession( metadataRepository, metadataResolver ) );
+        when( repositoryStorage.readArtifactMetadataFromPath( anyString(), anyString() ) ).thenAnswer(
+            new Answer<ArtifactMetadata>()
+            {
+                @Override
+                public ArtifactMetadata answer( InvocationOnMock invocation )
+                {
+                    String path = (String) invocation.getArguments()[1];
+                    ArtifactMetadata artifact = new ArtifactMetadata();
+                    artifact.setRepositoryId( TEST_REPO );
+                    artifact.setNamespace( TEST_NAMESPACE );
+                    artifact.setProject( TEST_PROJECT );
+                    artifact.setVersion( path.split( "/" )[2] );
+                    artifact.setProjectVersion( artifact.getVersion() );
+                    artifact.setId( path.substring( path.lastIndexOf( '/' ) + 1 ) );
+                    return artifact;
+                }
+            } );
+        when( repositoryStorage.readProjectVersionMetadata( any( ReadMetadataRequest.class ) ) ).thenReturn(
+            new ProjectVersionMetadata() );
+        doAnswer( new Answer<Void>()
+        {
+            @Override
+            @SuppressWarnings( "unchecked" )
+            public Void answer( InvocationOnMock invocation )
+                throws MetadataRepositoryException
+            {
+                // the consumer clears the collection given once it is written
+                List<String> ids = new ArrayList<>();
+                for ( MetadataUpdate update : (Collection<MetadataUpdate>) invocation.getArguments()[1] )
+                {
+                    if ( update.getArtifact().getId().startsWith( "bad" ) )
+                    {
+                        throw new MetadataRepositoryException( "Unable to write " + update.getArtifact().getId() );
+                    }
+                    ids.add( update.getArtifact().getId() );
+                }
+                updates.add( ids );
+                return null;
+            }
+        } ).when( metadataRepository ).updateMetadata( anyString(),
+                                                       Matchers.<Collection<MetadataUpdate>>any() );
+    }
+
+    @Test
+    public void testScanResumedFromCheckpoint()
+        throws Exception
+    {
+        consumer.setBatchSize( 100 );
+        consumer.setBatchTime( Long.MAX_VALUE );
+        consumer.beginScan( repository, new Date(), true );
+        consumer.processFile( artifactPath( "1.0", "test-project-1.0.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "test-project-1.0.pom" ), true );
+
+        assertTrue( updates.isEmpty() );
+
+        // the metadata of the artifacts walked so far is written before the scan records its checkpoint
+        consumer.checkpoint();
+
+        assertEquals( Collections.singletonList( Arrays.asList( "test-project-1.0.jar", "test-project-1.0.pom" ) ),
+                      updates );
+        verify( metadataRepository ).save();
+
+        // the scan is interrupted there, the next one resumes after the checkpoint
+        resumedScanConsumer.setBatchSize( 100 );
+        resumedScanConsumer.setBatchTime( Long.MAX_VALUE );
+        resumedScanConsumer.beginScan( repository, new Date(), true );
+        resumedScanConsumer.resume();
+        resumedScanConsumer.processFile( artifactPath( "2.0", "test-project-2.0.jar" ), true );
+        resumedScanConsumer.completeScan();
+
+        assertEquals( Arrays.asList( Arrays.asList( "test-project-1.0.jar", "test-project-1.0.pom" ),
+                                     Collections.singletonList( "test-project-2.0.jar" ) ), updates );
+        verify( metadataRepository, times( 2 ) ).save();
+    }
+
+    @Test
+    public void testBatchWrittenOnceFull()
+        throws Exception
+    {
+        consumer.setBatchSize( 2 );
+        consumer.setBatchTime( Long.MAX_VALUE );
+        consumer.beginScan( repository, new Date(), true );
+        consumer.processFile( artifactPath( "1.0", "a.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "b.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "c.jar" ), true );
+
+        assertEquals( Collections.singletonList( Arrays.asList( "a.jar", "b.jar" ) ), updates );
+
+        consumer.completeScan();
+
+        assertEquals( Arrays.asList( Arrays.asList( "a.jar", "b.jar" ), Collections.singletonList( "c.jar" ) ),
+                      updates );
+        assertEquals( 2, consumer.getCommitCount() );
+        assertEquals( 3, consumer.getCommittedUpdateCount() );
+        assertEquals( 0, consumer.getFailedUpdateCount() );
+        verify( metadataRepository, times( 2 ) ).save();
+        verify( metadataRepository ).close();
+    }
+
+    @Test
+    public void testBatchWrittenOnceBatchTimeElapsed()
+        throws Exception
+    {
+        consumer.setBatchSize( 100 );
+        consumer.setBatchTime( 0 );
+        consumer.beginScan( repository, new Date(), true );
+        consumer.processFile( artifactPath( "1.0", "a.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "b.jar" ), true );
+
+        assertEquals( Arrays.asList( Collections.singletonList( "a.jar" ), Collections.singletonList( "b.jar" ) ),
+                      updates );
+
+        consumer.completeScan();
+
+        assertEquals( 2, consumer.getCommitCount() );
+    }
+
+    @Test
+    public void testFailedBatchRetriedOneArtifactAtATime()
+        throws Exception
+    {
+        consumer.setBatchSize( 3 );
+        consumer.setBatchTime( Long.MAX_VALUE );
+        consumer.beginScan( repository, new Date(), true );
+        consumer.processFile( artifactPath( "1.0", "a.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "bad.jar" ), true );
+        consumer.processFile( artifactPath( "1.0", "c.jar" ), true );
+        consumer.completeScan();
+
+        // the batch and then the bad artifact are reverted, the others are written without it
+        assertEquals( Arrays.asList( Collections.singletonList( "a.jar" ), Collections.singletonList( "c.jar" ) ),
+                      updates );
+        verify( metadataRepository, times( 2 ) ).revert();
+        verify( metadataRepository, times( 2 ) ).save();
+        assertEquals( 2, consumer.getCommitCount() );
+        assertEquals( 2, consumer.getCommittedUpdateCount() );
+        assertEquals( 1, consumer.getFailedUpdateCount() );
+    }
+
+    @Test
+    public void testDeployedArtifactWrittenStraightAway()
+        throws Exception
+    {
+        consumer.beginScan( repository, new Date(), false );
+        consumer.processFile( artifactPath( "1.0", "a.jar" ), false );
+
+        // written and the session closed without waiting for the end of the scan
+        assertEquals( Collections.singletonList( Collections.singletonList( "a.jar" ) ), updates );
+        verify( metadataRepository ).save();
+        verify( metadataRepository ).close();
+
+        consumer.completeScan();
+
+        verify( metadataRepository ).close();
+    }
+
+    private static String artifactPath( String version, String fileName )
+    {
+        return "org/example/" + version + "/" + fileName;
+    }
+}
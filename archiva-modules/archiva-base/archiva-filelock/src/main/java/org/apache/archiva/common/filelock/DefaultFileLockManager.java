@@ -19,20 +19,31 @@
  * under the License.
  */
 
-import org.apache.commons.lang.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Locks files for threads of this JVM with a reentrant read/write lock per file: readers share the file, a writer
+ * has it alone, and waiting threads are parked rather than polling. While held within this JVM, the file is also
+ * locked with an OS file lock (shared or exclusive) so other processes are kept out as well.
+ * <p>
+ * Locks are reentrant for the thread holding them, and a writer may also take read locks. A thread holding a read
+ * lock must not ask for a write lock on the same file: it would wait for itself until the timeout (or forever).
+ * A lock must be released by the thread which acquired it.
+ * </p>
+ *
  * @author Olivier Lamy
  * @since 2.0.0
  */
@@ -40,10 +51,12 @@
 public class DefaultFileLockManager
     implements FileLockManager
 {
-    // TODO currently we create lock for read and write!!
-    // the idea could be to store lock here with various clients read/write
-    // only read could be a more simple lock and acquire a write lock means waiting the end of all reading threads
-    private static final ConcurrentMap<File, Lock> lockFiles = new ConcurrentHashMap<File, Lock>( 64 );
+    /**
+     * shared by all instances as the OS file locks are held on behalf of the whole JVM
+     */
+    private static final ConcurrentMap<File, PathLock> lockFiles = new ConcurrentHashMap<File, PathLock>( 64 );
+
+    private final ConcurrentMap<String, FileLockStatistics> statistics = new ConcurrentHashMap<>();
 
     private boolean skipLocking = true;
 
@@ -51,87 +64,27 @@
 
     private int timeout = 0;
 
+    /**
+     * number of leading path elements statistics are grouped by
+     */
+    private int statisticsPrefixDepth = 4;
 
     @Override
     public Lock readFileLock( File file )
         throws FileLockException, FileLockTimeoutException
     {
-        if ( skipLocking )
-        {
-            return new Lock( file );
-
-        }
-        StopWatch stopWatch = new StopWatch();
-        boolean acquired = false;
-        mkdirs( file.getParentFile() );
-
-        Lock lock = null;
-
-        stopWatch.start();
-
-        while ( !acquired )
-        {
-
-            if ( timeout > 0 )
-            {
-                long delta = stopWatch.getTime();
-                log.debug( "delta {}, timeout {}", delta, timeout );
-                if ( delta > timeout )
-                {
-                    log.warn( "Cannot acquire read lock within {} millis. Will skip the file: {}", timeout, file );
-                    // we could not get the lock within the timeout period, so  throw  FileLockTimeoutException
-                    throw new FileLockTimeoutException();
-                }
-            }
-
-            Lock current = lockFiles.get( file );
-
-            if ( current != null )
-            {
-                log.debug( "read lock file exist continue wait" );
-                continue;
-            }
-
-            try
-            {
-                lock = new Lock( file, false );
-                createNewFileQuietly( file );
-                lock.openLock( false, timeout > 0 );
-                acquired = true;
-            }
-            catch ( FileNotFoundException e )
-            {
-                // can happen if an other thread has deleted the file
-                // close RandomAccessFile!!!
-                if ( lock != null )
-                {
-                    closeQuietly( lock.getRandomAccessFile() );
-                }
-                log.debug( "read Lock skip: {} try to create file", e.getMessage() );
-                createNewFileQuietly( file );
-            }
-            catch ( IOException e )
-            {
-                throw new FileLockException( e.getMessage(), e );
-            }
-            catch ( IllegalStateException e )
-            {
-                log.debug( "openLock {}:{}", e.getClass(), e.getMessage() );
-            }
-        }
-        Lock current = lockFiles.putIfAbsent( file, lock );
-        if ( current != null )
-        {
-            lock = current;
-        }
-        return lock;
-
+        return acquire( file, false );
     }
 
-
     @Override
     public Lock writeFileLock( File file )
         throws FileLockException, FileLockTimeoutException
+    {
+        return acquire( file, true );
+    }
+
+    private Lock acquire( File file, boolean write )
+        throws FileLockException, FileLockTimeoutException
     {
         if ( skipLocking )
         {
@@ -140,91 +93,133 @@ public Lock writeFileLock( File file )
 
         mkdirs( file.getParentFile() );
 
-        StopWatch stopWatch = new StopWatch();
-        boolean acquired = false;
-
-        Lock lock = null;
-
-        stopWatch.start();
+        File key = file.getAbsoluteFile();
+        FileLockStatistics stats = getStatistics( key );
+        long start = System.nanoTime();
+        boolean timed = timeout > 0;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos( timeout );
 
-        while ( !acquired )
+        PathLock pathLock = retainPathLock( key );
+        java.util.concurrent.locks.Lock jvmLock =
+            write ? pathLock.getReadWriteLock().writeLock() : pathLock.getReadWriteLock().readLock();
+        boolean jvmLocked = false;
+        boolean acquired = false;
+        try
         {
-
-            if ( timeout > 0 )
+            boolean contended = false;
+            jvmLocked = jvmLock.tryLock();
+            if ( !jvmLocked )
             {
-                long delta = stopWatch.getTime();
-                log.debug( "delta {}, timeout {}", delta, timeout );
-                if ( delta > timeout )
+                contended = true;
+                log.debug( "{} lock on {} held by another thread, waiting", write ? "write" : "read", file );
+                if ( timed )
+                {
+                    jvmLocked = jvmLock.tryLock( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+                    if ( !jvmLocked )
+                    {
+                        throw new FileLockTimeoutException();
+                    }
+                }
+                else
                 {
-                    log.warn( "Cannot acquire read lock within {} millis. Will skip the file: {}", timeout, file );
-                    // we could not get the lock within the timeout period, so throw FileLockTimeoutException
-                    throw new FileLockTimeoutException();
+                    jvmLock.lockInterruptibly();
+                    jvmLocked = true;
                 }
             }
 
-            Lock current = lockFiles.get( file );
+            createNewFileQuietly( file );
+            contended |= pathLock.lockFile( write, timed, deadline );
 
-            try
+            stats.recordAcquisition( contended, System.nanoTime() - start );
+            acquired = true;
+            return new Lock( file, write, pathLock );
+        }
+        catch ( FileLockTimeoutException e )
+        {
+            stats.recordTimeout( System.nanoTime() - start );
+            log.warn( "Cannot acquire {} lock within {} millis. Will skip the file: {}", write ? "write" : "read",
+                      timeout, file );
+            throw e;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new FileLockException( "Interrupted while waiting for the lock on " + file, e );
+        }
+        catch ( IOException e )
+        {
+            throw new FileLockException( e.getMessage(), e );
+        }
+        finally
+        {
+            if ( !acquired )
             {
-
-                if ( current != null )
+                if ( jvmLocked )
                 {
-                    log.debug( "write lock file exist continue wait" );
-
-                    continue;
+                    jvmLock.unlock();
                 }
-                lock = new Lock( file, true );
-                createNewFileQuietly( file );
-                lock.openLock( true, timeout > 0 );
-                acquired = true;
+                releasePathLock( key, pathLock );
             }
-            catch ( FileNotFoundException e )
+        }
+    }
+
+    private PathLock retainPathLock( File key )
+    {
+        while ( true )
+        {
+            PathLock pathLock = lockFiles.get( key );
+            if ( pathLock == null )
             {
-                // can happen if an other thread has deleted the file
-                // close RandomAccessFile!!!
-                if ( lock != null )
+                PathLock created = new PathLock( key );
+                pathLock = lockFiles.putIfAbsent( key, created );
+                if ( pathLock == null )
                 {
-                    closeQuietly( lock.getRandomAccessFile() );
+                    pathLock = created;
                 }
-                log.debug( "write Lock skip: {} try to create file", e.getMessage() );
-                createNewFileQuietly( file );
-            }
-            catch ( IOException e )
-            {
-                throw new FileLockException( e.getMessage(), e );
             }
-            catch ( IllegalStateException e )
+            if ( pathLock.retain() )
             {
-                log.debug( "openLock {}:{}", e.getClass(), e.getMessage() );
+                return pathLock;
             }
+            // dropped by its last user in the meantime
+            lockFiles.remove( key, pathLock );
         }
+    }
 
-        Lock current = lockFiles.putIfAbsent( file, lock );
-        if ( current != null )
+    private void releasePathLock( File key, PathLock pathLock )
+    {
+        if ( pathLock.dispose() )
         {
-            lock = current;
+            lockFiles.remove( key, pathLock );
         }
-
-        return lock;
-
-
     }
 
-    private void closeQuietly( RandomAccessFile randomAccessFile )
+    private FileLockStatistics getStatistics( File file )
     {
-        if ( randomAccessFile == null )
+        Path path = file.toPath();
+        Path parent = path.getParent();
+        String prefix;
+        if ( parent == null || parent.getNameCount() == 0 )
         {
-            return;
+            prefix = String.valueOf( path.getRoot() );
         }
-
-        try
+        else
         {
-            randomAccessFile.close();
+            Path sub = parent.subpath( 0, Math.min( statisticsPrefixDepth, parent.getNameCount() ) );
+            prefix = path.getRoot() == null ? sub.toString() : path.getRoot().resolve( sub ).toString();
         }
-        catch ( IOException e )
+
+        FileLockStatistics stats = statistics.get( prefix );
+        if ( stats == null )
         {
-            // ignore
+            FileLockStatistics created = new FileLockStatistics( prefix );
+            stats = statistics.putIfAbsent( prefix, created );
+            if ( stats == null )
+            {
+                stats = created;
+            }
         }
+        return stats;
     }
 
     private void createNewFileQuietly( File file )
@@ -248,14 +243,15 @@ public void release( Lock lock )
             log.debug( "skip releasing null" );
             return;
         }
-        if ( skipLocking )
+        PathLock pathLock = lock.getPathLock();
+        if ( pathLock == null || !lock.markReleased() )
         {
+            // locking was skipped, or already released
             return;
         }
         try
         {
-            lockFiles.remove( lock.getFile() );
-            lock.close();
+            pathLock.unlockFile();
         }
         catch ( ClosedChannelException e )
         {
@@ -266,12 +262,28 @@ public void release( Lock lock )
         {
             throw new FileLockException( e.getMessage(), e );
         }
+        finally
+        {
+            if ( lock.isWrite().get() )
+            {
+                pathLock.getReadWriteLock().writeLock().unlock();
+            }
+            else
+            {
+                pathLock.getReadWriteLock().readLock().unlock();
+            }
+            releasePathLock( lock.getFile().getAbsoluteFile(), pathLock );
+        }
     }
 
+    /**
+     * Forget about all the locks of this JVM. Only meant for tests, locks still held are not released.
+     */
     @Override
     public void clearLockFiles()
     {
         lockFiles.clear();
+        statistics.clear();
     }
 
     private boolean mkdirs( File directory )
@@ -279,6 +291,22 @@ private boolean mkdirs( File directory )
         return directory.mkdirs();
     }
 
+    @Override
+    public Map<String, FileLockStatistics> getStatistics()
+    {
+        return Collections.unmodifiableMap( new TreeMap<>( statistics ) );
+    }
+
+    public int getStatisticsPrefixDepth()
+    {
+        return statisticsPrefixDepth;
+    }
+
+    public void setStatisticsPrefixDepth( int statisticsPrefixDepth )
+    {
+        this.statisticsPrefixDepth = statisticsPrefixDepth;
+    }
+
     @Override
     public int getTimeout()
     {
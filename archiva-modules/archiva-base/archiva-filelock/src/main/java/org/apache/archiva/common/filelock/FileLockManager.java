@@ -21,6 +21,7 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.Map;
 
 /**
  * @author Olivier Lamy
@@ -53,6 +54,12 @@ void release( Lock lock )
 
     void clearLockFiles();
 
+    /**
+     * @return lock acquisition statistics, by path prefix
+     * @since 2.2.3
+     */
+    Map<String, FileLockStatistics> getStatistics();
+
     int getTimeout();
 
     void setTimeout( int timeout );
@@ -0,0 +1,125 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock acquisition statistics for the files below a path prefix.
+ *
+ * @since 2.2.3
+ */
+public class FileLockStatistics
+{
+    private final String prefix;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    private final AtomicLong contentions = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public FileLockStatistics( String prefix )
+    {
+        this.prefix = prefix;
+    }
+
+    void recordAcquisition( boolean contended, long waitNanos )
+    {
+        acquisitions.incrementAndGet();
+        if ( contended )
+        {
+            contentions.incrementAndGet();
+            recordWait( waitNanos );
+        }
+    }
+
+    void recordTimeout( long waitNanos )
+    {
+        timeouts.incrementAndGet();
+        contentions.incrementAndGet();
+        recordWait( waitNanos );
+    }
+
+    private void recordWait( long waitNanos )
+    {
+        totalWaitNanos.addAndGet( waitNanos );
+        long max = maxWaitNanos.get();
+        while ( waitNanos > max && !maxWaitNanos.compareAndSet( max, waitNanos ) )
+        {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    /**
+     * @return number of locks acquired
+     */
+    public long getAcquisitions()
+    {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return number of lock requests that could not be granted immediately, including the ones which timed out
+     */
+    public long getContentions()
+    {
+        return contentions.get();
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    public long getTotalWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( totalWaitNanos.get() );
+    }
+
+    public long getMaxWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( maxWaitNanos.get() );
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder( "FileLockStatistics{" );
+        sb.append( "prefix='" ).append( prefix ).append( '\'' );
+        sb.append( ", acquisitions=" ).append( acquisitions );
+        sb.append( ", contentions=" ).append( contentions );
+        sb.append( ", timeouts=" ).append( timeouts );
+        sb.append( ", totalWaitTime=" ).append( getTotalWaitTime() );
+        sb.append( ", maxWaitTime=" ).append( getMaxWaitTime() );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
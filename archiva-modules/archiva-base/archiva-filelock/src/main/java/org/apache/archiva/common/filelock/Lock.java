@@ -19,19 +19,13 @@
  * under the License.
  */
 
-import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A read (shared) or write (exclusive) lock on a file, obtained from a {@link FileLockManager} and to be given back
+ * with {@link FileLockManager#release(Lock)} by the thread that acquired it.
+ *
  * @author Olivier Lamy
  * @since 2.0.0
  */
@@ -41,26 +35,24 @@
 
     private AtomicBoolean write;
 
-    private final Map<Thread, AtomicInteger> fileClients = new HashMap<>();
-
-    private FileLock fileLock;
+    private final PathLock pathLock;
 
-    private RandomAccessFile randomAccessFile;
-
-    private FileChannel fileChannel;
+    private final AtomicBoolean released = new AtomicBoolean( false );
 
+    /**
+     * A lock that doesn't lock anything, as used when locking is skipped.
+     */
     public Lock( File file )
     {
         this.file = file;
+        this.pathLock = null;
     }
 
-    public Lock( File file, boolean write )
-        throws FileNotFoundException
+    Lock( File file, boolean write, PathLock pathLock )
     {
         this.file = file;
         this.write = new AtomicBoolean( write );
-        randomAccessFile = new RandomAccessFile( file, write ? "rw" : "r" );
-        fileChannel = randomAccessFile.getChannel();
+        this.pathLock = pathLock;
     }
 
     public File getFile()
@@ -73,100 +65,35 @@ public AtomicBoolean isWrite()
         return write;
     }
 
-    public void setFile( File file )
-    {
-        this.file = file;
-    }
-
-    public void setWrite( boolean write )
-    {
-        this.write.set( write );
-    }
-
     public boolean isShared()
     {
-        return this.fileLock.isValid() && this.fileLock.isShared();
+        return isValid() && !write.get();
     }
 
     public boolean isValid()
     {
-        return this.fileLock!=null && this.fileLock.isValid();
-    }
-
-    public Map<Thread, AtomicInteger> getFileClients()
-    {
-        return fileClients;
-    }
-
-    public void addFileClient( Thread thread )
-    {
-        this.fileClients.put( thread, new AtomicInteger( 1 ) );
+        return pathLock != null && !released.get();
     }
 
-    public boolean removeFileClient( Thread thread )
+    PathLock getPathLock()
     {
-        return this.fileClients.remove( thread ) != null;
+        return pathLock;
     }
 
-    protected void close()
-        throws IOException
+    /**
+     * @return true the first time only, so a lock released twice is only given back once
+     */
+    boolean markReleased()
     {
-        IOException ioException = null;
-        try
-        {
-            this.fileLock.release();
-        }
-        catch ( IOException e )
-        {
-            ioException = e;
-        }
-
-        closeQuietly( fileChannel );
-        closeQuietly( randomAccessFile );
-
-        fileClients.remove( Thread.currentThread() );
-
-        if ( ioException != null )
-        {
-            throw ioException;
-        }
-
-    }
-
-    protected void openLock( boolean write, boolean timeout )
-        throws IOException
-    {
-        fileClients.put( Thread.currentThread(), new AtomicInteger( 1 ) );
-
-        this.fileLock = timeout
-            ? fileChannel.tryLock( 0L, Long.MAX_VALUE, write ? false : true )
-            : fileChannel.lock( 0L, Long.MAX_VALUE, write ? false : true );
-
-    }
-
-    protected RandomAccessFile getRandomAccessFile()
-    {
-        return randomAccessFile;
+        return released.compareAndSet( false, true );
     }
 
-    private void closeQuietly( Closeable closeable )
-    {
-        try
-        {
-            closeable.close();
-        }
-        catch ( IOException e )
-        {
-            // ignore
-        }
-    }
-
-
     @Override
     public String toString()
     {
         final StringBuilder sb = new StringBuilder( "Lock{" );
         sb.append( "file=" ).append( file );
+        sb.append( ", write=" ).append( write );
         sb.append( '}' );
         return sb.toString();
     }
@@ -0,0 +1,288 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lock state of one file within this JVM: a reentrant read/write lock the threads park on, and the OS file lock
+ * guarding against other processes, held on behalf of all the threads of this JVM which currently hold the file.
+ * <p>
+ * Instances are reference counted by {@link DefaultFileLockManager} so they are dropped once no thread uses them.
+ * </p>
+ */
+class PathLock
+{
+    private static final long FILE_LOCK_RETRY_MILLIS = 50;
+
+    private final File file;
+
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+    /**
+     * held by the thread taking the OS file lock
+     */
+    private final ReentrantLock fileLocking = new ReentrantLock();
+
+    private int references;
+
+    private boolean retired;
+
+    /**
+     * number of read and write locks currently granted within this JVM
+     */
+    private int holds;
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileLock fileLock;
+
+    PathLock( File file )
+    {
+        this.file = file;
+    }
+
+    ReentrantReadWriteLock getReadWriteLock()
+    {
+        return readWriteLock;
+    }
+
+    /**
+     * @return false if this instance has already been dropped and a new one must be used
+     */
+    synchronized boolean retain()
+    {
+        if ( retired )
+        {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * @return true if this was the last reference
+     */
+    synchronized boolean dispose()
+    {
+        references--;
+        if ( references == 0 )
+        {
+            retired = true;
+        }
+        return retired;
+    }
+
+    /**
+     * Take the OS file lock if no other thread of this JVM holds it yet. Must be called while holding the matching
+     * in-JVM lock: a writer is then alone, and readers only ever share a shared OS lock.
+     * <p>
+     * The threads wait for the OS lock outside the monitor, which only guards the state, so that the other threads
+     * can still retain, release or unlock this instance meanwhile.
+     * </p>
+     *
+     * @param write         exclusive or shared lock
+     * @param timed         whether to give up at the deadline or wait indefinitely
+     * @param deadlineNanos {@link System#nanoTime()} to give up at
+     * @return true if another process held the file and we had to wait for it
+     */
+    boolean lockFile( boolean write, boolean timed, long deadlineNanos )
+        throws IOException, FileLockTimeoutException
+    {
+        if ( addHold() )
+        {
+            // another reader of this JVM already holds the shared lock, or the writer thread locks again
+            return false;
+        }
+
+        // only one reader of this JVM waits for the OS lock, the others wait for it to get it
+        acquireFileLocking( timed, deadlineNanos );
+        try
+        {
+            if ( addHold() )
+            {
+                return false;
+            }
+
+            RandomAccessFile raf = open( write );
+            FileLock lock = null;
+            boolean waited = false;
+            try
+            {
+                lock = raf.getChannel().tryLock( 0L, Long.MAX_VALUE, !write );
+                if ( lock == null && !timed )
+                {
+                    waited = true;
+                    lock = raf.getChannel().lock( 0L, Long.MAX_VALUE, !write );
+                }
+                while ( lock == null )
+                {
+                    waited = true;
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if ( remaining <= 0 )
+                    {
+                        throw new FileLockTimeoutException();
+                    }
+                    sleep( Math.min( FILE_LOCK_RETRY_MILLIS, TimeUnit.NANOSECONDS.toMillis( remaining ) + 1 ) );
+                    lock = raf.getChannel().tryLock( 0L, Long.MAX_VALUE, !write );
+                }
+            }
+            finally
+            {
+                if ( lock == null )
+                {
+                    closeQuietly( raf );
+                }
+            }
+
+            synchronized ( this )
+            {
+                this.fileLock = lock;
+                this.randomAccessFile = raf;
+                holds = 1;
+            }
+            return waited;
+        }
+        finally
+        {
+            fileLocking.unlock();
+        }
+    }
+
+    /**
+     * @return true if the OS file lock is already held, and one more hold was added to it
+     */
+    private synchronized boolean addHold()
+    {
+        if ( holds > 0 )
+        {
+            holds++;
+            return true;
+        }
+        return false;
+    }
+
+    private void acquireFileLocking( boolean timed, long deadlineNanos )
+        throws IOException, FileLockTimeoutException
+    {
+        try
+        {
+            if ( !timed )
+            {
+                fileLocking.lockInterruptibly();
+            }
+            else if ( !fileLocking.tryLock( deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS ) )
+            {
+                throw new FileLockTimeoutException();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for the lock on " + file, e );
+        }
+    }
+
+    /**
+     * Give back one hold, the OS file lock is released with the last one.
+     */
+    synchronized void unlockFile()
+        throws IOException
+    {
+        if ( holds == 0 )
+        {
+            return;
+        }
+        holds--;
+        if ( holds > 0 )
+        {
+            return;
+        }
+        try
+        {
+            fileLock.release();
+        }
+        finally
+        {
+            fileLock = null;
+            closeQuietly( randomAccessFile );
+            randomAccessFile = null;
+        }
+    }
+
+    private RandomAccessFile open( boolean write )
+        throws IOException
+    {
+        try
+        {
+            return new RandomAccessFile( file, write ? "rw" : "r" );
+        }
+        catch ( FileNotFoundException e )
+        {
+            // can happen if an other thread or process has deleted the file
+            file.createNewFile();
+            return new RandomAccessFile( file, write ? "rw" : "r" );
+        }
+    }
+
+    private void sleep( long millis )
+        throws IOException
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for the lock on " + file, e );
+        }
+    }
+
+    private void closeQuietly( Closeable closeable )
+    {
+        if ( closeable == null )
+        {
+            return;
+        }
+        try
+        {
+            closeable.close();
+        }
+        catch ( IOException e )
+        {
+            // ignore
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PathLock{file=" + file + ", holds=" + holds + '}';
+    }
+}
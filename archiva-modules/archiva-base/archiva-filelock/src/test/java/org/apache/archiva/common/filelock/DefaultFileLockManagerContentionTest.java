@@ -0,0 +1,186 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Many readers of one hot file: they must hold the lock at the same time, and a writer must wait for all of them.
+ * Also logs the read lock throughput under contention.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath*:/META-INF/spring-context.xml" })
+public class DefaultFileLockManagerContentionTest
+{
+    private static final int READERS = 32;
+
+    final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Named(value = "fileLockManager#default")
+    FileLockManager fileLockManager;
+
+    final File file = new File( System.getProperty( "buildDirectory" ), "contention/hot.txt" );
+
+    @Before
+    public void initialize()
+    {
+        fileLockManager.setSkipLocking( false );
+
+        fileLockManager.setTimeout( 10000 );
+
+        fileLockManager.clearLockFiles();
+    }
+
+    @Test
+    public void testReadersShareLock()
+        throws Exception
+    {
+        final CountDownLatch allReading = new CountDownLatch( READERS );
+        final CountDownLatch writerStarted = new CountDownLatch( 1 );
+        final AtomicBoolean writerHoldsLock = new AtomicBoolean( false );
+
+        ExecutorService executor = Executors.newFixedThreadPool( READERS + 1 );
+        try
+        {
+            List<Future<Boolean>> readers = new ArrayList<>();
+            for ( int i = 0; i < READERS; i++ )
+            {
+                readers.add( executor.submit( new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                        throws Exception
+                    {
+                        Lock lock = fileLockManager.readFileLock( file );
+                        try
+                        {
+                            allReading.countDown();
+                            // only returns in time if every reader holds the lock at once
+                            boolean shared = allReading.await( 5, TimeUnit.SECONDS );
+                            writerStarted.await( 5, TimeUnit.SECONDS );
+                            return shared && !writerHoldsLock.get();
+                        }
+                        finally
+                        {
+                            fileLockManager.release( lock );
+                        }
+                    }
+                } ) );
+            }
+
+            Future<Boolean> writer = executor.submit( new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                    throws Exception
+                {
+                    allReading.await( 5, TimeUnit.SECONDS );
+                    writerStarted.countDown();
+                    Lock lock = fileLockManager.writeFileLock( file );
+                    try
+                    {
+                        writerHoldsLock.set( true );
+                        return true;
+                    }
+                    finally
+                    {
+                        writerHoldsLock.set( false );
+                        fileLockManager.release( lock );
+                    }
+                }
+            } );
+
+            for ( Future<Boolean> reader : readers )
+            {
+                Assert.assertTrue( reader.get() );
+            }
+            Assert.assertTrue( writer.get() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReadThroughput()
+        throws Exception
+    {
+        final int iterations = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool( READERS );
+        try
+        {
+            List<Future<Void>> readers = new ArrayList<>();
+            long start = System.nanoTime();
+            for ( int i = 0; i < READERS; i++ )
+            {
+                readers.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws Exception
+                    {
+                        for ( int j = 0; j < iterations; j++ )
+                        {
+                            fileLockManager.release( fileLockManager.readFileLock( file ) );
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Void> reader : readers )
+            {
+                reader.get();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+            logger.info( "{} read locks by {} threads in {} ms: {}", READERS * iterations, READERS, millis,
+                         fileLockManager.getStatistics() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        FileLockStatistics statistics = fileLockManager.getStatistics().values().iterator().next();
+        Assert.assertEquals( READERS * iterations, statistics.getAcquisitions() );
+        Assert.assertEquals( 0, statistics.getTimeouts() );
+    }
+}
@@ -34,6 +34,10 @@
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Olivier Lamy
@@ -65,7 +69,7 @@ public void testTimeout()
     {
 
             try {
-                File file = new File(System.getProperty("buildDirectory"), "foo.txt");
+                final File file = new File(System.getProperty("buildDirectory"), "foo.txt");
 
                 Files.deleteIfExists(file.toPath());
 
@@ -81,7 +85,18 @@ public void testTimeout()
                     // We ignore this
                 }
 
-                lock = fileLockManager.writeFileLock(file);
+                // locks are reentrant, so the second lock has to come from another thread to time out
+                Future<Lock> other = Executors.newSingleThreadExecutor().submit(new Callable<Lock>() {
+                    @Override
+                    public Lock call() throws Exception {
+                        return fileLockManager.writeFileLock(file);
+                    }
+                });
+                try {
+                    other.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
             } catch (FileSystemException ex) {
                 logger.error("Exception from filesystem "+ex.getMessage());
                 ex.printStackTrace();
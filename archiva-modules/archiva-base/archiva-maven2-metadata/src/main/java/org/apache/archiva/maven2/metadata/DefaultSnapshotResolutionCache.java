@@ -0,0 +1,122 @@
+package org.apache.archiva.maven2.metadata;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.model.ArchivaRepositoryMetadata;
+import org.apache.archiva.model.SnapshotVersion;
+import org.apache.archiva.redback.components.cache.Cache;
+import org.apache.archiva.xml.XMLException;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+
+/**
+ * DefaultSnapshotResolutionCache - keeps the resolutions in the <code>cache#snapshotResolutions</code> cache by
+ * absolute path of the metadata file. A cached resolution is checked against the length and modification time of the
+ * file before being returned.
+ *
+ * @since 2.2.3
+ */
+@Service( "snapshotResolutionCache#default" )
+public class DefaultSnapshotResolutionCache
+    implements SnapshotResolutionCache
+{
+    private final Cache<String, CachedResolution> cache;
+
+    @Inject
+    public DefaultSnapshotResolutionCache( @Named( "cache#snapshotResolutions" ) Cache<String, CachedResolution> cache )
+    {
+        this.cache = cache;
+    }
+
+    @Override
+    public SnapshotResolution get( File metadataFile )
+        throws XMLException
+    {
+        String key = metadataFile.getAbsolutePath();
+        long length = metadataFile.length();
+        long lastModified = metadataFile.lastModified();
+        if ( lastModified == 0L )
+        {
+            // the file doesn't exist (anymore)
+            cache.remove( key );
+            return null;
+        }
+
+        CachedResolution entry = cache.get( key );
+        if ( entry != null && entry.length == length && entry.lastModified == lastModified )
+        {
+            return entry.resolution;
+        }
+
+        SnapshotResolution resolution = MavenMetadataReader.readSnapshotResolution( metadataFile );
+        cache.put( key, new CachedResolution( length, lastModified, resolution ) );
+        return resolution;
+    }
+
+    @Override
+    public void put( File metadataFile, ArchivaRepositoryMetadata metadata )
+    {
+        SnapshotVersion snapshotVersion = metadata == null ? null : metadata.getSnapshotVersion();
+        if ( snapshotVersion == null || !metadataFile.isFile() )
+        {
+            // only version level metadata of snapshots is looked up
+            remove( metadataFile );
+            return;
+        }
+        SnapshotResolution resolution =
+            new SnapshotResolution( snapshotVersion.getTimestamp(), snapshotVersion.getBuildNumber(), null );
+        cache.put( metadataFile.getAbsolutePath(),
+                   new CachedResolution( metadataFile.length(), metadataFile.lastModified(), resolution ) );
+    }
+
+    @Override
+    public void remove( File metadataFile )
+    {
+        cache.remove( metadataFile.getAbsolutePath() );
+    }
+
+    @Override
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * The resolution read from a metadata file, with the length and modification time the file had then.
+     */
+    public static class CachedResolution
+    {
+        private final long length;
+
+        private final long lastModified;
+
+        private final SnapshotResolution resolution;
+
+        CachedResolution( long length, long lastModified, SnapshotResolution resolution )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.resolution = resolution;
+        }
+    }
+}
@@ -22,14 +22,27 @@
 import org.apache.archiva.model.Plugin;
 import org.apache.archiva.model.SnapshotVersion;
 import org.apache.archiva.xml.XMLException;
-import org.apache.archiva.xml.XMLReader;
+import org.apache.archiva.xml.XMLStreams;
 import org.apache.commons.lang.math.NumberUtils;
-import org.dom4j.Element;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
+ * Reads maven-metadata.xml files with a streaming (StAX) parser: elements are matched by their local name, so
+ * namespaced files are read the same as plain ones (see MRM-1136), and undeclared latin entities are resolved.
+ *
  * @author Olivier Lamy
  * @since 1.4-M3
  */
@@ -58,6 +71,8 @@
     </metadata>
     */
 
+    private static final String METADATA = "metadata";
+
     /**
      * Read and return the {@link org.apache.archiva.model.ArchivaRepositoryMetadata} object from the provided xml file.
      *
@@ -68,47 +83,310 @@
     public static ArchivaRepositoryMetadata read( File metadataFile )
         throws XMLException
     {
+        ArchivaRepositoryMetadata metadata = new ArchivaRepositoryMetadata();
+        parse( metadataFile, metadata, null );
+        return metadata;
+    }
 
-        XMLReader xml = new XMLReader( "metadata", metadataFile );
-        // invoke this to remove namespaces, see MRM-1136
-        xml.removeNamespaces();
+    /**
+     * Read and return the {@link org.apache.archiva.model.ArchivaRepositoryMetadata} object from the provided reader.
+     * The file related fields (last modified, size) are not set.
+     *
+     * @param reader the maven-metadata.xml content to read, left open.
+     * @return the archiva repository metadata object that represents the provided contents.
+     * @throws XMLException
+     * @since 2.2.3
+     */
+    public static ArchivaRepositoryMetadata read( Reader reader )
+        throws XMLException
+    {
+        ArchivaRepositoryMetadata metadata = new ArchivaRepositoryMetadata();
+        parse( reader, metadata, null );
+        return metadata;
+    }
 
+    /**
+     * Read only the snapshot information of a version level maven-metadata.xml file.
+     *
+     * @param metadataFile the maven-metadata.xml file to read.
+     * @return the snapshot resolution, or <code>null</code> if the file has no snapshot information.
+     * @throws XMLException
+     * @since 2.2.3
+     */
+    public static SnapshotResolution readSnapshotResolution( File metadataFile )
+        throws XMLException
+    {
         ArchivaRepositoryMetadata metadata = new ArchivaRepositoryMetadata();
+        Map<String, String> snapshotVersions = new HashMap<>();
+        parse( metadataFile, metadata, snapshotVersions );
 
-        metadata.setGroupId( xml.getElementText( "//metadata/groupId" ) );
-        metadata.setArtifactId( xml.getElementText( "//metadata/artifactId" ) );
-        metadata.setVersion( xml.getElementText( "//metadata/version" ) );
+        SnapshotVersion snapshot = metadata.getSnapshotVersion();
+        if ( snapshot == null )
+        {
+            return null;
+        }
+        return new SnapshotResolution( snapshot.getTimestamp(), snapshot.getBuildNumber(), snapshotVersions );
+    }
+
+    private static void parse( File metadataFile, ArchivaRepositoryMetadata metadata,
+                               Map<String, String> snapshotVersions )
+        throws XMLException
+    {
+        if ( !metadataFile.exists() )
+        {
+            throw new XMLException( "file does not exist: " + metadataFile.getAbsolutePath() );
+        }
+
+        if ( !metadataFile.isFile() )
+        {
+            throw new XMLException( "path is not a file: " + metadataFile.getAbsolutePath() );
+        }
+
+        if ( !metadataFile.canRead() )
+        {
+            throw new XMLException( "Cannot read xml file due to permissions: " + metadataFile.getAbsolutePath() );
+        }
+
+        // read the file attributes first, so that a concurrent update can't make them newer than the content
         metadata.setFileLastModified( new Date( metadataFile.lastModified() ) );
         metadata.setFileSize( metadataFile.length() );
 
-        metadata.setLastUpdated( xml.getElementText( "//metadata/versioning/lastUpdated" ) );
-        metadata.setLatestVersion( xml.getElementText( "//metadata/versioning/latest" ) );
-        metadata.setReleasedVersion( xml.getElementText( "//metadata/versioning/release" ) );
-        metadata.setAvailableVersions( xml.getElementListText( "//metadata/versioning/versions/version" ) );
+        try (Reader reader = new InputStreamReader( new FileInputStream( metadataFile ), StandardCharsets.UTF_8 ))
+        {
+            parse( reader, metadata, snapshotVersions );
+        }
+        catch ( IOException e )
+        {
+            throw new XMLException( "Unable to open stream to " + metadataFile + ": " + e.getMessage(), e );
+        }
+        catch ( XMLException e )
+        {
+            throw new XMLException( e.getMessage() + " (" + metadataFile + ")", e );
+        }
+    }
 
-        Element snapshotElem = xml.getElement( "//metadata/versioning/snapshot" );
-        if ( snapshotElem != null )
+    private static void parse( Reader reader, ArchivaRepositoryMetadata metadata,
+                               Map<String, String> snapshotVersions )
+        throws XMLException
+    {
+        XMLStreamReader xml = XMLStreams.createReader( METADATA, reader );
+        try
         {
-            SnapshotVersion snapshot = new SnapshotVersion();
-            snapshot.setTimestamp( snapshotElem.elementTextTrim( "timestamp" ) );
-            String tmp = snapshotElem.elementTextTrim( "buildNumber" );
-            if ( NumberUtils.isNumber( tmp ) )
+            List<String> availableVersions = new ArrayList<>();
+            while ( XMLStreams.nextChildElement( xml ) )
             {
-                snapshot.setBuildNumber( NumberUtils.toInt( tmp ) );
+                switch ( xml.getLocalName() )
+                {
+                    case "groupId":
+                        String groupId = XMLStreams.readElementText( xml );
+                        if ( metadata.getGroupId() == null )
+                        {
+                            metadata.setGroupId( groupId );
+                        }
+                        break;
+                    case "artifactId":
+                        String artifactId = XMLStreams.readElementText( xml );
+                        if ( metadata.getArtifactId() == null )
+                        {
+                            metadata.setArtifactId( artifactId );
+                        }
+                        break;
+                    case "version":
+                        String version = XMLStreams.readElementText( xml );
+                        if ( metadata.getVersion() == null )
+                        {
+                            metadata.setVersion( version );
+                        }
+                        break;
+                    case "versioning":
+                        parseVersioning( xml, metadata, availableVersions, snapshotVersions );
+                        break;
+                    case "plugins":
+                        parsePlugins( xml, metadata );
+                        break;
+                    default:
+                        XMLStreams.skipElement( xml );
+                        break;
+                }
             }
-            metadata.setSnapshotVersion( snapshot );
+            metadata.setAvailableVersions( availableVersions );
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new XMLException( "Unable to parse " + METADATA + " xml: " + e.getMessage(), e );
+        }
+        finally
+        {
+            XMLStreams.closeQuietly( xml );
         }
+    }
 
-        for ( Element plugin : xml.getElementList( "//metadata/plugins/plugin" ) )
+    private static void parseVersioning( XMLStreamReader xml, ArchivaRepositoryMetadata metadata,
+                                         List<String> availableVersions, Map<String, String> snapshotVersions )
+        throws XMLStreamException
+    {
+        while ( XMLStreams.nextChildElement( xml ) )
         {
-            Plugin p = new Plugin();
-            p.setPrefix( plugin.elementTextTrim( "prefix" ) );
-            p.setArtifactId( plugin.elementTextTrim( "artifactId" ) );
-            p.setName( plugin.elementTextTrim( "name" ) );
-            metadata.addPlugin( p );
+            switch ( xml.getLocalName() )
+            {
+                case "lastUpdated":
+                    String lastUpdated = XMLStreams.readElementText( xml );
+                    if ( metadata.getLastUpdated() == null )
+                    {
+                        metadata.setLastUpdated( lastUpdated );
+                    }
+                    break;
+                case "latest":
+                    String latest = XMLStreams.readElementText( xml );
+                    if ( metadata.getLatestVersion() == null )
+                    {
+                        metadata.setLatestVersion( latest );
+                    }
+                    break;
+                case "release":
+                    String release = XMLStreams.readElementText( xml );
+                    if ( metadata.getReleasedVersion() == null )
+                    {
+                        metadata.setReleasedVersion( release );
+                    }
+                    break;
+                case "versions":
+                    while ( XMLStreams.nextChildElement( xml ) )
+                    {
+                        if ( "version".equals( xml.getLocalName() ) )
+                        {
+                            availableVersions.add( XMLStreams.readElementText( xml ) );
+                        }
+                        else
+                        {
+                            XMLStreams.skipElement( xml );
+                        }
+                    }
+                    break;
+                case "snapshot":
+                    SnapshotVersion snapshot = parseSnapshot( xml );
+                    if ( metadata.getSnapshotVersion() == null )
+                    {
+                        metadata.setSnapshotVersion( snapshot );
+                    }
+                    break;
+                case "snapshotVersions":
+                    if ( snapshotVersions != null )
+                    {
+                        parseSnapshotVersions( xml, snapshotVersions );
+                    }
+                    else
+                    {
+                        XMLStreams.skipElement( xml );
+                    }
+                    break;
+                default:
+                    XMLStreams.skipElement( xml );
+                    break;
+            }
         }
+    }
 
-        return metadata;
+    private static SnapshotVersion parseSnapshot( XMLStreamReader xml )
+        throws XMLStreamException
+    {
+        SnapshotVersion snapshot = new SnapshotVersion();
+        String timestamp = null;
+        String buildNumber = null;
+        while ( XMLStreams.nextChildElement( xml ) )
+        {
+            String name = xml.getLocalName();
+            if ( "timestamp".equals( name ) && timestamp == null )
+            {
+                timestamp = XMLStreams.readElementText( xml );
+            }
+            else if ( "buildNumber".equals( name ) && buildNumber == null )
+            {
+                buildNumber = XMLStreams.readElementText( xml );
+            }
+            else
+            {
+                XMLStreams.skipElement( xml );
+            }
+        }
+        snapshot.setTimestamp( timestamp );
+        if ( NumberUtils.isNumber( buildNumber ) )
+        {
+            snapshot.setBuildNumber( NumberUtils.toInt( buildNumber ) );
+        }
+        return snapshot;
+    }
 
+    private static void parseSnapshotVersions( XMLStreamReader xml, Map<String, String> snapshotVersions )
+        throws XMLStreamException
+    {
+        while ( XMLStreams.nextChildElement( xml ) )
+        {
+            if ( !"snapshotVersion".equals( xml.getLocalName() ) )
+            {
+                XMLStreams.skipElement( xml );
+                continue;
+            }
+            String classifier = null;
+            String extension = null;
+            String value = null;
+            while ( XMLStreams.nextChildElement( xml ) )
+            {
+                switch ( xml.getLocalName() )
+                {
+                    case "classifier":
+                        classifier = XMLStreams.readElementText( xml );
+                        break;
+                    case "extension":
+                        extension = XMLStreams.readElementText( xml );
+                        break;
+                    case "value":
+                        value = XMLStreams.readElementText( xml );
+                        break;
+                    default:
+                        XMLStreams.skipElement( xml );
+                        break;
+                }
+            }
+            if ( extension != null && value != null )
+            {
+                snapshotVersions.put( SnapshotResolution.toKey( classifier, extension ), value );
+            }
+        }
+    }
+
+    private static void parsePlugins( XMLStreamReader xml, ArchivaRepositoryMetadata metadata )
+        throws XMLStreamException
+    {
+        while ( XMLStreams.nextChildElement( xml ) )
+        {
+            if ( !"plugin".equals( xml.getLocalName() ) )
+            {
+                XMLStreams.skipElement( xml );
+                continue;
+            }
+            Plugin plugin = new Plugin();
+            while ( XMLStreams.nextChildElement( xml ) )
+            {
+                String name = xml.getLocalName();
+                if ( "prefix".equals( name ) && plugin.getPrefix() == null )
+                {
+                    plugin.setPrefix( XMLStreams.readElementText( xml ) );
+                }
+                else if ( "artifactId".equals( name ) && plugin.getArtifactId() == null )
+                {
+                    plugin.setArtifactId( XMLStreams.readElementText( xml ) );
+                }
+                else if ( "name".equals( name ) && plugin.getName() == null )
+                {
+                    plugin.setName( XMLStreams.readElementText( xml ) );
+                }
+                else
+                {
+                    XMLStreams.skipElement( xml );
+                }
+            }
+            metadata.addPlugin( plugin );
+        }
     }
 }
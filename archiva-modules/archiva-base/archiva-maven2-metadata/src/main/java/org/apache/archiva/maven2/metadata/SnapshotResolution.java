@@ -0,0 +1,102 @@
+package org.apache.archiva.maven2.metadata;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The snapshot information of a version level <code>maven-metadata.xml</code> needed to map a <code>-SNAPSHOT</code>
+ * version to its timestamped version: the latest timestamp / build number and the per artifact
+ * <code>snapshotVersions</code> entries.
+ *
+ * @since 2.2.3
+ */
+public class SnapshotResolution
+{
+    private final String timestamp;
+
+    private final int buildNumber;
+
+    private final Map<String, String> snapshotVersions;
+
+    public SnapshotResolution( String timestamp, int buildNumber, Map<String, String> snapshotVersions )
+    {
+        this.timestamp = timestamp;
+        this.buildNumber = buildNumber;
+        this.snapshotVersions = snapshotVersions == null
+            ? Collections.<String, String>emptyMap()
+            : Collections.unmodifiableMap( new HashMap<>( snapshotVersions ) );
+    }
+
+    public String getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public int getBuildNumber()
+    {
+        return buildNumber;
+    }
+
+    /**
+     * @return <code>true</code> if the metadata references a timestamped snapshot (see MRM-1846)
+     */
+    public boolean isTimestamped()
+    {
+        return buildNumber >= 1 || timestamp != null;
+    }
+
+    /**
+     * Get the timestamped version of an artifact, using the matching <code>snapshotVersion</code> entry if the
+     * metadata has one and the latest timestamp / build number otherwise.
+     *
+     * @param baseVersion the <code>-SNAPSHOT</code> version
+     * @param classifier  the artifact classifier, can be <code>null</code>
+     * @param extension   the artifact extension
+     * @return the timestamped version, or the base version if the metadata doesn't reference a timestamped snapshot
+     */
+    public String getVersion( String baseVersion, String classifier, String extension )
+    {
+        String value = snapshotVersions.get( toKey( classifier, extension ) );
+        if ( value != null )
+        {
+            return value;
+        }
+        if ( !isTimestamped() )
+        {
+            return baseVersion;
+        }
+        return StringUtils.removeEnd( baseVersion, "SNAPSHOT" ) + timestamp + "-" + buildNumber;
+    }
+
+    public Map<String, String> getSnapshotVersions()
+    {
+        return snapshotVersions;
+    }
+
+    static String toKey( String classifier, String extension )
+    {
+        return StringUtils.isEmpty( classifier ) ? extension : classifier + ":" + extension;
+    }
+}
@@ -0,0 +1,60 @@
+package org.apache.archiva.maven2.metadata;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.model.ArchivaRepositoryMetadata;
+import org.apache.archiva.xml.XMLException;
+
+import java.io.File;
+
+/**
+ * SnapshotResolutionCache - the snapshot information of version level <code>maven-metadata.xml</code> files, so that
+ * mapping a <code>-SNAPSHOT</code> request to its timestamped file doesn't parse the metadata each time.
+ * <p>
+ * A metadata file rewritten by Archiva is registered with what was written, while one replaced by any other means
+ * (eg. deployed as is, or copied into the repository) is parsed again on its next lookup.
+ * </p>
+ *
+ * @since 2.2.3
+ */
+public interface SnapshotResolutionCache
+{
+    /**
+     * Get the snapshot resolution of a metadata file, reading the file if it isn't known or has changed.
+     *
+     * @param metadataFile the version level maven-metadata.xml file
+     * @return the snapshot resolution, or <code>null</code> if the file doesn't exist or has no snapshot information
+     * @throws XMLException if the metadata file can't be parsed
+     */
+    SnapshotResolution get( File metadataFile )
+        throws XMLException;
+
+    /**
+     * Register the metadata that was just written to a file, so that the next lookup doesn't need to parse it.
+     *
+     * @param metadataFile the maven-metadata.xml file that was written
+     * @param metadata     the metadata written to the file
+     */
+    void put( File metadataFile, ArchivaRepositoryMetadata metadata );
+
+    void remove( File metadataFile );
+
+    void clear();
+}
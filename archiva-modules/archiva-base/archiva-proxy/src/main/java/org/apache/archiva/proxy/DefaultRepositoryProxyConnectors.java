@@ -86,6 +86,7 @@
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -1092,7 +1093,7 @@ private void moveTempToTarget( File temp, File target )
         throws ProxyException
     {
 
-        Lock lock;
+        Lock lock = null;
         try
         {
             lock = fileLockManager.writeFileLock( target );
@@ -1134,6 +1135,22 @@ private void moveTempToTarget( File temp, File target )
         {
             throw new ProxyException( e.getMessage(), e );
         }
+        finally
+        {
+            releaseQuietly( lock );
+        }
+    }
+
+    private void releaseQuietly( Lock lock )
+    {
+        try
+        {
+            fileLockManager.release( lock );
+        }
+        catch ( FileLockException | FileNotFoundException e )
+        {
+            log.warn( "Unable to release lock on {}: {}", lock.getFile(), e.getMessage() );
+        }
     }
 
     /**
@@ -33,10 +33,11 @@
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.NamespaceTreeCache;
+import org.apache.archiva.metadata.repository.ProjectVersionCacheEventListener;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.stats.RepositoryStatisticsManager;
-import org.apache.archiva.redback.components.cache.Cache;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
 import org.apache.archiva.redback.role.RoleManager;
 import org.apache.archiva.redback.role.RoleManagerException;
@@ -61,7 +62,6 @@
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -105,8 +105,10 @@
     protected RoleManager roleManager;
 
     @Inject
-    @Named(value = "cache#namespaces")
-    private Cache<String, Collection<String>> namespacesCache;
+    private NamespaceTreeCache namespaceTreeCache;
+
+    @Inject
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
 
     // fields
     List<? extends IndexCreator> indexCreators;
@@ -393,7 +395,8 @@ private Boolean deleteManagedRepository( ManagedRepositoryConfiguration reposito
                 MetadataRepository metadataRepository = repositorySession.getRepository();
                 metadataRepository.removeRepository( repository.getId() );
                 //invalidate cache
-                namespacesCache.remove( repository.getId() );
+                namespaceTreeCache.repositoryRemoved( repository.getId() );
+                projectVersionCacheEventListener.evictAll();
                 log.debug( "call repositoryStatisticsManager.deleteStatistics" );
                 getRepositoryStatisticsManager().deleteStatistics( metadataRepository, repository.getId() );
                 repositorySession.save();
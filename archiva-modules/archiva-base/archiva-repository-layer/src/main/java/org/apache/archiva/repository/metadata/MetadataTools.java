@@ -29,6 +29,7 @@
 import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.configuration.ProxyConnectorConfiguration;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.maven2.metadata.SnapshotResolutionCache;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.model.Plugin;
@@ -105,6 +106,10 @@
     @Named( value = "fileTypes" )
     private FileTypes filetypes;
 
+    @Inject
+    @Named( value = "snapshotResolutionCache#default" )
+    private SnapshotResolutionCache snapshotResolutionCache;
+
     private ChecksumAlgorithm[] algorithms = new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
 
     private List<String> artifactPatterns;
@@ -472,6 +477,7 @@ public void updateMetadata( ManagedRepositoryContent managedRepository, String l
         }
 
         RepositoryMetadataWriter.write( metadata, metadataFile );
+        snapshotResolutionCache.put( metadataFile, metadata );
 
         ChecksummedFile checksum = new ChecksummedFile( metadataFile );
         checksum.fixChecksums( algorithms );
@@ -638,6 +644,7 @@ public void updateMetadata( ManagedRepositoryContent managedRepository, ProjectR
 
         // Save the metadata model to disk.
         RepositoryMetadataWriter.write( metadata, metadataFile );
+        snapshotResolutionCache.put( metadataFile, metadata );
         ChecksummedFile checksum = new ChecksummedFile( metadataFile );
         checksum.fixChecksums( algorithms );
     }
@@ -694,7 +701,7 @@ private long toLastUpdatedLong( String timestampString )
     {
         try
         {
-            Date date = lastUpdatedFormat.parse( timestampString );
+            Date date = parseLastUpdated( timestampString );
             Calendar cal = Calendar.getInstance( DateUtils.UTC_TIME_ZONE );
             cal.setTime( date );
 
@@ -706,6 +713,16 @@ private long toLastUpdatedLong( String timestampString )
         }
     }
 
+    private Date parseLastUpdated( String lastUpdated )
+        throws ParseException
+    {
+        // the metadata of several projects can be updated at once, and SimpleDateFormat is not thread safe
+        synchronized ( lastUpdatedFormat )
+        {
+            return lastUpdatedFormat.parse( lastUpdated );
+        }
+    }
+
     private long getLastUpdated( ArchivaRepositoryMetadata metadata )
     {
         if ( metadata == null )
@@ -723,7 +740,7 @@ private long getLastUpdated( ArchivaRepositoryMetadata metadata )
                 return 0;
             }
 
-            Date lastUpdatedDate = lastUpdatedFormat.parse( lastUpdated );
+            Date lastUpdatedDate = parseLastUpdated( lastUpdated );
             return lastUpdatedDate.getTime();
         }
         catch ( ParseException e )
@@ -878,6 +895,7 @@ else if ( VersionUtil.isGenericSnapshot( latestVersion ) )
 
         // Save the metadata model to disk.
         RepositoryMetadataWriter.write( metadata, metadataFile );
+        snapshotResolutionCache.put( metadataFile, metadata );
         ChecksummedFile checksum = new ChecksummedFile( metadataFile );
         checksum.fixChecksums( algorithms );
     }
@@ -22,21 +22,21 @@
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
 import org.apache.archiva.model.Plugin;
 import org.apache.archiva.xml.XMLException;
-import org.apache.archiva.xml.XMLWriter;
+import org.apache.archiva.xml.XMLStreams;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentHelper;
-import org.dom4j.Element;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -44,11 +44,13 @@
  */
 public class RepositoryMetadataWriter
 {
+    private static final String[] INDENTS = { "\n", "\n  ", "\n    ", "\n      " };
+
     public static void write( ArchivaRepositoryMetadata metadata, File outputFile )
         throws RepositoryMetadataException
     {
         boolean thrown = false;
-        try (FileWriter writer = new FileWriter( outputFile ))
+        try (Writer writer = new OutputStreamWriter( new FileOutputStream( outputFile ), StandardCharsets.UTF_8 ))
         {
             write( metadata, writer );
             writer.flush();
@@ -71,82 +73,127 @@ public static void write( ArchivaRepositoryMetadata metadata, File outputFile )
     public static void write( ArchivaRepositoryMetadata metadata, Writer writer )
         throws RepositoryMetadataException
     {
-        Document doc = DocumentHelper.createDocument();
-
-        Element root = DocumentHelper.createElement( "metadata" );
-        doc.setRootElement( root );
-
-        addOptionalElementText( root, "groupId", metadata.getGroupId() );
-        addOptionalElementText( root, "artifactId", metadata.getArtifactId() );
-        addOptionalElementText( root, "version", metadata.getVersion() );
-
-        if ( CollectionUtils.isNotEmpty( metadata.getPlugins() ) )
+        try
         {
-            Element plugins = root.addElement( "plugins" );
+            XMLStreamWriter xml = XMLStreams.createWriter( writer );
 
-            List<Plugin> pluginList = metadata.getPlugins();
-            Collections.sort( pluginList, PluginComparator.INSTANCE );
+            // same layout as the dom4j pretty printer used previously
+            xml.writeStartDocument( "UTF-8", "1.0" );
+            xml.writeCharacters( "\n\n" );
+            xml.writeStartElement( "metadata" );
 
-            for ( Plugin plugin : metadata.getPlugins() )
+            addOptionalElementText( xml, 1, "groupId", metadata.getGroupId() );
+            addOptionalElementText( xml, 1, "artifactId", metadata.getArtifactId() );
+            addOptionalElementText( xml, 1, "version", metadata.getVersion() );
+
+            if ( CollectionUtils.isNotEmpty( metadata.getPlugins() ) )
             {
-                Element p = plugins.addElement( "plugin" );
-                p.addElement( "prefix" ).setText( plugin.getPrefix() );
-                p.addElement( "artifactId" ).setText( plugin.getArtifactId() );
-                addOptionalElementText( p, "name", plugin.getName() );
-            }
-        }
+                startElement( xml, 1, "plugins" );
 
-        if ( CollectionUtils.isNotEmpty( metadata.getAvailableVersions() ) //
-            || StringUtils.isNotBlank( metadata.getReleasedVersion() ) //
-            || StringUtils.isNotBlank( metadata.getLatestVersion() ) //
-            || StringUtils.isNotBlank( metadata.getLastUpdated() ) //
-            || ( metadata.getSnapshotVersion() != null ) )
-        {
-            Element versioning = root.addElement( "versioning" );
+                List<Plugin> pluginList = metadata.getPlugins();
+                Collections.sort( pluginList, PluginComparator.INSTANCE );
 
-            addOptionalElementText( versioning, "latest", metadata.getLatestVersion() );
-            addOptionalElementText( versioning, "release", metadata.getReleasedVersion() );
+                for ( Plugin plugin : metadata.getPlugins() )
+                {
+                    startElement( xml, 2, "plugin" );
+                    addElementText( xml, 3, "prefix", plugin.getPrefix() );
+                    addElementText( xml, 3, "artifactId", plugin.getArtifactId() );
+                    addOptionalElementText( xml, 3, "name", plugin.getName() );
+                    endElement( xml, 2 );
+                }
 
-            if ( metadata.getSnapshotVersion() != null )
-            {
-                Element snapshot = versioning.addElement( "snapshot" );
-                String bnum = String.valueOf( metadata.getSnapshotVersion().getBuildNumber() );
-                addOptionalElementText( snapshot, "buildNumber", bnum );
-                addOptionalElementText( snapshot, "timestamp", metadata.getSnapshotVersion().getTimestamp() );
+                endElement( xml, 1 );
             }
 
-            if ( CollectionUtils.isNotEmpty( metadata.getAvailableVersions() ) )
+            if ( CollectionUtils.isNotEmpty( metadata.getAvailableVersions() ) //
+                || StringUtils.isNotBlank( metadata.getReleasedVersion() ) //
+                || StringUtils.isNotBlank( metadata.getLatestVersion() ) //
+                || StringUtils.isNotBlank( metadata.getLastUpdated() ) //
+                || ( metadata.getSnapshotVersion() != null ) )
             {
-                Element versions = versioning.addElement( "versions" );
-                Iterator<String> it = metadata.getAvailableVersions().iterator();
-                while ( it.hasNext() )
+                startElement( xml, 1, "versioning" );
+
+                addOptionalElementText( xml, 2, "latest", metadata.getLatestVersion() );
+                addOptionalElementText( xml, 2, "release", metadata.getReleasedVersion() );
+
+                if ( metadata.getSnapshotVersion() != null )
                 {
-                    String version = it.next();
-                    versions.addElement( "version" ).setText( version );
+                    startElement( xml, 2, "snapshot" );
+                    String bnum = String.valueOf( metadata.getSnapshotVersion().getBuildNumber() );
+                    addOptionalElementText( xml, 3, "buildNumber", bnum );
+                    addOptionalElementText( xml, 3, "timestamp", metadata.getSnapshotVersion().getTimestamp() );
+                    endElement( xml, 2 );
                 }
+
+                if ( CollectionUtils.isNotEmpty( metadata.getAvailableVersions() ) )
+                {
+                    startElement( xml, 2, "versions" );
+                    for ( String version : metadata.getAvailableVersions() )
+                    {
+                        addElementText( xml, 3, "version", version );
+                    }
+                    endElement( xml, 2 );
+                }
+
+                addOptionalElementText( xml, 2, "lastUpdated", metadata.getLastUpdated() );
+
+                endElement( xml, 1 );
             }
 
-            addOptionalElementText( versioning, "lastUpdated", metadata.getLastUpdated() );
+            endElement( xml, 0 );
+            xml.writeCharacters( "\n" );
+            xml.writeEndDocument();
+            xml.flush();
+            // doesn't close the underlying writer
+            xml.close();
         }
-
-        try
+        catch ( XMLException | XMLStreamException e )
         {
-            XMLWriter.write( doc, writer );
+            throw new RepositoryMetadataException( "Unable to write xml contents to writer: " + e.getMessage(), e );
         }
-        catch ( XMLException e )
+    }
+
+    private static void startElement( XMLStreamWriter xml, int depth, String elemName )
+        throws XMLStreamException
+    {
+        indent( xml, depth );
+        xml.writeStartElement( elemName );
+    }
+
+    private static void endElement( XMLStreamWriter xml, int depth )
+        throws XMLStreamException
+    {
+        indent( xml, depth );
+        xml.writeEndElement();
+    }
+
+    private static void indent( XMLStreamWriter xml, int depth )
+        throws XMLStreamException
+    {
+        xml.writeCharacters( INDENTS[depth] );
+    }
+
+    private static void addElementText( XMLStreamWriter xml, int depth, String elemName, String text )
+        throws XMLStreamException
+    {
+        indent( xml, depth );
+        xml.writeStartElement( elemName );
+        if ( text != null )
         {
-            throw new RepositoryMetadataException( "Unable to write xml contents to writer: " + e.getMessage(), e );
+            xml.writeCharacters( text );
         }
+        xml.writeEndElement();
     }
 
-    private static void addOptionalElementText( Element elem, String elemName, String text )
+    private static void addOptionalElementText( XMLStreamWriter xml, int depth, String elemName, String text )
+        throws XMLStreamException
     {
         if ( StringUtils.isBlank( text ) )
         {
             return;
         }
 
-        elem.addElement( elemName ).setText( text );
+        addElementText( xml, depth, elemName, text );
     }
 
     private static class PluginComparator
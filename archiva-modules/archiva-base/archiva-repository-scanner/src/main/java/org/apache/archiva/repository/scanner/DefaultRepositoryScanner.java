@@ -27,33 +27,60 @@
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.commons.collections.CollectionUtils;
-import org.codehaus.plexus.util.DirectoryWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * DefaultRepositoryScanner
- *
- *
+ * <p>
+ * The scans record their progress in a checkpoint per repository, in the directory set by the
+ * <code>archiva.repositoryScanning.checkpointDirectory</code> system property, or in the
+ * <code>data/scan-checkpoints</code> directory of <code>appserver.base</code> by default, every
+ * <code>archiva.repositoryScanning.checkpointInterval</code> seconds (60 by default). A scan interrupted by a
+ * restart, a failure or a cancellation is resumed from its checkpoint by the next scan of the repository looking for
+ * the same changes.
+ * <p>
+ * The consumers of the scans are limited to <code>archiva.repositoryScanning.maxBytesPerSecond</code> bytes read and
+ * <code>archiva.repositoryScanning.maxFilesPerSecond</code> files processed per second, unlimited by default, with
+ * other limits by time of day in <code>archiva.repositoryScanning.throttleProfiles</code>, and back off while the
+ * latency of the artifacts served is above <code>archiva.repositoryScanning.servingLatencyTarget</code> milliseconds,
+ * see {@link ScanThrottle}.
  */
 @Service( "repositoryScanner#default" )
 public class DefaultRepositoryScanner
     implements RepositoryScanner
 {
+    private Logger log = LoggerFactory.getLogger( DefaultRepositoryScanner.class );
+
     @Inject
     private FileTypes filetypes;
 
     @Inject
     private RepositoryContentConsumers repositoryContentConsumers;
 
-    private Set<RepositoryScannerInstance> inProgressScans = new LinkedHashSet<RepositoryScannerInstance>();
+    /**
+     * The scans in progress, as several repositories can be scanned at the same time
+     */
+    private Set<RepositoryScannerInstance> inProgressScans =
+        Collections.newSetFromMap( new ConcurrentHashMap<RepositoryScannerInstance, Boolean>() );
+
+    private File checkpointDirectory = getDefaultCheckpointDirectory();
+
+    private long checkpointInterval =
+        TimeUnit.SECONDS.toMillis( Integer.getInteger( "archiva.repositoryScanning.checkpointInterval", 60 ) );
+
+    private ScanThrottle throttle = createThrottle();
 
     @Override
     public RepositoryScanStatistics scan( ManagedRepository repository, long changesSince )
@@ -118,27 +145,41 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
         // Scan All Content. (intentional)
         allIncludes.add( "**/*" );
 
-        // Setup Directory Walker
-        DirectoryWalker dirWalker = new DirectoryWalker();
-
-        dirWalker.setBaseDir( repositoryBase );
-
-        dirWalker.setIncludes( allIncludes );
-        dirWalker.setExcludes( allExcludes );
-
         // Setup the Scan Instance
         RepositoryScannerInstance scannerInstance =
             new RepositoryScannerInstance( repository, knownContentConsumers, invalidContentConsumers, changesSince );
 
+        ScanCheckpoint checkpoint = null;
+        if ( checkpointDirectory != null )
+        {
+            File checkpointFile = new File( checkpointDirectory, repository.getId() + ".properties" );
+            checkpoint = loadCheckpoint( checkpointFile, changesSince );
+            scannerInstance.setCheckpoint( checkpointFile, checkpointInterval );
+            if ( checkpoint != null )
+            {
+                scannerInstance.resume( checkpoint );
+            }
+        }
+
+        if ( throttle != null )
+        {
+            scannerInstance.setThrottle( throttle );
+        }
+
+        // Setup Directory Walker
+        RepositoryWalker dirWalker = new RepositoryWalker( repositoryBase, allIncludes, allExcludes, scannerInstance );
+
         inProgressScans.add( scannerInstance );
 
         RepositoryScanStatistics stats;
         try
         {
-            dirWalker.addDirectoryWalkListener( scannerInstance );
-
             // Execute scan.
-            dirWalker.scan();
+            if ( !dirWalker.walk( checkpoint == null ? null : checkpoint.getLastCompletedDirectory() ) )
+            {
+                scannerInstance.directoryWalkInterrupted();
+                throw new RepositoryScannerException( "Scan of the repository " + repository.getId() + " interrupted" );
+            }
 
             stats = scannerInstance.getStatistics();
 
@@ -153,6 +194,31 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
         return stats;
     }
 
+    /**
+     * @return the checkpoint of a previous scan looking for the same changes, if any
+     */
+    private ScanCheckpoint loadCheckpoint( File checkpointFile, long changesSince )
+    {
+        try
+        {
+            ScanCheckpoint checkpoint = ScanCheckpoint.load( checkpointFile );
+            if ( checkpoint == null || checkpoint.getChangesSince() == changesSince )
+            {
+                return checkpoint;
+            }
+            log.info( "Ignoring the checkpoint of a scan looking for other changes: {}", checkpointFile );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Ignoring the scan checkpoint {}: {}", checkpointFile, e.getMessage() );
+        }
+        if ( !checkpointFile.delete() )
+        {
+            log.warn( "Unable to remove the scan checkpoint {}", checkpointFile );
+        }
+        return null;
+    }
+
     private List<String> gatherIds( List<? extends RepositoryContentConsumer> consumers )
     {
         List<String> ids = new ArrayList<>();
@@ -168,4 +234,71 @@ public Set<RepositoryScannerInstance> getInProgressScans()
     {
         return inProgressScans;
     }
+
+    public File getCheckpointDirectory()
+    {
+        return checkpointDirectory;
+    }
+
+    /**
+     * @param checkpointDirectory the directory of the scan checkpoints, <code>null</code> to disable them
+     */
+    public void setCheckpointDirectory( File checkpointDirectory )
+    {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public long getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval( long checkpointInterval )
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public ScanThrottle getThrottle()
+    {
+        return throttle;
+    }
+
+    /**
+     * @param throttle the throttle of the scans, <code>null</code> for none
+     */
+    public void setThrottle( ScanThrottle throttle )
+    {
+        this.throttle = throttle;
+    }
+
+    private ScanThrottle createThrottle()
+    {
+        List<ScanThrottle.Profile> profiles;
+        try
+        {
+            profiles =
+                ScanThrottle.parseProfiles( System.getProperty( "archiva.repositoryScanning.throttleProfiles" ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            log.warn( "Ignoring the scan throttle profiles: {}", e.getMessage() );
+            profiles = Collections.emptyList();
+        }
+        ScanThrottle scanThrottle =
+            new ScanThrottle( Long.getLong( "archiva.repositoryScanning.maxBytesPerSecond", 0 ),
+                              Long.getLong( "archiva.repositoryScanning.maxFilesPerSecond", 0 ), profiles,
+                              Long.getLong( "archiva.repositoryScanning.servingLatencyTarget", 0 ) );
+        return scanThrottle.isEnabled() ? scanThrottle : null;
+    }
+
+    private static File getDefaultCheckpointDirectory()
+    {
+        String directory = System.getProperty( "archiva.repositoryScanning.checkpointDirectory" );
+        if ( directory != null )
+        {
+            return directory.isEmpty() ? null : new File( directory );
+        }
+        String appServerBase = System.getProperty( "appserver.base" );
+        return appServerBase == null ? null : new File( appServerBase, "data/scan-checkpoints" );
+    }
 }
@@ -83,6 +83,28 @@ public void triggerStart()
         startTimestamp = System.currentTimeMillis();
     }
 
+    /**
+     * Start the statistics of a scan resumed from a checkpoint, with the statistics gathered until the checkpoint.
+     *
+     * @param elapsed        the time in milliseconds spent scanning until the checkpoint
+     * @param totalFileCount the number of files walked until the checkpoint
+     * @param newFileCount   the number of new files walked until the checkpoint
+     */
+    public void triggerResume( long elapsed, long totalFileCount, long newFileCount )
+    {
+        startTimestamp = System.currentTimeMillis() - elapsed;
+        this.totalFileCount = totalFileCount;
+        this.newFileCount = newFileCount;
+    }
+
+    /**
+     * @return the time in milliseconds spent scanning so far
+     */
+    public long getElapsed()
+    {
+        return System.currentTimeMillis() - startTimestamp;
+    }
+
     public java.util.Date getWhenGathered()
     {
         return whenGathered;
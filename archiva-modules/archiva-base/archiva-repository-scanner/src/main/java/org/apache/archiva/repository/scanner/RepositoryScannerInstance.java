@@ -21,8 +21,11 @@
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.consumers.CheckpointableConsumer;
+import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.archiva.consumers.ThrottledConsumer;
 import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
 import org.apache.archiva.repository.scanner.functors.ConsumerProcessFileClosure;
 import org.apache.archiva.repository.scanner.functors.TriggerBeginScanClosure;
@@ -36,6 +39,8 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +48,10 @@
 
 /**
  * RepositoryScannerInstance
+ * <p>
+ * When given a checkpoint file, the scan records its progress in it periodically, once a directory is completed and
+ * the consumers deferring the processing of files have completed it, see {@link CheckpointableConsumer}. The
+ * checkpoint is removed once the scan is finished.
  */
 public class RepositoryScannerInstance
     implements DirectoryWalkListener
@@ -73,6 +82,34 @@
 
     private Map<String, Long> consumerCounts;
 
+    private boolean paused;
+
+    private File checkpointFile;
+
+    private long checkpointInterval;
+
+    private long lastCheckpointTime;
+
+    private String lastCompletedDirectory;
+
+    private ScanThrottle throttle;
+
+    /**
+     * The checkpoint the scan is resumed from, if any.
+     */
+    private ScanCheckpoint resumedCheckpoint;
+
+    private volatile int percentage;
+
+    /**
+     * The start of the walk, or of its resumption, and the progress at that time.
+     */
+    private volatile long walkStartTime;
+
+    private volatile int walkStartPercentage = -1;
+
+    private volatile long walkFileCount;
+
     public RepositoryScannerInstance( ManagedRepository repository,
                                       List<KnownRepositoryContentConsumer> knownConsumerList,
                                       List<InvalidRepositoryContentConsumer> invalidConsumerList )
@@ -133,29 +170,113 @@ public Map<String, Long> getConsumerCounts()
         return consumerCounts;
     }
 
+    /**
+     * Record the progress of the scan in a checkpoint file.
+     *
+     * @param checkpointFile     the checkpoint file
+     * @param checkpointInterval the minimum time in milliseconds between two checkpoints
+     */
+    public void setCheckpoint( File checkpointFile, long checkpointInterval )
+    {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Limit the resources used by the consumers of the scan, including the threads of the
+     * {@link ThrottledConsumer}s.
+     */
+    public void setThrottle( ScanThrottle throttle )
+    {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Resume the scan from a checkpoint, with the statistics gathered until the checkpoint.
+     */
+    public void resume( ScanCheckpoint checkpoint )
+    {
+        this.resumedCheckpoint = checkpoint;
+        this.lastCompletedDirectory = checkpoint.getLastCompletedDirectory();
+    }
+
+    /**
+     * @return <code>true</code> if the scan was resumed from a checkpoint
+     */
+    public boolean isResumed()
+    {
+        return resumedCheckpoint != null;
+    }
+
     @Override
     public void directoryWalkStarting( File basedir )
     {
-        log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
-        stats.triggerStart();
+        walkStartTime = System.currentTimeMillis();
+        lastCheckpointTime = walkStartTime;
+        for ( ThrottledConsumer consumer : getThrottledConsumers() )
+        {
+            consumer.setThrottle( throttle );
+        }
+        if ( resumedCheckpoint != null )
+        {
+            log.info( "Walk Resumed: [{}] {} after {}", this.repository.getId(), this.repository.getLocation(),
+                      resumedCheckpoint.getLastCompletedDirectory() );
+            stats.triggerResume( resumedCheckpoint.getElapsed(), resumedCheckpoint.getTotalFileCount(),
+                                 resumedCheckpoint.getNewFileCount() );
+            consumerCounts.putAll( resumedCheckpoint.getConsumerCounts() );
+            consumerTimings.putAll( resumedCheckpoint.getConsumerTimings() );
+            for ( CheckpointableConsumer consumer : getCheckpointableConsumers() )
+            {
+                consumer.resume();
+            }
+        }
+        else
+        {
+            log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
+            stats.triggerStart();
+        }
     }
 
     @Override
     public void directoryWalkStep( int percentage, File file )
     {
+        waitWhilePaused();
+
         log.debug( "Walk Step: {}, {}", percentage, file );
 
+        if ( walkStartPercentage < 0 )
+        {
+            walkStartPercentage = percentage;
+        }
+        this.percentage = percentage;
+        walkFileCount++;
+
         stats.increaseFileCount();
 
         // consume files regardless - the predicate will check the timestamp
         BaseFile basefile = new BaseFile( repository.getLocation(), file );
 
         // Timestamp finished points to the last successful scan, not this current one.
-        if ( file.lastModified() >= changesSince )
+        boolean modified = file.lastModified() >= changesSince;
+        if ( modified )
         {
             stats.increaseNewFileCount();
         }
 
+        if ( throttle != null )
+        {
+            try
+            {
+                // the consumers only read the content of the files changed since the last scan
+                throttle.acquire( modified ? file.length() : 0 );
+            }
+            catch ( InterruptedException e )
+            {
+                // the scan is cancelled, let the walker notice before the next file
+                Thread.currentThread().interrupt();
+            }
+        }
+
         consumerProcessFile.setBasefile( basefile );
         consumerWantsFile.setBasefile( basefile );
 
@@ -169,10 +290,141 @@ public void directoryWalkStep( int percentage, File file )
         }
     }
 
+    /**
+     * Event triggered by the {@link RepositoryWalker} once all the files of a directory have been walked, recording a
+     * checkpoint if the last one is old enough.
+     *
+     * @param path the path of the directory, relative to the repository, with <code>/</code> separators
+     */
+    public void directoryCompleted( String path )
+    {
+        lastCompletedDirectory = path;
+        if ( checkpointFile != null && System.currentTimeMillis() - lastCheckpointTime >= checkpointInterval )
+        {
+            checkpoint();
+        }
+    }
+
+    private List<CheckpointableConsumer> getCheckpointableConsumers()
+    {
+        List<CheckpointableConsumer> consumers = new ArrayList<>();
+        for ( KnownRepositoryContentConsumer consumer : knownConsumers )
+        {
+            if ( consumer instanceof CheckpointableConsumer )
+            {
+                consumers.add( (CheckpointableConsumer) consumer );
+            }
+        }
+        for ( InvalidRepositoryContentConsumer consumer : invalidConsumers )
+        {
+            if ( consumer instanceof CheckpointableConsumer )
+            {
+                consumers.add( (CheckpointableConsumer) consumer );
+            }
+        }
+        return consumers;
+    }
+
+    private List<ThrottledConsumer> getThrottledConsumers()
+    {
+        List<ThrottledConsumer> consumers = new ArrayList<>();
+        for ( KnownRepositoryContentConsumer consumer : knownConsumers )
+        {
+            if ( consumer instanceof ThrottledConsumer )
+            {
+                consumers.add( (ThrottledConsumer) consumer );
+            }
+        }
+        for ( InvalidRepositoryContentConsumer consumer : invalidConsumers )
+        {
+            if ( consumer instanceof ThrottledConsumer )
+            {
+                consumers.add( (ThrottledConsumer) consumer );
+            }
+        }
+        return consumers;
+    }
+
+    /**
+     * Record the progress of the scan until the last completed directory.
+     */
+    private void checkpoint()
+    {
+        lastCheckpointTime = System.currentTimeMillis();
+        if ( lastCompletedDirectory == null )
+        {
+            return;
+        }
+
+        try
+        {
+            for ( CheckpointableConsumer consumer : getCheckpointableConsumers() )
+            {
+                consumer.checkpoint();
+            }
+        }
+        catch ( ConsumerException e )
+        {
+            log.warn( "Skipping the checkpoint of the scan of [{}]: {}", repository.getId(), e.getMessage() );
+            return;
+        }
+
+        ScanCheckpoint checkpoint = new ScanCheckpoint();
+        checkpoint.setRepositoryId( repository.getId() );
+        checkpoint.setChangesSince( changesSince );
+        checkpoint.setElapsed( stats.getElapsed() );
+        checkpoint.setLastCompletedDirectory( lastCompletedDirectory );
+        checkpoint.setTotalFileCount( stats.getTotalFileCount() );
+        checkpoint.setNewFileCount( stats.getNewFileCount() );
+        checkpoint.setConsumerCounts( new HashMap<>( consumerCounts ) );
+        checkpoint.setConsumerTimings( new HashMap<>( consumerTimings ) );
+        try
+        {
+            checkpoint.store( checkpointFile );
+            log.debug( "Scan checkpoint: [{}] {}", repository.getId(), lastCompletedDirectory );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to record the checkpoint of the scan of [{}]: {}", repository.getId(), e.getMessage() );
+        }
+    }
+
+    /**
+     * Event triggered when the walk is interrupted: the progress is recorded so that the next scan resumes after the
+     * last completed directory, and the consumers are told the scan is over.
+     */
+    public void directoryWalkInterrupted()
+    {
+        // let the consumers complete their work before the interruption is noticed again
+        boolean interrupted = Thread.interrupted();
+        try
+        {
+            if ( checkpointFile != null )
+            {
+                checkpoint();
+            }
+
+            TriggerScanCompletedClosure scanCompletedClosure = new TriggerScanCompletedClosure( repository, true );
+            scanCompletedClosure.setConsumerTimings( consumerTimings );
+            CollectionUtils.forAllDo( knownConsumers, scanCompletedClosure );
+            CollectionUtils.forAllDo( invalidConsumers, scanCompletedClosure );
+
+            log.info( "Walk Interrupted: [{}] {}", this.repository.getId(), this.repository.getLocation() );
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     @Override
     public void directoryWalkFinished()
     {
         TriggerScanCompletedClosure scanCompletedClosure = new TriggerScanCompletedClosure( repository, true );
+        scanCompletedClosure.setConsumerTimings( consumerTimings );
         CollectionUtils.forAllDo( knownConsumers, scanCompletedClosure );
         CollectionUtils.forAllDo( invalidConsumers, scanCompletedClosure );
 
@@ -181,6 +433,11 @@ public void directoryWalkFinished()
 
         log.info( "Walk Finished: [{}] {}", this.repository.getId(), this.repository.getLocation() );
         stats.triggerFinished();
+
+        if ( checkpointFile != null && checkpointFile.exists() && !checkpointFile.delete() )
+        {
+            log.warn( "Unable to remove the checkpoint of the scan of [{}]: {}", repository.getId(), checkpointFile );
+        }
     }
 
     /**
@@ -206,4 +463,81 @@ public long getChangesSince()
     {
         return changesSince;
     }
+
+    /**
+     * @return the estimated percentage of the repository walked
+     */
+    public int getPercentage()
+    {
+        return percentage;
+    }
+
+    /**
+     * @return the number of files walked per second since the walk started or was resumed
+     */
+    public double getFilesPerSecond()
+    {
+        long elapsed = System.currentTimeMillis() - walkStartTime;
+        return walkStartTime == 0 || elapsed <= 0 ? 0 : walkFileCount * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return the estimated time in milliseconds until the end of the walk, from its progress since it started or was
+     *         resumed, or -1 if it can't be estimated yet
+     */
+    public long getEstimatedRemainingTime()
+    {
+        int startPercentage = walkStartPercentage;
+        int currentPercentage = percentage;
+        if ( startPercentage < 0 || currentPercentage <= startPercentage )
+        {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - walkStartTime;
+        return elapsed * ( 100 - currentPercentage ) / ( currentPercentage - startPercentage );
+    }
+
+    /**
+     * Pause the scan before its next file, until it is resumed.
+     */
+    public synchronized void pause()
+    {
+        if ( !paused )
+        {
+            log.info( "Scan paused: [{}]", this.repository.getId() );
+            paused = true;
+        }
+    }
+
+    public synchronized void resume()
+    {
+        if ( paused )
+        {
+            log.info( "Scan resumed: [{}]", this.repository.getId() );
+            paused = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isPaused()
+    {
+        return paused;
+    }
+
+    private synchronized void waitWhilePaused()
+    {
+        while ( paused )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException e )
+            {
+                // the scan is cancelled, let it go on to notice
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.codehaus.plexus.util.SelectorUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RepositoryWalker - walks the files of a repository like the plexus <code>DirectoryWalker</code>, but in a
+ * deterministic order: the entries of each directory are walked in the order of their names, depth first. A walk can
+ * then be resumed after the last directory completed by a previous walk, the files walked before it being skipped.
+ * <p>
+ * The walk stops, before its next entry, when the thread walking is interrupted.
+ */
+class RepositoryWalker
+{
+    private final File baseDir;
+
+    private final List<String> includes = new ArrayList<>();
+
+    private final List<String> excludes = new ArrayList<>();
+
+    private final RepositoryScannerInstance listener;
+
+    RepositoryWalker( File baseDir, List<String> includes, List<String> excludes, RepositoryScannerInstance listener )
+    {
+        this.baseDir = baseDir;
+        for ( String include : includes )
+        {
+            this.includes.add( fixPattern( include ) );
+        }
+        for ( String exclude : excludes )
+        {
+            this.excludes.add( fixPattern( exclude ) );
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Walk the repository.
+     *
+     * @param resumeAfter the path of the last directory completed by a previous walk, with <code>/</code> separators,
+     *                    or <code>null</code> to walk the whole repository
+     * @return <code>false</code> if the walk was interrupted
+     */
+    boolean walk( String resumeAfter )
+    {
+        listener.directoryWalkStarting( baseDir );
+        String[] resume = resumeAfter == null || resumeAfter.isEmpty() ? null : resumeAfter.split( "/" );
+        if ( !walkDirectory( baseDir, "", resume, 0, 0, 100 ) )
+        {
+            return false;
+        }
+        listener.directoryWalkFinished();
+        return true;
+    }
+
+    /**
+     * @param resume the path of the directory to resume after, if this directory contains it
+     */
+    private boolean walkDirectory( File dir, String path, String[] resume, int depth, double percentageOffset,
+                                   double percentageSize )
+    {
+        String[] names = dir.list();
+        if ( names == null )
+        {
+            return true;
+        }
+        Arrays.sort( names );
+
+        double entrySize = percentageSize / names.length;
+        for ( int i = 0; i < names.length; i++ )
+        {
+            if ( Thread.currentThread().isInterrupted() )
+            {
+                return false;
+            }
+
+            String name = names[i];
+            File file = new File( dir, name );
+            boolean directory = file.isDirectory();
+
+            String[] entryResume = null;
+            if ( resume != null )
+            {
+                int comparison = name.compareTo( resume[depth] );
+                if ( comparison < 0 )
+                {
+                    // walked before the directory to resume after
+                    continue;
+                }
+                if ( comparison == 0 )
+                {
+                    if ( depth == resume.length - 1 || !directory )
+                    {
+                        // the directory to resume after
+                        continue;
+                    }
+                    entryResume = resume;
+                }
+            }
+
+            String entryPath = path.isEmpty() ? name : path + '/' + name;
+            String matchedPath = entryPath.replace( '/', File.separatorChar );
+            if ( isExcluded( matchedPath ) )
+            {
+                listener.debug( matchedPath + " is excluded." );
+                continue;
+            }
+
+            double entryOffset = percentageOffset + i * entrySize;
+            if ( directory )
+            {
+                if ( !walkDirectory( file, entryPath, entryResume, depth + 1, entryOffset, entrySize ) )
+                {
+                    return false;
+                }
+                listener.directoryCompleted( entryPath );
+            }
+            else if ( isIncluded( matchedPath ) )
+            {
+                listener.directoryWalkStep( (int) entryOffset, file );
+            }
+        }
+        return true;
+    }
+
+    private boolean isIncluded( String path )
+    {
+        return matches( includes, path );
+    }
+
+    private boolean isExcluded( String path )
+    {
+        return matches( excludes, path );
+    }
+
+    private static boolean matches( List<String> patterns, String path )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( SelectorUtils.matchPath( pattern, path, true ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String fixPattern( String pattern )
+    {
+        return pattern.replace( '/', File.separatorChar ).replace( '\\', File.separatorChar );
+    }
+}
@@ -0,0 +1,230 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * ScanCheckpoint - the progress of a scan of an entire repository, recorded periodically so that an interrupted scan
+ * can be resumed after the last directory it completed, with the statistics gathered so far.
+ *
+ * @since 2.2.3
+ */
+public class ScanCheckpoint
+{
+    private static final String COUNT_PREFIX = "consumerCount.";
+
+    private static final String TIMING_PREFIX = "consumerTiming.";
+
+    private String repositoryId;
+
+    private long changesSince;
+
+    private long elapsed;
+
+    private String lastCompletedDirectory;
+
+    private long totalFileCount;
+
+    private long newFileCount;
+
+    private Map<String, Long> consumerCounts = new HashMap<>();
+
+    private Map<String, Long> consumerTimings = new HashMap<>();
+
+    /**
+     * Read a checkpoint.
+     *
+     * @return the checkpoint, or <code>null</code> if the file doesn't exist
+     */
+    public static ScanCheckpoint load( File file )
+        throws IOException
+    {
+        if ( !file.exists() )
+        {
+            return null;
+        }
+        Properties properties = new Properties();
+        try ( InputStream in = new FileInputStream( file ) )
+        {
+            properties.load( in );
+        }
+
+        ScanCheckpoint checkpoint = new ScanCheckpoint();
+        try
+        {
+            checkpoint.repositoryId = properties.getProperty( "repositoryId" );
+            checkpoint.changesSince = Long.parseLong( properties.getProperty( "changesSince" ) );
+            checkpoint.elapsed = Long.parseLong( properties.getProperty( "elapsed" ) );
+            checkpoint.lastCompletedDirectory = properties.getProperty( "lastCompletedDirectory" );
+            checkpoint.totalFileCount = Long.parseLong( properties.getProperty( "totalFileCount" ) );
+            checkpoint.newFileCount = Long.parseLong( properties.getProperty( "newFileCount" ) );
+            for ( String name : properties.stringPropertyNames() )
+            {
+                if ( name.startsWith( COUNT_PREFIX ) )
+                {
+                    checkpoint.consumerCounts.put( name.substring( COUNT_PREFIX.length() ),
+                                                   Long.valueOf( properties.getProperty( name ) ) );
+                }
+                else if ( name.startsWith( TIMING_PREFIX ) )
+                {
+                    checkpoint.consumerTimings.put( name.substring( TIMING_PREFIX.length() ),
+                                                    Long.valueOf( properties.getProperty( name ) ) );
+                }
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IOException( "Invalid scan checkpoint " + file + ": " + e.getMessage(), e );
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Write the checkpoint, replacing the previous one at once.
+     */
+    public void store( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty( "repositoryId", repositoryId );
+        properties.setProperty( "changesSince", Long.toString( changesSince ) );
+        properties.setProperty( "elapsed", Long.toString( elapsed ) );
+        properties.setProperty( "lastCompletedDirectory", lastCompletedDirectory );
+        properties.setProperty( "totalFileCount", Long.toString( totalFileCount ) );
+        properties.setProperty( "newFileCount", Long.toString( newFileCount ) );
+        for ( Map.Entry<String, Long> entry : consumerCounts.entrySet() )
+        {
+            properties.setProperty( COUNT_PREFIX + entry.getKey(), entry.getValue().toString() );
+        }
+        for ( Map.Entry<String, Long> entry : consumerTimings.entrySet() )
+        {
+            properties.setProperty( TIMING_PREFIX + entry.getKey(), entry.getValue().toString() );
+        }
+
+        file.getParentFile().mkdirs();
+        File tmp = new File( file.getParentFile(), file.getName() + ".tmp" );
+        try ( FileOutputStream out = new FileOutputStream( tmp ) )
+        {
+            properties.store( out, "Checkpoint of the scan of the repository " + repositoryId );
+            out.getFD().sync();
+        }
+        if ( !tmp.renameTo( file ) && !( file.delete() && tmp.renameTo( file ) ) )
+        {
+            throw new IOException( "Unable to replace the scan checkpoint " + file );
+        }
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    public void setRepositoryId( String repositoryId )
+    {
+        this.repositoryId = repositoryId;
+    }
+
+    /**
+     * @return the timestamp of the changes the scan looks for, see {@link RepositoryScanner#FRESH_SCAN}
+     */
+    public long getChangesSince()
+    {
+        return changesSince;
+    }
+
+    public void setChangesSince( long changesSince )
+    {
+        this.changesSince = changesSince;
+    }
+
+    /**
+     * @return the time in milliseconds spent scanning until the checkpoint
+     */
+    public long getElapsed()
+    {
+        return elapsed;
+    }
+
+    public void setElapsed( long elapsed )
+    {
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the path of the last completed directory, relative to the repository, with <code>/</code> separators
+     */
+    public String getLastCompletedDirectory()
+    {
+        return lastCompletedDirectory;
+    }
+
+    public void setLastCompletedDirectory( String lastCompletedDirectory )
+    {
+        this.lastCompletedDirectory = lastCompletedDirectory;
+    }
+
+    public long getTotalFileCount()
+    {
+        return totalFileCount;
+    }
+
+    public void setTotalFileCount( long totalFileCount )
+    {
+        this.totalFileCount = totalFileCount;
+    }
+
+    public long getNewFileCount()
+    {
+        return newFileCount;
+    }
+
+    public void setNewFileCount( long newFileCount )
+    {
+        this.newFileCount = newFileCount;
+    }
+
+    public Map<String, Long> getConsumerCounts()
+    {
+        return consumerCounts;
+    }
+
+    public void setConsumerCounts( Map<String, Long> consumerCounts )
+    {
+        this.consumerCounts = consumerCounts;
+    }
+
+    public Map<String, Long> getConsumerTimings()
+    {
+        return consumerTimings;
+    }
+
+    public void setConsumerTimings( Map<String, Long> consumerTimings )
+    {
+        this.consumerTimings = consumerTimings;
+    }
+}
@@ -0,0 +1,288 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.consumers.ConsumerThrottle;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScanThrottle - limits the bytes read and the files processed per second by the consumers of the scans, so that the
+ * scans don't starve the artifacts being served from the same disks. It is shared by the scans running at the same
+ * time.
+ * <p>
+ * The limits can differ by time of day with profiles, eg. <code>08:00-18:00=10485760/200</code> for 10 MB and 200
+ * files per second during business hours. When a serving latency target is set, the scans also back off while the
+ * {@link ServingLatency} is above it, with a delay per file doubled every second until the latency is back under the
+ * target.
+ *
+ * @since 2.2.3
+ */
+public class ScanThrottle
+    implements ConsumerThrottle
+{
+    /**
+     * The budget not used during this time, in nanoseconds, can be used at once.
+     */
+    private static final long BURST = TimeUnit.SECONDS.toNanos( 1 );
+
+    private static final long ADJUSTMENT_INTERVAL = TimeUnit.SECONDS.toNanos( 1 );
+
+    private static final long MIN_BACKOFF = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos( 1 );
+
+    private final Profile defaultProfile;
+
+    private final List<Profile> profiles;
+
+    private final long servingLatencyTarget;
+
+    private Profile currentProfile;
+
+    private long lastAdjustmentTime;
+
+    /**
+     * The delay added to every file, in nanoseconds.
+     */
+    private long backoff;
+
+    /**
+     * The time from which the bytes and the files can be read again.
+     */
+    private long nextByteTime;
+
+    private long nextFileTime;
+
+    /**
+     * @param maxBytesPerSecond    the bytes read per second outside of the profiles, 0 for no limit
+     * @param maxFilesPerSecond    the files processed per second outside of the profiles, 0 for no limit
+     * @param profiles             the limits by time of day, the first profile matching the time of day is used
+     * @param servingLatencyTarget the serving latency in milliseconds above which the scans back off, 0 to ignore it
+     */
+    public ScanThrottle( long maxBytesPerSecond, long maxFilesPerSecond, List<Profile> profiles,
+                         long servingLatencyTarget )
+    {
+        this.defaultProfile = new Profile( 0, 0, maxBytesPerSecond, maxFilesPerSecond );
+        this.profiles = profiles == null ? Collections.<Profile>emptyList() : new ArrayList<>( profiles );
+        this.servingLatencyTarget = servingLatencyTarget;
+        this.currentProfile = defaultProfile;
+        this.lastAdjustmentTime = System.nanoTime() - ADJUSTMENT_INTERVAL;
+    }
+
+    /**
+     * @return <code>true</code> if the throttle can slow down the scans at all
+     */
+    public boolean isEnabled()
+    {
+        if ( defaultProfile.isLimited() || servingLatencyTarget > 0 )
+        {
+            return true;
+        }
+        for ( Profile profile : profiles )
+        {
+            if ( profile.isLimited() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait until a file can be processed by the consumers.
+     *
+     * @param bytes the bytes the consumers are expected to read
+     * @throws InterruptedException if the scan is interrupted while waiting
+     */
+    @Override
+    public void acquire( long bytes )
+        throws InterruptedException
+    {
+        long delay;
+        synchronized ( this )
+        {
+            long now = System.nanoTime();
+            if ( now - lastAdjustmentTime >= ADJUSTMENT_INTERVAL )
+            {
+                adjust( now );
+            }
+
+            Profile profile = currentProfile;
+            long nextTime = now;
+            if ( profile.getMaxBytesPerSecond() > 0 && bytes > 0 )
+            {
+                nextByteTime = Math.max( nextByteTime, now - BURST ) +
+                    TimeUnit.SECONDS.toNanos( bytes ) / profile.getMaxBytesPerSecond();
+                nextTime = Math.max( nextTime, nextByteTime );
+            }
+            if ( profile.getMaxFilesPerSecond() > 0 || backoff > 0 )
+            {
+                long cost = profile.getMaxFilesPerSecond() > 0
+                    ? TimeUnit.SECONDS.toNanos( 1 ) / profile.getMaxFilesPerSecond()
+                    : 0;
+                // the backoff isn't spared by a burst, it has to slow down the scan right away
+                nextFileTime = Math.max( nextFileTime, now - ( backoff > 0 ? 0 : BURST ) ) + cost + backoff;
+                nextTime = Math.max( nextTime, nextFileTime );
+            }
+            delay = nextTime - now;
+        }
+        if ( delay > 0 )
+        {
+            TimeUnit.NANOSECONDS.sleep( delay );
+        }
+    }
+
+    private void adjust( long now )
+    {
+        lastAdjustmentTime = now;
+
+        currentProfile = defaultProfile;
+        if ( !profiles.isEmpty() )
+        {
+            Calendar calendar = Calendar.getInstance();
+            int minute = calendar.get( Calendar.HOUR_OF_DAY ) * 60 + calendar.get( Calendar.MINUTE );
+            for ( Profile profile : profiles )
+            {
+                if ( profile.matches( minute ) )
+                {
+                    currentProfile = profile;
+                    break;
+                }
+            }
+        }
+
+        if ( servingLatencyTarget > 0 && ServingLatency.getAverage() > servingLatencyTarget )
+        {
+            backoff = Math.min( Math.max( backoff * 2, MIN_BACKOFF ), MAX_BACKOFF );
+        }
+        else
+        {
+            backoff = backoff / 2 < MIN_BACKOFF ? 0 : backoff / 2;
+        }
+    }
+
+    /**
+     * @return the delay currently added to every file because of the serving latency, in milliseconds
+     */
+    public synchronized long getBackoff()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( backoff );
+    }
+
+    /**
+     * Parse profiles like <code>08:00-18:00=10485760/200,18:00-08:00=0/0</code>, where the limits are the bytes and
+     * the files per second, 0 for no limit. A profile ending before it starts spans midnight.
+     *
+     * @throws IllegalArgumentException if a profile is invalid
+     */
+    public static List<Profile> parseProfiles( String value )
+    {
+        List<Profile> profiles = new ArrayList<>();
+        if ( value == null || value.trim().isEmpty() )
+        {
+            return profiles;
+        }
+        for ( String entry : value.split( "," ) )
+        {
+            String[] parts = entry.trim().split( "[-=/]" );
+            if ( parts.length != 4 )
+            {
+                throw new IllegalArgumentException( "Invalid scan throttle profile: " + entry );
+            }
+            try
+            {
+                profiles.add( new Profile( parseMinute( parts[0] ), parseMinute( parts[1] ),
+                                           Long.parseLong( parts[2].trim() ), Long.parseLong( parts[3].trim() ) ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "Invalid scan throttle profile: " + entry, e );
+            }
+        }
+        return profiles;
+    }
+
+    private static int parseMinute( String time )
+    {
+        String[] parts = time.trim().split( ":" );
+        int hour = Integer.parseInt( parts[0] );
+        int minute = parts.length > 1 ? Integer.parseInt( parts[1] ) : 0;
+        if ( parts.length > 2 || hour < 0 || hour > 24 || minute < 0 || minute > 59 )
+        {
+            throw new NumberFormatException( "Invalid time of day: " + time );
+        }
+        return ( hour * 60 + minute ) % ( 24 * 60 );
+    }
+
+    /**
+     * The limits of the scans during a time of day.
+     */
+    public static class Profile
+    {
+        private final int start;
+
+        private final int end;
+
+        private final long maxBytesPerSecond;
+
+        private final long maxFilesPerSecond;
+
+        /**
+         * @param start the minute of the day the profile starts at
+         * @param end   the minute of the day the profile ends at, excluded, the same as the start for the whole day
+         */
+        public Profile( int start, int end, long maxBytesPerSecond, long maxFilesPerSecond )
+        {
+            this.start = start;
+            this.end = end;
+            this.maxBytesPerSecond = maxBytesPerSecond;
+            this.maxFilesPerSecond = maxFilesPerSecond;
+        }
+
+        public boolean matches( int minute )
+        {
+            if ( start < end )
+            {
+                return minute >= start && minute < end;
+            }
+            return start == end || minute >= start || minute < end;
+        }
+
+        public boolean isLimited()
+        {
+            return maxBytesPerSecond > 0 || maxFilesPerSecond > 0;
+        }
+
+        public long getMaxBytesPerSecond()
+        {
+            return maxBytesPerSecond;
+        }
+
+        public long getMaxFilesPerSecond()
+        {
+            return maxFilesPerSecond;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * ServingLatency - the latency of the artifacts served to the clients, measured until the first bytes of the files
+ * are read so that it reflects the load of the disks rather than the bandwidth of the clients. The scans back off
+ * when it rises above a target, see {@link ScanThrottle}.
+ *
+ * @since 2.2.3
+ */
+public final class ServingLatency
+{
+    /**
+     * The time in milliseconds after which the last samples are ignored, as nothing is being served.
+     */
+    private static final long IDLE_TIME = 10000;
+
+    private static final double SAMPLE_WEIGHT = 0.2;
+
+    private static double average;
+
+    private static long lastSampleTime;
+
+    private ServingLatency()
+    {
+        // no op
+    }
+
+    /**
+     * Record the latency of a file served.
+     *
+     * @param latency the time in milliseconds until the first bytes of the file were read
+     */
+    public static synchronized void record( long latency )
+    {
+        long now = System.currentTimeMillis();
+        if ( now - lastSampleTime > IDLE_TIME )
+        {
+            average = latency;
+        }
+        else
+        {
+            average += SAMPLE_WEIGHT * ( latency - average );
+        }
+        lastSampleTime = now;
+    }
+
+    /**
+     * @return the moving average of the latency in milliseconds, 0 if nothing was served recently
+     */
+    public static synchronized long getAverage()
+    {
+        if ( System.currentTimeMillis() - lastSampleTime > IDLE_TIME )
+        {
+            return 0;
+        }
+        return Math.round( average );
+    }
+}
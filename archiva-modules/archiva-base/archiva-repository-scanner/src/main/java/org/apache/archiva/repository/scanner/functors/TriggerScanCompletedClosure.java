@@ -25,6 +25,8 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+
 /**
  * TriggerScanCompletedClosure
  */
@@ -37,6 +39,8 @@
 
     private boolean executeOnEntireRepo = true;
 
+    private Map<String, Long> consumerTimings;
+
     public TriggerScanCompletedClosure( ManagedRepository repository )
     {
         this.repository = repository;
@@ -54,8 +58,24 @@ public void execute( Object input )
         if ( input instanceof RepositoryContentConsumer )
         {
             RepositoryContentConsumer consumer = (RepositoryContentConsumer) input;
+
+            long startTime = System.currentTimeMillis();
             consumer.completeScan( executeOnEntireRepo );
+            long endTime = System.currentTimeMillis();
+
+            // consumers may write what they gathered once the scan completes
+            if ( consumerTimings != null )
+            {
+                Long value = consumerTimings.get( consumer.getId() );
+                consumerTimings.put( consumer.getId(), ( value != null ? value : 0 ) + endTime - startTime );
+            }
+
             log.debug( "Consumer [{}] completed for repository [{}]", consumer.getId(), repository.getId() );
         }
     }
+
+    public void setConsumerTimings( Map<String, Long> consumerTimings )
+    {
+        this.consumerTimings = consumerTimings;
+    }
 }
@@ -201,6 +201,54 @@ public void testTimestampRepositoryScannerFreshScan()
         assertEquals( "Processed Count (of invalid items)", 1, badconsumer.getProcessCount() );
     }
 
+    @Test
+    public void testRepositoryScannerResumedFromCheckpoint()
+        throws Exception
+    {
+        ManagedRepository repository = createSimpleRepository();
+
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<>();
+        KnownScanConsumer consumer = new KnownScanConsumer();
+        consumer.setIncludes( ARTIFACT_PATTERNS );
+        knownConsumers.add( consumer );
+
+        List<InvalidRepositoryContentConsumer> invalidConsumers = new ArrayList<>();
+        InvalidScanConsumer badconsumer = new InvalidScanConsumer();
+        invalidConsumers.add( badconsumer );
+
+        File checkpointDirectory = new File( "target/scan-checkpoints" );
+        File checkpointFile = new File( checkpointDirectory, repository.getId() + ".properties" );
+
+        // the scan was interrupted once the first version was walked
+        ScanCheckpoint checkpoint = new ScanCheckpoint();
+        checkpoint.setRepositoryId( repository.getId() );
+        checkpoint.setChangesSince( RepositoryScanner.FRESH_SCAN );
+        checkpoint.setLastCompletedDirectory( "groupId/artifactId/1.0-alpha-1" );
+        checkpoint.setTotalFileCount( 2 );
+        checkpoint.setNewFileCount( 2 );
+        checkpoint.store( checkpointFile );
+
+        DefaultRepositoryScanner scanner = (DefaultRepositoryScanner) lookupRepositoryScanner();
+        scanner.setCheckpointDirectory( checkpointDirectory );
+        RepositoryScanStatistics stats;
+        try
+        {
+            stats = scanner.scan( repository, knownConsumers, invalidConsumers, getIgnoreList(),
+                                  RepositoryScanner.FRESH_SCAN );
+        }
+        finally
+        {
+            scanner.setCheckpointDirectory( null );
+        }
+
+        assertNotNull( "Stats should not be null.", stats );
+        assertEquals( "Stats.totalFileCount", 4, stats.getTotalFileCount() );
+        assertEquals( "Stats.newFileCount", 4, stats.getNewFileCount() );
+        assertEquals( "Processed Count", 1, consumer.getProcessCount() );
+        assertEquals( "Processed Count (of invalid items)", 1, badconsumer.getProcessCount() );
+        assertFalse( "Checkpoint removed", checkpointFile.exists() );
+    }
+
     @Test
     public void testTimestampRepositoryScannerProcessUnmodified()
         throws Exception
@@ -0,0 +1,86 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ScanThrottleTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ScanThrottleTest
+    extends TestCase
+{
+    @Test
+    public void testParseProfiles()
+    {
+        List<ScanThrottle.Profile> profiles = ScanThrottle.parseProfiles( "08:00-18:00=10485760/200, 22-06=0/50" );
+
+        assertEquals( 2, profiles.size() );
+        ScanThrottle.Profile business = profiles.get( 0 );
+        assertEquals( 10485760, business.getMaxBytesPerSecond() );
+        assertEquals( 200, business.getMaxFilesPerSecond() );
+        assertTrue( business.matches( 8 * 60 ) );
+        assertFalse( business.matches( 18 * 60 ) );
+
+        // spans midnight
+        ScanThrottle.Profile night = profiles.get( 1 );
+        assertTrue( night.matches( 23 * 60 ) );
+        assertTrue( night.matches( 5 * 60 + 59 ) );
+        assertFalse( night.matches( 12 * 60 ) );
+
+        assertTrue( ScanThrottle.parseProfiles( null ).isEmpty() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidProfile()
+    {
+        ScanThrottle.parseProfiles( "08:00-25:00=1/1" );
+    }
+
+    @Test
+    public void testFilesPerSecondLimited()
+        throws Exception
+    {
+        ScanThrottle throttle = new ScanThrottle( 0, 100, Collections.<ScanThrottle.Profile>emptyList(), 0 );
+        assertTrue( throttle.isEnabled() );
+
+        // the first second of budget is available at once, the next 50 files take half a second
+        long start = System.currentTimeMillis();
+        for ( int i = 0; i < 150; i++ )
+        {
+            throttle.acquire( 0 );
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue( "elapsed " + elapsed, elapsed >= 400 );
+    }
+
+    @Test
+    public void testUnlimited()
+    {
+        assertFalse( new ScanThrottle( 0, 0, ScanThrottle.parseProfiles( "00:00-12:00=0/0" ), 0 ).isEnabled() );
+    }
+}
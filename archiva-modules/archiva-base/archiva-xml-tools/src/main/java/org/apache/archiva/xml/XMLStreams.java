@@ -0,0 +1,294 @@
+package org.apache.archiva.xml;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * XMLStreams - common helpers to read and write xml content with StAX, without building a document in memory.
+ * <p>
+ * Readers are namespace tolerant when elements are matched by their local name, and resolve the latin entities
+ * (eg. <code>&amp;eacute;</code>) that some legacy files contain without declaring them, like
+ * {@link LatinEntityResolutionReader} does for the DOM based {@link XMLReader}.
+ * </p>
+ *
+ * @since 2.2.3
+ */
+public final class XMLStreams
+{
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private XMLStreams()
+    {
+        // no op
+    }
+
+    private static XMLInputFactory createInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+        // undeclared entities are reported as entity references and resolved in readElementText
+        factory.setProperty( XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        return factory;
+    }
+
+    /**
+     * Create a stream reader positioned on the root element, checking that it is the expected one.
+     *
+     * @param type   the expected name of the root element
+     * @param reader the content to read
+     * @return the stream reader, on the start of the root element
+     * @throws XMLException if the content can't be parsed or the root element isn't the expected one
+     */
+    public static XMLStreamReader createReader( String type, Reader reader )
+        throws XMLException
+    {
+        try
+        {
+            XMLStreamReader xml = INPUT_FACTORY.createXMLStreamReader( reader );
+            while ( xml.hasNext() && xml.next() != XMLStreamConstants.START_ELEMENT )
+            {
+                // skip prolog, comments and processing instructions
+            }
+            if ( !xml.isStartElement() )
+            {
+                throw new XMLException( "Invalid " + type + " xml: root element is null." );
+            }
+            if ( !type.equals( xml.getLocalName() ) )
+            {
+                throw new XMLException(
+                    "Invalid " + type + " xml: Unexpected root element <" + xml.getLocalName() + ">, expected <"
+                        + type + ">" );
+            }
+            return xml;
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new XMLException( "Unable to parse " + type + " xml: " + e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Create a stream writer on the provided writer, the writer is left open when the stream writer is closed.
+     */
+    public static XMLStreamWriter createWriter( Writer writer )
+        throws XMLException
+    {
+        try
+        {
+            return OUTPUT_FACTORY.createXMLStreamWriter( writer );
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new XMLException( "Unable to create xml writer: " + e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Read the normalized text content of the current element, ignoring the text of any child element. The reader is
+     * left on the end of the current element.
+     *
+     * @param xml the reader, on the start of an element
+     * @return the trimmed text, an empty string if the element has no text
+     */
+    public static String readElementText( XMLStreamReader xml )
+        throws XMLStreamException
+    {
+        String text = null;
+        StringBuilder buffer = null;
+        int depth = 1;
+        while ( depth > 0 )
+        {
+            int event = xml.next();
+            String chunk = null;
+            switch ( event )
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if ( depth == 1 )
+                    {
+                        chunk = xml.getText();
+                    }
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if ( depth == 1 )
+                    {
+                        chunk = resolveEntity( xml );
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if ( chunk != null )
+            {
+                // most elements have a single text event, only buffer when there are more
+                if ( text == null )
+                {
+                    text = chunk;
+                }
+                else
+                {
+                    if ( buffer == null )
+                    {
+                        buffer = new StringBuilder( text );
+                    }
+                    buffer.append( chunk );
+                }
+            }
+        }
+        if ( buffer != null )
+        {
+            text = buffer.toString();
+        }
+        return text == null ? "" : normalize( text );
+    }
+
+    /**
+     * Trim the text and collapse internal whitespace to single spaces, as dom4j <code>getTextTrim()</code> does.
+     * The text is returned as is when there is nothing to change, which is by far the most common case.
+     */
+    private static String normalize( String text )
+    {
+        int length = text.length();
+        boolean clean = length == 0 || ( !Character.isWhitespace( text.charAt( 0 ) )
+            && !Character.isWhitespace( text.charAt( length - 1 ) ) );
+        for ( int i = 1; clean && i < length; i++ )
+        {
+            char c = text.charAt( i );
+            clean = !Character.isWhitespace( c ) || ( c == ' ' && text.charAt( i - 1 ) != ' ' );
+        }
+        if ( clean )
+        {
+            return text;
+        }
+        StringBuilder normalized = new StringBuilder( length );
+        boolean pendingSpace = false;
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = text.charAt( i );
+            if ( Character.isWhitespace( c ) )
+            {
+                pendingSpace = normalized.length() > 0;
+            }
+            else
+            {
+                if ( pendingSpace )
+                {
+                    normalized.append( ' ' );
+                    pendingSpace = false;
+                }
+                normalized.append( c );
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Skip the current element and all its content. The reader is left on the end of the element.
+     *
+     * @param xml the reader, on the start of an element
+     */
+    public static void skipElement( XMLStreamReader xml )
+        throws XMLStreamException
+    {
+        int depth = 1;
+        while ( depth > 0 )
+        {
+            int event = xml.next();
+            if ( event == XMLStreamConstants.START_ELEMENT )
+            {
+                depth++;
+            }
+            else if ( event == XMLStreamConstants.END_ELEMENT )
+            {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Move to the next child element of the current element.
+     *
+     * @param xml the reader, inside an element
+     * @return <code>true</code> if the reader is on the start of a child element, <code>false</code> if it is on
+     *         the end of the current element
+     */
+    public static boolean nextChildElement( XMLStreamReader xml )
+        throws XMLStreamException
+    {
+        while ( xml.hasNext() )
+        {
+            int event = xml.next();
+            if ( event == XMLStreamConstants.START_ELEMENT )
+            {
+                return true;
+            }
+            if ( event == XMLStreamConstants.END_ELEMENT )
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public static void closeQuietly( XMLStreamReader xml )
+    {
+        if ( xml != null )
+        {
+            try
+            {
+                xml.close();
+            }
+            catch ( XMLStreamException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    private static String resolveEntity( XMLStreamReader xml )
+    {
+        String replacement = xml.getText();
+        if ( replacement != null && !replacement.isEmpty() )
+        {
+            return replacement;
+        }
+        return LatinEntities.resolveEntity( "&" + xml.getLocalName() + ";" );
+    }
+}
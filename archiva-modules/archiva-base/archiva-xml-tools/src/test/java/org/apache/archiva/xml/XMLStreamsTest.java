@@ -0,0 +1,120 @@
+package org.apache.archiva.xml;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * XMLStreamsTest
+ */
+public class XMLStreamsTest
+    extends AbstractArchivaXmlTestCase
+{
+    private List<String> readNames( Reader reader )
+        throws XMLException, XMLStreamException
+    {
+        List<String> names = new ArrayList<>();
+        XMLStreamReader xml = XMLStreams.createReader( "basic", reader );
+        try
+        {
+            while ( XMLStreams.nextChildElement( xml ) )
+            {
+                if ( !"names".equals( xml.getLocalName() ) )
+                {
+                    XMLStreams.skipElement( xml );
+                    continue;
+                }
+                while ( XMLStreams.nextChildElement( xml ) )
+                {
+                    names.add( XMLStreams.readElementText( xml ) );
+                }
+            }
+        }
+        finally
+        {
+            XMLStreams.closeQuietly( xml );
+        }
+        return names;
+    }
+
+    private Reader openExampleXml( String filename )
+        throws IOException
+    {
+        return new InputStreamReader( new FileInputStream( getExampleXml( filename ) ), StandardCharsets.UTF_8 );
+    }
+
+    @Test
+    public void testLatinEntities()
+        throws Exception
+    {
+        try (Reader reader = openExampleXml( "no-prolog-with-entities.xml" ))
+        {
+            assertEquals( Arrays.asList( TRYGVIS, INFINITE_ARCHIVA ), readNames( reader ) );
+        }
+    }
+
+    @Test
+    public void testUtf8()
+        throws Exception
+    {
+        try (Reader reader = openExampleXml( "prolog-with-utf8.xml" ))
+        {
+            assertEquals( Arrays.asList( TRYGVIS, INFINITE_ARCHIVA ), readNames( reader ) );
+        }
+    }
+
+    @Test
+    public void testNamespacesAndWhitespace()
+        throws Exception
+    {
+        String content = "<b:basic xmlns:b=\"urn:basic\"><b:names><b:name>  The \n\t Archiva </b:name>"
+            + "<b:name><![CDATA[a]]>&amp;<ignored>text</ignored>b</b:name><b:name/></b:names></b:basic>";
+
+        assertEquals( Arrays.asList( "The Archiva", "a&b", "" ), readNames( new StringReader( content ) ) );
+    }
+
+    @Test
+    public void testUnexpectedRootElement()
+        throws Exception
+    {
+        try
+        {
+            readNames( new StringReader( "<other/>" ) );
+            fail( "Should have failed on the root element" );
+        }
+        catch ( XMLException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "<other>" ) );
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package org.apache.archiva.scheduler;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.taskqueue.Task;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * TaskJournal - an append-only journal of the tasks of a queue, so that the tasks queued and not completed yet can be
+ * queued again when the application is restarted.
+ * <p>
+ * Each queued task is appended to the journal with a sequence number, and the completed or removed tasks are
+ * recorded by appending their sequence number. The journal is compacted when it is opened and once the records of
+ * the completed tasks outnumber the pending tasks: the pending tasks are written to a new file, synced to the disk,
+ * which then atomically replaces the journal.
+ * <p>
+ * Each record is framed by its length and its CRC32, as the log of the key value store of the metadata: the journal
+ * is read up to the first record left incomplete or corrupted by a crash, the records after it being discarded. A
+ * journal written by an earlier version, one record per line, is read as such and rewritten with framed records when
+ * compacted.
+ * <p>
+ * The records are flushed to the operating system as they are appended, so they survive a crash of the application
+ * but not necessarily of the system.
+ */
+public class TaskJournal<T extends Task>
+{
+    private static final String ENCODING = "UTF-8";
+
+    private static final char ADDED = '+';
+
+    private static final char REMOVED = '-';
+
+    /**
+     * The length and the CRC32 of a record.
+     */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * Converts the tasks to and from the single line they are recorded with.
+     */
+    public interface TaskCodec<T>
+    {
+        /**
+         * @return the task as a single line, see {@link TaskJournal#join(String...)}
+         */
+        String encode( T task );
+
+        /**
+         * @return the task, or <code>null</code> if it can't be queued again
+         */
+        T decode( String value );
+    }
+
+    private final File file;
+
+    private final TaskCodec<T> codec;
+
+    private final int minCompactionRecords;
+
+    private OutputStream out;
+
+    private long nextId = 1;
+
+    /**
+     * The pending tasks by sequence number, in the order they were queued.
+     */
+    private final Map<Long, T> pendingTasks = new LinkedHashMap<>();
+
+    /**
+     * The sequence numbers of the pending tasks by task, the sequence numbers of equal tasks in the order they were
+     * queued.
+     */
+    private final Map<T, Deque<Long>> ids = new HashMap<>();
+
+    private int removedRecords;
+
+    public TaskJournal( File file, TaskCodec<T> codec )
+    {
+        this( file, codec, 1000 );
+    }
+
+    /**
+     * @param minCompactionRecords the number of records of completed tasks below which the journal is never compacted
+     */
+    public TaskJournal( File file, TaskCodec<T> codec, int minCompactionRecords )
+    {
+        this.file = file;
+        this.codec = codec;
+        this.minCompactionRecords = minCompactionRecords;
+    }
+
+    /**
+     * Open the journal, reading the tasks pending when it was last closed and compacting it.
+     *
+     * @return the pending tasks, in the order they were queued
+     */
+    public synchronized List<T> open()
+        throws IOException
+    {
+        pendingTasks.clear();
+        ids.clear();
+        nextId = 1;
+
+        if ( file.exists() )
+        {
+            Map<Long, String> records = new LinkedHashMap<>();
+            readRecords( records );
+            for ( Map.Entry<Long, String> record : records.entrySet() )
+            {
+                T task;
+                try
+                {
+                    task = codec.decode( record.getValue() );
+                }
+                catch ( IllegalArgumentException e )
+                {
+                    // record of another version
+                    task = null;
+                }
+                if ( task != null )
+                {
+                    pendingTasks.put( record.getKey(), task );
+                    addId( task, record.getKey() );
+                }
+            }
+        }
+        else
+        {
+            file.getParentFile().mkdirs();
+        }
+
+        compact();
+        return new ArrayList<>( pendingTasks.values() );
+    }
+
+    /**
+     * Read the records of the journal up to the first one that was not completely written.
+     */
+    private void readRecords( Map<Long, String> records )
+        throws IOException
+    {
+        if ( isLineFormat() )
+        {
+            readLines( records );
+            return;
+        }
+
+        long length = file.length();
+        long position = 0;
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) )
+        {
+            while ( position + RECORD_HEADER_LENGTH <= length )
+            {
+                int recordLength = in.readInt();
+                int checksum = in.readInt();
+                if ( recordLength < 0 || position + RECORD_HEADER_LENGTH + recordLength > length )
+                {
+                    break;
+                }
+                byte[] record = new byte[recordLength];
+                in.readFully( record );
+                CRC32 crc = new CRC32();
+                crc.update( record );
+                if ( (int) crc.getValue() != checksum )
+                {
+                    break;
+                }
+                readRecord( new String( record, ENCODING ), records );
+                position += RECORD_HEADER_LENGTH + recordLength;
+            }
+        }
+        catch ( EOFException e )
+        {
+            // a record not completely written
+        }
+        // the records after the position are discarded by the compaction
+    }
+
+    /**
+     * @return <code>true</code> if the journal was written one record per line: its first byte is then the type of a
+     *         record, while the first byte of a framed record is the high byte of its length
+     */
+    private boolean isLineFormat()
+        throws IOException
+    {
+        try ( FileInputStream in = new FileInputStream( file ) )
+        {
+            int first = in.read();
+            return first == ADDED || first == REMOVED;
+        }
+    }
+
+    private void readLines( Map<Long, String> records )
+        throws IOException
+    {
+        try ( BufferedReader reader = new BufferedReader(
+            new InputStreamReader( new FileInputStream( file ), ENCODING ) ) )
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                readRecord( line, records );
+            }
+        }
+    }
+
+    private void readRecord( String line, Map<Long, String> records )
+    {
+        if ( line.length() < 2 )
+        {
+            return;
+        }
+        int separator = line.indexOf( ' ' );
+        try
+        {
+            long id = Long.parseLong( line.substring( 1, separator < 0 ? line.length() : separator ) );
+            nextId = Math.max( nextId, id + 1 );
+            if ( line.charAt( 0 ) == ADDED && separator > 0 )
+            {
+                records.put( id, line.substring( separator + 1 ) );
+            }
+            else if ( line.charAt( 0 ) == REMOVED )
+            {
+                records.remove( id );
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            // record of another version
+        }
+    }
+
+    /**
+     * Record a queued task.
+     */
+    public synchronized void added( T task )
+        throws IOException
+    {
+        checkOpen();
+        long id = nextId++;
+        pendingTasks.put( id, task );
+        addId( task, id );
+        append( ADDED + Long.toString( id ) + ' ' + codec.encode( task ) );
+    }
+
+    /**
+     * Record a completed or removed task, the same instance as the queued task or an equal task.
+     */
+    public synchronized void removed( T task )
+        throws IOException
+    {
+        checkOpen();
+        Long id = removeId( task );
+        if ( id == null )
+        {
+            return;
+        }
+        pendingTasks.remove( id );
+        append( REMOVED + Long.toString( id ) );
+        removedRecords++;
+
+        if ( removedRecords >= minCompactionRecords && removedRecords > pendingTasks.size() )
+        {
+            compact();
+        }
+    }
+
+    private void addId( T task, Long id )
+    {
+        Deque<Long> taskIds = ids.get( task );
+        if ( taskIds == null )
+        {
+            taskIds = new ArrayDeque<>( 1 );
+            ids.put( task, taskIds );
+        }
+        taskIds.add( id );
+    }
+
+    /**
+     * @return the sequence number of the first pending task equal to the task, <code>null</code> if there is none
+     */
+    private Long removeId( T task )
+    {
+        Deque<Long> taskIds = ids.get( task );
+        if ( taskIds == null )
+        {
+            return null;
+        }
+        Long id = taskIds.poll();
+        if ( taskIds.isEmpty() )
+        {
+            ids.remove( task );
+        }
+        return id;
+    }
+
+    /**
+     * @return the number of pending tasks
+     */
+    public synchronized int size()
+    {
+        return pendingTasks.size();
+    }
+
+    public synchronized void close()
+        throws IOException
+    {
+        if ( out != null )
+        {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Replace the journal with the records of the pending tasks only.
+     */
+    private void compact()
+        throws IOException
+    {
+        close();
+
+        File compacted = new File( file.getParentFile(), file.getName() + ".tmp" );
+        try ( FileOutputStream compactedOut = new FileOutputStream( compacted ) )
+        {
+            OutputStream bufferedOut = new BufferedOutputStream( compactedOut );
+            for ( Map.Entry<Long, T> entry : pendingTasks.entrySet() )
+            {
+                bufferedOut.write(
+                    frame( ADDED + Long.toString( entry.getKey() ) + ' ' + codec.encode( entry.getValue() ) ) );
+            }
+            bufferedOut.flush();
+            compactedOut.getFD().sync();
+        }
+        try
+        {
+            Files.move( compacted.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            Files.move( compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        removedRecords = 0;
+
+        out = new FileOutputStream( file, true );
+    }
+
+    private void append( String record )
+        throws IOException
+    {
+        // a single write, so that a crash leaves at most the last record incomplete
+        out.write( frame( record ) );
+    }
+
+    /**
+     * @return the record preceded by its length and its CRC32
+     */
+    private static byte[] frame( String record )
+        throws UnsupportedEncodingException
+    {
+        byte[] bytes = record.getBytes( ENCODING );
+        CRC32 crc = new CRC32();
+        crc.update( bytes );
+        ByteBuffer buffer = ByteBuffer.allocate( RECORD_HEADER_LENGTH + bytes.length );
+        buffer.putInt( bytes.length ).putInt( (int) crc.getValue() ).put( bytes );
+        return buffer.array();
+    }
+
+    private void checkOpen()
+        throws IOException
+    {
+        if ( out == null )
+        {
+            throw new IOException( "The task journal " + file + " is not open" );
+        }
+    }
+
+    /**
+     * Join fields into a single line, any field can be <code>null</code>.
+     */
+    public static String join( String... fields )
+    {
+        try
+        {
+            StringBuilder value = new StringBuilder();
+            for ( String field : fields )
+            {
+                if ( value.length() > 0 )
+                {
+                    value.append( ' ' );
+                }
+                // no field is encoded as nothing or a single %
+                value.append( field == null ? "" : field.isEmpty() ? "%" : URLEncoder.encode( field, ENCODING ) );
+            }
+            return value.toString();
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Split a line joined by {@link #join(String...)} into its fields.
+     */
+    public static String[] split( String value )
+    {
+        try
+        {
+            String[] fields = value.split( " ", -1 );
+            for ( int i = 0; i < fields.length; i++ )
+            {
+                fields[i] = fields[i].isEmpty()
+                    ? null
+                    : "%".equals( fields[i] ) ? "" : URLDecoder.decode( fields[i], ENCODING );
+            }
+            return fields;
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
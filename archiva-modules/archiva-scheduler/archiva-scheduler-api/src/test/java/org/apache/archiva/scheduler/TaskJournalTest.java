@@ -0,0 +1,252 @@
+package org.apache.archiva.scheduler;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.components.taskqueue.Task;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test the recording of the pending tasks by {@link TaskJournal}.
+ */
+public class TaskJournalTest
+    extends TestCase
+{
+    private File file;
+
+    private TaskJournal<TestTask> journal;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        file = new File( "target/test-journal/test.journal" );
+        file.delete();
+        journal = new TaskJournal<>( file, new TestTaskCodec(), 2 );
+        assertEquals( Collections.emptyList(), journal.open() );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        journal.close();
+
+        super.tearDown();
+    }
+
+    @Test
+    public void testPendingTasksReopened()
+        throws Exception
+    {
+        journal.added( new TestTask( "a" ) );
+        journal.added( new TestTask( "b" ) );
+        journal.added( new TestTask( "c" ) );
+        journal.removed( new TestTask( "b" ) );
+
+        assertEquals( Arrays.asList( new TestTask( "a" ), new TestTask( "c" ) ), reopen() );
+        assertEquals( 2, journal.size() );
+    }
+
+    @Test
+    public void testEqualTasksRemovedOldestFirst()
+        throws Exception
+    {
+        journal.added( new TestTask( "a" ) );
+        journal.added( new TestTask( "b" ) );
+        journal.added( new TestTask( "a" ) );
+        journal.removed( new TestTask( "a" ) );
+        journal.removed( new TestTask( "unknown" ) );
+
+        assertEquals( Arrays.asList( new TestTask( "b" ), new TestTask( "a" ) ), reopen() );
+
+        journal.removed( new TestTask( "a" ) );
+        journal.removed( new TestTask( "a" ) );
+        assertEquals( Collections.singletonList( new TestTask( "b" ) ), reopen() );
+    }
+
+    @Test
+    public void testCompaction()
+        throws Exception
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            journal.added( new TestTask( "task" + i ) );
+        }
+        long length = file.length();
+        for ( int i = 0; i < 9; i++ )
+        {
+            journal.removed( new TestTask( "task" + i ) );
+        }
+
+        assertTrue( file.length() < length );
+        assertEquals( Collections.singletonList( new TestTask( "task9" ) ), reopen() );
+    }
+
+    @Test
+    public void testIncompleteRecordDiscarded()
+        throws Exception
+    {
+        journal.added( new TestTask( "a" ) );
+        journal.added( new TestTask( "b" ) );
+        journal.close();
+
+        // the last record cut by a crash
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.setLength( raf.length() - 1 );
+        }
+
+        assertEquals( Collections.singletonList( new TestTask( "a" ) ), journal.open() );
+
+        // the incomplete record doesn't hide the records appended after it
+        journal.added( new TestTask( "c" ) );
+        assertEquals( Arrays.asList( new TestTask( "a" ), new TestTask( "c" ) ), reopen() );
+    }
+
+    @Test
+    public void testCorruptedRecordDiscarded()
+        throws Exception
+    {
+        journal.added( new TestTask( "a" ) );
+        long length = file.length();
+        journal.added( new TestTask( "b" ) );
+        journal.added( new TestTask( "c" ) );
+        journal.close();
+
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.seek( raf.length() - 1 - ( raf.length() - length ) / 2 );
+            raf.write( 'x' );
+        }
+
+        assertEquals( Collections.singletonList( new TestTask( "a" ) ), journal.open() );
+    }
+
+    @Test
+    public void testGarbageDiscarded()
+        throws Exception
+    {
+        journal.added( new TestTask( "a" ) );
+        journal.close();
+
+        try ( FileOutputStream out = new FileOutputStream( file, true ) )
+        {
+            out.write( new byte[]{ 0x7f, 0, 0, 0, 1, 2, 3, 4, '+', '2' } );
+        }
+
+        assertEquals( Collections.singletonList( new TestTask( "a" ) ), journal.open() );
+    }
+
+    @Test
+    public void testLineFormatJournalMigrated()
+        throws Exception
+    {
+        journal.close();
+        // as written by the earlier versions
+        try ( FileOutputStream out = new FileOutputStream( file ) )
+        {
+            out.write( "+1 a\n+2 b\n-1\n+3 c\n".getBytes( "UTF-8" ) );
+        }
+
+        assertEquals( Arrays.asList( new TestTask( "b" ), new TestTask( "c" ) ), journal.open() );
+        // rewritten with framed records, the first byte being the high byte of the length of the first one
+        try ( FileInputStream in = new FileInputStream( file ) )
+        {
+            assertEquals( 0, in.read() );
+        }
+
+        journal.added( new TestTask( "d" ) );
+        journal.removed( new TestTask( "b" ) );
+        assertEquals( Arrays.asList( new TestTask( "c" ), new TestTask( "d" ) ), reopen() );
+    }
+
+    private List<TestTask> reopen()
+        throws Exception
+    {
+        journal.close();
+        return journal.open();
+    }
+
+    private static class TestTask
+        implements Task
+    {
+        private final String name;
+
+        TestTask( String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public long getMaxExecutionTime()
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            return o instanceof TestTask && name.equals( ( (TestTask) o ).name );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    private static class TestTaskCodec
+        implements TaskJournal.TaskCodec<TestTask>
+    {
+        @Override
+        public String encode( TestTask task )
+        {
+            return TaskJournal.join( task.name );
+        }
+
+        @Override
+        public TestTask decode( String value )
+        {
+            return new TestTask( TaskJournal.split( value )[0] );
+        }
+    }
+}
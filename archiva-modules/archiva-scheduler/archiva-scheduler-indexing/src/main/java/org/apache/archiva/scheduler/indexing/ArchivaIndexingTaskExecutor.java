@@ -28,16 +28,10 @@
 import org.apache.archiva.redback.components.taskqueue.Task;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutor;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
 import org.apache.maven.index.ArtifactContext;
 import org.apache.maven.index.ArtifactContextProducer;
-import org.apache.maven.index.FlatSearchRequest;
-import org.apache.maven.index.FlatSearchResponse;
-import org.apache.maven.index.MAVEN;
 import org.apache.maven.index.NexusIndexer;
 import org.apache.maven.index.context.IndexingContext;
-import org.apache.maven.index.expr.SourcedSearchExpression;
 import org.apache.maven.index.packer.IndexPacker;
 import org.apache.maven.index.packer.IndexPackingRequest;
 import org.slf4j.Logger;
@@ -48,6 +42,11 @@
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * ArchivaIndexingTaskExecutor Executes all indexing tasks. Adding, updating and removing artifacts from the index are
@@ -98,31 +97,61 @@ public void initialize()
     public void executeTask( Task task )
         throws TaskExecutionException
     {
-        ArtifactIndexingTask indexingTask = (ArtifactIndexingTask) task;
+        executeTasks( Collections.singletonList( (ArtifactIndexingTask) task ) );
+    }
 
-        ManagedRepository repository = indexingTask.getRepository();
-        IndexingContext context = indexingTask.getContext();
+    /**
+     * Execute indexing tasks in order, adding or removing the artifacts of the consecutive tasks of the same action on
+     * the same indexing context at once, with a single commit, and finishing the indexing contexts of the tasks not
+     * part of a repository scan once all the tasks are executed.
+     *
+     * @param tasks the tasks to execute
+     * @throws TaskExecutionException for the first task that failed, once all the other tasks are executed
+     */
+    public void executeTasks( List<ArtifactIndexingTask> tasks )
+        throws TaskExecutionException
+    {
+        TaskExecutionException failure = null;
+
+        // artifacts of the consecutive tasks of the same action on the same context, not indexed yet
+        ArtifactIndexingTask batchTask = null;
+        IndexingContext batchContext = null;
+        List<ArtifactContext> batch = new ArrayList<>();
 
-        if ( ArtifactIndexingTask.Action.FINISH.equals( indexingTask.getAction() )
-            && indexingTask.isExecuteOnEntireRepo() )
+        // contexts to finish once the tasks are executed, for the tasks not part of a repository scan
+        Map<IndexingContext, ArtifactIndexingTask> contextsToFinish = new LinkedHashMap<>();
+
+        for ( ArtifactIndexingTask indexingTask : tasks )
         {
-            try
-            {
-                long start = System.currentTimeMillis();
-                nexusIndexer.scan( context, null, indexingTask.isOnlyUpdate() );
-                long end = System.currentTimeMillis();
-                log.info( "indexed maven repository: {}, onlyUpdate: {}, time {} ms", repository.getId(),
-                          indexingTask.isOnlyUpdate(), ( end - start ) );
-            }
-            catch ( IOException e )
+            ManagedRepository repository = indexingTask.getRepository();
+            IndexingContext context = indexingTask.getContext();
+
+            if ( ArtifactIndexingTask.Action.FINISH.equals( indexingTask.getAction() )
+                && indexingTask.isExecuteOnEntireRepo() )
             {
-                throw new TaskExecutionException( "Error scan repository " + repository, e );
+                failure = indexBatch( batchTask, batchContext, batch, failure );
+                try
+                {
+                    long start = System.currentTimeMillis();
+                    nexusIndexer.scan( context, null, indexingTask.isOnlyUpdate() );
+                    long end = System.currentTimeMillis();
+                    log.info( "indexed maven repository: {}, onlyUpdate: {}, time {} ms", repository.getId(),
+                              indexingTask.isOnlyUpdate(), ( end - start ) );
+                    log.debug( "Finishing indexing task on repo: {}", repository.getId() );
+                    finishIndexingTask( indexingTask, repository, context );
+                }
+                catch ( IOException e )
+                {
+                    failure = firstFailure( failure,
+                                            new TaskExecutionException( "Error scan repository " + repository, e ) );
+                }
+                catch ( TaskExecutionException e )
+                {
+                    failure = firstFailure( failure, e );
+                }
+                continue;
             }
-            log.debug( "Finishing indexing task on repo: {}", repository.getId() );
-            finishIndexingTask( indexingTask, repository, context );
-        }
-        else
-        {
+
             // create context if not a repo scan request
             if ( !indexingTask.isExecuteOnEntireRepo() )
             {
@@ -136,104 +165,126 @@ public void executeTask( Task task )
                 catch ( RepositoryAdminException e )
                 {
                     log.error( "Error occurred while creating context: " + e.getMessage() );
-                    throw new TaskExecutionException( "Error occurred while creating context: " + e.getMessage(), e );
+                    failure = firstFailure( failure, new TaskExecutionException(
+                        "Error occurred while creating context: " + e.getMessage(), e ) );
+                    continue;
                 }
             }
 
             if ( context == null || context.getIndexDirectory() == null )
             {
-                throw new TaskExecutionException( "Trying to index an artifact but the context is already closed" );
+                failure = firstFailure( failure, new TaskExecutionException(
+                    "Trying to index an artifact but the context is already closed" ) );
+                continue;
             }
 
-            try
+            File artifactFile = indexingTask.getResourceFile();
+            if ( artifactFile == null )
             {
-                File artifactFile = indexingTask.getResourceFile();
-                if ( artifactFile == null )
-                {
-                    log.debug( "no artifact pass in indexing task so skip it" );
-                }
-                else
+                log.debug( "no artifact pass in indexing task so skip it" );
+            }
+            else
+            {
+                ArtifactContext ac = artifactContextProducer.getArtifactContext( context, artifactFile );
+
+                if ( ac != null )
                 {
-                    ArtifactContext ac = artifactContextProducer.getArtifactContext( context, artifactFile );
+                    // MRM-1779 pom must be indexed too
+                    // TODO make that configurable?
+                    if ( artifactFile.getPath().endsWith( ".pom" ) )
+                    {
+                        ac.getArtifactInfo().fextension = "pom";
+                        ac.getArtifactInfo().packaging = "pom";
+                        ac.getArtifactInfo().classifier = "pom";
+                    }
 
-                    if ( ac != null )
+                    if ( batchTask != null && ( batchContext != context
+                        || !batchTask.getAction().equals( indexingTask.getAction() ) ) )
                     {
-                        // MRM-1779 pom must be indexed too
-                        // TODO make that configurable?
-                        if ( artifactFile.getPath().endsWith( ".pom" ) )
-                        {
-                            ac.getArtifactInfo().fextension = "pom";
-                            ac.getArtifactInfo().packaging = "pom";
-                            ac.getArtifactInfo().classifier = "pom";
-                        }
-                        if ( indexingTask.getAction().equals( ArtifactIndexingTask.Action.ADD ) )
-                        {
-                            //IndexSearcher s = context.getIndexSearcher();
-                            //String uinfo = ac.getArtifactInfo().getUinfo();
-                            //TopDocs d = s.search( new TermQuery( new Term( ArtifactInfo.UINFO, uinfo ) ), 1 );
-
-                            BooleanQuery q = new BooleanQuery();
-                            q.add( nexusIndexer.constructQuery( MAVEN.GROUP_ID, new SourcedSearchExpression(
-                                ac.getArtifactInfo().groupId ) ), BooleanClause.Occur.MUST );
-                            q.add( nexusIndexer.constructQuery( MAVEN.ARTIFACT_ID, new SourcedSearchExpression(
-                                ac.getArtifactInfo().artifactId ) ), BooleanClause.Occur.MUST );
-                            q.add( nexusIndexer.constructQuery( MAVEN.VERSION, new SourcedSearchExpression(
-                                ac.getArtifactInfo().version ) ), BooleanClause.Occur.MUST );
-                            if ( ac.getArtifactInfo().classifier != null )
-                            {
-                                q.add( nexusIndexer.constructQuery( MAVEN.CLASSIFIER, new SourcedSearchExpression(
-                                    ac.getArtifactInfo().classifier ) ), BooleanClause.Occur.MUST );
-                            }
-                            if ( ac.getArtifactInfo().packaging != null )
-                            {
-                                q.add( nexusIndexer.constructQuery( MAVEN.PACKAGING, new SourcedSearchExpression(
-                                    ac.getArtifactInfo().packaging ) ), BooleanClause.Occur.MUST );
-                            }
-                            FlatSearchRequest flatSearchRequest = new FlatSearchRequest( q, context );
-                            FlatSearchResponse flatSearchResponse = nexusIndexer.searchFlat( flatSearchRequest );
-                            if ( flatSearchResponse.getResults().isEmpty() )
-                            {
-                                log.debug( "Adding artifact '{}' to index..", ac.getArtifactInfo() );
-                                nexusIndexer.addArtifactToIndex( ac, context );
-                            }
-                            else
-                            {
-                                log.debug( "Updating artifact '{}' in index..", ac.getArtifactInfo() );
-                                // TODO check if update exists !!
-                                nexusIndexer.deleteArtifactFromIndex( ac, context );
-                                nexusIndexer.addArtifactToIndex( ac, context );
-                            }
-
-                            context.updateTimestamp();
-                            context.commit();
-
-
-                        }
-                        else
-                        {
-                            log.debug( "Removing artifact '{}' from index..", ac.getArtifactInfo() );
-                            nexusIndexer.deleteArtifactFromIndex( ac, context );
-                        }
+                        failure = indexBatch( batchTask, batchContext, batch, failure );
                     }
+                    batchTask = indexingTask;
+                    batchContext = context;
+                    batch.add( ac );
                 }
-                // close the context if not a repo scan request
-                if ( !indexingTask.isExecuteOnEntireRepo() )
-                {
-                    log.debug( "Finishing indexing task on resource file : {}", indexingTask.getResourceFile() != null
-                        ? indexingTask.getResourceFile().getPath()
-                        : " none " );
-                    finishIndexingTask( indexingTask, repository, context );
-                }
             }
-            catch ( IOException e )
+
+            // close the context if not a repo scan request
+            if ( !indexingTask.isExecuteOnEntireRepo() )
+            {
+                contextsToFinish.put( context, indexingTask );
+            }
+        }
+
+        failure = indexBatch( batchTask, batchContext, batch, failure );
+
+        for ( Map.Entry<IndexingContext, ArtifactIndexingTask> entry : contextsToFinish.entrySet() )
+        {
+            ArtifactIndexingTask indexingTask = entry.getValue();
+            log.debug( "Finishing indexing task on resource file : {}", indexingTask.getResourceFile() != null
+                ? indexingTask.getResourceFile().getPath()
+                : " none " );
+            try
+            {
+                finishIndexingTask( indexingTask, indexingTask.getRepository(), entry.getKey() );
+            }
+            catch ( TaskExecutionException e )
+            {
+                failure = firstFailure( failure, e );
+            }
+        }
+
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Add or remove the artifacts of a batch of tasks at once. The artifacts are added with their UINFO term, which
+     * replaces the document of an artifact already indexed without having to look for it first.
+     *
+     * @return the first failure of the tasks executed so far
+     */
+    private TaskExecutionException indexBatch( ArtifactIndexingTask batchTask, IndexingContext context,
+                                               List<ArtifactContext> batch, TaskExecutionException failure )
+    {
+        if ( batch.isEmpty() )
+        {
+            return failure;
+        }
+        try
+        {
+            if ( ArtifactIndexingTask.Action.ADD.equals( batchTask.getAction() ) )
+            {
+                log.debug( "Adding or updating {} artifacts in index {}..", batch.size(), context.getId() );
+                context.updateTimestamp();
+                // one commit for the whole batch
+                nexusIndexer.addArtifactsToIndex( batch, context );
+            }
+            else
             {
-                log.error( "Error occurred while executing indexing task '" + indexingTask + "': " + e.getMessage(),
-                           e );
-                throw new TaskExecutionException( "Error occurred while executing indexing task '" + indexingTask + "'",
-                                                  e );
+                log.debug( "Removing {} artifacts from index {}..", batch.size(), context.getId() );
+                nexusIndexer.deleteArtifactsFromIndex( batch, context );
             }
+            return failure;
+        }
+        catch ( IOException e )
+        {
+            log.error( "Error occurred while executing indexing task '" + batchTask + "': " + e.getMessage(), e );
+            return firstFailure( failure, new TaskExecutionException(
+                "Error occurred while executing indexing task '" + batchTask + "'", e ) );
         }
+        finally
+        {
+            batch.clear();
+        }
+    }
 
+    private static TaskExecutionException firstFailure( TaskExecutionException failure,
+                                                        TaskExecutionException e )
+    {
+        return failure != null ? failure : e;
     }
 
     private void finishIndexingTask( ArtifactIndexingTask indexingTask, ManagedRepository repository,
@@ -0,0 +1,259 @@
+package org.apache.archiva.scheduler.indexing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.admin.model.RepositoryAdminException;
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
+import org.apache.archiva.redback.components.taskqueue.DefaultTaskQueue;
+import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.scheduler.TaskJournal;
+import org.apache.maven.index.context.IndexingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * IndexingTaskQueue - the queue of the indexing tasks.
+ * <p>
+ * When the <code>archiva.taskQueue.journalDirectory</code> system property is set, the tasks are recorded in a
+ * {@link TaskJournal} until {@link #tasksCompleted(List)} is called for them, and the tasks not completed when the
+ * application stopped are queued again when it starts, with the indexing context of their repository.
+ */
+public class IndexingTaskQueue
+    extends DefaultTaskQueue<ArtifactIndexingTask>
+{
+    private Logger log = LoggerFactory.getLogger( IndexingTaskQueue.class );
+
+    @Inject
+    private ManagedRepositoryAdmin managedRepositoryAdmin;
+
+    private final Object lock = new Object();
+
+    private File journalDirectory = getDefaultJournalDirectory();
+
+    private TaskJournal<ArtifactIndexingTask> journal;
+
+    /**
+     * Open the journal if any, queuing again the tasks not completed when the application stopped.
+     */
+    @PostConstruct
+    public void initialize()
+    {
+        if ( journalDirectory == null )
+        {
+            return;
+        }
+        TaskJournal<ArtifactIndexingTask> taskJournal =
+            new TaskJournal<>( new File( journalDirectory, "indexing.journal" ), new TaskCodec() );
+        synchronized ( lock )
+        {
+            try
+            {
+                List<ArtifactIndexingTask> tasks = taskJournal.open();
+                for ( ArtifactIndexingTask task : tasks )
+                {
+                    if ( !super.put( task ) )
+                    {
+                        taskJournal.removed( task );
+                    }
+                }
+                journal = taskJournal;
+                log.info( "Queued {} indexing tasks from the journal {}", tasks.size(), journalDirectory );
+            }
+            catch ( IOException | TaskQueueException e )
+            {
+                log.error( "Unable to open the journal of the indexing tasks, the queued tasks won't be kept after a"
+                               + " restart: {}", e.getMessage(), e );
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        synchronized ( lock )
+        {
+            if ( journal != null )
+            {
+                try
+                {
+                    journal.close();
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Unable to close the journal of the indexing tasks: {}", e.getMessage() );
+                }
+                journal = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean put( ArtifactIndexingTask task )
+        throws TaskQueueException
+    {
+        // the task can't be completed before it is recorded
+        synchronized ( lock )
+        {
+            if ( !super.put( task ) )
+            {
+                return false;
+            }
+            if ( journal != null )
+            {
+                try
+                {
+                    journal.added( task );
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Unable to record the task {} in the journal: {}", task, e.getMessage() );
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean remove( ArtifactIndexingTask task )
+        throws TaskQueueException
+    {
+        synchronized ( lock )
+        {
+            if ( !super.remove( task ) )
+            {
+                return false;
+            }
+            journalRemoved( task );
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeAll( List<ArtifactIndexingTask> tasks )
+        throws TaskQueueException
+    {
+        boolean removed = false;
+        for ( ArtifactIndexingTask task : tasks )
+        {
+            removed |= remove( task );
+        }
+        return removed;
+    }
+
+    /**
+     * Record that tasks taken from the queue have been executed, so that they are not executed again at the next
+     * startup.
+     */
+    public void tasksCompleted( List<ArtifactIndexingTask> tasks )
+    {
+        synchronized ( lock )
+        {
+            for ( ArtifactIndexingTask task : tasks )
+            {
+                journalRemoved( task );
+            }
+        }
+    }
+
+    private void journalRemoved( ArtifactIndexingTask task )
+    {
+        if ( journal != null )
+        {
+            try
+            {
+                journal.removed( task );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Unable to record the removal of the task {} in the journal: {}", task, e.getMessage() );
+            }
+        }
+    }
+
+    public File getJournalDirectory()
+    {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory( File journalDirectory )
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    private static File getDefaultJournalDirectory()
+    {
+        String directory = System.getProperty( "archiva.taskQueue.journalDirectory" );
+        return directory == null || directory.isEmpty() ? null : new File( directory );
+    }
+
+    /**
+     * Records a task as its repository, resource file, action and flags, its indexing context being the one of the
+     * repository when it is read.
+     */
+    private class TaskCodec
+        implements TaskJournal.TaskCodec<ArtifactIndexingTask>
+    {
+        @Override
+        public String encode( ArtifactIndexingTask task )
+        {
+            return TaskJournal.join( task.getRepository().getId(),
+                                     task.getResourceFile() == null ? null : task.getResourceFile().getPath(),
+                                     task.getAction().name(), Boolean.toString( task.isExecuteOnEntireRepo() ),
+                                     Boolean.toString( task.isOnlyUpdate() ) );
+        }
+
+        @Override
+        public ArtifactIndexingTask decode( String value )
+        {
+            String[] fields = TaskJournal.split( value );
+            if ( fields.length < 5 )
+            {
+                return null;
+            }
+            try
+            {
+                ManagedRepository repository = managedRepositoryAdmin.getManagedRepository( fields[0] );
+                if ( repository == null )
+                {
+                    log.debug( "Skipping the indexing task of the removed repository {}", fields[0] );
+                    return null;
+                }
+                IndexingContext context = managedRepositoryAdmin.createIndexContext( repository );
+                return new ArtifactIndexingTask( repository, fields[1] == null ? null : new File( fields[1] ),
+                                                 ArtifactIndexingTask.Action.valueOf( fields[2] ), context,
+                                                 Boolean.parseBoolean( fields[3] ),
+                                                 Boolean.parseBoolean( fields[4] ) );
+            }
+            catch ( RepositoryAdminException e )
+            {
+                log.warn( "Skipping the indexing task of the repository {}: {}", fields[0], e.getMessage() );
+                return null;
+            }
+        }
+    }
+}
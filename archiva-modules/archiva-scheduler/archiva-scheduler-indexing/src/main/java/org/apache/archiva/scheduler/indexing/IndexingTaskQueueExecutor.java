@@ -0,0 +1,189 @@
+package org.apache.archiva.scheduler.indexing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexingTaskQueueExecutor - executes the tasks of the indexing queue in batches: once a task is taken from the
+ * queue, the tasks queued during the batch window are taken too, up to the maximum batch size, and all of them are
+ * executed at once by the {@link ArchivaIndexingTaskExecutor}, committing each index once per batch instead of once
+ * per artifact. The artifacts are searchable as soon as their batch is executed.
+ * <p>
+ * The batch window (in milliseconds) and the maximum batch size can be set with the
+ * <code>archiva.indexing.batchWindow</code> and <code>archiva.indexing.maxBatchSize</code> system properties.
+ */
+public class IndexingTaskQueueExecutor
+{
+    private Logger log = LoggerFactory.getLogger( IndexingTaskQueueExecutor.class );
+
+    private String name;
+
+    private ArchivaIndexingTaskExecutor executor;
+
+    private IndexingTaskQueue queue;
+
+    private int batchWindow = Integer.getInteger( "archiva.indexing.batchWindow", 1000 );
+
+    private int maxBatchSize = Integer.getInteger( "archiva.indexing.maxBatchSize", 500 );
+
+    private Thread thread;
+
+    private volatile boolean shutdown;
+
+    @PostConstruct
+    public void start()
+    {
+        shutdown = false;
+        thread = new Thread( new Worker(), name );
+        thread.setDaemon( true );
+        thread.start();
+        log.info( "Started the task queue {}, batch window {} ms, max batch size {}", name, batchWindow,
+                  maxBatchSize );
+    }
+
+    /**
+     * Stop the worker, once the batch being executed is done.
+     */
+    @PreDestroy
+    public void stop()
+    {
+        shutdown = true;
+        if ( thread != null )
+        {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private class Worker
+        implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while ( !shutdown )
+            {
+                List<ArtifactIndexingTask> tasks = new ArrayList<>();
+                try
+                {
+                    ArtifactIndexingTask task = queue.poll( 1, TimeUnit.MINUTES );
+                    if ( task == null )
+                    {
+                        continue;
+                    }
+                    tasks.add( task );
+
+                    long end = System.currentTimeMillis() + batchWindow;
+                    while ( tasks.size() < maxBatchSize )
+                    {
+                        long wait = Math.max( 0, end - System.currentTimeMillis() );
+                        task = queue.poll( (int) wait, TimeUnit.MILLISECONDS );
+                        if ( task == null )
+                        {
+                            break;
+                        }
+                        tasks.add( task );
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    if ( tasks.isEmpty() )
+                    {
+                        continue;
+                    }
+                }
+
+                log.debug( "Executing a batch of {} indexing tasks", tasks.size() );
+                try
+                {
+                    executor.executeTasks( tasks );
+                }
+                catch ( TaskExecutionException | RuntimeException e )
+                {
+                    log.error( "Error executing a batch of {} indexing tasks: {}", tasks.size(), e.getMessage(), e );
+                }
+                if ( !shutdown )
+                {
+                    // otherwise executed again at the next startup if the queue is journaled
+                    queue.tasksCompleted( tasks );
+                }
+            }
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    public ArchivaIndexingTaskExecutor getExecutor()
+    {
+        return executor;
+    }
+
+    public void setExecutor( ArchivaIndexingTaskExecutor executor )
+    {
+        this.executor = executor;
+    }
+
+    public IndexingTaskQueue getQueue()
+    {
+        return queue;
+    }
+
+    public void setQueue( IndexingTaskQueue queue )
+    {
+        this.queue = queue;
+    }
+
+    public int getBatchWindow()
+    {
+        return batchWindow;
+    }
+
+    public void setBatchWindow( int batchWindow )
+    {
+        this.batchWindow = batchWindow;
+    }
+
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize( int maxBatchSize )
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+}
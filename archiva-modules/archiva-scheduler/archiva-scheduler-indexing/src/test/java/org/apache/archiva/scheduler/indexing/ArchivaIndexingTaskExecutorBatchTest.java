@@ -0,0 +1,313 @@
+package org.apache.archiva.scheduler.indexing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.admin.model.RepositoryAdminException;
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
+import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
+import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.lucene.store.Directory;
+import org.apache.maven.index.ArtifactContext;
+import org.apache.maven.index.ArtifactContextProducer;
+import org.apache.maven.index.NexusIndexer;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.packer.IndexPacker;
+import org.apache.maven.index.packer.IndexPackingRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the execution of the indexing tasks in batches by {@link ArchivaIndexingTaskExecutor#executeTasks(List)},
+ * with the indexer mocked to record the artifacts added to and removed from each index at once.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ArchivaIndexingTaskExecutorBatchTest
+    extends TestCase
+{
+    @Mock
+    private PlexusSisuBridge plexusSisuBridge;
+
+    @Mock
+    private ManagedRepositoryAdmin managedRepositoryAdmin;
+
+    @Mock
+    private NexusIndexer nexusIndexer;
+
+    @Mock
+    private ArtifactContextProducer artifactContextProducer;
+
+    @Mock
+    private IndexPacker indexPacker;
+
+    @InjectMocks
+    private ArchivaIndexingTaskExecutor indexingExecutor;
+
+    private ManagedRepository repository;
+
+    private ManagedRepository otherRepository;
+
+    private IndexingContext context;
+
+    private IndexingContext otherContext;
+
+    /**
+     * The calls made to the indexer, as the action, the index and the artifacts given at once.
+     */
+    private List<String> indexerCalls = new ArrayList<>();
+
+    private Map<ArtifactContext, String> artifactNames = new HashMap<>();
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        MockitoAnnotations.initMocks( this );
+
+        when( plexusSisuBridge.lookup( ArtifactContextProducer.class ) ).thenReturn( artifactContextProducer );
+        when( plexusSisuBridge.lookup( IndexPacker.class, "default" ) ).thenReturn( indexPacker );
+        when( plexusSisuBridge.lookup( NexusIndexer.class ) ).thenReturn( nexusIndexer );
+        indexingExecutor.initialize();
+
+        repository = createRepository( "test-repo" );
+        otherRepository = createRepository( "other-repo" );
+        context = createContext( "test-repo" );
+        otherContext = createContext( "other-repo" );
+
+        doAnswer( new Answer<ArtifactContext>()
+        {
+            @Override
+            public ArtifactContext answer( InvocationOnMock invocation )
+            {
+                ArtifactContext artifactContext = mock( ArtifactContext.class );
+                artifactNames.put( artifactContext, ( (File) invocation.getArguments()[1] ).getName() );
+                return artifactContext;
+            }
+        } ).when( artifactContextProducer ).getArtifactContext( Matchers.any( IndexingContext.class ),
+                                                                Matchers.any( File.class ) );
+        doAnswer( new IndexerCall( "add" ) ).when( nexusIndexer ).addArtifactsToIndex(
+            Matchers.<Collection<ArtifactContext>>any(), Matchers.any( IndexingContext.class ) );
+        doAnswer( new IndexerCall( "delete" ) ).when( nexusIndexer ).deleteArtifactsFromIndex(
+            Matchers.<Collection<ArtifactContext>>any(), Matchers.any( IndexingContext.class ) );
+    }
+
+    @Test
+    public void testConsecutiveTasksOfTheSameActionIndexedAtOnce()
+        throws Exception
+    {
+        indexingExecutor.executeTasks(
+            Arrays.asList( createTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD, context ),
+                           createTask( repository, "b.jar", ArtifactIndexingTask.Action.ADD, context ),
+                           createTask( repository, "c.jar", ArtifactIndexingTask.Action.ADD, context ) ) );
+
+        assertEquals( Arrays.asList( "add test-repo [a.jar, b.jar, c.jar]" ), indexerCalls );
+    }
+
+    @Test
+    public void testMixedActionsExecutedInOrder()
+        throws Exception
+    {
+        indexingExecutor.executeTasks(
+            Arrays.asList( createTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD, context ),
+                           createTask( repository, "b.jar", ArtifactIndexingTask.Action.ADD, context ),
+                           createTask( repository, "a.jar", ArtifactIndexingTask.Action.DELETE, context ),
+                           createTask( repository, "c.jar", ArtifactIndexingTask.Action.DELETE, context ),
+                           createTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD, context ) ) );
+
+        // an artifact added again after its removal is in the index at the end
+        assertEquals( Arrays.asList( "add test-repo [a.jar, b.jar]", "delete test-repo [a.jar, c.jar]",
+                                     "add test-repo [a.jar]" ), indexerCalls );
+    }
+
+    @Test
+    public void testTasksOfInterleavedContextsExecutedInOrder()
+        throws Exception
+    {
+        indexingExecutor.executeTasks(
+            Arrays.asList( createTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD, context ),
+                           createTask( otherRepository, "b.jar", ArtifactIndexingTask.Action.ADD, otherContext ),
+                           createTask( repository, "c.jar", ArtifactIndexingTask.Action.ADD, context ) ) );
+
+        assertEquals( Arrays.asList( "add test-repo [a.jar]", "add other-repo [b.jar]", "add test-repo [c.jar]" ),
+                      indexerCalls );
+    }
+
+    @Test
+    public void testFailedBatchDoesNotStopTheOtherBatches()
+        throws Exception
+    {
+        doAnswer( new IndexerCall( "add" )
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+                throws IOException
+            {
+                super.answer( invocation );
+                throw new IOException( "disk full" );
+            }
+        } ).when( nexusIndexer ).addArtifactsToIndex( Matchers.<Collection<ArtifactContext>>any(),
+                                                      Matchers.eq( context ) );
+
+        try
+        {
+            indexingExecutor.executeTasks(
+                Arrays.asList( createTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD, context ),
+                               createTask( otherRepository, "b.jar", ArtifactIndexingTask.Action.ADD, otherContext ),
+                               createTask( repository, "c.jar", ArtifactIndexingTask.Action.DELETE, context ) ) );
+            fail( "The failure of the first batch should be reported" );
+        }
+        catch ( TaskExecutionException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "a.jar" ) );
+            assertTrue( e.getCause() instanceof IOException );
+        }
+
+        assertEquals( Arrays.asList( "add test-repo [a.jar]", "add other-repo [b.jar]", "delete test-repo [c.jar]" ),
+                      indexerCalls );
+    }
+
+    @Test
+    public void testDeployedArtifactsContextFinishedOncePerBatch()
+        throws Exception
+    {
+        when( managedRepositoryAdmin.createIndexContext( repository ) ).thenReturn( context );
+
+        indexingExecutor.executeTasks(
+            Arrays.asList( createDeployedTask( repository, "a.jar", ArtifactIndexingTask.Action.ADD ),
+                           createDeployedTask( repository, "b.jar", ArtifactIndexingTask.Action.ADD ),
+                           createDeployedTask( repository, "c.jar", ArtifactIndexingTask.Action.DELETE ) ) );
+
+        assertEquals( Arrays.asList( "add test-repo [a.jar, b.jar]", "delete test-repo [c.jar]" ), indexerCalls );
+
+        // optimized and packed once, after all the artifacts of the batch are indexed
+        verify( context, times( 1 ) ).optimize();
+        verify( indexPacker, times( 1 ) ).packIndex( Matchers.any( IndexPackingRequest.class ) );
+        verify( context, times( 1 ) ).updateTimestamp( true );
+    }
+
+    @Test
+    public void testDeployedArtifactsContextFinishedWhenItsCreationFailsForAnotherRepository()
+        throws Exception
+    {
+        when( managedRepositoryAdmin.createIndexContext( repository ) ).thenReturn( context );
+        when( managedRepositoryAdmin.createIndexContext( otherRepository ) ).thenThrow(
+            new RepositoryAdminException( "no index directory" ) );
+
+        try
+        {
+            indexingExecutor.executeTasks(
+                Arrays.asList( createDeployedTask( otherRepository, "a.jar", ArtifactIndexingTask.Action.ADD ),
+                               createDeployedTask( repository, "b.jar", ArtifactIndexingTask.Action.ADD ) ) );
+            fail( "The failure of the context creation should be reported" );
+        }
+        catch ( TaskExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof RepositoryAdminException );
+        }
+
+        assertEquals( Arrays.asList( "add test-repo [b.jar]" ), indexerCalls );
+        verify( context, times( 1 ) ).optimize();
+        verify( indexPacker, times( 1 ) ).packIndex( Matchers.any( IndexPackingRequest.class ) );
+    }
+
+    private static ManagedRepository createRepository( String id )
+    {
+        ManagedRepository repository = new ManagedRepository();
+        repository.setId( id );
+        repository.setLocation( new File( "target/test-" + id ).getAbsolutePath() );
+        return repository;
+    }
+
+    private static IndexingContext createContext( String id )
+    {
+        IndexingContext context = mock( IndexingContext.class );
+        when( context.getId() ).thenReturn( id );
+        when( context.getIndexDirectory() ).thenReturn( mock( Directory.class ) );
+        when( context.getIndexDirectoryFile() ).thenReturn( new File( "target/test-" + id + "/.indexer" ) );
+        return context;
+    }
+
+    private static ArtifactIndexingTask createTask( ManagedRepository repository, String file,
+                                                    ArtifactIndexingTask.Action action, IndexingContext context )
+    {
+        return new ArtifactIndexingTask( repository, new File( repository.getLocation(), file ), action, context );
+    }
+
+    private static ArtifactIndexingTask createDeployedTask( ManagedRepository repository, String file,
+                                                            ArtifactIndexingTask.Action action )
+    {
+        return new ArtifactIndexingTask( repository, new File( repository.getLocation(), file ), action, null,
+                                         false );
+    }
+
+    /**
+     * Records a call to the indexer, the artifacts being copied as the batch is cleared once it is indexed.
+     */
+    private class IndexerCall
+        implements Answer<Void>
+    {
+        private final String action;
+
+        IndexerCall( String action )
+        {
+            this.action = action;
+        }
+
+        @Override
+        public Void answer( InvocationOnMock invocation )
+            throws IOException
+        {
+            List<String> names = new ArrayList<>();
+            for ( Object artifactContext : (Collection<?>) invocation.getArguments()[0] )
+            {
+                names.add( artifactNames.get( artifactContext ) );
+            }
+            IndexingContext indexingContext = (IndexingContext) invocation.getArguments()[1];
+            indexerCalls.add( action + " " + indexingContext.getId() + " " + names );
+            return null;
+        }
+    }
+}
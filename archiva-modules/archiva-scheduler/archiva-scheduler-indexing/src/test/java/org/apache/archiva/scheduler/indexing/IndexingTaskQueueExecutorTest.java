@@ -0,0 +1,177 @@
+package org.apache.archiva.scheduler.indexing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test the batching of the tasks of the indexing queue by {@link IndexingTaskQueueExecutor}, with the task executor
+ * mocked to record the batches it is given.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class IndexingTaskQueueExecutorTest
+    extends TestCase
+{
+    private IndexingTaskQueue queue;
+
+    private IndexingTaskQueueExecutor queueExecutor;
+
+    private ManagedRepository repository;
+
+    /**
+     * The files of the tasks of each batch executed.
+     */
+    private List<List<String>> batches = new ArrayList<>();
+
+    private CountDownLatch executed;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        repository = new ManagedRepository();
+        repository.setId( "test-repo" );
+        repository.setLocation( new File( "target/test-repo" ).getAbsolutePath() );
+
+        queue = new IndexingTaskQueue();
+        queue.setJournalDirectory( null );
+        queue.initialize();
+
+        queueExecutor = new IndexingTaskQueueExecutor();
+        queueExecutor.setName( "indexing-test" );
+        queueExecutor.setQueue( queue );
+        queueExecutor.setBatchWindow( 200 );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        queueExecutor.stop();
+        super.tearDown();
+    }
+
+    @Test
+    public void testTasksQueuedDuringTheWindowExecutedAtOnce()
+        throws Exception
+    {
+        queueExecutor.setExecutor( createExecutor( 1, false ) );
+        queueTasks( "a.jar", "b.jar", "c.jar" );
+
+        queueExecutor.start();
+
+        assertTrue( executed.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( Arrays.asList( "a.jar", "b.jar", "c.jar" ) ), batches );
+    }
+
+    @Test
+    public void testBatchesLimitedToTheMaxBatchSize()
+        throws Exception
+    {
+        queueExecutor.setExecutor( createExecutor( 2, false ) );
+        queueExecutor.setMaxBatchSize( 2 );
+        queueTasks( "a.jar", "b.jar", "c.jar" );
+
+        queueExecutor.start();
+
+        assertTrue( executed.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( Arrays.asList( "a.jar", "b.jar" ), Arrays.asList( "c.jar" ) ), batches );
+    }
+
+    @Test
+    public void testFailedBatchDoesNotStopTheQueue()
+        throws Exception
+    {
+        queueExecutor.setExecutor( createExecutor( 2, true ) );
+        queueExecutor.setMaxBatchSize( 1 );
+        queueTasks( "a.jar", "b.jar" );
+
+        queueExecutor.start();
+
+        assertTrue( executed.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( Arrays.asList( "a.jar" ), Arrays.asList( "b.jar" ) ), batches );
+    }
+
+    private void queueTasks( String... files )
+        throws Exception
+    {
+        for ( String file : files )
+        {
+            queue.put( new ArtifactIndexingTask( repository, new File( repository.getLocation(), file ),
+                                                 ArtifactIndexingTask.Action.ADD, null ) );
+        }
+    }
+
+    /**
+     * @param expectedBatches the batches to wait for
+     * @param failing         <code>true</code> if the execution of every batch fails
+     */
+    private ArchivaIndexingTaskExecutor createExecutor( int expectedBatches, final boolean failing )
+        throws Exception
+    {
+        executed = new CountDownLatch( expectedBatches );
+        ArchivaIndexingTaskExecutor executor = mock( ArchivaIndexingTaskExecutor.class );
+        doAnswer( new Answer<Void>()
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+                throws TaskExecutionException
+            {
+                List<String> files = new ArrayList<>();
+                for ( Object task : (List<?>) invocation.getArguments()[0] )
+                {
+                    files.add( ( (ArtifactIndexingTask) task ).getResourceFile().getName() );
+                }
+                batches.add( files );
+                executed.countDown();
+                if ( failing )
+                {
+                    throw new TaskExecutionException( "Unable to index " + files );
+                }
+                return null;
+            }
+        } ).when( executor ).executeTasks( Matchers.<List<ArtifactIndexingTask>>any() );
+        return executor;
+    }
+}
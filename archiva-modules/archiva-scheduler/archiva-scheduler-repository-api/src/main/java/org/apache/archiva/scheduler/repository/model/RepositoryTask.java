@@ -1,8 +1,11 @@
 package org.apache.archiva.scheduler.repository.model;
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.redback.components.taskqueue.Task;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Map;
 
 /*
  * Licensed to the Apache Software Foundation (ASF) under one
@@ -38,6 +41,21 @@
 
     private boolean scanAll;
 
+    /**
+     * checksums of the resource file already calculated when it was written, if any
+     */
+    private Map<ChecksumAlgorithm, String> checksums = Collections.emptyMap();
+
+    /**
+     * length of the resource file when the checksums were calculated
+     */
+    private long checksumsFileLength;
+
+    /**
+     * modification time of the resource file when the checksums were calculated
+     */
+    private long checksumsFileLastModified;
+
     public RepositoryTask()
     {
         // no op
@@ -100,6 +118,33 @@ public void setUpdateRelatedArtifacts( boolean updateRelatedArtifacts )
         this.updateRelatedArtifacts = updateRelatedArtifacts;
     }
 
+    public Map<ChecksumAlgorithm, String> getChecksums()
+    {
+        return checksums;
+    }
+
+    public long getChecksumsFileLength()
+    {
+        return checksumsFileLength;
+    }
+
+    public long getChecksumsFileLastModified()
+    {
+        return checksumsFileLastModified;
+    }
+
+    /**
+     * @param checksums    the checksums of the resource file
+     * @param length       the length of the resource file the checksums were calculated from
+     * @param lastModified the modification time of the resource file the checksums were calculated from
+     */
+    public void setChecksums( Map<ChecksumAlgorithm, String> checksums, long length, long lastModified )
+    {
+        this.checksums = checksums == null ? Collections.<ChecksumAlgorithm, String>emptyMap() : checksums;
+        this.checksumsFileLength = length;
+        this.checksumsFileLastModified = lastModified;
+    }
+
     @Override
     public String toString()
     {
@@ -22,6 +22,7 @@
 import org.apache.archiva.admin.model.RepositoryAdminException;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.RepositorySession;
@@ -35,7 +36,6 @@
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.InitializationException;
-import org.apache.archiva.redback.components.taskqueue.Task;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutor;
 import org.slf4j.Logger;
@@ -44,6 +44,7 @@
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Date;
 
 /**
@@ -66,7 +67,9 @@
     @Inject
     private RepositoryContentConsumers consumers;
 
-    private Task task;
+    @Inject
+    @Named( value = "checksumCache#default" )
+    private ChecksumCache checksumCache;
 
     @Inject
     private RepositoryStatisticsManager repositoryStatisticsManager;
@@ -96,10 +99,8 @@ public void executeTask( RepositoryTask task )
             // send events for each
             // - scan metadata for artifacts that have been removed and send events for each
             // - scan metadata for missing plugin data
-            // - store information so that it can restart upon failure (publish event on the server recovery
-            // queue, remove it on successful completion)
-
-            this.task = task;
+            // (a scan interrupted by a failure is resumed from its checkpoint by the next one, see
+            // DefaultRepositoryScanner)
 
             String repoId = task.getRepositoryId();
             if ( StringUtils.isBlank( repoId ) )
@@ -113,6 +114,10 @@ public void executeTask( RepositoryTask task )
             if ( task.getResourceFile() != null )
             {
                 log.debug( "Executing task from queue with job name: {}", task );
+                // checksums calculated while the file was written are reused by the consumers, unless the file has
+                // been replaced since
+                checksumCache.add( task.getResourceFile(), task.getChecksumsFileLength(),
+                                   task.getChecksumsFileLastModified(), task.getChecksums() );
                 consumers.executeConsumers( arepo, task.getResourceFile(), task.isUpdateRelatedArtifacts() );
             }
             else
@@ -182,8 +187,6 @@ public void executeTask( RepositoryTask task )
                 // FIXME: do something
 
                 log.info( "Finished repository task: {}", task );
-
-                this.task = null;
             }
         }
         catch ( RepositoryAdminException e )
@@ -193,11 +196,6 @@ public void executeTask( RepositoryTask task )
         }
     }
 
-    public Task getCurrentTaskInExecution()
-    {
-        return task;
-    }
-
     public RepositoryScanner getRepoScanner()
     {
         return repoScanner;
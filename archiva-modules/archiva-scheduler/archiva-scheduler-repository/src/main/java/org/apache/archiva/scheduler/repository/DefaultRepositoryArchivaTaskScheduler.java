@@ -23,6 +23,7 @@
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.ConfigurationEvent;
 import org.apache.archiva.configuration.ConfigurationListener;
+import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
@@ -31,10 +32,10 @@
 import org.apache.archiva.metadata.repository.stats.RepositoryStatisticsManager;
 import org.apache.archiva.redback.components.scheduler.CronExpressionValidator;
 import org.apache.archiva.redback.components.scheduler.Scheduler;
-import org.apache.archiva.redback.components.taskqueue.TaskQueue;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.StopWatch;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.CronTrigger;
@@ -51,13 +52,23 @@
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default implementation of a scheduling component for archiva.
+ * <p>
+ * The managed repositories listed in the <code>archiva.repositoryWatch.repositories</code> system property, or all
+ * the scanned ones with <code>*</code>, are watched for changes by a {@link RepositoryWatcher}, with the debounce
+ * time in <code>archiva.repositoryWatch.debounce</code> milliseconds (2000 by default) and an incremental scan every
+ * <code>archiva.repositoryWatch.reconciliationInterval</code> seconds (86400 by default).
  */
 @Service( "archivaTaskScheduler#repository" )
 public class DefaultRepositoryArchivaTaskScheduler
@@ -73,11 +84,14 @@
 
     @Inject
     @Named( value = "taskQueue#repository-scanning" )
-    private TaskQueue repositoryScanningQueue;
+    private RepositoryTaskQueue repositoryScanningQueue;
 
     @Inject
     private ArchivaConfiguration archivaConfiguration;
 
+    @Inject
+    private FileTypes fileTypes;
+
     @Inject
     @Named( value = "repositoryStatisticsManager#default" )
     private RepositoryStatisticsManager repositoryStatisticsManager;
@@ -104,6 +118,8 @@
 
     private List<String> queuedRepos = new ArrayList<>();
 
+    private RepositoryWatcher repositoryWatcher;
+
     @PostConstruct
     public void startup()
         throws ArchivaException
@@ -154,6 +170,8 @@ public void startup()
             repositorySession.close();
         }
 
+        startRepositoryWatcher();
+
         stopWatch.stop();
         log.info( "Time to initalize DefaultRepositoryArchivaTaskScheduler: {} ms", stopWatch.getTime() );
     }
@@ -170,78 +188,33 @@ public void stop()
         jobs.clear();
         queuedRepos.clear();
 
+        if ( repositoryWatcher != null )
+        {
+            repositoryWatcher.stop();
+            repositoryWatcher = null;
+        }
     }
 
-    @SuppressWarnings( "unchecked" )
     @Override
     public boolean isProcessingRepositoryTask( String repositoryId )
     {
-        synchronized ( repositoryScanningQueue )
-        {
-            List<RepositoryTask> queue = null;
-
-            try
-            {
-                queue = repositoryScanningQueue.getQueueSnapshot();
-            }
-            catch ( TaskQueueException e )
-            {
-                // not possible with plexus-taskqueue implementation, ignore
-            }
-
-            for ( RepositoryTask queuedTask : queue )
-            {
-                if ( queuedTask.getRepositoryId().equals( repositoryId ) )
-                {
-                    return true;
-                }
-            }
-            return false;
-        }
+        return repositoryScanningQueue.hasQueuedTasks( repositoryId );
     }
 
     @Override
     public boolean isProcessingRepositoryTask( RepositoryTask task )
     {
-        synchronized ( repositoryScanningQueue )
-        {
-            List<RepositoryTask> queue = null;
-
-            try
-            {
-                queue = repositoryScanningQueue.getQueueSnapshot();
-            }
-            catch ( TaskQueueException e )
-            {
-                // not possible with plexus-taskqueue implementation, ignore
-            }
-
-            for ( RepositoryTask queuedTask : queue )
-            {
-                if ( task.equals( queuedTask ) )
-                {
-                    return true;
-                }
-            }
-            return false;
-        }
+        return repositoryScanningQueue.isQueued( task );
     }
 
     @Override
     public void queueTask( RepositoryTask task )
         throws TaskQueueException
     {
-        synchronized ( repositoryScanningQueue )
+        // the queue skips the tasks already queued
+        if ( !repositoryScanningQueue.put( task ) )
         {
-            if ( isProcessingRepositoryTask( task ) )
-            {
-                log.debug( "Repository task '{}' is already queued. Skipping task.", task );
-            }
-            else
-            {
-                // add check if the task is already queued if it is a file scan
-                repositoryScanningQueue.put( task );
-            }
+            log.debug( "Repository task '{}' is already queued. Skipping task.", task );
         }
     }
 
@@ -249,18 +222,12 @@ public void queueTask( RepositoryTask task )
     public boolean unQueueTask( RepositoryTask task )
         throws TaskQueueException
     {
-        synchronized ( repositoryScanningQueue )
+        if ( !repositoryScanningQueue.remove( task ) )
         {
-            if ( !isProcessingRepositoryTask( task ) )
-            {
-                log.info( "cannot unqueue Repository task '{}' not already queued.", task );
-                return false;
-            }
-            else
-            {
-                return repositoryScanningQueue.remove( task );
-            }
+            log.info( "cannot unqueue Repository task '{}' not already queued.", task );
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -298,7 +265,63 @@ public void configurationEvent( ConfigurationEvent event )
                     }
                 }
             }
+
+            if ( repositoryWatcher != null )
+            {
+                repositoryWatcher.setWatchedRepositories( getWatchedRepositories() );
+            }
+        }
+    }
+
+    private void startRepositoryWatcher()
+    {
+        if ( StringUtils.isBlank( System.getProperty( "archiva.repositoryWatch.repositories" ) ) )
+        {
+            return;
+        }
+        long debounce = Long.getLong( "archiva.repositoryWatch.debounce", 2000 );
+        long reconciliationInterval =
+            TimeUnit.SECONDS.toMillis( Long.getLong( "archiva.repositoryWatch.reconciliationInterval", 86400 ) );
+        RepositoryWatcher watcher = new RepositoryWatcher( repositoryScanningQueue, debounce, reconciliationInterval );
+        watcher.setFallbackScanInterval(
+            TimeUnit.SECONDS.toMillis( Long.getLong( "archiva.repositoryWatch.fallbackScanInterval", 300 ) ) );
+        watcher.setFileTypes( fileTypes );
+        try
+        {
+            watcher.start();
+        }
+        catch ( IOException e )
+        {
+            log.error( "Unable to watch the repositories, they are only scanned: {}", e.getMessage(), e );
+            return;
+        }
+        watcher.setWatchedRepositories( getWatchedRepositories() );
+        repositoryWatcher = watcher;
+    }
+
+    /**
+     * @return the locations by id of the scanned managed repositories to watch
+     */
+    private Map<String, File> getWatchedRepositories()
+    {
+        Set<String> ids = new HashSet<>();
+        for ( String id : StringUtils.split( System.getProperty( "archiva.repositoryWatch.repositories", "" ), ',' ) )
+        {
+            ids.add( id.trim() );
+        }
+
+        List<ManagedRepositoryConfiguration> repoConfigs =
+            archivaConfiguration.getConfiguration().getManagedRepositories();
+
+        Map<String, File> repositories = new HashMap<>();
+        for ( ManagedRepositoryConfiguration repoConfig : repoConfigs )
+        {
+            if ( repoConfig.isScanned() && ( ids.contains( "*" ) || ids.contains( repoConfig.getId() ) ) )
+            {
+                repositories.put( repoConfig.getId(), new File( repoConfig.getLocation() ) );
+            }
         }
+        return repositories;
     }
 
     private boolean isPreviouslyScanned( ManagedRepositoryConfiguration repoConfig,
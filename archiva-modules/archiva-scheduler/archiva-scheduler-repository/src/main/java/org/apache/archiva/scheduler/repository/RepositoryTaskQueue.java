@@ -0,0 +1,708 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.taskqueue.DefaultTaskQueue;
+import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.scheduler.TaskJournal;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepositoryTaskQueue - the queue of the repository scanning tasks.
+ * <p>
+ * The queued tasks are indexed by repository, so finding out whether a task is already queued doesn't depend on the
+ * number of queued tasks. The tasks are queued in two lanes: the tasks processing a single file, in the
+ * {@link Lane#FILE} lane, are handed out before the scans of entire repositories, in the {@link Lane#SCAN} lane, so
+ * that a long scan doesn't delay the processing of newly deployed files.
+ * <p>
+ * The tasks of a repository are handed out one at a time, in each lane in the order they were queued, while the
+ * tasks of different repositories can be executed in parallel by the workers of a
+ * {@link RepositoryTaskQueueExecutor}: a task taken from the queue keeps its repository busy in both lanes until
+ * {@link #taskCompleted(RepositoryTask)} is called for it. The files of a repository are thus not processed while it
+ * is scanned, as the consumers would write the same metadata at the same time.
+ * <p>
+ * When the <code>archiva.taskQueue.journalDirectory</code> system property is set, the tasks are recorded in a
+ * {@link TaskJournal} until they are completed, and the tasks not completed when the application stopped are queued
+ * again when it starts.
+ */
+public class RepositoryTaskQueue
+    extends DefaultTaskQueue<RepositoryTask>
+{
+    /**
+     * The lanes of the queue.
+     */
+    public enum Lane
+    {
+        /**
+         * the tasks processing a single file
+         */
+        FILE,
+        /**
+         * the scans of entire repositories
+         */
+        SCAN
+    }
+
+    private static final int MAX_COMPLETED_FILES = 1024;
+
+    private Logger log = LoggerFactory.getLogger( RepositoryTaskQueue.class );
+
+    private final Object lock = new Object();
+
+    private final Map<Lane, LaneTasks> lanes = new EnumMap<>( Lane.class );
+
+    private long startedTasks;
+
+    private long totalWaitTime;
+
+    private long maxWaitTime;
+
+    /**
+     * The modification time of the files processed by the last completed tasks.
+     */
+    private final Map<File, Long> completedFiles = new LinkedHashMap<File, Long>( 16, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<File, Long> eldest )
+        {
+            return size() > MAX_COMPLETED_FILES;
+        }
+    };
+
+    private File journalDirectory = getDefaultJournalDirectory();
+
+    private TaskJournal<RepositoryTask> journal;
+
+    public RepositoryTaskQueue()
+    {
+        for ( Lane lane : Lane.values() )
+        {
+            lanes.put( lane, new LaneTasks() );
+        }
+    }
+
+    /**
+     * Open the journal if any, queuing again the tasks not completed when the application stopped.
+     */
+    @PostConstruct
+    public void initialize()
+    {
+        if ( journalDirectory == null )
+        {
+            return;
+        }
+        TaskJournal<RepositoryTask> taskJournal =
+            new TaskJournal<>( new File( journalDirectory, "repository-scanning.journal" ), new TaskCodec() );
+        synchronized ( lock )
+        {
+            try
+            {
+                List<RepositoryTask> tasks = taskJournal.open();
+                for ( RepositoryTask task : tasks )
+                {
+                    if ( !enqueue( task ) )
+                    {
+                        taskJournal.removed( task );
+                    }
+                }
+                journal = taskJournal;
+                log.info( "Queued {} repository scanning tasks from the journal {}", tasks.size(), journalDirectory );
+            }
+            catch ( IOException e )
+            {
+                log.error( "Unable to open the journal of the repository scanning tasks, the queued tasks won't be kept"
+                               + " after a restart: {}", e.getMessage(), e );
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        synchronized ( lock )
+        {
+            if ( journal != null )
+            {
+                try
+                {
+                    journal.close();
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Unable to close the journal of the repository scanning tasks: {}", e.getMessage() );
+                }
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * The tasks of a lane.
+     */
+    private static class LaneTasks
+    {
+        /**
+         * The queued tasks of each repository in the order they were queued, along with the time they were queued
+         * at.
+         */
+        private final Map<String, LinkedHashMap<RepositoryTask, Long>> queuedTasks = new HashMap<>();
+
+        /**
+         * The repositories having queued tasks and no task being executed, in the order they became ready.
+         */
+        private final Deque<String> readyRepositories = new ArrayDeque<>();
+
+        /**
+         * The task being executed for each repository.
+         */
+        private final Map<String, RepositoryTask> runningTasks = new HashMap<>();
+
+        private int size;
+    }
+
+    /**
+     * Queue a task, unless the same task is already queued.
+     *
+     * @return <code>false</code> if the task was already queued
+     */
+    @Override
+    public boolean put( RepositoryTask task )
+        throws TaskQueueException
+    {
+        synchronized ( lock )
+        {
+            if ( !enqueue( task ) )
+            {
+                return false;
+            }
+            if ( journal != null )
+            {
+                try
+                {
+                    journal.added( task );
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Unable to record the task {} in the journal: {}", task, e.getMessage() );
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queue a task, the lock being held.
+     */
+    private boolean enqueue( RepositoryTask task )
+    {
+        String repositoryId = getKey( task );
+        LaneTasks lane = lanes.get( getLane( task ) );
+        LinkedHashMap<RepositoryTask, Long> tasks = lane.queuedTasks.get( repositoryId );
+        if ( tasks == null )
+        {
+            tasks = new LinkedHashMap<>();
+            lane.queuedTasks.put( repositoryId, tasks );
+        }
+        else if ( tasks.containsKey( task ) )
+        {
+            return false;
+        }
+        tasks.put( task, System.currentTimeMillis() );
+        lane.size++;
+
+        if ( tasks.size() == 1 && !isBusy( repositoryId ) )
+        {
+            lane.readyRepositories.add( repositoryId );
+            // the workers don't all take from the same lanes
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    @Override
+    public RepositoryTask take()
+        throws TaskQueueException
+    {
+        try
+        {
+            return nextTask( -1, true );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public RepositoryTask poll( int timeout, TimeUnit timeUnit )
+        throws InterruptedException
+    {
+        return nextTask( timeUnit.toMillis( timeout ), true );
+    }
+
+    /**
+     * Take the oldest queued task of the repository that has been ready for the longest time, from the file lane
+     * first, waiting for one if there is none.
+     *
+     * @param timeout the maximum time to wait in milliseconds, negative to wait until a task is queued
+     * @param scans   <code>false</code> to only take the tasks of the file lane
+     * @return the task, or <code>null</code> if none was queued before the timeout
+     */
+    public RepositoryTask nextTask( long timeout, boolean scans )
+        throws InterruptedException
+    {
+        synchronized ( lock )
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            LaneTasks lane;
+            while ( ( lane = getReadyLane( scans ) ) == null )
+            {
+                if ( timeout < 0 )
+                {
+                    lock.wait();
+                }
+                else
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if ( remaining <= 0 )
+                    {
+                        return null;
+                    }
+                    lock.wait( remaining );
+                }
+            }
+
+            String repositoryId = lane.readyRepositories.poll();
+            LinkedHashMap<RepositoryTask, Long> tasks = lane.queuedTasks.get( repositoryId );
+            Iterator<Map.Entry<RepositoryTask, Long>> it = tasks.entrySet().iterator();
+            Map.Entry<RepositoryTask, Long> entry = it.next();
+            it.remove();
+            lane.size--;
+            if ( tasks.isEmpty() )
+            {
+                lane.queuedTasks.remove( repositoryId );
+            }
+
+            RepositoryTask task = entry.getKey();
+            lane.runningTasks.put( repositoryId, task );
+            // the repository is busy in the other lane too
+            for ( LaneTasks other : lanes.values() )
+            {
+                other.readyRepositories.remove( repositoryId );
+            }
+
+            long waitTime = System.currentTimeMillis() - entry.getValue();
+            startedTasks++;
+            totalWaitTime += waitTime;
+            maxWaitTime = Math.max( maxWaitTime, waitTime );
+
+            return task;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a task of the repository is being executed, in any lane
+     */
+    private boolean isBusy( String repositoryId )
+    {
+        for ( LaneTasks lane : lanes.values() )
+        {
+            if ( lane.runningTasks.containsKey( repositoryId ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LaneTasks getReadyLane( boolean scans )
+    {
+        LaneTasks lane = lanes.get( Lane.FILE );
+        if ( lane.readyRepositories.isEmpty() && scans )
+        {
+            lane = lanes.get( Lane.SCAN );
+        }
+        return lane.readyRepositories.isEmpty() ? null : lane;
+    }
+
+    /**
+     * Release the repository of a task taken from the queue, so that its next queued task can be taken.
+     *
+     * @param task the task that has been executed
+     */
+    public void taskCompleted( RepositoryTask task )
+    {
+        release( task, true );
+    }
+
+    /**
+     * Release the repository of a task taken from the queue whose execution was interrupted by the shutdown of the
+     * application, keeping the task in the journal so that it is executed again at the next startup.
+     *
+     * @param task the task that has been interrupted
+     */
+    public void taskInterrupted( RepositoryTask task )
+    {
+        release( task, false );
+    }
+
+    private void release( RepositoryTask task, boolean completed )
+    {
+        String repositoryId = getKey( task );
+        synchronized ( lock )
+        {
+            LaneTasks lane = lanes.get( getLane( task ) );
+            if ( lane.runningTasks.get( repositoryId ) != task )
+            {
+                return;
+            }
+            lane.runningTasks.remove( repositoryId );
+            if ( completed )
+            {
+                journalRemoved( task );
+                if ( task.getResourceFile() != null )
+                {
+                    completedFiles.put( task.getResourceFile().getAbsoluteFile(),
+                                        task.getResourceFile().lastModified() );
+                }
+            }
+            boolean ready = false;
+            for ( LaneTasks queued : lanes.values() )
+            {
+                if ( queued.queuedTasks.containsKey( repositoryId ) )
+                {
+                    queued.readyRepositories.add( repositoryId );
+                    ready = true;
+                }
+            }
+            if ( ready )
+            {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean remove( RepositoryTask task )
+        throws TaskQueueException
+    {
+        String repositoryId = getKey( task );
+        synchronized ( lock )
+        {
+            LaneTasks lane = lanes.get( getLane( task ) );
+            LinkedHashMap<RepositoryTask, Long> tasks = lane.queuedTasks.get( repositoryId );
+            if ( tasks == null || tasks.remove( task ) == null )
+            {
+                return false;
+            }
+            lane.size--;
+            if ( tasks.isEmpty() )
+            {
+                lane.queuedTasks.remove( repositoryId );
+                lane.readyRepositories.remove( repositoryId );
+            }
+            journalRemoved( task );
+            return true;
+        }
+    }
+
+    private void journalRemoved( RepositoryTask task )
+    {
+        if ( journal != null )
+        {
+            try
+            {
+                journal.removed( task );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Unable to record the removal of the task {} in the journal: {}", task, e.getMessage() );
+            }
+        }
+    }
+
+    @Override
+    public boolean removeAll( List<RepositoryTask> tasks )
+        throws TaskQueueException
+    {
+        boolean removed = false;
+        for ( RepositoryTask task : tasks )
+        {
+            removed |= remove( task );
+        }
+        return removed;
+    }
+
+    @Override
+    public List<RepositoryTask> getQueueSnapshot()
+        throws TaskQueueException
+    {
+        synchronized ( lock )
+        {
+            List<RepositoryTask> snapshot = new ArrayList<>( size() );
+            for ( LaneTasks lane : lanes.values() )
+            {
+                for ( LinkedHashMap<RepositoryTask, Long> tasks : lane.queuedTasks.values() )
+                {
+                    snapshot.addAll( tasks.keySet() );
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the task is queued and not yet taken
+     */
+    public boolean isQueued( RepositoryTask task )
+    {
+        synchronized ( lock )
+        {
+            LinkedHashMap<RepositoryTask, Long> tasks = lanes.get( getLane( task ) ).queuedTasks.get( getKey( task ) );
+            return tasks != null && tasks.containsKey( task );
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the task processing a file is being executed, or was recently completed and the
+     *         file hasn't been modified since
+     */
+    public boolean isUpToDate( RepositoryTask task )
+    {
+        File file = task.getResourceFile();
+        if ( file == null )
+        {
+            return false;
+        }
+        synchronized ( lock )
+        {
+            if ( task.equals( lanes.get( Lane.FILE ).runningTasks.get( getKey( task ) ) ) )
+            {
+                return true;
+            }
+            Long lastModified = completedFiles.get( file.getAbsoluteFile() );
+            return lastModified != null && lastModified == file.lastModified();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a task of the repository is queued and not yet taken, in any lane
+     */
+    public boolean hasQueuedTasks( String repositoryId )
+    {
+        return getQueuedTasks( repositoryId, Lane.FILE ) > 0 || getQueuedTasks( repositoryId, Lane.SCAN ) > 0;
+    }
+
+    /**
+     * @return the number of tasks of the repository queued and not yet taken in a lane
+     */
+    public int getQueuedTasks( String repositoryId, Lane lane )
+    {
+        synchronized ( lock )
+        {
+            LinkedHashMap<RepositoryTask, Long> tasks =
+                lanes.get( lane ).queuedTasks.get( repositoryId == null ? "" : repositoryId );
+            return tasks == null ? 0 : tasks.size();
+        }
+    }
+
+    /**
+     * @return the task of the repository being executed in a lane, if any
+     */
+    public RepositoryTask getRunningTask( String repositoryId, Lane lane )
+    {
+        synchronized ( lock )
+        {
+            return lanes.get( lane ).runningTasks.get( repositoryId == null ? "" : repositoryId );
+        }
+    }
+
+    /**
+     * @return the number of queued tasks not yet taken
+     */
+    public int size()
+    {
+        synchronized ( lock )
+        {
+            int size = 0;
+            for ( LaneTasks lane : lanes.values() )
+            {
+                size += lane.size;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * @return the number of queued tasks not yet taken in a lane
+     */
+    public int size( Lane lane )
+    {
+        synchronized ( lock )
+        {
+            return lanes.get( lane ).size;
+        }
+    }
+
+    /**
+     * @return the tasks taken from the queue and not completed yet
+     */
+    public List<RepositoryTask> getRunningTasks()
+    {
+        synchronized ( lock )
+        {
+            List<RepositoryTask> running = new ArrayList<>();
+            for ( LaneTasks lane : lanes.values() )
+            {
+                running.addAll( lane.runningTasks.values() );
+            }
+            return running;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds the oldest queued task has been waiting for, 0 if there is none
+     */
+    public long getOldestTaskWaitTime()
+    {
+        synchronized ( lock )
+        {
+            long oldest = Long.MAX_VALUE;
+            for ( LaneTasks lane : lanes.values() )
+            {
+                for ( LinkedHashMap<RepositoryTask, Long> tasks : lane.queuedTasks.values() )
+                {
+                    oldest = Math.min( oldest, tasks.values().iterator().next() );
+                }
+            }
+            return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+        }
+    }
+
+    /**
+     * @return the average time in milliseconds the tasks taken from the queue had been waiting for
+     */
+    public long getAverageWaitTime()
+    {
+        synchronized ( lock )
+        {
+            return startedTasks == 0 ? 0 : totalWaitTime / startedTasks;
+        }
+    }
+
+    /**
+     * @return the longest time in milliseconds a task taken from the queue had been waiting for
+     */
+    public long getMaxWaitTime()
+    {
+        synchronized ( lock )
+        {
+            return maxWaitTime;
+        }
+    }
+
+    /**
+     * @return the number of tasks taken from the queue
+     */
+    public long getStartedTasks()
+    {
+        synchronized ( lock )
+        {
+            return startedTasks;
+        }
+    }
+
+    /**
+     * @return the lane a task is queued in
+     */
+    public static Lane getLane( RepositoryTask task )
+    {
+        return task.getResourceFile() != null ? Lane.FILE : Lane.SCAN;
+    }
+
+    public File getJournalDirectory()
+    {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory( File journalDirectory )
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    private static File getDefaultJournalDirectory()
+    {
+        String directory = System.getProperty( "archiva.taskQueue.journalDirectory" );
+        return directory == null || directory.isEmpty() ? null : new File( directory );
+    }
+
+    /**
+     * Records a task as its repository, resource file and flags.
+     */
+    private static class TaskCodec
+        implements TaskJournal.TaskCodec<RepositoryTask>
+    {
+        @Override
+        public String encode( RepositoryTask task )
+        {
+            return TaskJournal.join( task.getRepositoryId(),
+                                     task.getResourceFile() == null ? null : task.getResourceFile().getPath(),
+                                     Boolean.toString( task.isUpdateRelatedArtifacts() ),
+                                     Boolean.toString( task.isScanAll() ) );
+        }
+
+        @Override
+        public RepositoryTask decode( String value )
+        {
+            String[] fields = TaskJournal.split( value );
+            if ( fields.length < 4 )
+            {
+                return null;
+            }
+            RepositoryTask task = new RepositoryTask( fields[0], Boolean.parseBoolean( fields[3] ) );
+            task.setResourceFile( fields[1] == null ? null : new File( fields[1] ) );
+            task.setUpdateRelatedArtifacts( Boolean.parseBoolean( fields[2] ) );
+            return task;
+        }
+    }
+
+    private static String getKey( RepositoryTask task )
+    {
+        return task.getRepositoryId() == null ? "" : task.getRepositoryId();
+    }
+}
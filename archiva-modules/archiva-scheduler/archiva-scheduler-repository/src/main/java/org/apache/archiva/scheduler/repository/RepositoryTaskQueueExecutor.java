@@ -0,0 +1,241 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.taskqueue.Task;
+import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
+import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutor;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepositoryTaskQueueExecutor - executes the tasks of a {@link RepositoryTaskQueue} with several workers, so that
+ * the tasks of different repositories are executed in parallel while the tasks of a repository are executed one
+ * after the other, whatever their lane in the queue.
+ * <p>
+ * The workers take the tasks of the file lane first, then the scans of entire repositories, and some workers only
+ * take the tasks of the file lane so that they are still processed while all the other workers are scanning. Their
+ * numbers can be set with the <code>archiva.repositoryScanning.workers</code> and
+ * <code>archiva.repositoryScanning.fileWorkers</code> system properties.
+ */
+public class RepositoryTaskQueueExecutor
+{
+    private Logger log = LoggerFactory.getLogger( RepositoryTaskQueueExecutor.class );
+
+    private String name;
+
+    private TaskExecutor<RepositoryTask> executor;
+
+    private RepositoryTaskQueue queue;
+
+    private int workers = Integer.getInteger( "archiva.repositoryScanning.workers", 4 );
+
+    /**
+     * Number of workers only taking the tasks of the file lane.
+     */
+    private int fileWorkers = Integer.getInteger( "archiva.repositoryScanning.fileWorkers", 2 );
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * The worker executing each running task.
+     */
+    private final Map<RepositoryTask, Thread> runningTasks = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown;
+
+    @PostConstruct
+    public void start()
+    {
+        shutdown = false;
+        for ( int i = 1; i <= Math.max( 1, workers ); i++ )
+        {
+            startWorker( new Worker( true ), name + "-" + i );
+        }
+        for ( int i = 1; i <= fileWorkers; i++ )
+        {
+            startWorker( new Worker( false ), name + "-file-" + i );
+        }
+        log.info( "Started {} workers for the task queue {}", threads.size(), name );
+    }
+
+    private void startWorker( Worker worker, String threadName )
+    {
+        Thread thread = new Thread( worker, threadName );
+        thread.setDaemon( true );
+        threads.add( thread );
+        thread.start();
+    }
+
+    /**
+     * Stop the workers, cancelling the tasks being executed.
+     */
+    @PreDestroy
+    public void stop()
+    {
+        shutdown = true;
+        for ( Thread thread : threads )
+        {
+            thread.interrupt();
+        }
+        threads.clear();
+    }
+
+    /**
+     * @return the tasks being executed
+     */
+    public List<RepositoryTask> getCurrentTasks()
+    {
+        return new ArrayList<>( runningTasks.keySet() );
+    }
+
+    /**
+     * Cancel a task being executed by interrupting its worker.
+     *
+     * @return <code>true</code> if the task was being executed
+     */
+    public boolean cancelTask( Task task )
+    {
+        Thread thread = runningTasks.get( task );
+        if ( thread == null )
+        {
+            return false;
+        }
+        log.info( "Cancelling task {}", task );
+        thread.interrupt();
+        return true;
+    }
+
+    private class Worker
+        implements Runnable
+    {
+        private final boolean scans;
+
+        private Worker( boolean scans )
+        {
+            this.scans = scans;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( !shutdown )
+            {
+                RepositoryTask task;
+                try
+                {
+                    task = queue.nextTask( TimeUnit.MINUTES.toMillis( 1 ), scans );
+                }
+                catch ( InterruptedException e )
+                {
+                    continue;
+                }
+                if ( task == null )
+                {
+                    continue;
+                }
+
+                runningTasks.put( task, Thread.currentThread() );
+                try
+                {
+                    executor.executeTask( task );
+                }
+                catch ( TaskExecutionException | RuntimeException e )
+                {
+                    log.error( "Error executing task {}: {}", task, e.getMessage(), e );
+                }
+                finally
+                {
+                    runningTasks.remove( task );
+                    if ( shutdown )
+                    {
+                        // executed again at the next startup if the queue is journaled
+                        queue.taskInterrupted( task );
+                    }
+                    else
+                    {
+                        queue.taskCompleted( task );
+                    }
+                    // the task may have been cancelled
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    public TaskExecutor<RepositoryTask> getExecutor()
+    {
+        return executor;
+    }
+
+    public void setExecutor( TaskExecutor<RepositoryTask> executor )
+    {
+        this.executor = executor;
+    }
+
+    public RepositoryTaskQueue getQueue()
+    {
+        return queue;
+    }
+
+    public void setQueue( RepositoryTaskQueue queue )
+    {
+        this.queue = queue;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers( int workers )
+    {
+        this.workers = workers;
+    }
+
+    public int getFileWorkers()
+    {
+        return fileWorkers;
+    }
+
+    public void setFileWorkers( int fileWorkers )
+    {
+        this.fileWorkers = fileWorkers;
+    }
+}
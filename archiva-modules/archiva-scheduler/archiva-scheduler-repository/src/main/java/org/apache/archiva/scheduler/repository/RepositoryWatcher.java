@@ -0,0 +1,606 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.configuration.FileTypes;
+import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepositoryWatcher - watches the directories of managed repositories for the files created, modified or removed by
+ * other means than a deployment, eg. rsync, and queues the same tasks processing a single file as the deployments do,
+ * so that these files don't wait for the next scan of the repository.
+ * <p>
+ * The events are coalesced by directory: the files of a directory are queued once no event happened in the directory
+ * for the debounce time, so that a file being copied is queued once it is complete. The files already processed by a
+ * deployment since they were last modified are skipped. The removed files are not queued, as the consumers only process
+ * existing content. Only the files matching the artifact file types of the repository scanning configuration are
+ * queued, leaving out the metadata, checksums and temporary files written by Archiva itself.
+ * <p>
+ * When events are lost, because the watch service overflowed or too many files are pending, and periodically as a
+ * reconciliation, an incremental scan of the repository is queued instead. An incremental scan is also queued when a
+ * repository starts being watched, for the changes made while it wasn't.
+ * <p>
+ * A repository whose directories can't all be watched, eg. when the limit of inotify watches is reached, is no longer
+ * watched: an incremental scan of it is queued at the fallback scan interval instead, until it is no longer requested
+ * to be watched.
+ * <p>
+ * A single thread registers the directories and handles the events of all the repositories watched.
+ *
+ * @since 2.2.3
+ */
+public class RepositoryWatcher
+    implements Runnable
+{
+    private static final long POLL_INTERVAL = 1000;
+
+    private static final int MAX_PENDING_FILES = 10000;
+
+    private Logger log = LoggerFactory.getLogger( RepositoryWatcher.class );
+
+    private final RepositoryTaskQueue queue;
+
+    private final long debounce;
+
+    private final long reconciliationInterval;
+
+    private long fallbackScanInterval = TimeUnit.MINUTES.toMillis( 5 );
+
+    private FileTypes fileTypes;
+
+    private WatchService watchService;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * The locations of the repositories to watch by id, as requested, taken into account by the watcher thread.
+     */
+    private volatile Map<String, File> requestedRepositories = Collections.emptyMap();
+
+    private volatile boolean requestChanged;
+
+    // the following is only accessed by the watcher thread
+
+    private final Map<String, WatchedRepository> repositories = new HashMap<>();
+
+    private final Map<WatchKey, WatchedDirectory> directories = new HashMap<>();
+
+    private final Map<Path, PendingDirectory> pendingDirectories = new LinkedHashMap<>();
+
+    private int pendingFiles;
+
+    /**
+     * @param queue                  the queue of the repository scanning tasks
+     * @param debounce               the time in milliseconds without events in a directory before its files are queued
+     * @param reconciliationInterval the time in milliseconds between two incremental scans of a repository watched
+     */
+    public RepositoryWatcher( RepositoryTaskQueue queue, long debounce, long reconciliationInterval )
+    {
+        this.queue = queue;
+        this.debounce = debounce;
+        this.reconciliationInterval = reconciliationInterval;
+    }
+
+    /**
+     * @param fallbackScanInterval the time in milliseconds between two incremental scans of a repository that can't be
+     *                             watched
+     */
+    public void setFallbackScanInterval( long fallbackScanInterval )
+    {
+        this.fallbackScanInterval = fallbackScanInterval;
+    }
+
+    /**
+     * @param fileTypes the file types of the repository scanning configuration, the changed files being queued
+     *                  whatever their type if not set
+     */
+    public void setFileTypes( FileTypes fileTypes )
+    {
+        this.fileTypes = fileTypes;
+    }
+
+    public synchronized void start()
+        throws IOException
+    {
+        if ( running )
+        {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        running = true;
+        thread = new Thread( this, "repository-watcher" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    public synchronized void stop()
+    {
+        if ( !running )
+        {
+            return;
+        }
+        running = false;
+        try
+        {
+            watchService.close();
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to close the repository watch service: {}", e.getMessage() );
+        }
+        try
+        {
+            thread.join( POLL_INTERVAL );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Set the repositories to watch, replacing the previous ones.
+     *
+     * @param repositories the locations of the repositories by id
+     */
+    public void setWatchedRepositories( Map<String, File> repositories )
+    {
+        requestedRepositories = Collections.unmodifiableMap( new HashMap<>( repositories ) );
+        requestChanged = true;
+    }
+
+    public Set<String> getWatchedRepositories()
+    {
+        return requestedRepositories.keySet();
+    }
+
+    @Override
+    public void run()
+    {
+        log.info( "Repository watcher started" );
+        try
+        {
+            while ( running )
+            {
+                if ( requestChanged )
+                {
+                    requestChanged = false;
+                    updateRepositories( requestedRepositories );
+                }
+
+                WatchKey key = watchService.poll( Math.min( debounce, POLL_INTERVAL ), TimeUnit.MILLISECONDS );
+                while ( key != null )
+                {
+                    processEvents( key );
+                    key = watchService.poll();
+                }
+
+                long now = System.currentTimeMillis();
+                queuePendingFiles( now );
+                reconcile( now );
+            }
+        }
+        catch ( ClosedWatchServiceException e )
+        {
+            // stopped
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        log.info( "Repository watcher stopped" );
+    }
+
+    private void updateRepositories( Map<String, File> requested )
+    {
+        for ( Iterator<WatchedRepository> i = repositories.values().iterator(); i.hasNext(); )
+        {
+            WatchedRepository repository = i.next();
+            File location = requested.get( repository.id );
+            if ( location == null || !location.getAbsoluteFile().toPath().equals( repository.root ) )
+            {
+                unwatch( repository );
+                i.remove();
+                log.info( "Stopped watching the repository [{}]", repository.id );
+            }
+        }
+        for ( Map.Entry<String, File> entry : requested.entrySet() )
+        {
+            if ( !repositories.containsKey( entry.getKey() ) )
+            {
+                WatchedRepository repository =
+                    new WatchedRepository( entry.getKey(), entry.getValue().getAbsoluteFile().toPath() );
+                repositories.put( repository.id, repository );
+                long start = System.currentTimeMillis();
+                register( repository, repository.root, false );
+                if ( !repository.unwatchable )
+                {
+                    log.info( "Watching the repository [{}] {} in {} ms", repository.id, repository.root,
+                              System.currentTimeMillis() - start );
+                    // the changes made while the repository wasn't watched
+                    queueScan( repository );
+                }
+            }
+        }
+    }
+
+    private void unwatch( WatchedRepository repository )
+    {
+        for ( Iterator<Map.Entry<WatchKey, WatchedDirectory>> i = directories.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry<WatchKey, WatchedDirectory> entry = i.next();
+            if ( entry.getValue().repository == repository )
+            {
+                entry.getKey().cancel();
+                i.remove();
+            }
+        }
+        for ( Iterator<PendingDirectory> i = pendingDirectories.values().iterator(); i.hasNext(); )
+        {
+            PendingDirectory pending = i.next();
+            if ( pending.repository == repository )
+            {
+                pendingFiles -= pending.files.size();
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Stop watching a repository whose directories can't all be watched, scanning it periodically instead.
+     */
+    private void fallBackToScans( WatchedRepository repository, Path dir, IOException e )
+    {
+        log.warn( "Unable to watch {} of the repository [{}], scanning it every {} s instead: {}", dir,
+                  repository.id, TimeUnit.MILLISECONDS.toSeconds( fallbackScanInterval ), e.getMessage() );
+        unwatch( repository );
+        repository.unwatchable = true;
+        // the changes missed so far
+        queueScan( repository );
+    }
+
+    /**
+     * Register a directory and its subdirectories.
+     *
+     * @param created <code>true</code> if the directory was just created, so that the files it already contains are
+     *                queued as they were created before it was registered
+     */
+    private void register( final WatchedRepository repository, final Path root, final boolean created )
+    {
+        if ( repository.unwatchable )
+        {
+            return;
+        }
+        try
+        {
+            Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+                    throws IOException
+                {
+                    if ( !dir.equals( repository.root ) && isHidden( dir ) )
+                    {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    WatchKey key;
+                    try
+                    {
+                        key = registerDirectory( dir );
+                    }
+                    catch ( IOException e )
+                    {
+                        fallBackToScans( repository, dir, e );
+                        return FileVisitResult.TERMINATE;
+                    }
+                    directories.put( key, new WatchedDirectory( repository, dir ) );
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+                {
+                    if ( created && !isHidden( file ) )
+                    {
+                        addPendingFile( repository, file );
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed( Path file, IOException e )
+                {
+                    log.warn( "Unable to watch {} of the repository [{}]: {}", file, repository.id, e.getMessage() );
+                    return FileVisitResult.CONTINUE;
+                }
+            } );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to watch {} of the repository [{}]: {}", root, repository.id, e.getMessage() );
+        }
+    }
+
+    /**
+     * Register a directory with the watch service.
+     */
+    WatchKey registerDirectory( Path dir )
+        throws IOException
+    {
+        return dir.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                             StandardWatchEventKinds.ENTRY_DELETE );
+    }
+
+    private void processEvents( WatchKey key )
+    {
+        WatchedDirectory directory = directories.get( key );
+        if ( directory == null )
+        {
+            key.cancel();
+            return;
+        }
+
+        for ( WatchEvent<?> event : key.pollEvents() )
+        {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
+            {
+                log.warn( "Events of the repository [{}] were lost, queuing a scan", directory.repository.id );
+                queueScan( directory.repository );
+                continue;
+            }
+
+            Path path = directory.path.resolve( (Path) event.context() );
+            if ( isHidden( path ) )
+            {
+                continue;
+            }
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+                Files.isDirectory( path, LinkOption.NOFOLLOW_LINKS ) )
+            {
+                register( directory.repository, path, true );
+            }
+            else
+            {
+                addPendingFile( directory.repository, path );
+            }
+        }
+
+        // the directory was removed
+        if ( !key.reset() )
+        {
+            directories.remove( key );
+        }
+    }
+
+    private void addPendingFile( WatchedRepository repository, Path file )
+    {
+        if ( repository.unwatchable || !isArtifact( repository, file ) )
+        {
+            return;
+        }
+        if ( pendingFiles >= MAX_PENDING_FILES )
+        {
+            if ( !repository.scanQueued )
+            {
+                log.warn( "Too many files changed in the repository [{}], queuing a scan", repository.id );
+                queueScan( repository );
+            }
+            return;
+        }
+
+        Path parent = file.getParent();
+        PendingDirectory pending = pendingDirectories.get( parent );
+        if ( pending == null )
+        {
+            pending = new PendingDirectory( repository );
+            pendingDirectories.put( parent, pending );
+        }
+        if ( pending.files.add( file ) )
+        {
+            pendingFiles++;
+        }
+        pending.lastEventTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Queue the files of the directories without events for the debounce time.
+     */
+    private void queuePendingFiles( long now )
+    {
+        for ( Iterator<PendingDirectory> i = pendingDirectories.values().iterator(); i.hasNext(); )
+        {
+            PendingDirectory pending = i.next();
+            if ( now - pending.lastEventTime < debounce )
+            {
+                continue;
+            }
+            i.remove();
+            pendingFiles -= pending.files.size();
+
+            for ( Path file : pending.files )
+            {
+                if ( !Files.isRegularFile( file, LinkOption.NOFOLLOW_LINKS ) )
+                {
+                    log.debug( "Skipping {} of the repository [{}], not a file anymore", file,
+                               pending.repository.id );
+                    continue;
+                }
+
+                RepositoryTask task = new RepositoryTask( pending.repository.id );
+                task.setResourceFile( file.toFile() );
+                task.setUpdateRelatedArtifacts( false );
+                task.setScanAll( false );
+                if ( queue.isUpToDate( task ) )
+                {
+                    continue;
+                }
+                try
+                {
+                    if ( queue.put( task ) )
+                    {
+                        log.debug( "Queued the changed file {} of the repository [{}]", file,
+                                   pending.repository.id );
+                    }
+                }
+                catch ( TaskQueueException e )
+                {
+                    log.error( "Unable to queue the changed file {} of the repository [{}]: {}", file,
+                               pending.repository.id, e.getMessage() );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file matches the artifact file types and isn't written by Archiva itself
+     */
+    private boolean isArtifact( WatchedRepository repository, Path file )
+    {
+        if ( fileTypes == null )
+        {
+            return true;
+        }
+        String relativePath = repository.root.relativize( file ).toString();
+        return fileTypes.matchesArtifactPattern( relativePath ) && !fileTypes.matchesDefaultExclusions( relativePath );
+    }
+
+    private void reconcile( long now )
+    {
+        for ( WatchedRepository repository : repositories.values() )
+        {
+            if ( repository.unwatchable && now - repository.lastScanTime >= fallbackScanInterval )
+            {
+                log.debug( "Queuing the periodic scan of the repository [{}] that can't be watched", repository.id );
+                queueScan( repository );
+            }
+            else if ( now - repository.lastScanTime >= reconciliationInterval )
+            {
+                log.info( "Queuing the periodic scan of the watched repository [{}]", repository.id );
+                queueScan( repository );
+            }
+            else if ( repository.scanQueued && !queue.hasQueuedTasks( repository.id ) )
+            {
+                repository.scanQueued = false;
+            }
+        }
+    }
+
+    /**
+     * Queue an incremental scan of a repository, processing the files changed since its last scan.
+     */
+    private void queueScan( WatchedRepository repository )
+    {
+        repository.lastScanTime = System.currentTimeMillis();
+        repository.scanQueued = true;
+        try
+        {
+            queue.put( new RepositoryTask( repository.id ) );
+        }
+        catch ( TaskQueueException e )
+        {
+            log.error( "Unable to queue the scan of the repository [{}]: {}", repository.id, e.getMessage() );
+        }
+    }
+
+    private static boolean isHidden( Path path )
+    {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith( "." );
+    }
+
+    private static class WatchedRepository
+    {
+        private final String id;
+
+        private final Path root;
+
+        private long lastScanTime;
+
+        /**
+         * Whether a scan was queued since the last reconciliation, so that lost events don't queue more.
+         */
+        private boolean scanQueued;
+
+        /**
+         * Whether the repository is scanned at the fallback scan interval, as its directories can't all be watched.
+         */
+        private boolean unwatchable;
+
+        private WatchedRepository( String id, Path root )
+        {
+            this.id = id;
+            this.root = root;
+        }
+    }
+
+    private static class WatchedDirectory
+    {
+        private final WatchedRepository repository;
+
+        private final Path path;
+
+        private WatchedDirectory( WatchedRepository repository, Path path )
+        {
+            this.repository = repository;
+            this.path = path;
+        }
+    }
+
+    private static class PendingDirectory
+    {
+        private final WatchedRepository repository;
+
+        private final Set<Path> files = new LinkedHashSet<>();
+
+        private long lastEventTime;
+
+        private PendingDirectory( WatchedRepository repository )
+        {
+            this.repository = repository;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepositoryTaskQueueTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class RepositoryTaskQueueTest
+    extends TestCase
+{
+    private RepositoryTaskQueue queue = new RepositoryTaskQueue();
+
+    @Test
+    public void testDuplicateTaskNotQueued()
+        throws Exception
+    {
+        assertTrue( queue.put( createTask( "internal", "a.jar" ) ) );
+        assertFalse( queue.put( createTask( "internal", "a.jar" ) ) );
+        assertTrue( queue.put( createTask( "internal", "b.jar" ) ) );
+
+        assertEquals( 2, queue.size() );
+        assertTrue( queue.isQueued( createTask( "internal", "a.jar" ) ) );
+        assertTrue( queue.hasQueuedTasks( "internal" ) );
+        assertFalse( queue.hasQueuedTasks( "snapshots" ) );
+    }
+
+    @Test
+    public void testRepositoryTasksSerialized()
+        throws Exception
+    {
+        queue.put( createTask( "internal", "a.jar" ) );
+        queue.put( createTask( "internal", "b.jar" ) );
+        queue.put( createTask( "snapshots", "c.jar" ) );
+
+        RepositoryTask first = queue.poll( 0, TimeUnit.MILLISECONDS );
+        assertEquals( createTask( "internal", "a.jar" ), first );
+
+        // the next task of the repository waits for the first one to complete
+        RepositoryTask second = queue.poll( 0, TimeUnit.MILLISECONDS );
+        assertEquals( createTask( "snapshots", "c.jar" ), second );
+        assertNull( queue.poll( 0, TimeUnit.MILLISECONDS ) );
+        assertEquals( 2, queue.getRunningTasks().size() );
+
+        queue.taskCompleted( first );
+        assertEquals( createTask( "internal", "b.jar" ), queue.poll( 0, TimeUnit.MILLISECONDS ) );
+        assertEquals( 0, queue.size() );
+        assertEquals( 3, queue.getStartedTasks() );
+    }
+
+    @Test
+    public void testFileTasksBeforeScans()
+        throws Exception
+    {
+        RepositoryTask scan = new RepositoryTask( "internal" );
+        queue.put( scan );
+        queue.put( createTask( "internal", "a.jar" ) );
+
+        // a worker of the file lane doesn't take scans
+        RepositoryTask file = queue.nextTask( 0, false );
+        assertEquals( createTask( "internal", "a.jar" ), file );
+        assertNull( queue.nextTask( 0, false ) );
+
+        // the scan waits for the file task being executed in the other lane
+        assertNull( queue.nextTask( 0, true ) );
+        queue.taskCompleted( file );
+        assertEquals( scan, queue.nextTask( 0, true ) );
+        assertEquals( scan, queue.getRunningTask( "internal", RepositoryTaskQueue.Lane.SCAN ) );
+
+        // the scan running doesn't count as queued
+        assertTrue( queue.put( new RepositoryTask( "internal" ) ) );
+        queue.put( createTask( "internal", "b.jar" ) );
+        assertEquals( 1, queue.getQueuedTasks( "internal", RepositoryTaskQueue.Lane.SCAN ) );
+        assertEquals( 1, queue.getQueuedTasks( "internal", RepositoryTaskQueue.Lane.FILE ) );
+    }
+
+    @Test
+    public void testFileTasksHeldWhileTheRepositoryIsScanned()
+        throws Exception
+    {
+        RepositoryTask scan = new RepositoryTask( "internal" );
+        queue.put( scan );
+        assertEquals( scan, queue.nextTask( 0, true ) );
+
+        queue.put( createTask( "internal", "a.jar" ) );
+        queue.put( createTask( "snapshots", "c.jar" ) );
+
+        // the files of the repository being scanned wait, the other repositories' don't
+        assertEquals( createTask( "snapshots", "c.jar" ), queue.nextTask( 0, false ) );
+        assertNull( queue.nextTask( 0, false ) );
+        assertNull( queue.nextTask( 0, true ) );
+        assertEquals( 1, queue.getQueuedTasks( "internal", RepositoryTaskQueue.Lane.FILE ) );
+
+        queue.taskCompleted( scan );
+        RepositoryTask file = queue.nextTask( 0, false );
+        assertEquals( createTask( "internal", "a.jar" ), file );
+        assertNull( queue.getRunningTask( "internal", RepositoryTaskQueue.Lane.SCAN ) );
+        assertEquals( file, queue.getRunningTask( "internal", RepositoryTaskQueue.Lane.FILE ) );
+    }
+
+    @Test
+    public void testRemove()
+        throws Exception
+    {
+        queue.put( createTask( "internal", "a.jar" ) );
+        queue.put( createTask( "snapshots", "c.jar" ) );
+
+        assertTrue( queue.remove( createTask( "internal", "a.jar" ) ) );
+        assertFalse( queue.remove( createTask( "internal", "a.jar" ) ) );
+        assertFalse( queue.hasQueuedTasks( "internal" ) );
+
+        assertEquals( createTask( "snapshots", "c.jar" ), queue.poll( 0, TimeUnit.MILLISECONDS ) );
+        assertNull( queue.poll( 0, TimeUnit.MILLISECONDS ) );
+    }
+
+    @Test
+    public void testJournaledTasksQueuedAgain()
+        throws Exception
+    {
+        File journalDirectory = new File( "target/test-task-journal" );
+        FileUtils.deleteDirectory( journalDirectory );
+
+        queue.setJournalDirectory( journalDirectory );
+        queue.initialize();
+        queue.put( createTask( "internal", "a.jar" ) );
+        queue.put( createTask( "internal", "b c.jar" ) );
+        queue.put( new RepositoryTask( "snapshots", true ) );
+
+        RepositoryTask completed = queue.poll( 0, TimeUnit.MILLISECONDS );
+        queue.taskCompleted( completed );
+        // neither completed nor interrupted, as when the application crashes
+        RepositoryTask running = queue.poll( 0, TimeUnit.MILLISECONDS );
+        queue.close();
+
+        RepositoryTaskQueue restarted = new RepositoryTaskQueue();
+        restarted.setJournalDirectory( journalDirectory );
+        restarted.initialize();
+
+        assertEquals( 2, restarted.size() );
+        assertFalse( restarted.isQueued( completed ) );
+        assertTrue( restarted.isQueued( running ) );
+        assertEquals( 1, restarted.getQueuedTasks( "snapshots", RepositoryTaskQueue.Lane.SCAN ) );
+
+        RepositoryTask task = restarted.poll( 0, TimeUnit.MILLISECONDS );
+        assertEquals( new File( "b c.jar" ), task.getResourceFile() );
+        task = restarted.poll( 0, TimeUnit.MILLISECONDS );
+        assertTrue( task.isScanAll() );
+        restarted.close();
+    }
+
+    private static RepositoryTask createTask( String repositoryId, String file )
+    {
+        RepositoryTask task = new RepositoryTask( repositoryId );
+        task.setResourceFile( new File( file ) );
+        return task;
+    }
+}
@@ -0,0 +1,186 @@
+package org.apache.archiva.scheduler.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.configuration.FileTypes;
+import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * RepositoryWatcherTest
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class RepositoryWatcherTest
+    extends TestCase
+{
+    private RepositoryTaskQueue queue = new RepositoryTaskQueue();
+
+    private RepositoryWatcher watcher = new RepositoryWatcher( queue, 200, TimeUnit.HOURS.toMillis( 1 ) );
+
+    private File repositoryDir = new File( "target/test-repository-watcher" ).getAbsoluteFile();
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        FileUtils.deleteDirectory( repositoryDir );
+        new File( repositoryDir, "org/foo/1.0" ).mkdirs();
+
+        // as the default artifact file types
+        FileTypes fileTypes = mock( FileTypes.class );
+        when( fileTypes.matchesArtifactPattern( Matchers.endsWith( ".jar" ) ) ).thenReturn( true );
+        when( fileTypes.matchesArtifactPattern( Matchers.endsWith( ".pom" ) ) ).thenReturn( true );
+        when( fileTypes.matchesDefaultExclusions( Matchers.endsWith( ".sha1" ) ) ).thenReturn( true );
+        watcher.setFileTypes( fileTypes );
+
+        watcher.start();
+        watcher.setWatchedRepositories( Collections.singletonMap( "internal", repositoryDir ) );
+
+        // the changes made while the repository wasn't watched are scanned
+        assertEquals( new RepositoryTask( "internal" ), waitForTask() );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        watcher.stop();
+        super.tearDown();
+    }
+
+    @Test
+    public void testChangedFilesQueued()
+        throws Exception
+    {
+        File jar = new File( repositoryDir, "org/foo/1.0/foo-1.0.jar" );
+        FileUtils.writeStringToFile( jar, "jar" );
+        // the temporary files of rsync are hidden
+        FileUtils.writeStringToFile( new File( repositoryDir, "org/foo/1.0/.foo-1.0.pom.x2a3" ), "pom" );
+
+        RepositoryTask task = waitForTask();
+        assertEquals( jar, task.getResourceFile() );
+        assertNull( queue.poll( 500, TimeUnit.MILLISECONDS ) );
+
+        // the directories created are watched too
+        File pom = new File( repositoryDir, "org/bar/2.0/bar-2.0.pom" );
+        FileUtils.writeStringToFile( pom, "pom" );
+        assertEquals( pom, waitForTask().getResourceFile() );
+    }
+
+    @Test
+    public void testProcessedFilesNotQueuedAgain()
+        throws Exception
+    {
+        File jar = new File( repositoryDir, "org/foo/1.0/foo-1.0.jar" );
+        FileUtils.writeStringToFile( jar, "jar" );
+
+        // as deployed
+        RepositoryTask deployed = new RepositoryTask( "internal" );
+        deployed.setResourceFile( jar );
+        queue.put( deployed );
+        queue.taskCompleted( queue.poll( 0, TimeUnit.MILLISECONDS ) );
+
+        assertNull( queue.poll( 1000, TimeUnit.MILLISECONDS ) );
+    }
+
+    @Test
+    public void testOnlyArtifactsQueued()
+        throws Exception
+    {
+        // written by Archiva
+        FileUtils.writeStringToFile( new File( repositoryDir, "org/foo/maven-metadata.xml" ), "metadata" );
+        FileUtils.writeStringToFile( new File( repositoryDir, "org/foo/1.0/foo-1.0.jar123.tmp" ), "jar" );
+        FileUtils.writeStringToFile( new File( repositoryDir, "org/foo/1.0/foo-1.0.jar.sha1" ), "sha1" );
+        File pom = new File( repositoryDir, "org/foo/1.0/foo-1.0.pom" );
+        FileUtils.writeStringToFile( pom, "pom" );
+
+        assertEquals( pom, waitForTask().getResourceFile() );
+        assertNull( queue.poll( 500, TimeUnit.MILLISECONDS ) );
+    }
+
+    @Test
+    public void testRepositoryScannedWhenItCantBeWatched()
+        throws Exception
+    {
+        watcher.stop();
+        RepositoryWatcher limited = new RepositoryWatcher( queue, 200, TimeUnit.HOURS.toMillis( 1 ) )
+        {
+            @Override
+            WatchKey registerDirectory( Path dir )
+                throws IOException
+            {
+                if ( dir.endsWith( "bar" ) )
+                {
+                    throw new IOException( "User limit of inotify watches reached" );
+                }
+                return super.registerDirectory( dir );
+            }
+        };
+        limited.setFallbackScanInterval( 500 );
+        limited.start();
+        try
+        {
+            limited.setWatchedRepositories( Collections.singletonMap( "internal", repositoryDir ) );
+            assertEquals( new RepositoryTask( "internal" ), waitForTask() );
+
+            FileUtils.writeStringToFile( new File( repositoryDir, "org/bar/2.0/bar-2.0.pom" ), "pom" );
+            // for the changes missed
+            assertEquals( new RepositoryTask( "internal" ), waitForTask() );
+
+            // the files are no longer queued, the repository is scanned periodically instead
+            FileUtils.writeStringToFile( new File( repositoryDir, "org/foo/1.0/foo-1.0.jar" ), "jar" );
+            assertEquals( new RepositoryTask( "internal" ), waitForTask() );
+            assertEquals( new RepositoryTask( "internal" ), waitForTask() );
+        }
+        finally
+        {
+            limited.stop();
+        }
+    }
+
+    private RepositoryTask waitForTask()
+        throws Exception
+    {
+        RepositoryTask task = queue.poll( 5, TimeUnit.SECONDS );
+        assertNotNull( "No task queued", task );
+        queue.taskCompleted( task );
+        return task;
+    }
+}
@@ -0,0 +1,85 @@
+package org.apache.archiva.rest.api.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.maven2.model.Artifact;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of the artifacts of a repository, with the token of the next page if there is one.
+ *
+ * @since 2.2.3
+ */
+@XmlRootElement( name = "artifactsPage" )
+public class ArtifactsPage
+    implements Serializable
+{
+    private List<Artifact> artifacts;
+
+    private String nextPageToken;
+
+    public ArtifactsPage()
+    {
+        // no op
+    }
+
+    public ArtifactsPage( List<Artifact> artifacts, String nextPageToken )
+    {
+        this.artifacts = artifacts;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Artifact> getArtifacts()
+    {
+        return artifacts;
+    }
+
+    public void setArtifacts( List<Artifact> artifacts )
+    {
+        this.artifacts = artifacts;
+    }
+
+    /**
+     * @return the token of the next page, <code>null</code> for the last page
+     */
+    public String getNextPageToken()
+    {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken( String nextPageToken )
+    {
+        this.nextPageToken = nextPageToken;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "ArtifactsPage" );
+        sb.append( "{artifacts=" ).append( artifacts );
+        sb.append( ", nextPageToken='" ).append( nextPageToken ).append( '\'' );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
@@ -33,6 +33,26 @@
 
     private int entriesNumber;
 
+    /**
+     * number of tasks taken from the queue and being executed, when known
+     */
+    private int runningTasksNumber;
+
+    /**
+     * time in milliseconds the oldest entry has been waiting for, when known
+     */
+    private long oldestEntryWaitTime;
+
+    /**
+     * average time in milliseconds the executed entries had been waiting for, when known
+     */
+    private long averageWaitTime;
+
+    /**
+     * longest time in milliseconds an executed entry had been waiting for, when known
+     */
+    private long maxWaitTime;
+
     public QueueEntry()
     {
         // no op
@@ -64,6 +84,46 @@ public void setEntriesNumber( int entriesNumber )
         this.entriesNumber = entriesNumber;
     }
 
+    public int getRunningTasksNumber()
+    {
+        return runningTasksNumber;
+    }
+
+    public void setRunningTasksNumber( int runningTasksNumber )
+    {
+        this.runningTasksNumber = runningTasksNumber;
+    }
+
+    public long getOldestEntryWaitTime()
+    {
+        return oldestEntryWaitTime;
+    }
+
+    public void setOldestEntryWaitTime( long oldestEntryWaitTime )
+    {
+        this.oldestEntryWaitTime = oldestEntryWaitTime;
+    }
+
+    public long getAverageWaitTime()
+    {
+        return averageWaitTime;
+    }
+
+    public void setAverageWaitTime( long averageWaitTime )
+    {
+        this.averageWaitTime = averageWaitTime;
+    }
+
+    public long getMaxWaitTime()
+    {
+        return maxWaitTime;
+    }
+
+    public void setMaxWaitTime( long maxWaitTime )
+    {
+        this.maxWaitTime = maxWaitTime;
+    }
+
     @Override
     public String toString()
     {
@@ -71,6 +131,10 @@ public String toString()
         sb.append( "QueueEntry" );
         sb.append( "{key='" ).append( key ).append( '\'' );
         sb.append( ", entriesNumber=" ).append( entriesNumber );
+        sb.append( ", runningTasksNumber=" ).append( runningTasksNumber );
+        sb.append( ", oldestEntryWaitTime=" ).append( oldestEntryWaitTime );
+        sb.append( ", averageWaitTime=" ).append( averageWaitTime );
+        sb.append( ", maxWaitTime=" ).append( maxWaitTime );
         sb.append( '}' );
         return sb.toString();
     }
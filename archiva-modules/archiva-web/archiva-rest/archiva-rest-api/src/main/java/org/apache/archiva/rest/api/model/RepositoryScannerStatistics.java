@@ -39,6 +39,30 @@
 
     private long newFileCount = 0;
 
+    /**
+     * estimated percentage of the repository walked
+     * @since 2.2.3
+     */
+    private int percentage;
+
+    /**
+     * files walked per second since the scan started or was resumed
+     * @since 2.2.3
+     */
+    private double filesPerSecond;
+
+    /**
+     * estimated time in milliseconds until the end of the scan, -1 if unknown
+     * @since 2.2.3
+     */
+    private long estimatedRemainingTime = -1;
+
+    /**
+     * the scan was resumed from the checkpoint of an interrupted scan
+     * @since 2.2.3
+     */
+    private boolean resumed;
+
     public RepositoryScannerStatistics()
     {
         // no op
@@ -83,4 +107,44 @@ public void setNewFileCount( long newFileCount )
     {
         this.newFileCount = newFileCount;
     }
+
+    public int getPercentage()
+    {
+        return percentage;
+    }
+
+    public void setPercentage( int percentage )
+    {
+        this.percentage = percentage;
+    }
+
+    public double getFilesPerSecond()
+    {
+        return filesPerSecond;
+    }
+
+    public void setFilesPerSecond( double filesPerSecond )
+    {
+        this.filesPerSecond = filesPerSecond;
+    }
+
+    public long getEstimatedRemainingTime()
+    {
+        return estimatedRemainingTime;
+    }
+
+    public void setEstimatedRemainingTime( long estimatedRemainingTime )
+    {
+        this.estimatedRemainingTime = estimatedRemainingTime;
+    }
+
+    public boolean isResumed()
+    {
+        return resumed;
+    }
+
+    public void setResumed( boolean resumed )
+    {
+        this.resumed = resumed;
+    }
 }
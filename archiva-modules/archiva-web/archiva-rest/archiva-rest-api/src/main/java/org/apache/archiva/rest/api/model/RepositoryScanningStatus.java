@@ -0,0 +1,146 @@
+package org.apache.archiva.rest.api.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * The scanning activity of a repository, in the two lanes of the repository scanning queue: the scans of the entire
+ * repository, and the tasks processing a single file.
+ *
+ * @since 2.2.3
+ */
+@XmlRootElement( name = "repositoryScanningStatus" )
+public class RepositoryScanningStatus
+    implements Serializable
+{
+    private String repositoryId;
+
+    /**
+     * a scan of the entire repository is queued
+     */
+    private boolean scanQueued;
+
+    /**
+     * a scan of the entire repository is in progress
+     */
+    private boolean scanning;
+
+    /**
+     * the scan in progress is paused
+     */
+    private boolean scanPaused;
+
+    /**
+     * number of queued tasks processing a single file
+     */
+    private int queuedFileTasks;
+
+    /**
+     * a task processing a single file is in progress
+     */
+    private boolean processingFile;
+
+    public RepositoryScanningStatus()
+    {
+        // no op
+    }
+
+    public RepositoryScanningStatus( String repositoryId )
+    {
+        this.repositoryId = repositoryId;
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    public void setRepositoryId( String repositoryId )
+    {
+        this.repositoryId = repositoryId;
+    }
+
+    public boolean isScanQueued()
+    {
+        return scanQueued;
+    }
+
+    public void setScanQueued( boolean scanQueued )
+    {
+        this.scanQueued = scanQueued;
+    }
+
+    public boolean isScanning()
+    {
+        return scanning;
+    }
+
+    public void setScanning( boolean scanning )
+    {
+        this.scanning = scanning;
+    }
+
+    public boolean isScanPaused()
+    {
+        return scanPaused;
+    }
+
+    public void setScanPaused( boolean scanPaused )
+    {
+        this.scanPaused = scanPaused;
+    }
+
+    public int getQueuedFileTasks()
+    {
+        return queuedFileTasks;
+    }
+
+    public void setQueuedFileTasks( int queuedFileTasks )
+    {
+        this.queuedFileTasks = queuedFileTasks;
+    }
+
+    public boolean isProcessingFile()
+    {
+        return processingFile;
+    }
+
+    public void setProcessingFile( boolean processingFile )
+    {
+        this.processingFile = processingFile;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "RepositoryScanningStatus" );
+        sb.append( "{repositoryId='" ).append( repositoryId ).append( '\'' );
+        sb.append( ", scanQueued=" ).append( scanQueued );
+        sb.append( ", scanning=" ).append( scanning );
+        sb.append( ", scanPaused=" ).append( scanPaused );
+        sb.append( ", queuedFileTasks=" ).append( queuedFileTasks );
+        sb.append( ", processingFile=" ).append( processingFile );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
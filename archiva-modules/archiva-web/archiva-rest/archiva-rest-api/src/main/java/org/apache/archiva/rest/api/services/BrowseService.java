@@ -25,6 +25,7 @@
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 import org.apache.archiva.rest.api.model.ArtifactContent;
 import org.apache.archiva.rest.api.model.ArtifactContentEntry;
+import org.apache.archiva.rest.api.model.ArtifactsPage;
 import org.apache.archiva.rest.api.model.BrowseResult;
 import org.apache.archiva.rest.api.model.Entry;
 import org.apache.archiva.rest.api.model.MetadataAddRequest;
@@ -228,7 +229,8 @@ Boolean artifactAvailable( @PathParam( "g" ) String groupId, @PathParam( "a" ) S
         throws ArchivaRestServiceException;
 
     /**
-     * return List of all artifacts from this repository
+     * return List of all artifacts from this repository, use {@link #getArtifactsPage(String, String, int)} for large
+     * repositories
      *
      * @param repositoryId
      * @return
@@ -242,6 +244,25 @@ Boolean artifactAvailable( @PathParam( "g" ) String groupId, @PathParam( "a" ) S
     List<Artifact> getArtifacts( @PathParam("r") String repositoryId )
         throws ArchivaRestServiceException;
 
+    /**
+     * return a page of the artifacts from this repository, the following pages being requested with the next page
+     * token of the previous page until a page has none
+     *
+     * @param repositoryId
+     * @param pageToken    the next page token of the previous page, none for the first page
+     * @param limit        the maximum number of artifacts of the page, at most 1000
+     * @return
+     * @throws ArchivaRestServiceException
+     * @since 2.2.3
+     */
+    @Path("artifactsPage/{r}")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @RedbackAuthorization(noPermission = true, noRestriction = true)
+    ArtifactsPage getArtifactsPage( @PathParam("r") String repositoryId, @QueryParam("pageToken") String pageToken,
+                                    @QueryParam("limit") int limit )
+        throws ArchivaRestServiceException;
+
     /**
      * Return List of artifacts from this repository with project version level metadata key matching value. If
      * repository is not provided the search runs in all repositories.
@@ -23,6 +23,7 @@
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 import org.apache.archiva.repository.scanner.RepositoryScanStatistics;
 import org.apache.archiva.rest.api.model.ArtifactTransferRequest;
+import org.apache.archiva.rest.api.model.RepositoryScanningStatus;
 import org.apache.archiva.rest.api.model.StringList;
 import org.apache.archiva.security.common.ArchivaRoleConstants;
 
@@ -76,6 +77,44 @@ RepositoryScanStatistics scanRepositoryDirectoriesNow( @PathParam ("repositoryId
     Boolean alreadyScanning( @PathParam ("repositoryId") String repositoryId )
         throws ArchivaRestServiceException;
 
+    /**
+     * the scanning activity of the repository, in each lane of the repository scanning queue
+     *
+     * @since 2.2.3
+     */
+    @Path ("scanningStatus/{repositoryId}")
+    @GET
+    @Produces ({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @RedbackAuthorization (permissions = ArchivaRoleConstants.OPERATION_RUN_INDEXER)
+    RepositoryScanningStatus getScanningStatus( @PathParam ("repositoryId") String repositoryId )
+        throws ArchivaRestServiceException;
+
+    /**
+     * pause the scan of the entire repository in progress, the tasks processing a single file are still executed
+     *
+     * @return <code>false</code> if no scan of the repository is in progress
+     * @since 2.2.3
+     */
+    @Path ("pauseScanning/{repositoryId}")
+    @GET
+    @Produces ({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN })
+    @RedbackAuthorization (permissions = ArchivaRoleConstants.OPERATION_RUN_INDEXER)
+    Boolean pauseScanning( @PathParam ("repositoryId") String repositoryId )
+        throws ArchivaRestServiceException;
+
+    /**
+     * resume the paused scan of the entire repository
+     *
+     * @return <code>false</code> if no scan of the repository is paused
+     * @since 2.2.3
+     */
+    @Path ("resumeScanning/{repositoryId}")
+    @GET
+    @Produces ({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN })
+    @RedbackAuthorization (permissions = ArchivaRoleConstants.OPERATION_RUN_INDEXER)
+    Boolean resumeScanning( @PathParam ("repositoryId") String repositoryId )
+        throws ArchivaRestServiceException;
+
     @Path ("removeScanningTaskFromQueue/{repositoryId}")
     @GET
     @Produces ({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN })
@@ -31,10 +31,13 @@
 import org.apache.archiva.metadata.model.MetadataFacet;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
 import org.apache.archiva.metadata.repository.MetadataResolver;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
+import org.apache.archiva.metadata.repository.ProjectVersionCacheEventListener;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.storage.maven2.ArtifactMetadataVersionComparator;
 import org.apache.archiva.metadata.repository.storage.maven2.MavenProjectFacet;
@@ -49,6 +52,7 @@
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.rest.api.model.ArtifactContent;
 import org.apache.archiva.rest.api.model.ArtifactContentEntry;
+import org.apache.archiva.rest.api.model.ArtifactsPage;
 import org.apache.archiva.rest.api.model.BrowseResult;
 import org.apache.archiva.rest.api.model.BrowseResultEntry;
 import org.apache.archiva.rest.api.model.Entry;
@@ -94,6 +98,11 @@
     implements BrowseService
 {
 
+    /**
+     * The number of artifacts read from the metadata repository at a time, and the largest page of artifacts returned.
+     */
+    private static final int ARTIFACTS_PAGE_SIZE = 1000;
+
     @Inject
     private DependencyTreeBuilder dependencyTreeBuilder;
 
@@ -108,6 +117,9 @@
     @Named( value = "browse#versionMetadata" )
     private Cache<String, ProjectVersionMetadata> versionMetadataCache;
 
+    @Inject
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
+
     @Override
     public BrowseResult getRootGroups( String repositoryId )
         throws ArchivaRestServiceException
@@ -589,6 +601,13 @@ public List<Entry> getMetadatas( String groupId, String artifactId, String versi
     public Boolean addMetadata( String groupId, String artifactId, String version, String key, String value,
                                 String repositoryId )
         throws ArchivaRestServiceException
+    {
+        return addMetadata( groupId, artifactId, version, Collections.singletonMap( key, value ), repositoryId );
+    }
+
+    private Boolean addMetadata( String groupId, String artifactId, String version, Map<String, String> metadatas,
+                                 String repositoryId )
+        throws ArchivaRestServiceException
     {
         ProjectVersionMetadata projectVersionMetadata =
             getProjectMetadata( groupId, artifactId, version, repositoryId );
@@ -606,13 +625,11 @@ public Boolean addMetadata( String groupId, String artifactId, String version, S
         {
             properties.putAll( metadataFacet.toProperties() );
         }
-        else
-        {
-            metadataFacet = new GenericMetadataFacet();
-        }
 
-        properties.put( key, value );
+        properties.putAll( metadatas );
 
+        // a new facet, as the resolved one is shared with the project versions cache
+        metadataFacet = new GenericMetadataFacet();
         metadataFacet.fromProperties( properties );
 
         projectVersionMetadata.addFacet( metadataFacet );
@@ -623,9 +640,12 @@ public Boolean addMetadata( String groupId, String artifactId, String version, S
         {
             MetadataRepository metadataRepository = repositorySession.getRepository();
 
-            metadataRepository.updateProjectVersion( repositoryId, groupId, artifactId, projectVersionMetadata );
+            metadataRepository.updateMetadata( repositoryId, Collections.singletonList(
+                new MetadataUpdate( groupId, artifactId, projectVersionMetadata ) ) );
 
             repositorySession.save();
+
+            projectVersionCacheEventListener.evict( repositoryId, groupId, artifactId, version );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -652,14 +672,16 @@ public Boolean deleteMetadata( String groupId, String artifactId, String version
             return Boolean.FALSE;
         }
 
-        GenericMetadataFacet metadataFacet =
-            (GenericMetadataFacet) projectVersionMetadata.getFacet( GenericMetadataFacet.FACET_ID );
+        MetadataFacet metadataFacet = projectVersionMetadata.getFacet( GenericMetadataFacet.FACET_ID );
 
         if ( metadataFacet != null && metadataFacet.toProperties() != null )
         {
-            Map<String, String> properties = metadataFacet.toProperties();
+            Map<String, String> properties = new HashMap<>( metadataFacet.toProperties() );
             properties.remove( key );
-            metadataFacet.setAdditionalProperties( properties );
+            // a new facet, as the resolved one is shared with the project versions cache
+            GenericMetadataFacet genericMetadataFacet = new GenericMetadataFacet();
+            genericMetadataFacet.setAdditionalProperties( properties );
+            projectVersionMetadata.addFacet( genericMetadataFacet );
         }
         else
         {
@@ -675,6 +697,8 @@ public Boolean deleteMetadata( String groupId, String artifactId, String version
             metadataRepository.updateProjectVersion( repositoryId, groupId, artifactId, projectVersionMetadata );
 
             repositorySession.save();
+
+            projectVersionCacheEventListener.evict( repositoryId, groupId, artifactId, version );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -941,12 +965,35 @@ public List<Artifact> getArtifacts( String repositoryId )
         RepositorySession repositorySession = repositorySessionFactory.createSession();
         try
         {
-            List<ArtifactMetadata> artifactMetadatas = repositorySession.getRepository().getArtifacts( repositoryId );
-            return buildArtifacts( artifactMetadatas, repositoryId );
+            // the response holds all the artifacts of the repository, only their metadata is read a page at a time
+            List<Artifact> artifacts = new ArrayList<>();
+            String pageToken = null;
+            do
+            {
+                ArtifactsPage page =
+                    getArtifactsPage( repositorySession, repositoryId, pageToken, ARTIFACTS_PAGE_SIZE );
+                artifacts.addAll( page.getArtifacts() );
+                pageToken = page.getNextPageToken();
+            }
+            while ( pageToken != null );
+            return artifacts;
         }
-        catch ( MetadataRepositoryException e )
+        finally
         {
-            throw new ArchivaRestServiceException( e.getMessage(), e );
+            repositorySession.close();
+        }
+    }
+
+    @Override
+    public ArtifactsPage getArtifactsPage( String repositoryId, String pageToken, int limit )
+        throws ArchivaRestServiceException
+    {
+        RepositorySession repositorySession = repositorySessionFactory.createSession();
+        try
+        {
+            return getArtifactsPage( repositorySession, repositoryId,
+                                     StringUtils.isEmpty( pageToken ) ? null : pageToken,
+                                     limit > 0 ? Math.min( limit, ARTIFACTS_PAGE_SIZE ) : ARTIFACTS_PAGE_SIZE );
         }
         finally
         {
@@ -954,6 +1001,22 @@ public List<Artifact> getArtifacts( String repositoryId )
         }
     }
 
+    private ArtifactsPage getArtifactsPage( RepositorySession repositorySession, String repositoryId, String pageToken,
+                                            int limit )
+        throws ArchivaRestServiceException
+    {
+        try
+        {
+            ArtifactMetadataPage page =
+                repositorySession.getRepository().getArtifacts( repositoryId, pageToken, limit );
+            return new ArtifactsPage( buildArtifacts( page.getArtifacts(), repositoryId ), page.getNextPageToken() );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            throw new ArchivaRestServiceException( e.getMessage(), e );
+        }
+    }
+
     @Override
     public List<Artifact> getArtifactsByProjectVersionMetadata( String key, String value, String repositoryId )
         throws ArchivaRestServiceException
@@ -1018,18 +1081,13 @@ public List<Artifact> getArtifactsByProperty( String key, String value, String r
     public Boolean importMetadata( MetadataAddRequest metadataAddRequest, String repositoryId )
         throws ArchivaRestServiceException
     {
-        boolean result = true;
-        for ( Map.Entry<String, String> metadata : metadataAddRequest.getMetadatas().entrySet() )
+        if ( metadataAddRequest.getMetadatas().isEmpty() )
         {
-            result = addMetadata( metadataAddRequest.getGroupId(), metadataAddRequest.getArtifactId(),
-                                  metadataAddRequest.getVersion(), metadata.getKey(), metadata.getValue(),
-                                  repositoryId );
-            if ( !result )
-            {
-                break;
-            }
+            return Boolean.TRUE;
         }
-        return result;
+        // all the entries are written with a single update of the project version
+        return addMetadata( metadataAddRequest.getGroupId(), metadataAddRequest.getArtifactId(),
+                            metadataAddRequest.getVersion(), metadataAddRequest.getMetadatas(), repositoryId );
     }
 
     @Override
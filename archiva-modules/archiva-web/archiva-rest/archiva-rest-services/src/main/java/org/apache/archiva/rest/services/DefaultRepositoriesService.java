@@ -37,6 +37,8 @@
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.NamespaceTreeCache;
+import org.apache.archiva.metadata.repository.ProjectVersionCacheEventListener;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
@@ -44,7 +46,6 @@
 import org.apache.archiva.model.VersionedReference;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authorization.AuthorizationException;
-import org.apache.archiva.redback.components.cache.Cache;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
 import org.apache.archiva.redback.system.DefaultSecuritySession;
 import org.apache.archiva.redback.system.SecuritySession;
@@ -66,6 +67,7 @@
 import org.apache.archiva.repository.scanner.RepositoryScannerException;
 import org.apache.archiva.repository.scanner.RepositoryScannerInstance;
 import org.apache.archiva.rest.api.model.ArtifactTransferRequest;
+import org.apache.archiva.rest.api.model.RepositoryScanningStatus;
 import org.apache.archiva.rest.api.model.StringList;
 import org.apache.archiva.rest.api.services.ArchivaRestServiceException;
 import org.apache.archiva.rest.api.services.RepositoriesService;
@@ -74,6 +76,8 @@
 import org.apache.archiva.scheduler.indexing.ArtifactIndexingTask;
 import org.apache.archiva.scheduler.indexing.DownloadRemoteIndexException;
 import org.apache.archiva.scheduler.indexing.DownloadRemoteIndexScheduler;
+import org.apache.archiva.scheduler.repository.RepositoryTaskQueue;
+import org.apache.archiva.scheduler.repository.RepositoryTaskQueue.Lane;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
 import org.apache.archiva.security.ArchivaSecurityException;
 import org.apache.archiva.security.common.ArchivaRoleConstants;
@@ -152,12 +156,21 @@
     @Inject
     private RepositoryScanner repoScanner;
 
+    @Inject
+    @Named(value = "taskQueue#repository-scanning")
+    private RepositoryTaskQueue repositoryScanningQueue;
+
+    /**
+     * Cache used for the namespaces, projects and project versions
+     */
+    @Inject
+    private NamespaceTreeCache namespaceTreeCache;
+
     /**
-     * Cache used for namespaces
+     * Evicts the project versions resolved from their cache
      */
     @Inject
-    @Named(value = "cache#namespaces")
-    private Cache<String, Collection<String>> namespacesCache;
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
 
     private ChecksumAlgorithm[] algorithms = new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
 
@@ -175,14 +188,59 @@ public Boolean alreadyScanning( String repositoryId )
         {
             return true;
         }
+        return getInProgressScan( repositoryId ) != null;
+    }
+
+    @Override
+    public RepositoryScanningStatus getScanningStatus( String repositoryId )
+    {
+        RepositoryScanningStatus status = new RepositoryScanningStatus( repositoryId );
+        status.setScanQueued( repositoryScanningQueue.getQueuedTasks( repositoryId, Lane.SCAN ) > 0 );
+        status.setQueuedFileTasks( repositoryScanningQueue.getQueuedTasks( repositoryId, Lane.FILE ) );
+        status.setProcessingFile( repositoryScanningQueue.getRunningTask( repositoryId, Lane.FILE ) != null );
+        RepositoryScannerInstance scan = getInProgressScan( repositoryId );
+        if ( scan != null )
+        {
+            status.setScanning( true );
+            status.setScanPaused( scan.isPaused() );
+        }
+        return status;
+    }
+
+    @Override
+    public Boolean pauseScanning( String repositoryId )
+    {
+        RepositoryScannerInstance scan = getInProgressScan( repositoryId );
+        if ( scan == null )
+        {
+            return false;
+        }
+        scan.pause();
+        return true;
+    }
+
+    @Override
+    public Boolean resumeScanning( String repositoryId )
+    {
+        RepositoryScannerInstance scan = getInProgressScan( repositoryId );
+        if ( scan == null || !scan.isPaused() )
+        {
+            return false;
+        }
+        scan.resume();
+        return true;
+    }
+
+    private RepositoryScannerInstance getInProgressScan( String repositoryId )
+    {
         for ( RepositoryScannerInstance scan : repoScanner.getInProgressScans() )
         {
             if ( scan.getRepository().getId().equals( repositoryId ) )
             {
-                return true;
+                return scan;
             }
         }
-        return false;
+        return null;
     }
 
     @Override
@@ -707,6 +765,9 @@ public Boolean removeProjectVersion( String repositoryId, String namespace, Stri
             }
 
             metadataRepository.removeProjectVersion( repositoryId, namespace, projectId, version );
+
+            projectVersionCacheEventListener.evict( repositoryId, namespace, projectId, version );
+            namespaceTreeCache.projectVersionRemoved( repositoryId, namespace, projectId );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -1007,9 +1068,9 @@ public Boolean deleteGroupId( String groupId, String repositoryId )
             metadataRepository.removeNamespace( repositoryId, groupId );
 
             // just invalidate cache entry
-            String cacheKey = repositoryId + "-" + groupId;
-            namespacesCache.remove( cacheKey );
-            namespacesCache.remove( repositoryId );
+            namespaceTreeCache.namespaceRemoved( repositoryId, groupId );
+            // the versions of the namespace are not known, so all of them go
+            projectVersionCacheEventListener.evictAll();
 
             metadataRepository.save();
         }
@@ -1079,6 +1140,8 @@ public Boolean deleteProject( String groupId, String projectId, String repositor
             MetadataRepository metadataRepository = repositorySession.getRepository();
 
             metadataRepository.removeProject( repositoryId, groupId, projectId );
+            namespaceTreeCache.projectRemoved( repositoryId, groupId, projectId );
+            projectVersionCacheEventListener.evictAll();
 
             metadataRepository.save();
         }
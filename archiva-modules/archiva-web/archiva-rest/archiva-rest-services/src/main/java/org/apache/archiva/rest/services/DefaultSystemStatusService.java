@@ -31,6 +31,7 @@
 import org.apache.archiva.rest.api.services.ArchivaRestServiceException;
 import org.apache.archiva.rest.api.services.SystemStatusService;
 import org.apache.archiva.rest.services.utils.ConsumerScanningStatisticsComparator;
+import org.apache.archiva.scheduler.repository.RepositoryTaskQueue;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
@@ -111,7 +112,22 @@ public List<QueueEntry> getQueueEntries()
             List<QueueEntry> queueEntries = new ArrayList<QueueEntry>( queues.size() );
             for ( Map.Entry<String, TaskQueue> entry : queues.entrySet() )
             {
-                queueEntries.add( new QueueEntry( entry.getKey(), entry.getValue().getQueueSnapshot().size() ) );
+                TaskQueue queue = entry.getValue();
+                if ( queue instanceof RepositoryTaskQueue )
+                {
+                    // indexed queue, no need to copy its entries to count them
+                    RepositoryTaskQueue repositoryTaskQueue = (RepositoryTaskQueue) queue;
+                    QueueEntry queueEntry = new QueueEntry( entry.getKey(), repositoryTaskQueue.size() );
+                    queueEntry.setRunningTasksNumber( repositoryTaskQueue.getRunningTasks().size() );
+                    queueEntry.setOldestEntryWaitTime( repositoryTaskQueue.getOldestTaskWaitTime() );
+                    queueEntry.setAverageWaitTime( repositoryTaskQueue.getAverageWaitTime() );
+                    queueEntry.setMaxWaitTime( repositoryTaskQueue.getMaxWaitTime() );
+                    queueEntries.add( queueEntry );
+                }
+                else
+                {
+                    queueEntries.add( new QueueEntry( entry.getKey(), queue.getQueueSnapshot().size() ) );
+                }
             }
 
             return queueEntries;
@@ -191,6 +207,10 @@ public List<RepositoryScannerStatistics> getRepositoryScannerStatistics()
             repositoryScannerStatistics.setManagedRepository( instance.getRepository() );
             repositoryScannerStatistics.setNewFileCount( instance.getStats().getNewFileCount() );
             repositoryScannerStatistics.setTotalFileCount( instance.getStats().getTotalFileCount() );
+            repositoryScannerStatistics.setPercentage( instance.getPercentage() );
+            repositoryScannerStatistics.setFilesPerSecond( instance.getFilesPerSecond() );
+            repositoryScannerStatistics.setEstimatedRemainingTime( instance.getEstimatedRemainingTime() );
+            repositoryScannerStatistics.setResumed( instance.isResumed() );
             repositoryScannerStatistics.setConsumerScanningStatistics( mapConsumerScanningStatistics( instance ) );
         }
 
@@ -24,6 +24,7 @@
 import org.apache.archiva.redback.rest.api.model.Role;
 import org.apache.archiva.redback.rest.api.services.RedbackServiceException;
 import org.apache.archiva.rest.api.model.ArtifactContentEntry;
+import org.apache.archiva.rest.api.model.ArtifactsPage;
 import org.apache.archiva.rest.api.model.BrowseResult;
 import org.apache.archiva.rest.api.model.BrowseResultEntry;
 import org.apache.archiva.rest.api.model.Entry;
@@ -453,6 +454,34 @@ public void artifactsNumber()
         assertTrue( number > 1 );
     }
 
+    @Test
+    public void artifactsPages()
+        throws Exception
+    {
+        BrowseService browseService = getBrowseService( authorizationHeader, true );
+
+        List<Artifact> artifacts = browseService.getArtifacts( TEST_REPO_ID );
+
+        List<Artifact> pagedArtifacts = new ArrayList<>();
+        int pages = 0;
+        String pageToken = null;
+        do
+        {
+            ArtifactsPage page = browseService.getArtifactsPage( TEST_REPO_ID, pageToken, 2 );
+            assertTrue( page.getArtifacts().size() <= 2 );
+            pagedArtifacts.addAll( page.getArtifacts() );
+            pageToken = page.getNextPageToken();
+            pages++;
+        }
+        while ( pageToken != null );
+
+        log.info( "{} artifacts in {} pages", pagedArtifacts.size(), pages );
+
+        assertTrue( pages > 1 );
+        assertEquals( artifacts.size(), pagedArtifacts.size() );
+        assertEquals( new HashSet<>( artifacts ), new HashSet<>( pagedArtifacts ) );
+    }
+
     @Test
     public void metadatainbatchmode()
         throws Exception
@@ -25,8 +25,11 @@
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
+import org.apache.archiva.checksum.Checksum;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.archiva.checksum.ChecksummingOutputStream;
 import org.apache.archiva.common.utils.VersionComparator;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
@@ -46,7 +49,9 @@
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
 import org.apache.archiva.web.model.FileMetadata;
+import org.apache.archiva.web.model.UploadSession;
 import org.apache.archiva.xml.XMLException;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.BooleanUtils;
@@ -63,24 +68,37 @@
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Olivier Lamy
@@ -106,10 +124,34 @@
 
     private ChecksumAlgorithm[] algorithms = new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
 
+    /**
+     * chunked uploads not touched for that long are discarded
+     */
+    private static final long CHUNKED_UPLOAD_EXPIRY = TimeUnit.HOURS.toMillis( 24 );
+
+    /**
+     * maximum size of a chunk, the bytes sent beyond it are not written
+     */
+    private static final long MAX_CHUNK_SIZE =
+        Long.getLong( "archiva.upload.maxChunkSize", 100L * FileUtils.ONE_MB );
+
+    private static final String CHUNKED_UPLOADS_SESSION_KEY =
+        DefaultFileUploadService.class.getName() + "chunked_uploads_session_key";
+
+    /**
+     * directory the uploaded files are written to until they are saved. On the file store of the repositories, they
+     * are then renamed into the repository rather than copied.
+     */
+    private File stagingDirectory = getDefaultStagingDirectory();
+
     @Inject
     @Named(value = "archivaTaskScheduler#repository")
     private ArchivaTaskScheduler scheduler;
 
+    @Inject
+    @Named(value = "checksumCache#default")
+    private ChecksumCache checksumCache;
+
     private String getStringValue( MultipartBody multipartBody, String attachmentId )
         throws IOException
     {
@@ -136,30 +178,270 @@ public FileMetadata post( MultipartBody multipartBody )
             //Content-Disposition: form-data; name="files[]"; filename="org.apache.karaf.features.command-2.2.2.jar"
             String fileName = file.getContentDisposition().getParameter( "filename" );
 
-            File tmpFile = File.createTempFile( "upload-artifact", ".tmp" );
-            tmpFile.deleteOnExit();
-            IOUtils.copy( file.getDataHandler().getInputStream(), new FileOutputStream( tmpFile ) );
-            FileMetadata fileMetadata = new FileMetadata( fileName, tmpFile.length(), "theurl" );
-            fileMetadata.setServerFileName( tmpFile.getPath() );
-            fileMetadata.setClassifier( classifier );
-            fileMetadata.setDeleteUrl( tmpFile.getName() );
-            fileMetadata.setPomFile( pomFile );
-            fileMetadata.setPackaging( packaging );
+            File tmpFile = createStagingFile();
+            ChecksummingOutputStream out =
+                new ChecksummingOutputStream( Files.newOutputStream( tmpFile.toPath() ), algorithms );
+            try
+            {
+                IOUtils.copy( file.getDataHandler().getInputStream(), out );
+            }
+            finally
+            {
+                out.close();
+            }
+            checksumCache.put( tmpFile, out.getChecksums() );
+
+            return addSessionFile( tmpFile, fileName, classifier, packaging, pomFile );
+        }
+        catch ( IOException e )
+        {
+            throw new ArchivaRestServiceException( e.getMessage(),
+                                                   Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), e );
+        }
+
+    }
+
+    private FileMetadata addSessionFile( File tmpFile, String fileName, String classifier, String packaging,
+                                         boolean pomFile )
+    {
+        FileMetadata fileMetadata = new FileMetadata( fileName, tmpFile.length(), "theurl" );
+        fileMetadata.setServerFileName( tmpFile.getPath() );
+        fileMetadata.setClassifier( classifier );
+        fileMetadata.setDeleteUrl( tmpFile.getName() );
+        fileMetadata.setPomFile( pomFile );
+        fileMetadata.setPackaging( packaging );
+
+        log.info( "uploading file: {}", fileMetadata );
+
+        List<FileMetadata> fileMetadatas = getSessionFilesList();
+
+        fileMetadatas.add( fileMetadata );
+
+        return fileMetadata;
+    }
+
+    @Override
+    public UploadSession startChunkedUpload( String fileName, long size, String classifier, String packaging,
+                                             boolean pomFile )
+        throws ArchivaRestServiceException
+    {
+        if ( StringUtils.isBlank( fileName ) )
+        {
+            throw new ArchivaRestServiceException( "fileName is required", Response.Status.BAD_REQUEST.getStatusCode(),
+                                                   null );
+        }
+
+        ChunkedUploads chunkedUploads = getSessionChunkedUploads();
+        chunkedUploads.removeExpired( System.currentTimeMillis() - CHUNKED_UPLOAD_EXPIRY );
+
+        try
+        {
+            // chunks are written directly to the file that save will move into the repository
+            File tmpFile = createStagingFile();
 
-            log.info( "uploading file: {}", fileMetadata );
+            UploadSession uploadSession =
+                new UploadSession( UUID.randomUUID().toString(), fileName, size < 0 ? -1 : size );
+            uploadSession.setClassifier( StringUtils.defaultString( classifier ) );
+            uploadSession.setPackaging( StringUtils.defaultString( packaging ) );
+            uploadSession.setPomFile( pomFile );
 
-            List<FileMetadata> fileMetadatas = getSessionFilesList();
+            chunkedUploads.put( new ChunkedUpload( uploadSession, tmpFile ) );
 
-            fileMetadatas.add( fileMetadata );
+            log.info( "starting chunked upload: {}", uploadSession );
 
-            return fileMetadata;
+            return uploadSession;
         }
         catch ( IOException e )
         {
             throw new ArchivaRestServiceException( e.getMessage(),
                                                    Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), e );
         }
+    }
+
+    @Override
+    public UploadSession getChunkedUpload( String uploadId )
+        throws ArchivaRestServiceException
+    {
+        ChunkedUpload upload = getChunkedUploadOrFail( uploadId );
+        synchronized ( upload )
+        {
+            upload.touch();
+            return upload.getSession();
+        }
+    }
+
+    @Override
+    public UploadSession uploadChunk( String uploadId, long offset, InputStream chunk )
+        throws ArchivaRestServiceException
+    {
+        ChunkedUpload upload = getChunkedUploadOrFail( uploadId );
+        synchronized ( upload )
+        {
+            upload.touch();
+            UploadSession uploadSession = upload.getSession();
+            if ( offset != uploadSession.getOffset() )
+            {
+                throw new ArchivaRestServiceException(
+                    "Chunk offset " + offset + " does not match the upload offset " + uploadSession.getOffset(),
+                    Response.Status.CONFLICT.getStatusCode(), null );
+            }
+
+            long remaining = uploadSession.getSize() >= 0 ? uploadSession.getSize() - offset : Long.MAX_VALUE;
+            boolean complete;
+            try (ChecksummingOutputStream out = new ChecksummingOutputStream(
+                Files.newOutputStream( upload.getFile().toPath(), StandardOpenOption.APPEND ),
+                upload.getChecksums() ))
+            {
+                complete = copy( chunk, out, Math.min( remaining, MAX_CHUNK_SIZE ) );
+            }
+            catch ( IOException e )
+            {
+                // drop the partially received chunk so the client can resend it from the same offset
+                upload.rollback();
+                throw new ArchivaRestServiceException( e.getMessage(),
+                                                       Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), e );
+            }
+
+            if ( !complete )
+            {
+                upload.rollback();
+                if ( remaining <= MAX_CHUNK_SIZE )
+                {
+                    throw new ArchivaRestServiceException(
+                        "Upload exceeds the expected size of " + uploadSession.getSize() + " bytes",
+                        Response.Status.BAD_REQUEST.getStatusCode(), null );
+                }
+                throw new ArchivaRestServiceException( "Chunk exceeds the maximum size of " + MAX_CHUNK_SIZE + " bytes",
+                                                       Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(),
+                                                       null );
+            }
+            uploadSession.setOffset( upload.getFile().length() );
+            log.debug( "chunk received: {}", uploadSession );
+            return uploadSession;
+        }
+    }
+
+    @Override
+    public FileMetadata completeChunkedUpload( String uploadId )
+        throws ArchivaRestServiceException
+    {
+        ChunkedUpload upload = getChunkedUploadOrFail( uploadId );
+        synchronized ( upload )
+        {
+            UploadSession uploadSession = upload.getSession();
+            if ( uploadSession.getSize() >= 0 && uploadSession.getSize() != uploadSession.getOffset() )
+            {
+                throw new ArchivaRestServiceException(
+                    "Upload is incomplete, received " + uploadSession.getOffset() + " of " + uploadSession.getSize()
+                        + " bytes", Response.Status.BAD_REQUEST.getStatusCode(), null );
+            }
+
+            try
+            {
+                checksumCache.put( upload.getFile(), upload.completeChecksums() );
+            }
+            catch ( IOException e )
+            {
+                throw new ArchivaRestServiceException( e.getMessage(),
+                                                       Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), e );
+            }
+            getSessionChunkedUploads().remove( uploadId );
+
+            return addSessionFile( upload.getFile(), uploadSession.getFileName(), uploadSession.getClassifier(),
+                                   uploadSession.getPackaging(), uploadSession.isPomFile() );
+        }
+    }
+
+    @Override
+    public Boolean abortChunkedUpload( String uploadId )
+        throws ArchivaRestServiceException
+    {
+        ChunkedUpload upload = uploadId == null ? null : getSessionChunkedUploads().remove( uploadId );
+        if ( upload == null )
+        {
+            return Boolean.FALSE;
+        }
+        synchronized ( upload )
+        {
+            return FileUtils.deleteQuietly( upload.getFile() );
+        }
+    }
+
+    private ChunkedUpload getChunkedUploadOrFail( String uploadId )
+        throws ArchivaRestServiceException
+    {
+        ChunkedUpload upload = uploadId == null ? null : getSessionChunkedUploads().get( uploadId );
+        if ( upload == null )
+        {
+            throw new ArchivaRestServiceException( "Cannot find chunked upload with id " + uploadId,
+                                                   Response.Status.NOT_FOUND.getStatusCode(), null );
+        }
+        return upload;
+    }
 
+    /**
+     * the chunked uploads are kept in the http session, along with the files they are added to once complete
+     */
+    private synchronized ChunkedUploads getSessionChunkedUploads()
+    {
+        ChunkedUploads chunkedUploads =
+            (ChunkedUploads) httpServletRequest.getSession().getAttribute( CHUNKED_UPLOADS_SESSION_KEY );
+        if ( chunkedUploads == null )
+        {
+            chunkedUploads = new ChunkedUploads();
+            httpServletRequest.getSession().setAttribute( CHUNKED_UPLOADS_SESSION_KEY, chunkedUploads );
+        }
+        return chunkedUploads;
+    }
+
+    /**
+     * copy at most limit bytes
+     *
+     * @return false if the input has more than limit bytes, these ones are not written
+     */
+    private static boolean copy( InputStream input, OutputStream output, long limit )
+        throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        long remaining = limit;
+        int read;
+        // one byte more than the limit is enough to know that the input exceeds it
+        while ( ( read = input.read( buffer, 0, remaining < buffer.length ? (int) remaining + 1 : buffer.length ) )
+            != -1 )
+        {
+            if ( read > remaining )
+            {
+                return false;
+            }
+            output.write( buffer, 0, read );
+            remaining -= read;
+        }
+        return true;
+    }
+
+    private File createStagingFile()
+        throws IOException
+    {
+        stagingDirectory.mkdirs();
+        File file = File.createTempFile( "upload-artifact", ".tmp", stagingDirectory );
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static File getDefaultStagingDirectory()
+    {
+        String directory = System.getProperty( "archiva.upload.stagingDirectory" );
+        if ( StringUtils.isNotEmpty( directory ) )
+        {
+            return new File( directory );
+        }
+        String appServerBase = System.getProperty( "appserver.base" );
+        return appServerBase == null ? SystemUtils.getJavaIoTmpDir() : new File( appServerBase, "data/uploads" );
+    }
+
+    void setStagingDirectory( File stagingDirectory )
+    {
+        this.stagingDirectory = stagingDirectory;
     }
 
     /**
@@ -183,7 +465,7 @@ protected synchronized List<FileMetadata> getSessionFilesList()
     public Boolean deleteFile( String fileName )
         throws ArchivaRestServiceException
     {
-        File file = new File( SystemUtils.getJavaIoTmpDir(), fileName );
+        File file = new File( stagingDirectory, fileName );
         log.debug( "delete file:{},exists:{}", file.getPath(), file.exists() );
         boolean removed = getSessionFileMetadatas().remove( new FileMetadata( fileName ) );
         // try with full name as ui only know the file name
@@ -340,9 +622,10 @@ protected void savePomFile( String repositoryId, FileMetadata fileMetadata, Stri
             }
             pomFilename = FilenameUtils.removeExtension( pomFilename ) + ".pom";
 
-            copyFile( new File( fileMetadata.getServerFileName() ), targetPath, pomFilename, fixChecksums );
+            RepositoryTask task = moveFile( repoConfig.getId(), new File( fileMetadata.getServerFileName() ),
+                                            targetPath, pomFilename, fixChecksums );
             triggerAuditEvent( repoConfig.getId(), path + "/" + pomFilename, AuditEvent.UPLOAD_FILE );
-            queueRepositoryTask( repoConfig.getId(), new File( targetPath, pomFilename ) );
+            queueRepositoryTask( task );
         }
         catch ( IOException ie )
         {
@@ -437,9 +720,10 @@ protected void saveFile( String repositoryId, FileMetadata fileMetadata, boolean
                 }
                 else
                 {
-                    copyFile( new File( fileMetadata.getServerFileName() ), targetPath, filename, fixChecksums );
+                    RepositoryTask task = moveFile( repository.getId(), new File( fileMetadata.getServerFileName() ),
+                                                    targetPath, filename, fixChecksums );
                     triggerAuditEvent( repository.getId(), path + "/" + filename, AuditEvent.UPLOAD_FILE );
-                    queueRepositoryTask( repository.getId(), targetFile );
+                    queueRepositoryTask( task );
                 }
             }
             catch ( IOException ie )
@@ -468,7 +752,7 @@ protected void saveFile( String repositoryId, FileMetadata fileMetadata, boolean
                     {
                         fixChecksums( generatedPomFile );
                     }
-                    queueRepositoryTask( repoConfig.getId(), generatedPomFile );
+                    queueRepositoryTask( createRepositoryTask( repoConfig.getId(), generatedPomFile ) );
                 }
                 catch ( IOException ie )
                 {
@@ -551,40 +835,84 @@ private File createPom( File targetPath, String filename, FileMetadata fileMetad
 
     private void fixChecksums( File file )
     {
-        ChecksummedFile checksum = new ChecksummedFile( file );
+        ChecksummedFile checksum = new ChecksummedFile( file, checksumCache );
         checksum.fixChecksums( algorithms );
     }
 
-    private void queueRepositoryTask( String repositoryId, File localFile )
+    private RepositoryTask createRepositoryTask( String repositoryId, File localFile )
     {
         RepositoryTask task = new RepositoryTask();
         task.setRepositoryId( repositoryId );
         task.setResourceFile( localFile );
         task.setUpdateRelatedArtifacts( true );
         task.setScanAll( false );
+        return task;
+    }
 
+    private void queueRepositoryTask( RepositoryTask task )
+    {
         try
         {
             scheduler.queueTask( task );
         }
         catch ( TaskQueueException e )
         {
-            log.error( "Unable to queue repository task to execute consumers on resource file ['" + localFile.getName()
-                           + "']." );
+            log.error( "Unable to queue repository task to execute consumers on resource file ['"
+                           + task.getResourceFile().getName() + "']." );
         }
     }
 
-    private void copyFile( File sourceFile, File targetPath, String targetFilename, boolean fixChecksums )
+    /**
+     * Move an uploaded file into the repository. The checksums calculated while it was uploaded are kept, so neither
+     * fixing the checksum files nor the consumers need to read it again. The file is renamed at once so that the
+     * repository never serves a partially written file, even when the staging directory is on another file store.
+     *
+     * @return the task processing the file, with its checksums and the length and modification time they are valid
+     *         for
+     */
+    private RepositoryTask moveFile( String repositoryId, File sourceFile, File targetPath, String targetFilename,
+                                     boolean fixChecksums )
         throws IOException
     {
+        File targetFile = new File( targetPath, targetFilename );
+        // taken before reading the checksums, the file keeps them when moved
+        long length = sourceFile.length();
+        long lastModified = sourceFile.lastModified();
+        Map<ChecksumAlgorithm, String> checksums = checksumCache.get( sourceFile );
 
-        Files.copy( sourceFile.toPath(), new File( targetPath, targetFilename ).toPath(), StandardCopyOption.REPLACE_EXISTING,
-                    StandardCopyOption.COPY_ATTRIBUTES );
+        try
+        {
+            Files.move( sourceFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            // copy it next to the target first
+            File tmpFile = File.createTempFile( targetFilename, ".tmp", targetPath );
+            try
+            {
+                Files.copy( sourceFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.COPY_ATTRIBUTES );
+                Files.move( tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( IOException ex )
+            {
+                Files.deleteIfExists( tmpFile.toPath() );
+                throw ex;
+            }
+            Files.delete( sourceFile.toPath() );
+        }
+
+        checksumCache.remove( sourceFile );
+        checksumCache.add( targetFile, length, lastModified, checksums );
 
         if ( fixChecksums )
         {
-            fixChecksums( new File( targetPath, targetFilename ) );
+            fixChecksums( targetFile );
         }
+
+        RepositoryTask task = createRepositoryTask( repositoryId, targetFile );
+        task.setChecksums( checksums, length, lastModified );
+        return task;
     }
 
     /**
@@ -685,5 +1013,149 @@ private void updateVersionMetadata( ArchivaRepositoryMetadata metadata, File met
         }
     }
 
+    /**
+     * the chunked uploads in progress of a http session, their files are deleted when the session ends
+     */
+    private static class ChunkedUploads
+        implements HttpSessionBindingListener
+    {
+        private final ConcurrentMap<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+
+        ChunkedUpload get( String uploadId )
+        {
+            return uploads.get( uploadId );
+        }
+
+        void put( ChunkedUpload upload )
+        {
+            uploads.put( upload.getSession().getUploadId(), upload );
+        }
+
+        ChunkedUpload remove( String uploadId )
+        {
+            return uploads.remove( uploadId );
+        }
 
+        /**
+         * discard the uploads not touched since the given time
+         */
+        void removeExpired( long expired )
+        {
+            for ( Map.Entry<String, ChunkedUpload> entry : uploads.entrySet() )
+            {
+                if ( entry.getValue().getLastAccess() < expired && uploads.remove( entry.getKey(),
+                                                                                  entry.getValue() ) )
+                {
+                    LoggerFactory.getLogger( DefaultFileUploadService.class ).info(
+                        "discarding expired chunked upload: {}", entry.getValue().getSession() );
+                    FileUtils.deleteQuietly( entry.getValue().getFile() );
+                }
+            }
+        }
+
+        @Override
+        public void valueBound( HttpSessionBindingEvent event )
+        {
+            // nothing to do
+        }
+
+        @Override
+        public void valueUnbound( HttpSessionBindingEvent event )
+        {
+            for ( ChunkedUpload upload : uploads.values() )
+            {
+                FileUtils.deleteQuietly( upload.getFile() );
+            }
+            uploads.clear();
+        }
+    }
+
+    /**
+     * a chunked upload in progress: the file the chunks are appended to and the checksums of the content so far
+     */
+    private static class ChunkedUpload
+    {
+        private static final ChecksumAlgorithm[] CHECKSUM_ALGORITHMS =
+            new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
+
+        private final UploadSession session;
+
+        private final File file;
+
+        private final List<Checksum> checksums = new ArrayList<>( CHECKSUM_ALGORITHMS.length );
+
+        /**
+         * false once a failed chunk left the checksums out of sync with the file content
+         */
+        private boolean checksumsValid = true;
+
+        private long lastAccess = System.currentTimeMillis();
+
+        ChunkedUpload( UploadSession session, File file )
+        {
+            this.session = session;
+            this.file = file;
+            for ( ChecksumAlgorithm algorithm : CHECKSUM_ALGORITHMS )
+            {
+                checksums.add( new Checksum( algorithm ) );
+            }
+        }
+
+        UploadSession getSession()
+        {
+            return session;
+        }
+
+        File getFile()
+        {
+            return file;
+        }
+
+        List<Checksum> getChecksums()
+        {
+            return checksums;
+        }
+
+        long getLastAccess()
+        {
+            return lastAccess;
+        }
+
+        void touch()
+        {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * truncate the file back to the last complete chunk
+         */
+        void rollback()
+        {
+            checksumsValid = false;
+            try (FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.WRITE ))
+            {
+                channel.truncate( session.getOffset() );
+            }
+            catch ( IOException e )
+            {
+                LoggerFactory.getLogger( DefaultFileUploadService.class ).warn(
+                    "Unable to truncate chunked upload {}: {}", file, e.getMessage() );
+            }
+        }
+
+        Map<ChecksumAlgorithm, String> completeChecksums()
+            throws IOException
+        {
+            if ( !checksumsValid )
+            {
+                return new ChecksummedFile( file ).calculateChecksums( Arrays.asList( CHECKSUM_ALGORITHMS ) );
+            }
+            Map<ChecksumAlgorithm, String> result = new EnumMap<>( ChecksumAlgorithm.class );
+            for ( Checksum checksum : checksums )
+            {
+                result.put( checksum.getAlgorithm(), checksum.getChecksum() );
+            }
+            return result;
+        }
+    }
 }
@@ -21,6 +21,7 @@
 import org.apache.archiva.rest.api.services.ArchivaRestServiceException;
 import org.apache.archiva.security.common.ArchivaRoleConstants;
 import org.apache.archiva.web.model.FileMetadata;
+import org.apache.archiva.web.model.UploadSession;
 import org.apache.cxf.jaxrs.ext.multipart.MultipartBody;
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 
@@ -28,11 +29,13 @@
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -52,6 +55,72 @@
     FileMetadata post( MultipartBody multipartBody )
         throws ArchivaRestServiceException;
 
+    /**
+     * Start a chunked upload of a file. The file is then sent with {@link #uploadChunk(String, long, InputStream)}
+     * and added to the session files with {@link #completeChunkedUpload(String)}.
+     *
+     * @param size expected size of the complete file, -1 if unknown
+     * @since 2.2.3
+     */
+    @Path( "chunkedUploads" )
+    @POST
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_REPOSITORY_UPLOAD )
+    UploadSession startChunkedUpload( @QueryParam( "fileName" ) String fileName, @QueryParam( "size" ) long size,
+                                      @QueryParam( "classifier" ) String classifier,
+                                      @QueryParam( "packaging" ) String packaging,
+                                      @QueryParam( "pomFile" ) boolean pomFile )
+        throws ArchivaRestServiceException;
+
+    /**
+     * @return the state of a chunked upload, its offset is where an interrupted upload has to be resumed from
+     * @since 2.2.3
+     */
+    @Path( "chunkedUploads/{uploadId}" )
+    @GET
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_REPOSITORY_UPLOAD )
+    UploadSession getChunkedUpload( @PathParam( "uploadId" ) String uploadId )
+        throws ArchivaRestServiceException;
+
+    /**
+     * Append a chunk to an upload. The offset must be the current offset of the upload, otherwise the chunk is
+     * rejected with a 409 status.
+     *
+     * @since 2.2.3
+     */
+    @Path( "chunkedUploads/{uploadId}" )
+    @PUT
+    @Consumes( MediaType.APPLICATION_OCTET_STREAM )
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_REPOSITORY_UPLOAD )
+    UploadSession uploadChunk( @PathParam( "uploadId" ) String uploadId, @QueryParam( "offset" ) long offset,
+                               InputStream chunk )
+        throws ArchivaRestServiceException;
+
+    /**
+     * Finish a chunked upload, the file is then available to {@link #save(String, String, String, String, String,
+     * boolean)} like a file sent with {@link #post(MultipartBody)}.
+     *
+     * @since 2.2.3
+     */
+    @Path( "chunkedUploads/{uploadId}/complete" )
+    @POST
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_REPOSITORY_UPLOAD )
+    FileMetadata completeChunkedUpload( @PathParam( "uploadId" ) String uploadId )
+        throws ArchivaRestServiceException;
+
+    /**
+     * @since 2.2.3
+     */
+    @Path( "chunkedUploads/{uploadId}" )
+    @DELETE
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_REPOSITORY_UPLOAD )
+    Boolean abortChunkedUpload( @PathParam( "uploadId" ) String uploadId )
+        throws ArchivaRestServiceException;
+
     @Path( "{fileName}" )
     @DELETE
     @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
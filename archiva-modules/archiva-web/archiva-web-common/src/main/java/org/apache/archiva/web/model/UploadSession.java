@@ -0,0 +1,150 @@
+package org.apache.archiva.web.model;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * State of a chunked upload: the client sends the file in chunks, each starting at the current {@link #getOffset()},
+ * and can resume an interrupted upload by asking for the offset reached so far.
+ *
+ * @since 2.2.3
+ */
+@XmlRootElement( name = "uploadSession" )
+public class UploadSession
+    implements Serializable
+{
+    private String uploadId;
+
+    private String fileName;
+
+    /**
+     * expected size of the complete file, -1 if unknown
+     */
+    private long size = -1;
+
+    /**
+     * number of bytes received so far, the offset the next chunk has to start at
+     */
+    private long offset;
+
+    private String classifier;
+
+    private String packaging;
+
+    private boolean pomFile;
+
+    public UploadSession()
+    {
+        // no op
+    }
+
+    public UploadSession( String uploadId, String fileName, long size )
+    {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    public String getUploadId()
+    {
+        return uploadId;
+    }
+
+    public void setUploadId( String uploadId )
+    {
+        this.uploadId = uploadId;
+    }
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    public void setFileName( String fileName )
+    {
+        this.fileName = fileName;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public void setSize( long size )
+    {
+        this.size = size;
+    }
+
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    public void setOffset( long offset )
+    {
+        this.offset = offset;
+    }
+
+    public String getClassifier()
+    {
+        return classifier;
+    }
+
+    public void setClassifier( String classifier )
+    {
+        this.classifier = classifier;
+    }
+
+    public String getPackaging()
+    {
+        return packaging;
+    }
+
+    public void setPackaging( String packaging )
+    {
+        this.packaging = packaging;
+    }
+
+    public boolean isPomFile()
+    {
+        return pomFile;
+    }
+
+    public void setPomFile( boolean pomFile )
+    {
+        this.pomFile = pomFile;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder( "UploadSession{" );
+        sb.append( "uploadId='" ).append( uploadId ).append( '\'' );
+        sb.append( ", fileName='" ).append( fileName ).append( '\'' );
+        sb.append( ", size=" ).append( size );
+        sb.append( ", offset=" ).append( offset );
+        sb.append( ", classifier='" ).append( classifier ).append( '\'' );
+        sb.append( ", packaging='" ).append( packaging ).append( '\'' );
+        sb.append( ", pomFile=" ).append( pomFile );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
@@ -24,6 +24,8 @@
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
 import org.apache.archiva.redback.components.scheduler.DefaultScheduler;
 import org.apache.archiva.scheduler.repository.DefaultRepositoryArchivaTaskScheduler;
+import org.apache.archiva.scheduler.indexing.IndexingTaskQueueExecutor;
+import org.apache.archiva.scheduler.repository.RepositoryTaskQueueExecutor;
 import org.apache.maven.index.NexusIndexer;
 import org.apache.maven.index.context.IndexingContext;
 import org.apache.archiva.redback.components.taskqueue.Task;
@@ -47,9 +49,9 @@
 {
     private ThreadedTaskQueueExecutor tqeDbScanning;
 
-    private ThreadedTaskQueueExecutor tqeRepoScanning;
+    private RepositoryTaskQueueExecutor tqeRepoScanning;
 
-    private ThreadedTaskQueueExecutor tqeIndexing;
+    private IndexingTaskQueueExecutor tqeIndexing;
 
     private DefaultRepositoryArchivaTaskScheduler repositoryTaskScheduler;
 
@@ -70,9 +72,9 @@ public void contextInitialized( ServletContextEvent contextEvent )
 
         Properties archivaRuntimeProperties = wac.getBean( "archivaRuntimeProperties", Properties.class );
 
-        tqeRepoScanning = wac.getBean( "taskQueueExecutor#repository-scanning", ThreadedTaskQueueExecutor.class );
+        tqeRepoScanning = wac.getBean( "taskQueueExecutor#repository-scanning", RepositoryTaskQueueExecutor.class );
 
-        tqeIndexing = wac.getBean( "taskQueueExecutor#indexing", ThreadedTaskQueueExecutor.class );
+        tqeIndexing = wac.getBean( "taskQueueExecutor#indexing", IndexingTaskQueueExecutor.class );
 
         plexusSisuBridge = wac.getBean( PlexusSisuBridge.class );
 
@@ -118,8 +120,15 @@ public void contextDestroyed( ServletContextEvent contextEvent )
         {
             // stop task queue executors
             stopTaskQueueExecutor( tqeDbScanning, servletContext );
-            stopTaskQueueExecutor( tqeRepoScanning, servletContext );
-            stopTaskQueueExecutor( tqeIndexing, servletContext );
+            if ( tqeRepoScanning != null )
+            {
+                // cancels the tasks being executed
+                tqeRepoScanning.stop();
+            }
+            if ( tqeIndexing != null )
+            {
+                tqeIndexing.stop();
+            }
 
             // stop the DefaultArchivaTaskScheduler and its scheduler
             if ( repositoryTaskScheduler != null )
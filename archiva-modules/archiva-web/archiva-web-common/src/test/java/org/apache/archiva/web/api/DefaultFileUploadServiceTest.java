@@ -0,0 +1,275 @@
+package org.apache.archiva.web.api;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.archiva.checksum.DefaultChecksumCache;
+import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
+import org.apache.archiva.rest.api.services.ArchivaRestServiceException;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.archiva.web.model.FileMetadata;
+import org.apache.archiva.web.model.UploadSession;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * the chunked uploads of {@link DefaultFileUploadService}
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class DefaultFileUploadServiceTest
+    extends TestCase
+{
+    private static final File STAGING_DIRECTORY = new File( "target/upload-staging" );
+
+    private EhcacheCache cache;
+
+    private ChecksumCache checksumCache;
+
+    private MockHttpServletRequest request;
+
+    private DefaultFileUploadService service;
+
+    @Before
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        FileUtils.deleteDirectory( STAGING_DIRECTORY );
+
+        cache = new EhcacheCache();
+        cache.setName( "upload-checksums-test" );
+        cache.setMaxElementsInMemory( 16 );
+        cache.initialize();
+        checksumCache = new DefaultChecksumCache( cache );
+
+        request = new MockHttpServletRequest();
+        service = createService( request );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        cache.dispose();
+
+        super.tearDown();
+    }
+
+    @Test
+    public void testCompleteChunkedUpload()
+        throws Exception
+    {
+        UploadSession upload = service.startChunkedUpload( "test.jar", 6, "sources", "jar", false );
+
+        assertEquals( 3, service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) ).getOffset() );
+        assertEquals( 6, service.uploadChunk( upload.getUploadId(), 3, chunk( "def" ) ).getOffset() );
+
+        FileMetadata fileMetadata = service.completeChunkedUpload( upload.getUploadId() );
+
+        File file = new File( fileMetadata.getServerFileName() );
+        assertEquals( STAGING_DIRECTORY.getAbsoluteFile(), file.getParentFile().getAbsoluteFile() );
+        assertEquals( "abcdef", FileUtils.readFileToString( file ) );
+        assertEquals( "sources", fileMetadata.getClassifier() );
+        assertEquals( new ChecksummedFile( file ).calculateChecksum( ChecksumAlgorithm.SHA1 ),
+                      checksumCache.get( file, ChecksumAlgorithm.SHA1 ) );
+        assertTrue( service.getSessionFileMetadatas().contains( fileMetadata ) );
+        assertHttpError( 404, upload.getUploadId() );
+    }
+
+    @Test
+    public void testChunkWithWrongOffsetRejected()
+        throws Exception
+    {
+        UploadSession upload = service.startChunkedUpload( "test.jar", 6, null, null, false );
+        service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+
+        try
+        {
+            service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+            fail( "a chunk sent again should be rejected" );
+        }
+        catch ( ArchivaRestServiceException e )
+        {
+            assertEquals( 409, e.getHttpErrorCode() );
+        }
+
+        assertEquals( 3, service.getChunkedUpload( upload.getUploadId() ).getOffset() );
+    }
+
+    @Test
+    public void testChunkExceedingExpectedSizeRolledBack()
+        throws Exception
+    {
+        UploadSession upload = service.startChunkedUpload( "test.jar", 4, null, null, false );
+        service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+
+        try
+        {
+            service.uploadChunk( upload.getUploadId(), 3, chunk( "de" ) );
+            fail( "a chunk beyond the expected size should be rejected" );
+        }
+        catch ( ArchivaRestServiceException e )
+        {
+            assertEquals( 400, e.getHttpErrorCode() );
+        }
+        assertEquals( 3, service.getChunkedUpload( upload.getUploadId() ).getOffset() );
+
+        service.uploadChunk( upload.getUploadId(), 3, chunk( "d" ) );
+        File file = new File( service.completeChunkedUpload( upload.getUploadId() ).getServerFileName() );
+
+        assertEquals( "abcd", FileUtils.readFileToString( file ) );
+        assertEquals( new ChecksummedFile( file ).calculateChecksum( ChecksumAlgorithm.SHA1 ),
+                      checksumCache.get( file, ChecksumAlgorithm.SHA1 ) );
+    }
+
+    @Test
+    public void testUploadResumedAfterFailedChunk()
+        throws Exception
+    {
+        UploadSession upload = service.startChunkedUpload( "test.jar", -1, null, null, false );
+        service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+
+        try
+        {
+            service.uploadChunk( upload.getUploadId(), 3, new InterruptedInputStream( "de" ) );
+            fail( "the interrupted chunk should fail" );
+        }
+        catch ( ArchivaRestServiceException e )
+        {
+            assertEquals( 500, e.getHttpErrorCode() );
+        }
+
+        // the client asks where to resume from and sends the chunk again
+        UploadSession resumed = service.getChunkedUpload( upload.getUploadId() );
+        assertEquals( 3, resumed.getOffset() );
+        service.uploadChunk( upload.getUploadId(), resumed.getOffset(), chunk( "def" ) );
+        File file = new File( service.completeChunkedUpload( upload.getUploadId() ).getServerFileName() );
+
+        assertEquals( "abcdef", FileUtils.readFileToString( file ) );
+        assertEquals( new ChecksummedFile( file ).calculateChecksum( ChecksumAlgorithm.SHA1 ),
+                      checksumCache.get( file, ChecksumAlgorithm.SHA1 ) );
+    }
+
+    @Test
+    public void testChunkedUploadBoundToSession()
+        throws Exception
+    {
+        UploadSession upload = service.startChunkedUpload( "test.jar", 3, null, null, false );
+
+        DefaultFileUploadService otherSession = createService( new MockHttpServletRequest() );
+        try
+        {
+            otherSession.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+            fail( "the upload should not be visible from another session" );
+        }
+        catch ( ArchivaRestServiceException e )
+        {
+            assertEquals( 404, e.getHttpErrorCode() );
+        }
+        assertFalse( otherSession.abortChunkedUpload( upload.getUploadId() ) );
+
+        service.uploadChunk( upload.getUploadId(), 0, chunk( "abc" ) );
+        FileMetadata fileMetadata = service.completeChunkedUpload( upload.getUploadId() );
+        assertTrue( new File( fileMetadata.getServerFileName() ).exists() );
+    }
+
+    @Test
+    public void testChunkedUploadFilesDeletedWithSession()
+        throws Exception
+    {
+        service.startChunkedUpload( "test.jar", 3, null, null, false );
+        assertEquals( 1, STAGING_DIRECTORY.list().length );
+
+        request.getSession().invalidate();
+
+        assertEquals( 0, STAGING_DIRECTORY.list().length );
+    }
+
+    private DefaultFileUploadService createService( MockHttpServletRequest request )
+    {
+        DefaultFileUploadService service = new DefaultFileUploadService();
+        ReflectionTestUtils.setField( service, "httpServletRequest", request );
+        ReflectionTestUtils.setField( service, "checksumCache", checksumCache );
+        service.setStagingDirectory( STAGING_DIRECTORY );
+        return service;
+    }
+
+    private void assertHttpError( int status, String uploadId )
+    {
+        try
+        {
+            service.getChunkedUpload( uploadId );
+            fail( "expected http error " + status );
+        }
+        catch ( ArchivaRestServiceException e )
+        {
+            assertEquals( status, e.getHttpErrorCode() );
+        }
+    }
+
+    private static InputStream chunk( String content )
+    {
+        return new ByteArrayInputStream( content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * a chunk whose connection is lost once its content is read
+     */
+    private static class InterruptedInputStream
+        extends InputStream
+    {
+        private final InputStream content;
+
+        InterruptedInputStream( String content )
+        {
+            this.content = chunk( content );
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            int read = content.read();
+            if ( read == -1 )
+            {
+                throw new IOException( "connection reset" );
+            }
+            return read;
+        }
+    }
+}
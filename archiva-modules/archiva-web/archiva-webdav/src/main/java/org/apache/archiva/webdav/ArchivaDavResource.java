@@ -20,6 +20,10 @@
  */
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.archiva.checksum.ChecksummingOutputStream;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.repository.events.AuditListener;
 import org.apache.archiva.common.filelock.FileLockException;
@@ -27,6 +31,7 @@
 import org.apache.archiva.common.filelock.FileLockTimeoutException;
 import org.apache.archiva.common.filelock.Lock;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.repository.scanner.ServingLatency;
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
@@ -34,6 +39,7 @@
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.jackrabbit.util.Text;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavResource;
@@ -67,10 +73,12 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -105,16 +113,29 @@
 
     public static final String COMPLIANCE_CLASS = "1, 2";
 
+    /**
+     * prefix of the request headers a client can send the checksums of an uploaded file in, eg. X-Checksum-SHA1
+     */
+    public static final String CHECKSUM_HEADER_PREFIX = "X-Checksum-";
+
+    private static final ChecksumAlgorithm[] UPLOAD_CHECKSUM_ALGORITHMS =
+        new ChecksumAlgorithm[]{ ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.SHA256 };
+
+    private static final int SPOOL_BUFFER_SIZE = 8192;
+
     private final ArchivaTaskScheduler scheduler;
 
     private final FileLockManager fileLockManager;
 
+    private final ChecksumCache checksumCache;
+
     private Logger log = LoggerFactory.getLogger( ArchivaDavResource.class );
 
     public ArchivaDavResource( String localResource, String logicalResource, ManagedRepository repository,
                                DavSession session, ArchivaDavResourceLocator locator, DavResourceFactory factory,
                                MimeTypes mimeTypes, List<AuditListener> auditListeners,
-                               RepositoryArchivaTaskScheduler scheduler, FileLockManager fileLockManager )
+                               RepositoryArchivaTaskScheduler scheduler, FileLockManager fileLockManager,
+                               ChecksumCache checksumCache )
     {
         this.localResource = new File( localResource );
         this.logicalResource = logicalResource;
@@ -130,16 +151,17 @@ public ArchivaDavResource( String localResource, String logicalResource, Managed
         this.auditListeners = auditListeners;
         this.scheduler = scheduler;
         this.fileLockManager = fileLockManager;
+        this.checksumCache = checksumCache;
     }
 
     public ArchivaDavResource( String localResource, String logicalResource, ManagedRepository repository,
                                String remoteAddr, String principal, DavSession session,
                                ArchivaDavResourceLocator locator, DavResourceFactory factory, MimeTypes mimeTypes,
                                List<AuditListener> auditListeners, RepositoryArchivaTaskScheduler scheduler,
-                               FileLockManager fileLockManager )
+                               FileLockManager fileLockManager, ChecksumCache checksumCache )
     {
         this( localResource, logicalResource, repository, session, locator, factory, mimeTypes, auditListeners,
-              scheduler, fileLockManager );
+              scheduler, fileLockManager, checksumCache );
 
         this.remoteAddr = remoteAddr;
         this.principal = principal;
@@ -219,10 +241,23 @@ public void spool( OutputContext outputContext )
         {
             if ( !isCollection() && outputContext.hasStream() )
             {
+                long start = System.currentTimeMillis();
                 Lock lock = fileLockManager.readFileLock( localResource );
                 try (InputStream is = Files.newInputStream( lock.getFile().toPath() ))
                 {
-                    IOUtils.copy( is, outputContext.getOutputStream() );
+                    // the latency is measured until the first bytes are read, regardless of the client bandwidth
+                    byte[] buffer = new byte[SPOOL_BUFFER_SIZE];
+                    int read = is.read( buffer );
+                    ServingLatency.record( System.currentTimeMillis() - start );
+                    if ( read > 0 )
+                    {
+                        outputContext.getOutputStream().write( buffer, 0, read );
+                        IOUtils.copyLarge( is, outputContext.getOutputStream(), buffer );
+                    }
+                }
+                finally
+                {
+                    fileLockManager.release( lock );
                 }
             }
             else if ( outputContext.hasStream() )
@@ -319,29 +354,66 @@ public void addMember( DavResource resource, InputContext inputContext )
 
         if ( isCollection() && inputContext.hasStream() ) // New File
         {
-            try (OutputStream stream = Files.newOutputStream( localFile.toPath() ))
+            // the upload is written to a temporary file next to the target (so on the same file system) and only
+            // renamed into place once complete and verified, so a bad deployment never replaces an existing file
+            File tmpFile;
+            Map<ChecksumAlgorithm, String> checksums;
+            long length;
+            long lastModified;
+            try
             {
-                IOUtils.copy( inputContext.getInputStream(), stream );
+                tmpFile =
+                    File.createTempFile( HIDDEN_PATH_PREFIX + localFile.getName() + ".", ".tmp", localResource );
             }
             catch ( IOException e )
             {
                 throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
             }
 
-            // TODO: a bad deployment shouldn't delete an existing file - do we need to write to a temporary location first?
-            long expectedContentLength = inputContext.getContentLength();
-            long actualContentLength = localFile.length();
-            // length of -1 is given for a chunked request or unknown length, in which case we accept what was uploaded
-            if ( expectedContentLength >= 0 && expectedContentLength != actualContentLength )
+            try
             {
-                String msg = "Content Header length was " + expectedContentLength + " but was " + actualContentLength;
-                log.debug( "Upload failed: {}", msg );
+                try (ChecksummingOutputStream stream = new ChecksummingOutputStream(
+                    Files.newOutputStream( tmpFile.toPath() ), UPLOAD_CHECKSUM_ALGORITHMS ))
+                {
+                    IOUtils.copy( inputContext.getInputStream(), stream );
+                    checksums = stream.getChecksums();
+                }
 
-                FileUtils.deleteQuietly( localFile );
-                throw new DavException( HttpServletResponse.SC_BAD_REQUEST, msg );
+                long expectedContentLength = inputContext.getContentLength();
+                long actualContentLength = tmpFile.length();
+                // length of -1 is given for a chunked request or unknown length, in which case we accept what was
+                // uploaded
+                if ( expectedContentLength >= 0 && expectedContentLength != actualContentLength )
+                {
+                    String msg =
+                        "Content Header length was " + expectedContentLength + " but was " + actualContentLength;
+                    log.debug( "Upload failed: {}", msg );
+
+                    throw new DavException( HttpServletResponse.SC_BAD_REQUEST, msg );
+                }
+
+                verifyChecksums( inputContext, localFile, tmpFile, checksums );
+
+                // the checksums stay valid for this content only, a later deployment may replace it at any time
+                length = tmpFile.length();
+                lastModified = tmpFile.lastModified();
+                moveIntoPlace( tmpFile, localFile );
+            }
+            catch ( IOException e )
+            {
+                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+            }
+            finally
+            {
+                FileUtils.deleteQuietly( tmpFile );
+            }
+
+            if ( checksumCache != null )
+            {
+                checksumCache.add( localFile, length, lastModified, checksums );
             }
 
-            queueRepositoryTask( localFile );
+            queueRepositoryTask( localFile, checksums, length, lastModified );
 
             log.debug( "File '{}{}(current user '{}')", resource.getDisplayName(),
                        ( exists ? "' modified " : "' created " ), this.principal );
@@ -709,13 +781,89 @@ private void triggerAuditEvent( String remoteIP, String repositoryId, String res
         }
     }
 
-    private void queueRepositoryTask( File localFile )
+    /**
+     * Verify the uploaded content against the checksums sent along with it: either as <code>X-Checksum-*</code>
+     * request headers, or - when the upload is itself a checksum file - against the checksum of the already deployed
+     * file it refers to.
+     */
+    private void verifyChecksums( InputContext inputContext, File localFile, File tmpFile,
+                                  Map<ChecksumAlgorithm, String> checksums )
+        throws DavException, IOException
+    {
+        for ( Map.Entry<ChecksumAlgorithm, String> entry : checksums.entrySet() )
+        {
+            String expected = inputContext.getProperty( CHECKSUM_HEADER_PREFIX + entry.getKey().getType() );
+            if ( StringUtils.isNotBlank( expected ) && !StringUtils.equalsIgnoreCase( expected.trim(),
+                                                                                        entry.getValue() ) )
+            {
+                String msg = "Checksum " + entry.getKey().getType() + " was " + entry.getValue() + " but expected "
+                    + expected.trim();
+                log.debug( "Upload failed: {}", msg );
+                throw new DavException( HttpServletResponse.SC_BAD_REQUEST, msg );
+            }
+        }
+
+        for ( ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+        {
+            String suffix = "." + algorithm.getExt();
+            if ( localFile.getName().toLowerCase().endsWith( suffix ) )
+            {
+                File referenceFile = new File( localFile.getParentFile(),
+                                               localFile.getName().substring( 0, localFile.getName().length()
+                                                   - suffix.length() ) );
+                String actual = checksumCache != null ? checksumCache.get( referenceFile, algorithm ) : null;
+                if ( actual == null )
+                {
+                    // not freshly deployed, the consumers will validate it
+                    return;
+                }
+                ChecksummedFile checksummedFile = new ChecksummedFile( referenceFile );
+                String expected;
+                try
+                {
+                    expected = checksummedFile.parseChecksum( FileUtils.readFileToString( tmpFile ), algorithm,
+                                                              referenceFile.getName() );
+                }
+                catch ( IOException e )
+                {
+                    throw new DavException( HttpServletResponse.SC_BAD_REQUEST, e.getMessage() );
+                }
+                if ( !StringUtils.equalsIgnoreCase( expected, actual ) )
+                {
+                    String msg = "Checksum " + algorithm.getType() + " of " + referenceFile.getName() + " was " + actual
+                        + " but uploaded checksum is " + expected;
+                    log.debug( "Upload failed: {}", msg );
+                    throw new DavException( HttpServletResponse.SC_BAD_REQUEST, msg );
+                }
+                return;
+            }
+        }
+    }
+
+    private void moveIntoPlace( File tmpFile, File localFile )
+        throws IOException
+    {
+        try
+        {
+            Files.move( tmpFile.toPath(), localFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            log.debug( "Atomic move not supported for {}, replacing the file instead", localFile );
+            Files.move( tmpFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private void queueRepositoryTask( File localFile, Map<ChecksumAlgorithm, String> checksums, long length,
+                                      long lastModified )
     {
         RepositoryTask task = new RepositoryTask();
         task.setRepositoryId( repository.getId() );
         task.setResourceFile( localFile );
         task.setUpdateRelatedArtifacts( false );
         task.setScanAll( false );
+        task.setChecksums( checksums, length, lastModified );
 
         try
         {
@@ -25,6 +25,7 @@
 import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
 import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.audit.Auditable;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.common.filelock.FileLockManager;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
@@ -184,6 +185,10 @@
     @Named( value = "fileLockManager#default" )
     private FileLockManager fileLockManager;
 
+    @Inject
+    @Named( value = "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     private ApplicationContext applicationContext;
 
     @Inject
@@ -289,7 +294,7 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                                                        mimeTypes, //
                                                        auditListeners, //
                                                        scheduler, //
-                                                       fileLockManager );
+                                                       fileLockManager, checksumCache );
                     setHeaders( response, locator, resource, false );
                     return resource;
                 }
@@ -368,7 +373,7 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                             new ArchivaDavResource( metadataChecksum.getAbsolutePath(), logicalResource.getPath(), null,
                                                     request.getRemoteAddr(), activePrincipal, request.getDavSession(),
                                                     archivaLocator, this, mimeTypes, auditListeners, scheduler,
-                                                    fileLockManager );
+                                                    fileLockManager, checksumCache );
                     }
                 }
                 else
@@ -408,7 +413,7 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                                 new ArchivaDavResource( resourceFile.getAbsolutePath(), logicalResource.getPath(), null,
                                                         request.getRemoteAddr(), activePrincipal,
                                                         request.getDavSession(), archivaLocator, this, mimeTypes,
-                                                        auditListeners, scheduler, fileLockManager );
+                                                        auditListeners, scheduler, fileLockManager, checksumCache );
                         }
                         catch ( RepositoryMetadataException r )
                         {
@@ -466,7 +471,7 @@ private DavResource processRepositoryGroup( final DavServletRequest request,
             resource = new ArchivaDavResource( resourceFile.getAbsolutePath(), requestedFileName, null,
                                                request.getRemoteAddr(), activePrincipal, request.getDavSession(),
                                                archivaLocator, this, mimeTypes, auditListeners, scheduler,
-                                               fileLockManager );
+                                               fileLockManager, checksumCache );
 
         }
         else
@@ -609,7 +614,8 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
             resource =
                 new ArchivaDavResource( resourceFile.getAbsolutePath(), path, managedRepositoryContent.getRepository(),
                                         request.getRemoteAddr(), activePrincipal, request.getDavSession(),
-                                        archivaLocator, this, mimeTypes, auditListeners, scheduler, fileLockManager );
+                                        archivaLocator, this, mimeTypes, auditListeners, scheduler, fileLockManager,
+                                        checksumCache );
 
             if ( WebdavMethodUtil.isReadMethod( request.getMethod() ) )
             {
@@ -640,7 +646,7 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
                                                         managedRepositoryContent.getRepository(),
                                                         request.getRemoteAddr(), activePrincipal,
                                                         request.getDavSession(), archivaLocator, this, mimeTypes,
-                                                        auditListeners, scheduler, fileLockManager );
+                                                        auditListeners, scheduler, fileLockManager, checksumCache );
                         }
                         catch ( LayoutException e )
                         {
@@ -763,7 +769,8 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
             File resourceFile = new File( managedRepositoryContent.getRepoRoot(), logicalResource );
             resource = new ArchivaDavResource( resourceFile.getAbsolutePath(), logicalResource,
                                                managedRepositoryContent.getRepository(), davSession, archivaLocator,
-                                               this, mimeTypes, auditListeners, scheduler, fileLockManager );
+                                               this, mimeTypes, auditListeners, scheduler, fileLockManager,
+                                               checksumCache );
 
             resource.addLockManager( lockManager );
         }
@@ -1028,7 +1035,7 @@ private DavResource getResourceFromGroup( DavServletRequest request, List<String
 
             return new ArchivaDavResource( file.getPath(), "groups/" + repositoryGroupConfiguration.getId(), null,
                                            request.getDavSession(), locator, this, mimeTypes, auditListeners, scheduler,
-                                           fileLockManager );
+                                           fileLockManager, checksumCache );
         }
         List<File> mergedRepositoryContents = new ArrayList<>();
         // multiple repo types so we guess they are all the same type
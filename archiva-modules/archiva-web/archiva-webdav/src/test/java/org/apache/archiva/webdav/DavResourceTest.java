@@ -22,6 +22,7 @@
 import junit.framework.TestCase;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.repository.events.AuditListener;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.common.filelock.FileLockManager;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.webdav.DavException;
@@ -62,6 +63,9 @@
     @Inject
     private FileLockManager fileLockManager;
 
+    @Inject
+    private ChecksumCache checksumCache;
+
     private ArchivaDavResourceLocator resourceLocator;
 
     private DavResourceFactory resourceFactory;
@@ -110,7 +114,8 @@ public void tearDown()
     private DavResource getDavResource( String logicalPath, File file )
     {
         return new ArchivaDavResource( file.getAbsolutePath(), logicalPath, repository, session, resourceLocator,
-                                       resourceFactory, mimeTypes, Collections.<AuditListener> emptyList(), null, fileLockManager );
+                                       resourceFactory, mimeTypes, Collections.<AuditListener> emptyList(), null,
+                                       fileLockManager, checksumCache );
     }
 
     @Test
@@ -331,7 +336,7 @@ public DavResource createResource( DavResourceLocator locator, DavSession sessio
         {
             return new ArchivaDavResource( baseDir.getAbsolutePath(), "/", repository, session, resourceLocator,
                                            resourceFactory, mimeTypes, Collections.<AuditListener> emptyList(),
-                                           null, fileLockManager );
+                                           null, fileLockManager, checksumCache );
         }
     }
 }
@@ -19,6 +19,7 @@
 * under the License.
 */
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -56,6 +57,32 @@ public void updateProjectVersion( String repositoryId, String namespace, String
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Applies the updates one at a time.
+     */
+    @Override
+    public void updateMetadata( String repositoryId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        for ( MetadataUpdate update : updates )
+        {
+            if ( update.getArtifact() != null )
+            {
+                updateArtifact( repositoryId, update.getNamespace(), update.getProjectId(), update.getProjectVersion(),
+                                update.getArtifact() );
+            }
+            if ( update.getProjectVersionMetadata() != null )
+            {
+                updateProjectVersion( repositoryId, update.getNamespace(), update.getProjectId(),
+                                      update.getProjectVersionMetadata() );
+            }
+            ProjectMetadata project = new ProjectMetadata();
+            project.setNamespace( update.getNamespace() );
+            project.setId( update.getProjectId() );
+            updateProject( repositoryId, project );
+        }
+    }
+
     @Override
     public void updateNamespace( String repositoryId, String namespace )
         throws MetadataRepositoryException
@@ -188,6 +215,25 @@ public List<ArtifactMetadata> getArtifacts( String repositoryId )
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Pages through the list returned by {@link #getArtifacts(String)}, the page token being the index of the first
+     * artifact of the page.
+     */
+    @Override
+    public ArtifactMetadataPage getArtifacts( String repositoryId, String pageToken, int limit )
+        throws MetadataRepositoryException
+    {
+        if ( limit <= 0 )
+        {
+            throw new IllegalArgumentException( "The limit of a page must be greater than 0: " + limit );
+        }
+        List<ArtifactMetadata> artifacts = getArtifacts( repositoryId );
+        int fromIndex = pageToken != null ? Integer.parseInt( pageToken ) : 0;
+        int toIndex = Math.min( fromIndex + limit, artifacts.size() );
+        return new ArtifactMetadataPage( new ArrayList<>( artifacts.subList( fromIndex, toIndex ) ),
+                                         toIndex < artifacts.size() ? Integer.toString( toIndex ) : null );
+    }
+
     @Override
     public ProjectMetadata getProject( String repoId, String namespace, String projectId )
         throws MetadataResolutionException
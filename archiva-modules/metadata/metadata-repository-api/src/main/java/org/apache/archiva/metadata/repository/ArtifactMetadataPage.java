@@ -0,0 +1,59 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+
+import java.util.List;
+
+/**
+ * A page of the artifacts of a repository, as returned by
+ * {@link MetadataRepository#getArtifacts(String, String, int)}, along with the token of the next page.
+ */
+public class ArtifactMetadataPage
+{
+    private final List<ArtifactMetadata> artifacts;
+
+    private final String nextPageToken;
+
+    public ArtifactMetadataPage( List<ArtifactMetadata> artifacts, String nextPageToken )
+    {
+        this.artifacts = artifacts;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<ArtifactMetadata> getArtifacts()
+    {
+        return artifacts;
+    }
+
+    /**
+     * @return the token to pass to get the next page, <code>null</code> if this is the last page
+     */
+    public String getNextPageToken()
+    {
+        return nextPageToken;
+    }
+
+    public boolean hasNextPage()
+    {
+        return nextPageToken != null;
+    }
+}
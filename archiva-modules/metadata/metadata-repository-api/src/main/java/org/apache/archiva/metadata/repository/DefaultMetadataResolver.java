@@ -20,6 +20,7 @@
  */
 
 import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.MetadataFacet;
 import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
@@ -40,7 +41,10 @@
 import javax.inject.Named;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
@@ -89,16 +93,83 @@
     private List<RepositoryListener> listeners = new ArrayList<>();
 
     /**
-     * Cache used for namespaces
+     * Cache used for the namespaces, projects and project versions
      */
     @Inject
-    @Named( value = "cache#namespaces" )
-    private Cache<String, Collection<String>> namespacesCache;
+    private NamespaceTreeCache namespaceTreeCache;
+
+    /**
+     * Cache used for the complete project versions resolved, evicted by the
+     * {@link ProjectVersionCacheEventListener} and by the components changing them.
+     */
+    @Inject
+    @Named( value = "cache#projectVersions" )
+    private Cache<String, ProjectVersionMetadata> projectVersionsCache;
+
+    /**
+     * Caches the project versions resolved, unless evicted while they were resolved.
+     */
+    @Inject
+    private ProjectVersionCacheEventListener projectVersionCacheEventListener;
+
+    /**
+     * Locks of the project versions being resolved, so that concurrent requests for a project version missing from
+     * the cache build it only once.
+     */
+    private final ConcurrentMap<String, Object> resolvingLocks = new ConcurrentHashMap<>();
 
     @Override
     public ProjectVersionMetadata resolveProjectVersion( RepositorySession session, String repoId, String namespace,
                                                          String projectId, String projectVersion )
         throws MetadataResolutionException
+    {
+        String cacheKey = ProjectVersionCacheEventListener.cacheKey( repoId, namespace, projectId, projectVersion );
+        ProjectVersionMetadata metadata = projectVersionsCache.get( cacheKey );
+        if ( metadata != null )
+        {
+            return copy( metadata );
+        }
+
+        Object lock = new Object();
+        Object existingLock = resolvingLocks.putIfAbsent( cacheKey, lock );
+        if ( existingLock != null )
+        {
+            lock = existingLock;
+        }
+        try
+        {
+            synchronized ( lock )
+            {
+                // resolved by the request holding the lock meanwhile
+                metadata = projectVersionsCache.get( cacheKey );
+                if ( metadata == null )
+                {
+                    long generation = projectVersionCacheEventListener.getGeneration( cacheKey );
+                    metadata = doResolveProjectVersion( session, repoId, namespace, projectId, projectVersion );
+                    if ( metadata == null || metadata.isIncomplete() )
+                    {
+                        // not cached so that it is tried again once fixed
+                        return metadata;
+                    }
+                    if ( !projectVersionCacheEventListener.put( cacheKey, generation, copy( metadata ) ) )
+                    {
+                        log.debug( "Not caching the project version {} evicted while it was resolved", cacheKey );
+                    }
+                    return metadata;
+                }
+            }
+        }
+        finally
+        {
+            resolvingLocks.remove( cacheKey, lock );
+        }
+        return copy( metadata );
+    }
+
+    private ProjectVersionMetadata doResolveProjectVersion( RepositorySession session, String repoId,
+                                                            String namespace, String projectId,
+                                                            String projectVersion )
+        throws MetadataResolutionException
     {
         MetadataRepository metadataRepository = session.getRepository();
 
@@ -134,7 +205,11 @@ public ProjectVersionMetadata resolveProjectVersion( RepositorySession session,
                 {
                     for ( RepositoryListener listener : listeners )
                     {
-                        listener.addArtifact( session, repoId, namespace, projectId, metadata );
+                        // the project version being resolved is only evicted by the changes of the other requests
+                        if ( listener != projectVersionCacheEventListener )
+                        {
+                            listener.addArtifact( session, repoId, namespace, projectId, metadata );
+                        }
                     }
                     metadataRepository.updateProjectVersion( repoId, namespace, projectId, metadata );
                 }
@@ -174,6 +249,45 @@ public ProjectVersionMetadata resolveProjectVersion( RepositorySession session,
         return metadata;
     }
 
+    /**
+     * Copy a project version handed out or taken in by the cache, as the callers are free to change it. The facets
+     * are shared.
+     */
+    private static ProjectVersionMetadata copy( ProjectVersionMetadata metadata )
+    {
+        ProjectVersionMetadata copy = new ProjectVersionMetadata();
+        copy.setId( metadata.getId() );
+        copy.setUrl( metadata.getUrl() );
+        copy.setName( metadata.getName() );
+        copy.setDescription( metadata.getDescription() );
+        copy.setOrganization( metadata.getOrganization() );
+        copy.setIssueManagement( metadata.getIssueManagement() );
+        copy.setScm( metadata.getScm() );
+        copy.setCiManagement( metadata.getCiManagement() );
+        if ( metadata.getLicenses() != null )
+        {
+            copy.setLicenses( new ArrayList<>( metadata.getLicenses() ) );
+        }
+        if ( metadata.getMailingLists() != null )
+        {
+            copy.setMailingLists( new ArrayList<>( metadata.getMailingLists() ) );
+        }
+        if ( metadata.getDependencies() != null )
+        {
+            copy.setDependencies( new ArrayList<>( metadata.getDependencies() ) );
+        }
+        if ( metadata.getProperties() != null )
+        {
+            copy.setProperties( new HashMap<>( metadata.getProperties() ) );
+        }
+        copy.setIncomplete( metadata.isIncomplete() );
+        for ( MetadataFacet facet : metadata.getFacetList() )
+        {
+            copy.addFacet( facet );
+        }
+        return copy;
+    }
+
     @Override
     public Collection<ProjectVersionReference> resolveProjectReferences( RepositorySession session, String repoId,
                                                                          String namespace, String projectId,
@@ -193,11 +307,12 @@ public Collection<String> resolveRootNamespaces( RepositorySession session, Stri
         try
         {
 
-            Collection<String> namespaces = namespacesCache.get( repoId );
+            Collection<String> namespaces = namespaceTreeCache.getNamespaces( repoId, null );
             if ( namespaces != null )
             {
                 return namespaces;
             }
+            long generation = namespaceTreeCache.getNamespacesGeneration( repoId, null );
 
             MetadataRepository metadataRepository = session.getRepository();
             namespaces = metadataRepository.getRootNamespaces( repoId );
@@ -214,8 +329,7 @@ public Collection<String> resolveRootNamespaces( RepositorySession session, Stri
                     {
                         metadataRepository.updateNamespace( repoId, n );
                         // just invalidate cache entry
-                        String cacheKey = repoId + "-" + n;
-                        namespacesCache.remove( cacheKey );
+                        namespaceTreeCache.removeNamespaces( repoId, n );
                     }
                     catch ( MetadataRepositoryException e )
                     {
@@ -228,7 +342,7 @@ public Collection<String> resolveRootNamespaces( RepositorySession session, Stri
                 namespaces.addAll( storageNamespaces );
             }
 
-            namespacesCache.put( repoId, namespaces );
+            namespaceTreeCache.putNamespaces( repoId, null, generation, namespaces );
 
             return namespaces;
         }
@@ -244,14 +358,15 @@ public Collection<String> resolveNamespaces( RepositorySession session, String r
     {
         try
         {
-            MetadataRepository metadataRepository = session.getRepository();
-            String cacheKey = repoId + "-" + namespace;
-            Collection<String> namespaces = namespacesCache.get( cacheKey );
-            if ( namespaces == null )
+            Collection<String> namespaces = namespaceTreeCache.getNamespaces( repoId, namespace );
+            if ( namespaces != null )
             {
-                namespaces = metadataRepository.getNamespaces( repoId, namespace );
-                namespacesCache.put( cacheKey, namespaces );
+                return namespaces;
             }
+            long generation = namespaceTreeCache.getNamespacesGeneration( repoId, namespace );
+
+            MetadataRepository metadataRepository = session.getRepository();
+            namespaces = metadataRepository.getNamespaces( repoId, namespace );
             Collection<String> exclusions = new ArrayList<>( namespaces );
             exclusions.addAll( metadataRepository.getProjects( repoId, namespace ) );
             Collection<String> storageNamespaces =
@@ -267,8 +382,7 @@ public Collection<String> resolveNamespaces( RepositorySession session, String r
                     {
                         metadataRepository.updateNamespace( repoId, namespace + "." + n );
                         // just invalidate cache entry
-                        cacheKey = repoId + "-" + namespace + "." + n;
-                        namespacesCache.remove( cacheKey );
+                        namespaceTreeCache.removeNamespaces( repoId, namespace + "." + n );
                     }
                     catch ( MetadataRepositoryException e )
                     {
@@ -280,6 +394,9 @@ public Collection<String> resolveNamespaces( RepositorySession session, String r
                 namespaces = new ArrayList<>( namespaces );
                 namespaces.addAll( storageNamespaces );
             }
+
+            namespaceTreeCache.putNamespaces( repoId, namespace, generation, namespaces );
+
             return namespaces;
         }
         catch ( RepositoryStorageRuntimeException e )
@@ -294,16 +411,21 @@ public Collection<String> resolveProjects( RepositorySession session, String rep
     {
         try
         {
+            Collection<String> projects = namespaceTreeCache.getProjects( repoId, namespace );
+            if ( projects != null )
+            {
+                return projects;
+            }
+            long generation = namespaceTreeCache.getProjectsGeneration( repoId, namespace );
+
             MetadataRepository metadataRepository = session.getRepository();
-            Collection<String> projects = metadataRepository.getProjects( repoId, namespace );
+            projects = metadataRepository.getProjects( repoId, namespace );
             Collection<String> exclusions = new ArrayList<>( projects );
 
-            String cacheKey = repoId + "-" + namespace;
-            Collection<String> namespaces = namespacesCache.get( cacheKey );
+            Collection<String> namespaces = namespaceTreeCache.getNamespaces( repoId, namespace );
             if ( namespaces == null )
             {
                 namespaces = metadataRepository.getNamespaces( repoId, namespace );
-                namespacesCache.put( cacheKey, namespaces );
             }
 
             exclusions.addAll( namespaces );
@@ -335,6 +457,9 @@ public Collection<String> resolveProjects( RepositorySession session, String rep
                 projects = new ArrayList<>( projects );
                 projects.addAll( storageProjects );
             }
+
+            namespaceTreeCache.putProjects( repoId, namespace, generation, projects );
+
             return projects;
         }
         catch ( RepositoryStorageRuntimeException e )
@@ -350,9 +475,16 @@ public Collection<String> resolveProjectVersions( RepositorySession session, Str
     {
         try
         {
+            Collection<String> projectVersions = namespaceTreeCache.getProjectVersions( repoId, namespace, projectId );
+            if ( projectVersions != null )
+            {
+                return projectVersions;
+            }
+            long generation = namespaceTreeCache.getProjectVersionsGeneration( repoId, namespace, projectId );
+
             MetadataRepository metadataRepository = session.getRepository();
 
-            Collection<String> projectVersions = metadataRepository.getProjectVersions( repoId, namespace, projectId );
+            projectVersions = metadataRepository.getProjectVersions( repoId, namespace, projectId );
             Collection<String> storageProjectVersions =
                 repositoryStorage.listProjectVersions( repoId, namespace, projectId,
                                                        new ExcludesFilter<String>( projectVersions ) );
@@ -404,6 +536,9 @@ public Collection<String> resolveProjectVersions( RepositorySession session, Str
                 projectVersions = new ArrayList<>( projectVersions );
                 projectVersions.addAll( storageProjectVersions );
             }
+
+            namespaceTreeCache.putProjectVersions( repoId, namespace, projectId, generation, projectVersions );
+
             return projectVersions;
         }
         catch ( RepositoryStorageRuntimeException e )
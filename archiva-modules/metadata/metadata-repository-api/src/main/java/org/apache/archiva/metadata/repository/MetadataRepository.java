@@ -48,6 +48,18 @@ void updateProjectVersion( String repositoryId, String namespace, String project
                                ProjectVersionMetadata versionMetadata )
         throws MetadataRepositoryException;
 
+    /**
+     * Write a batch of updates, with the same outcome as updating the artifact, then the project version metadata and
+     * the project of each of them in turn, but letting the implementation group the writes of the batch. The changes
+     * still have to be saved with the session.
+     *
+     * @param repositoryId the repository the artifacts and project versions are in
+     * @param updates      the updates, in the order they are to be applied
+     * @since 2.2.3
+     */
+    void updateMetadata( String repositoryId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException;
+
     /**
      * create the namespace in the repository. (if not exist)
      *
@@ -189,6 +201,22 @@ void removeNamespace( String repositoryId, String namespace )
     List<ArtifactMetadata> getArtifacts( String repositoryId )
         throws MetadataRepositoryException;
 
+    /**
+     * Get a page of the artifacts of a repository, so that the artifacts of a large repository can be gone through
+     * without holding all of them in memory. The artifacts are returned in an order of the implementation's choosing,
+     * which stays the same from one page to the next as long as the repository is not changed. A page may hold fewer
+     * artifacts than the limit even if more follow: only the absence of a next page token ends the enumeration.
+     *
+     * @param repositoryId the repository
+     * @param pageToken    the next page token of the previous page, <code>null</code> for the first page
+     * @param limit        the maximum number of artifacts of the page, greater than 0
+     * @return the page
+     * @throws IllegalArgumentException if the limit is not greater than 0
+     * @since 2.2.3
+     */
+    ArtifactMetadataPage getArtifacts( String repositoryId, String pageToken, int limit )
+        throws MetadataRepositoryException;
+
     /**
      * basically just checking it exists not complete data returned
      *
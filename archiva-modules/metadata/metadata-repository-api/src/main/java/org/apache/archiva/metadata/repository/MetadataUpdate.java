@@ -0,0 +1,87 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+
+/**
+ * An update of an artifact and/or of the metadata of its project version, written along with the other updates of a
+ * batch by {@link MetadataRepository#updateMetadata(String, java.util.Collection)}.
+ *
+ * @since 2.2.3
+ */
+public class MetadataUpdate
+{
+    private final String namespace;
+
+    private final String projectId;
+
+    private final String projectVersion;
+
+    private final ArtifactMetadata artifact;
+
+    private final ProjectVersionMetadata projectVersionMetadata;
+
+    /**
+     * @param artifact               the artifact to create or update, <code>null</code> to leave the artifacts alone
+     * @param projectVersionMetadata the project version metadata to create or update, <code>null</code> to only
+     *                               create the project version of the artifact if it does not exist
+     */
+    public MetadataUpdate( String namespace, String projectId, String projectVersion, ArtifactMetadata artifact,
+                           ProjectVersionMetadata projectVersionMetadata )
+    {
+        this.namespace = namespace;
+        this.projectId = projectId;
+        this.projectVersion = projectVersion;
+        this.artifact = artifact;
+        this.projectVersionMetadata = projectVersionMetadata;
+    }
+
+    public MetadataUpdate( String namespace, String projectId, ProjectVersionMetadata projectVersionMetadata )
+    {
+        this( namespace, projectId, projectVersionMetadata.getId(), null, projectVersionMetadata );
+    }
+
+    public String getNamespace()
+    {
+        return namespace;
+    }
+
+    public String getProjectId()
+    {
+        return projectId;
+    }
+
+    public String getProjectVersion()
+    {
+        return projectVersion;
+    }
+
+    public ArtifactMetadata getArtifact()
+    {
+        return artifact;
+    }
+
+    public ProjectVersionMetadata getProjectVersionMetadata()
+    {
+        return projectVersionMetadata;
+    }
+}
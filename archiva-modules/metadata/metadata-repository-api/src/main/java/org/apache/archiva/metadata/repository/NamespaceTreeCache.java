@@ -0,0 +1,334 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorageMetadataException;
+import org.apache.archiva.redback.components.cache.Cache;
+import org.apache.archiva.repository.events.RepositoryListener;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Collection;
+
+/**
+ * The tree of namespaces, projects and project versions of the repositories, as resolved by
+ * {@link DefaultMetadataResolver} from the metadata repository and the repository storage. The levels of the tree are
+ * held by bounded caches and populated lazily as they are browsed.
+ * <p>
+ * The tree is kept consistent with the repository management events, and with the changes notified by the components
+ * adding or removing content outside of the resolver. A project version being added only evicts the levels of the
+ * tree that do not already hold it, so that scanning existing content leaves the tree alone.
+ * <p>
+ * Like the project versions of {@link ProjectVersionCacheEventListener}, each eviction bumps the generation of the
+ * levels evicted, and a level is only cached if its generation is still the one from before it was listed: a level
+ * listed before an eviction is not put back after it. The levels share a fixed number of generations by the hash of
+ * their key.
+ *
+ * @since 2.2.3
+ */
+@Service( "repositoryListener#namespace-tree-cache" )
+public class NamespaceTreeCache
+    implements RepositoryListener
+{
+    private static final int GENERATIONS = 1024;
+
+    /**
+     * Child namespaces by <code>repositoryId</code> for the root namespaces and <code>repositoryId:namespace</code>
+     * for the others.
+     */
+    private final Cache<String, Collection<String>> namespacesCache;
+
+    /**
+     * Projects by <code>repositoryId:namespace</code>.
+     */
+    private final Cache<String, Collection<String>> projectsCache;
+
+    /**
+     * Project versions by <code>repositoryId:namespace:projectId</code>.
+     */
+    private final Cache<String, Collection<String>> versionsCache;
+
+    /**
+     * Generations of the levels of the tree, each guarded by the lock of the same index.
+     */
+    private final long[] generations = new long[GENERATIONS];
+
+    private final Object[] generationLocks = new Object[GENERATIONS];
+
+    @Inject
+    public NamespaceTreeCache( @Named( value = "cache#namespaces" ) Cache<String, Collection<String>> namespacesCache,
+                               @Named( value = "cache#projects" ) Cache<String, Collection<String>> projectsCache,
+                               @Named( value = "cache#versions" ) Cache<String, Collection<String>> versionsCache )
+    {
+        this.namespacesCache = namespacesCache;
+        this.projectsCache = projectsCache;
+        this.versionsCache = versionsCache;
+        for ( int i = 0; i < GENERATIONS; i++ )
+        {
+            generationLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param namespace the parent namespace, <code>null</code> for the root namespaces
+     * @return the child namespaces, <code>null</code> if not cached
+     */
+    public Collection<String> getNamespaces( String repositoryId, String namespace )
+    {
+        return namespacesCache.get( namespacesKey( repositoryId, namespace ) );
+    }
+
+    /**
+     * @return the generation of the child namespaces, to be given to
+     *         {@link #putNamespaces(String, String, long, Collection)} once they are listed
+     */
+    public long getNamespacesGeneration( String repositoryId, String namespace )
+    {
+        return getGeneration( namespacesKey( repositoryId, namespace ) );
+    }
+
+    /**
+     * Cache the child namespaces, unless they were evicted since their generation was taken.
+     *
+     * @return <code>false</code> if the child namespaces were evicted meanwhile, and not cached
+     */
+    public boolean putNamespaces( String repositoryId, String namespace, long generation,
+                                  Collection<String> namespaces )
+    {
+        return put( namespacesCache, namespacesKey( repositoryId, namespace ), generation, namespaces );
+    }
+
+    public void removeNamespaces( String repositoryId, String namespace )
+    {
+        evict( namespacesCache, namespacesKey( repositoryId, namespace ) );
+    }
+
+    /**
+     * @return the projects of the namespace, <code>null</code> if not cached
+     */
+    public Collection<String> getProjects( String repositoryId, String namespace )
+    {
+        return projectsCache.get( projectsKey( repositoryId, namespace ) );
+    }
+
+    public long getProjectsGeneration( String repositoryId, String namespace )
+    {
+        return getGeneration( projectsKey( repositoryId, namespace ) );
+    }
+
+    public boolean putProjects( String repositoryId, String namespace, long generation, Collection<String> projects )
+    {
+        return put( projectsCache, projectsKey( repositoryId, namespace ), generation, projects );
+    }
+
+    /**
+     * @return the versions of the project, <code>null</code> if not cached
+     */
+    public Collection<String> getProjectVersions( String repositoryId, String namespace, String projectId )
+    {
+        return versionsCache.get( versionsKey( repositoryId, namespace, projectId ) );
+    }
+
+    public long getProjectVersionsGeneration( String repositoryId, String namespace, String projectId )
+    {
+        return getGeneration( versionsKey( repositoryId, namespace, projectId ) );
+    }
+
+    public boolean putProjectVersions( String repositoryId, String namespace, String projectId, long generation,
+                                       Collection<String> projectVersions )
+    {
+        return put( versionsCache, versionsKey( repositoryId, namespace, projectId ), generation, projectVersions );
+    }
+
+    /**
+     * Evict the levels of the tree missing a project version that has been added, along with the namespaces leading
+     * to it as they may be new too.
+     */
+    public void projectVersionAdded( String repositoryId, String namespace, String projectId, String projectVersion )
+    {
+        String versionsKey = versionsKey( repositoryId, namespace, projectId );
+        Collection<String> projectVersions = versionsCache.get( versionsKey );
+        if ( projectVersions != null && projectVersions.contains( projectVersion ) )
+        {
+            return;
+        }
+        evict( versionsCache, versionsKey );
+
+        String projectsKey = projectsKey( repositoryId, namespace );
+        Collection<String> projects = projectsCache.get( projectsKey );
+        if ( projects != null && projects.contains( projectId ) )
+        {
+            return;
+        }
+        evict( projectsCache, projectsKey );
+
+        removeNamespacesLeadingTo( repositoryId, namespace );
+    }
+
+    public void projectVersionRemoved( String repositoryId, String namespace, String projectId )
+    {
+        evict( versionsCache, versionsKey( repositoryId, namespace, projectId ) );
+    }
+
+    /**
+     * Evict a project being removed, along with the namespaces leading to it as they may be left empty and go with
+     * it.
+     */
+    public void projectRemoved( String repositoryId, String namespace, String projectId )
+    {
+        evict( versionsCache, versionsKey( repositoryId, namespace, projectId ) );
+        evict( projectsCache, projectsKey( repositoryId, namespace ) );
+        removeNamespacesLeadingTo( repositoryId, namespace );
+    }
+
+    /**
+     * Evict a namespace being removed from its parent. The namespaces below it are not known, so the projects and
+     * versions of every namespace are evicted.
+     */
+    public void namespaceRemoved( String repositoryId, String namespace )
+    {
+        int index = namespace.lastIndexOf( '.' );
+        evict( namespacesCache, namespacesKey( repositoryId, index < 0 ? null : namespace.substring( 0, index ) ) );
+        evict( namespacesCache, namespacesKey( repositoryId, namespace ) );
+        evictAll( projectsCache, versionsCache );
+    }
+
+    /**
+     * Evict a repository being removed. Its namespaces are not known, so the whole tree is evicted.
+     */
+    public void repositoryRemoved( String repositoryId )
+    {
+        evictAll( namespacesCache, projectsCache, versionsCache );
+    }
+
+    @Override
+    public void deleteArtifact( MetadataRepository metadataRepository, String repositoryId, String namespace,
+                                String project, String version, String id )
+    {
+        // the version goes with its last artifact, the project with its last version, and the namespaces with their
+        // last project
+        projectRemoved( repositoryId, namespace, project );
+    }
+
+    @Override
+    public void addArtifact( RepositorySession session, String repoId, String namespace, String projectId,
+                             ProjectVersionMetadata metadata )
+    {
+        projectVersionAdded( repoId, namespace, projectId, metadata.getId() );
+    }
+
+    @Override
+    public void addArtifactProblem( RepositorySession session, String repoId, String namespace, String projectId,
+                                    String projectVersion, RepositoryStorageMetadataException exception )
+    {
+        // the tree is left alone, the project version is listed anyway
+    }
+
+    /**
+     * Evict the root namespaces and the child namespaces of each namespace leading to the given one, included.
+     */
+    private void removeNamespacesLeadingTo( String repositoryId, String namespace )
+    {
+        evict( namespacesCache, namespacesKey( repositoryId, null ) );
+        int index = -1;
+        do
+        {
+            index = namespace.indexOf( '.', index + 1 );
+            evict( namespacesCache,
+                   namespacesKey( repositoryId, index < 0 ? namespace : namespace.substring( 0, index ) ) );
+        }
+        while ( index >= 0 );
+    }
+
+    private long getGeneration( String key )
+    {
+        int index = generationIndex( key );
+        synchronized ( generationLocks[index] )
+        {
+            return generations[index];
+        }
+    }
+
+    private boolean put( Cache<String, Collection<String>> cache, String key, long generation,
+                         Collection<String> values )
+    {
+        int index = generationIndex( key );
+        synchronized ( generationLocks[index] )
+        {
+            if ( generations[index] != generation )
+            {
+                return false;
+            }
+            cache.put( key, values );
+            return true;
+        }
+    }
+
+    private void evict( Cache<String, Collection<String>> cache, String key )
+    {
+        int index = generationIndex( key );
+        synchronized ( generationLocks[index] )
+        {
+            generations[index]++;
+            cache.remove( key );
+        }
+    }
+
+    /**
+     * Evict whole levels of the tree, when the keys changed are not known.
+     */
+    @SafeVarargs
+    private final void evictAll( Cache<String, Collection<String>>... caches )
+    {
+        for ( int i = 0; i < GENERATIONS; i++ )
+        {
+            synchronized ( generationLocks[i] )
+            {
+                generations[i]++;
+            }
+        }
+        for ( Cache<String, Collection<String>> cache : caches )
+        {
+            cache.clear();
+        }
+    }
+
+    private static int generationIndex( String key )
+    {
+        return ( key.hashCode() & Integer.MAX_VALUE ) % GENERATIONS;
+    }
+
+    private static String namespacesKey( String repositoryId, String namespace )
+    {
+        return namespace == null || namespace.isEmpty() ? repositoryId : repositoryId + ":" + namespace;
+    }
+
+    private static String projectsKey( String repositoryId, String namespace )
+    {
+        return repositoryId + ":" + namespace;
+    }
+
+    private static String versionsKey( String repositoryId, String namespace, String projectId )
+    {
+        return repositoryId + ":" + namespace + ":" + projectId;
+    }
+}
@@ -0,0 +1,171 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorageMetadataException;
+import org.apache.archiva.redback.components.cache.Cache;
+import org.apache.archiva.repository.events.RepositoryListener;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Evicts the project versions resolved by {@link DefaultMetadataResolver} from its cache when the repository
+ * management events change them. The components changing the metadata of a project version outside of the resolver
+ * evict it with {@link #evict(String, String, String, String)} too.
+ * <p>
+ * Each eviction bumps the generation of the project version, and the resolver only caches a project version if its
+ * generation is still the one from before it was read: a project version read before an eviction is not cached
+ * after it. The project versions share a fixed number of generations by the hash of their key, an eviction just
+ * skipping the caching of the others sharing its generation.
+ *
+ * @since 2.2.3
+ */
+@Service( "repositoryListener#project-version-cache" )
+public class ProjectVersionCacheEventListener
+    implements RepositoryListener
+{
+    private static final int GENERATIONS = 1024;
+
+    @Inject
+    @Named( value = "cache#projectVersions" )
+    private Cache<String, ProjectVersionMetadata> projectVersionsCache;
+
+    /**
+     * Generations of the project versions, each guarded by the lock of the same index.
+     */
+    private final long[] generations = new long[GENERATIONS];
+
+    private final Object[] generationLocks = new Object[GENERATIONS];
+
+    public ProjectVersionCacheEventListener()
+    {
+        for ( int i = 0; i < GENERATIONS; i++ )
+        {
+            generationLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * The key of a project version in the <code>cache#projectVersions</code> cache, to be used by the components
+     * changing the metadata of a project version outside of the resolver to evict it.
+     */
+    public static String cacheKey( String repositoryId, String namespace, String projectId, String projectVersion )
+    {
+        return repositoryId + ":" + namespace + ":" + projectId + ":" + projectVersion;
+    }
+
+    /**
+     * @return the generation of a project version, to be given to {@link #put(String, long, ProjectVersionMetadata)}
+     *         once it is read
+     */
+    public long getGeneration( String cacheKey )
+    {
+        int index = generationIndex( cacheKey );
+        synchronized ( generationLocks[index] )
+        {
+            return generations[index];
+        }
+    }
+
+    /**
+     * Cache a project version, unless it was evicted since its generation was taken.
+     *
+     * @param generation the generation of the project version taken before it was read
+     * @return <code>false</code> if the project version was evicted meanwhile, and not cached
+     */
+    public boolean put( String cacheKey, long generation, ProjectVersionMetadata metadata )
+    {
+        int index = generationIndex( cacheKey );
+        synchronized ( generationLocks[index] )
+        {
+            if ( generations[index] != generation )
+            {
+                return false;
+            }
+            projectVersionsCache.put( cacheKey, metadata );
+            return true;
+        }
+    }
+
+    public void evict( String repositoryId, String namespace, String projectId, String projectVersion )
+    {
+        String cacheKey = cacheKey( repositoryId, namespace, projectId, projectVersion );
+        int index = generationIndex( cacheKey );
+        synchronized ( generationLocks[index] )
+        {
+            generations[index]++;
+            projectVersionsCache.remove( cacheKey );
+        }
+    }
+
+    /**
+     * Evict all the project versions, when the project versions changed are not known.
+     */
+    public void evictAll()
+    {
+        for ( int i = 0; i < GENERATIONS; i++ )
+        {
+            synchronized ( generationLocks[i] )
+            {
+                generations[i]++;
+            }
+        }
+        projectVersionsCache.clear();
+    }
+
+    private static int generationIndex( String cacheKey )
+    {
+        return ( cacheKey.hashCode() & Integer.MAX_VALUE ) % GENERATIONS;
+    }
+
+    @Override
+    public void deleteArtifact( MetadataRepository metadataRepository, String repositoryId, String namespace,
+                                String project, String version, String id )
+    {
+        evict( repositoryId, namespace, project, version );
+    }
+
+    @Override
+    public void addArtifact( RepositorySession session, String repoId, String namespace, String projectId,
+                             ProjectVersionMetadata metadata )
+    {
+        evict( repoId, namespace, projectId, metadata.getId() );
+    }
+
+    @Override
+    public void addArtifactProblem( RepositorySession session, String repoId, String namespace, String projectId,
+                                    String projectVersion, RepositoryStorageMetadataException exception )
+    {
+        evict( repoId, namespace, projectId, projectVersion );
+    }
+
+    public Cache<String, ProjectVersionMetadata> getProjectVersionsCache()
+    {
+        return projectVersionsCache;
+    }
+
+    public void setProjectVersionsCache( Cache<String, ProjectVersionMetadata> projectVersionsCache )
+    {
+        this.projectVersionsCache = projectVersionsCache;
+    }
+}
@@ -0,0 +1,264 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A benchmark of a metadata repository, run with the same workload by the subclass of each backend so that the
+ * backends can be compared. The benchmarks are not run by the default build, run them from archiva-modules/plugins
+ * with:
+ * <pre>
+ * mvn test -Dtest=*MetadataRepositoryBenchmark -DfailIfNoTests=false
+ * </pre>
+ * The timings of each backend are logged and written to <code>target/metadata-repository-benchmark.txt</code> of its
+ * module. The size of the workload is set by the <code>archiva.benchmark.projects</code>,
+ * <code>archiva.benchmark.versions</code>, <code>archiva.benchmark.artifacts</code> and
+ * <code>archiva.benchmark.queries</code> system properties.
+ */
+@RunWith( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+public abstract class AbstractMetadataRepositoryBenchmark
+    extends TestCase
+{
+    protected static final String REPO_ID = "benchmark";
+
+    private static final int PROJECTS = Integer.getInteger( "archiva.benchmark.projects", 200 );
+
+    private static final int VERSIONS = Integer.getInteger( "archiva.benchmark.versions", 5 );
+
+    private static final int ARTIFACTS = Integer.getInteger( "archiva.benchmark.artifacts", 4 );
+
+    private static final int QUERIES = Integer.getInteger( "archiva.benchmark.queries", 1000 );
+
+    private static final int NAMESPACES = 10;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final long GATHERED = 1000000000000L;
+
+    protected MetadataRepository repository;
+
+    protected Logger log = LoggerFactory.getLogger( getClass() );
+
+    /**
+     * The number of operations and their total time in nanoseconds, by operation.
+     */
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+    /**
+     * @return the name of the backend in the report
+     */
+    protected abstract String getBackendName();
+
+    @Test
+    public void testBenchmark()
+        throws Exception
+    {
+        int total = PROJECTS * VERSIONS * ARTIFACTS;
+
+        long start = System.nanoTime();
+        for ( int project = 0; project < PROJECTS; project++ )
+        {
+            for ( int version = 0; version < VERSIONS; version++ )
+            {
+                ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+                metadata.setId( getVersion( version ) );
+                metadata.setName( getProject( project ) + " " + getVersion( version ) );
+                metadata.setDescription( "Version " + version + " of " + getProject( project ) );
+                repository.updateProjectVersion( REPO_ID, getNamespace( project ), getProject( project ), metadata );
+                for ( int artifact = 0; artifact < ARTIFACTS; artifact++ )
+                {
+                    repository.updateArtifact( REPO_ID, getNamespace( project ), getProject( project ),
+                                               getVersion( version ), createArtifact( project, version, artifact ) );
+                }
+            }
+            repository.save();
+        }
+        record( "load", PROJECTS * VERSIONS * ( ARTIFACTS + 1 ), start );
+
+        Random random = new Random( 42 );
+
+        start = System.nanoTime();
+        for ( int i = 0; i < QUERIES; i++ )
+        {
+            int project = random.nextInt( PROJECTS );
+            String version = getVersion( random.nextInt( VERSIONS ) );
+            ProjectVersionMetadata metadata =
+                repository.getProjectVersion( REPO_ID, getNamespace( project ), getProject( project ), version );
+            assertEquals( getProject( project ) + " " + version, metadata.getName() );
+        }
+        record( "getProjectVersion", QUERIES, start );
+
+        start = System.nanoTime();
+        for ( int i = 0; i < QUERIES; i++ )
+        {
+            int project = random.nextInt( PROJECTS );
+            String version = getVersion( random.nextInt( VERSIONS ) );
+            assertEquals( ARTIFACTS, repository.getArtifacts( REPO_ID, getNamespace( project ), getProject( project ),
+                                                              version ).size() );
+        }
+        record( "getArtifacts(version)", QUERIES, start );
+
+        start = System.nanoTime();
+        for ( int i = 0; i < QUERIES; i++ )
+        {
+            assertEquals( 1, repository.getArtifactsByChecksum( REPO_ID, getSha1( random.nextInt( total ) ) ).size() );
+        }
+        record( "getArtifactsByChecksum", QUERIES, start );
+
+        // ranges of a hundredth of the artifacts, bounded between the gathering dates as the backends don't agree on
+        // whether the bounds are included
+        int rangeSize = Math.max( 1, total / 100 );
+        int ranges = Math.max( 1, QUERIES / 10 );
+        start = System.nanoTime();
+        for ( int i = 0; i < ranges; i++ )
+        {
+            int first = random.nextInt( total - rangeSize + 1 );
+            Date startTime = new Date( getWhenGathered( first ).getTime() - 500 );
+            Date endTime = new Date( getWhenGathered( first + rangeSize - 1 ).getTime() + 500 );
+            assertEquals( rangeSize, repository.getArtifactsByDateRange( REPO_ID, startTime, endTime ).size() );
+        }
+        record( "getArtifactsByDateRange", ranges, start );
+
+        start = System.nanoTime();
+        for ( int i = 0; i < ranges; i++ )
+        {
+            int namespace = random.nextInt( Math.min( NAMESPACES, PROJECTS ) );
+            assertFalse( repository.getProjects( REPO_ID, getNamespace( namespace ) ).isEmpty() );
+        }
+        record( "getProjects", ranges, start );
+
+        start = System.nanoTime();
+        int pages = 0;
+        int artifacts = 0;
+        String pageToken = null;
+        do
+        {
+            ArtifactMetadataPage page = repository.getArtifacts( REPO_ID, pageToken, PAGE_SIZE );
+            artifacts += page.getArtifacts().size();
+            pageToken = page.getNextPageToken();
+            pages++;
+        }
+        while ( pageToken != null );
+        record( "getArtifacts(page of " + PAGE_SIZE + ")", pages, start );
+        assertEquals( total, artifacts );
+
+        start = System.nanoTime();
+        assertEquals( total, repository.getArtifacts( REPO_ID ).size() );
+        record( "getArtifacts(repository)", 1, start );
+
+        report();
+    }
+
+    private void record( String operation, int count, long start )
+    {
+        timings.put( operation, new long[]{ count, System.nanoTime() - start } );
+    }
+
+    private void report()
+        throws IOException
+    {
+        StringBuilder report = new StringBuilder();
+        report.append( String.format( "%s: %d projects, %d versions, %d artifacts, %d queries%n", getBackendName(),
+                                      PROJECTS, VERSIONS, ARTIFACTS, QUERIES ) );
+        for ( Map.Entry<String, long[]> timing : timings.entrySet() )
+        {
+            long count = timing.getValue()[0];
+            long nanos = timing.getValue()[1];
+            report.append( String.format( "  %-30s %8d ops %10.1f ms %10.1f us/op%n", timing.getKey(), count,
+                                          nanos / 1e6, nanos / 1e3 / count ) );
+        }
+        log.info( "metadata repository benchmark\n{}", report );
+
+        File file = new File( "target/metadata-repository-benchmark.txt" );
+        file.getParentFile().mkdirs();
+        try ( Writer writer = new OutputStreamWriter( new FileOutputStream( file, true ), "UTF-8" ) )
+        {
+            writer.write( report.toString() );
+        }
+    }
+
+    private static String getNamespace( int project )
+    {
+        return "org.benchmark.group" + ( project % NAMESPACES );
+    }
+
+    private static String getProject( int project )
+    {
+        return "project-" + project;
+    }
+
+    private static String getVersion( int version )
+    {
+        return "1." + version;
+    }
+
+    private static int getIndex( int project, int version, int artifact )
+    {
+        return ( project * VERSIONS + version ) * ARTIFACTS + artifact;
+    }
+
+    private static String getSha1( int index )
+    {
+        return String.format( "%040x", index );
+    }
+
+    private static Date getWhenGathered( int index )
+    {
+        return new Date( GATHERED + index * 1000L );
+    }
+
+    private static ArtifactMetadata createArtifact( int project, int version, int artifact )
+    {
+        int index = getIndex( project, version, artifact );
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        metadata.setId( getProject( project ) + "-" + getVersion( version ) + "-" + artifact + ".jar" );
+        metadata.setRepositoryId( REPO_ID );
+        metadata.setNamespace( getNamespace( project ) );
+        metadata.setProject( getProject( project ) );
+        metadata.setProjectVersion( getVersion( version ) );
+        metadata.setVersion( getVersion( version ) );
+        metadata.setWhenGathered( getWhenGathered( index ) );
+        metadata.setFileLastModified( GATHERED );
+        metadata.setSize( 1024 + index );
+        metadata.setMd5( String.format( "%032x", index ) );
+        metadata.setSha1( getSha1( index ) );
+        return metadata;
+    }
+}
@@ -1010,6 +1010,117 @@ public void testGetArtifactsByRepoIdMultipleCopies()
         assertEquals( Collections.singletonList( secondArtifact ), repository.getArtifacts( OTHER_REPO_ID ) );
     }
 
+    @Test
+    public void testGetArtifactsByRepoIdPaged()
+        throws Exception
+    {
+        List<ArtifactMetadata> expected = new ArrayList<>();
+        for ( String project : Arrays.asList( TEST_PROJECT, "other-project" ) )
+        {
+            for ( String version : Arrays.asList( TEST_PROJECT_VERSION, TEST_PROJECT_VERSION_2_0 ) )
+            {
+                for ( String type : Arrays.asList( "jar", "pom" ) )
+                {
+                    ArtifactMetadata artifact = createArtifact( type );
+                    artifact.setProject( project );
+                    artifact.setProjectVersion( version );
+                    artifact.setVersion( version );
+                    artifact.setId( project + "-" + version + "." + type );
+                    repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, project, version, artifact );
+                    expected.add( artifact );
+                }
+            }
+        }
+        ArtifactMetadata otherArtifact = createArtifact();
+        otherArtifact.setRepositoryId( OTHER_REPO_ID );
+        repository.updateArtifact( OTHER_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, otherArtifact );
+        repository.save();
+
+        List<ArtifactMetadata> actual = new ArrayList<>();
+        String pageToken = null;
+        do
+        {
+            ArtifactMetadataPage page = repository.getArtifacts( TEST_REPO_ID, pageToken, 3 );
+            assertTrue( page.getArtifacts().size() <= 3 );
+            actual.addAll( page.getArtifacts() );
+            pageToken = page.getNextPageToken();
+        }
+        while ( pageToken != null );
+
+        Comparator<ArtifactMetadata> byId = new Comparator<ArtifactMetadata>()
+        {
+            @Override
+            public int compare( ArtifactMetadata o1, ArtifactMetadata o2 )
+            {
+                return o1.getId().compareTo( o2.getId() );
+            }
+        };
+        Collections.sort( expected, byId );
+        Collections.sort( actual, byId );
+        assertEquals( expected, actual );
+    }
+
+    @Test
+    public void testGetArtifactsByRepoIdPagedWithoutLimit()
+        throws Exception
+    {
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, createArtifact() );
+        repository.save();
+
+        // an empty page would be mistaken for the last one
+        for ( int limit : new int[]{ 0, -1 } )
+        {
+            try
+            {
+                repository.getArtifacts( TEST_REPO_ID, null, limit );
+                fail( "A page of " + limit + " artifacts should be rejected" );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateMetadata()
+        throws Exception
+    {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( TEST_PROJECT_VERSION );
+        metadata.setName( "project name" );
+        ArtifactMetadata jar = createArtifact( "jar" );
+        ArtifactMetadata pom = createArtifact( "pom" );
+        ArtifactMetadata otherArtifact = createArtifact();
+        otherArtifact.setProject( "other-project" );
+        otherArtifact.setId( "other-project-" + TEST_PROJECT_VERSION + ".jar" );
+
+        repository.updateMetadata( TEST_REPO_ID, Arrays.asList(
+            new MetadataUpdate( TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, jar, metadata ),
+            new MetadataUpdate( TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, pom, metadata ),
+            new MetadataUpdate( TEST_NAMESPACE, "other-project", TEST_PROJECT_VERSION, otherArtifact, null ) ) );
+        repository.save();
+
+        Collection<String> projects = repository.getProjects( TEST_REPO_ID, TEST_NAMESPACE );
+        assertThat( projects ).isNotNull().isNotEmpty().hasSize( 2 ).contains( TEST_PROJECT, "other-project" );
+        assertEquals( "project name",
+                      repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_PROJECT_VERSION ).getName() );
+        List<ArtifactMetadata> artifacts = new ArrayList<>(
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION ) );
+        Collections.sort( artifacts, new Comparator<ArtifactMetadata>()
+        {
+            @Override
+            public int compare( ArtifactMetadata o1, ArtifactMetadata o2 )
+            {
+                return o1.getId().compareTo( o2.getId() );
+            }
+        } );
+        assertEquals( Arrays.asList( jar, pom ), artifacts );
+        assertEquals( Collections.singletonList( otherArtifact ), new ArrayList<>(
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "other-project", TEST_PROJECT_VERSION ) ) );
+    }
+
     @Test
     public void testGetArtifactsByDateRangeMultipleCopies()
         throws Exception
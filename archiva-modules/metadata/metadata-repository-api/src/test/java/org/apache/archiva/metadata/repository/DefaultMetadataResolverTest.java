@@ -0,0 +1,304 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorage;
+import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
+import org.apache.archiva.repository.events.RepositoryListener;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the caching of the project versions by {@link DefaultMetadataResolver#resolveProjectVersion}.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class DefaultMetadataResolverTest
+    extends TestCase
+{
+    private static final String TEST_REPO_ID = "test";
+
+    private static final String TEST_NAMESPACE = "org.apache.archiva";
+
+    private static final String TEST_PROJECT = "archiva-base";
+
+    private static final String TEST_VERSION = "1.0";
+
+    private DefaultMetadataResolver resolver;
+
+    private ProjectVersionCacheEventListener cacheListener;
+
+    private RepositoryStorage repositoryStorage;
+
+    private MetadataRepository metadataRepository;
+
+    private RepositorySession session;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        EhcacheCache<String, ProjectVersionMetadata> cache = new EhcacheCache<>();
+        cache.setName( "projectVersions-test" );
+        cache.setMaxElementsInMemory( 100 );
+        cache.initialize();
+        cache.clear();
+
+        cacheListener = new ProjectVersionCacheEventListener();
+        cacheListener.setProjectVersionsCache( cache );
+
+        repositoryStorage = mock( RepositoryStorage.class );
+        metadataRepository = mock( MetadataRepository.class );
+        session = mock( RepositorySession.class );
+        when( session.getRepository() ).thenReturn( metadataRepository );
+
+        resolver = new DefaultMetadataResolver();
+        ReflectionTestUtils.setField( resolver, "repositoryStorage", repositoryStorage );
+        ReflectionTestUtils.setField( resolver, "listeners", Arrays.<RepositoryListener>asList( cacheListener ) );
+        ReflectionTestUtils.setField( resolver, "projectVersionsCache", cache );
+        ReflectionTestUtils.setField( resolver, "projectVersionCacheEventListener", cacheListener );
+    }
+
+    @Test
+    public void testProjectVersionCached()
+        throws Exception
+    {
+        when( metadataRepository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_VERSION ) ).thenReturn( createProjectVersion( false ) );
+
+        assertEquals( "Archiva Base", resolve().getName() );
+        assertEquals( "Archiva Base", resolve().getName() );
+
+        verify( metadataRepository, times( 1 ) ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                    TEST_VERSION );
+    }
+
+    @Test
+    public void testCachedProjectVersionCopiedOnReadAndWrite()
+        throws Exception
+    {
+        when( metadataRepository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_VERSION ) ).thenReturn( createProjectVersion( false ) );
+
+        // the project version resolved is not the one cached
+        ProjectVersionMetadata resolved = resolve();
+        resolved.setName( "changed" );
+        resolved.getProperties().put( "changed", "true" );
+
+        // nor is the project version read from the cache
+        ProjectVersionMetadata cached = resolve();
+        assertEquals( "Archiva Base", cached.getName() );
+        assertTrue( cached.getProperties().isEmpty() );
+        cached.setName( "changed" );
+        cached.getProperties().put( "changed", "true" );
+
+        assertEquals( "Archiva Base", resolve().getName() );
+        assertTrue( resolve().getProperties().isEmpty() );
+    }
+
+    @Test
+    public void testIncompleteProjectVersionNotCached()
+        throws Exception
+    {
+        when( repositoryStorage.readProjectVersionMetadata( Matchers.any( ReadMetadataRequest.class ) ) ).thenReturn(
+            createProjectVersion( true ) );
+
+        resolve();
+        resolve();
+
+        verify( repositoryStorage, times( 2 ) ).readProjectVersionMetadata( Matchers.any( ReadMetadataRequest.class ) );
+    }
+
+    @Test
+    public void testProjectVersionReadFromStorageCached()
+        throws Exception
+    {
+        when( repositoryStorage.readProjectVersionMetadata( Matchers.any( ReadMetadataRequest.class ) ) ).thenReturn(
+            createProjectVersion( false ) );
+
+        // the resolver notifying the listeners of the project version read doesn't evict it
+        assertEquals( "Archiva Base", resolve().getName() );
+        assertEquals( "Archiva Base", resolve().getName() );
+
+        verify( repositoryStorage, times( 1 ) ).readProjectVersionMetadata( Matchers.any( ReadMetadataRequest.class ) );
+        verify( metadataRepository, times( 1 ) ).updateProjectVersion( Matchers.eq( TEST_REPO_ID ),
+                                                                       Matchers.eq( TEST_NAMESPACE ),
+                                                                       Matchers.eq( TEST_PROJECT ),
+                                                                       Matchers.any( ProjectVersionMetadata.class ) );
+    }
+
+    @Test
+    public void testProjectVersionEvictedByTheListener()
+        throws Exception
+    {
+        when( metadataRepository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_VERSION ) ).thenReturn( createProjectVersion( false ) );
+
+        resolve();
+        cacheListener.deleteArtifact( metadataRepository, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_VERSION,
+                                      "archiva-base-1.0.jar" );
+        resolve();
+        cacheListener.addArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                   createProjectVersion( false ) );
+        resolve();
+        cacheListener.evictAll();
+        resolve();
+        resolve();
+
+        verify( metadataRepository, times( 4 ) ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                    TEST_VERSION );
+    }
+
+    @Test
+    public void testProjectVersionEvictedWhileResolvedNotCached()
+        throws Exception
+    {
+        doAnswer( new Answer<ProjectVersionMetadata>()
+        {
+            @Override
+            public ProjectVersionMetadata answer( InvocationOnMock invocation )
+            {
+                // changed by another request once read
+                cacheListener.evict( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_VERSION );
+                return createProjectVersion( false );
+            }
+        } ).when( metadataRepository ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_VERSION );
+
+        assertEquals( "Archiva Base", resolve().getName() );
+        assertEquals( "Archiva Base", resolve().getName() );
+
+        verify( metadataRepository, times( 2 ) ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                    TEST_VERSION );
+    }
+
+    @Test
+    public void testConcurrentMissesResolvedOnce()
+        throws Exception
+    {
+        final CountDownLatch resolving = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        doAnswer( new Answer<ProjectVersionMetadata>()
+        {
+            @Override
+            public ProjectVersionMetadata answer( InvocationOnMock invocation )
+                throws InterruptedException
+            {
+                resolving.countDown();
+                release.await( 10, TimeUnit.SECONDS );
+                return createProjectVersion( false );
+            }
+        } ).when( metadataRepository ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_VERSION );
+
+        final AtomicInteger resolved = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        if ( "Archiva Base".equals( resolve().getName() ) )
+                        {
+                            resolved.incrementAndGet();
+                        }
+                    }
+                    catch ( MetadataResolutionException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+
+        // the other requests wait for the one resolving the project version
+        assertTrue( resolving.await( 10, TimeUnit.SECONDS ) );
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+        while ( countBlocked( threads ) < threads.size() - 1 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        release.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join( TimeUnit.SECONDS.toMillis( 10 ) );
+        }
+
+        assertEquals( threads.size(), resolved.get() );
+        verify( metadataRepository, times( 1 ) ).getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                    TEST_VERSION );
+    }
+
+    private static int countBlocked( List<Thread> threads )
+    {
+        int blocked = 0;
+        for ( Thread thread : threads )
+        {
+            if ( thread.getState() == Thread.State.BLOCKED )
+            {
+                blocked++;
+            }
+        }
+        return blocked;
+    }
+
+    private ProjectVersionMetadata resolve()
+        throws MetadataResolutionException
+    {
+        return resolver.resolveProjectVersion( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_VERSION );
+    }
+
+    private static ProjectVersionMetadata createProjectVersion( boolean incomplete )
+    {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( TEST_VERSION );
+        metadata.setName( "Archiva Base" );
+        metadata.setIncomplete( incomplete );
+        return metadata;
+    }
+}
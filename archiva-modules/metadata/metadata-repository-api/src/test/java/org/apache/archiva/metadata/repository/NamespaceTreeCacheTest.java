@@ -0,0 +1,250 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Test the eviction rules of the {@link NamespaceTreeCache}.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class NamespaceTreeCacheTest
+    extends TestCase
+{
+    private static final String TEST_REPO_ID = "test";
+
+    private NamespaceTreeCache treeCache;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        treeCache = new NamespaceTreeCache( createCache( "namespaces-test" ), createCache( "projects-test" ),
+                                            createCache( "versions-test" ) );
+
+        putNamespaces( TEST_REPO_ID, null, Arrays.asList( "org" ) );
+        putNamespaces( TEST_REPO_ID, "org", Arrays.asList( "apache" ) );
+        putNamespaces( TEST_REPO_ID, "org.apache", Arrays.asList( "archiva" ) );
+        putNamespaces( TEST_REPO_ID, "org.apache.archiva", Arrays.<String>asList() );
+        treeCache.putProjects( TEST_REPO_ID, "org.apache.archiva",
+                               treeCache.getProjectsGeneration( TEST_REPO_ID, "org.apache.archiva" ),
+                               Arrays.asList( "archiva-base" ) );
+        treeCache.putProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base",
+                                      treeCache.getProjectVersionsGeneration( TEST_REPO_ID, "org.apache.archiva",
+                                                                              "archiva-base" ),
+                                      Arrays.asList( "1.0" ) );
+    }
+
+    @Test
+    public void testNamespacesOfRepositoriesWithDashesKeptApart()
+    {
+        putNamespaces( "foo-bar", null, Arrays.asList( "org" ) );
+        putNamespaces( "foo", "bar", Arrays.asList( "baz" ) );
+
+        assertEquals( Arrays.asList( "org" ), treeCache.getNamespaces( "foo-bar", null ) );
+        assertEquals( Arrays.asList( "baz" ), treeCache.getNamespaces( "foo", "bar" ) );
+
+        treeCache.removeNamespaces( "foo", "bar" );
+        assertEquals( Arrays.asList( "org" ), treeCache.getNamespaces( "foo-bar", null ) );
+    }
+
+    @Test
+    public void testNamespacesEvictedWhileListedNotCached()
+    {
+        long generation = treeCache.getNamespacesGeneration( TEST_REPO_ID, "org.codehaus" );
+        // the namespace is removed while its listing is computed
+        treeCache.namespaceRemoved( TEST_REPO_ID, "org.codehaus" );
+
+        assertFalse( treeCache.putNamespaces( TEST_REPO_ID, "org.codehaus", generation, Arrays.asList( "plexus" ) ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.codehaus" ) );
+
+        generation = treeCache.getNamespacesGeneration( TEST_REPO_ID, "org.codehaus" );
+        assertTrue( treeCache.putNamespaces( TEST_REPO_ID, "org.codehaus", generation, Arrays.<String>asList() ) );
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, "org.codehaus" ) );
+    }
+
+    @Test
+    public void testProjectVersionsEvictedWhileListedNotCached()
+    {
+        long generation = treeCache.getProjectVersionsGeneration( TEST_REPO_ID, "org.apache.archiva", "archiva-web" );
+        treeCache.projectVersionAdded( TEST_REPO_ID, "org.apache.archiva", "archiva-web", "1.0" );
+
+        assertFalse( treeCache.putProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-web", generation,
+                                                   Arrays.<String>asList() ) );
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-web" ) );
+    }
+
+    @Test
+    public void testKnownProjectVersionAddedLeavesTheTreeAlone()
+    {
+        treeCache.projectVersionAdded( TEST_REPO_ID, "org.apache.archiva", "archiva-base", "1.0" );
+
+        assertTreeCached();
+    }
+
+    @Test
+    public void testNewProjectVersionAddedEvictsTheVersions()
+    {
+        treeCache.addArtifact( null, TEST_REPO_ID, "org.apache.archiva", "archiva-base",
+                               createProjectVersion( "1.1" ) );
+
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+        assertNotNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache.archiva" ) );
+    }
+
+    @Test
+    public void testNewProjectAddedEvictsTheProjectsAndTheNamespacesLeadingToIt()
+    {
+        putNamespaces( "other", null, Arrays.asList( "org" ) );
+
+        treeCache.projectVersionAdded( TEST_REPO_ID, "org.apache.archiva", "archiva-web", "1.0" );
+
+        assertNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache.archiva" ) );
+
+        // the other projects and repositories are left alone
+        assertNotNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+        assertNotNull( treeCache.getNamespaces( "other", null ) );
+    }
+
+    @Test
+    public void testDeletedArtifactEvictsTheVersionsTheProjectsAndTheNamespacesLeadingToThem()
+    {
+        putNamespaces( "other", null, Arrays.asList( "org" ) );
+
+        // the project may have lost its last version, and the namespaces their last project
+        treeCache.deleteArtifact( null, TEST_REPO_ID, "org.apache.archiva", "archiva-base", "1.0",
+                                  "archiva-base-1.0.jar" );
+
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+        assertNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNotNull( treeCache.getNamespaces( "other", null ) );
+    }
+
+    @Test
+    public void testProjectVersionRemovedEvictsTheVersions()
+    {
+        treeCache.projectVersionRemoved( TEST_REPO_ID, "org.apache.archiva", "archiva-base" );
+
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+        assertNotNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+    }
+
+    @Test
+    public void testProjectRemovedEvictsTheVersionsTheProjectsAndTheNamespacesLeadingToThem()
+    {
+        treeCache.projectRemoved( TEST_REPO_ID, "org.apache.archiva", "archiva-base" );
+
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+        assertNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache.archiva" ) );
+    }
+
+    @Test
+    public void testNamespaceRemovedEvictsItsParent()
+    {
+        treeCache.namespaceRemoved( TEST_REPO_ID, "org.apache.archiva" );
+
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+
+        // the namespaces above the parent are left alone
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, "org" ) );
+    }
+
+    @Test
+    public void testRootNamespaceRemovedEvictsTheRootNamespaces()
+    {
+        treeCache.namespaceRemoved( TEST_REPO_ID, "org" );
+
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, "org" ) );
+        assertNotNull( treeCache.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+    }
+
+    @Test
+    public void testRepositoryRemovedEvictsTheTree()
+    {
+        treeCache.repositoryRemoved( TEST_REPO_ID );
+
+        assertNull( treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertNull( treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertNull( treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+    }
+
+    private void assertTreeCached()
+    {
+        assertEquals( Arrays.asList( "org" ), treeCache.getNamespaces( TEST_REPO_ID, null ) );
+        assertEquals( Arrays.asList( "apache" ), treeCache.getNamespaces( TEST_REPO_ID, "org" ) );
+        assertEquals( Arrays.asList( "archiva" ), treeCache.getNamespaces( TEST_REPO_ID, "org.apache" ) );
+        assertEquals( Arrays.asList( "archiva-base" ), treeCache.getProjects( TEST_REPO_ID, "org.apache.archiva" ) );
+        assertEquals( Arrays.asList( "1.0" ),
+                      treeCache.getProjectVersions( TEST_REPO_ID, "org.apache.archiva", "archiva-base" ) );
+    }
+
+    private void putNamespaces( String repositoryId, String namespace, Collection<String> namespaces )
+    {
+        treeCache.putNamespaces( repositoryId, namespace, treeCache.getNamespacesGeneration( repositoryId, namespace ),
+                                 namespaces );
+    }
+
+    private static ProjectVersionMetadata createProjectVersion( String version )
+    {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( version );
+        return metadata;
+    }
+
+    private static EhcacheCache<String, Collection<String>> createCache( String name )
+    {
+        EhcacheCache<String, Collection<String>> cache = new EhcacheCache<>();
+        cache.setName( name );
+        cache.setMaxElementsInMemory( 100 );
+        cache.initialize();
+        // the caches of the same name are shared by the tests
+        cache.clear();
+        return cache;
+    }
+}
@@ -29,9 +29,12 @@
 import org.apache.archiva.admin.model.proxyconnector.ProxyConnectorAdmin;
 import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.maven2.metadata.SnapshotResolution;
+import org.apache.archiva.maven2.metadata.SnapshotResolutionCache;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
@@ -46,12 +49,12 @@
 import org.apache.archiva.metadata.repository.storage.RepositoryStorageRuntimeException;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
 import org.apache.archiva.model.ArtifactReference;
-import org.apache.archiva.model.SnapshotVersion;
 import org.apache.archiva.policies.ProxyDownloadException;
 import org.apache.archiva.proxy.common.WagonFactory;
 import org.apache.archiva.proxy.model.RepositoryProxyConnectors;
 import org.apache.archiva.repository.ManagedRepositoryContent;
 import org.apache.archiva.repository.content.PathParser;
+import org.apache.archiva.repository.content.maven2.ArtifactExtensionMapping;
 import org.apache.archiva.repository.layout.LayoutException;
 import org.apache.archiva.xml.XMLException;
 import org.apache.commons.lang.ArrayUtils;
@@ -144,6 +147,14 @@
     @Named( "pathParser#default" )
     private PathParser pathParser;
 
+    @Inject
+    @Named( "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
+    @Inject
+    @Named( "snapshotResolutionCache#default" )
+    private SnapshotResolutionCache snapshotResolutionCache;
+
     private static final String METADATA_FILENAME_START = "maven-metadata";
 
     private static final String METADATA_FILENAME = METADATA_FILENAME_START + ".xml";
@@ -207,16 +218,12 @@ public ProjectVersionMetadata readProjectVersionMetadata( ReadMetadataRequest re
                                                            METADATA_FILENAME );
                 try
                 {
-                    ArchivaRepositoryMetadata metadata = MavenMetadataReader.read( metadataFile );
+                    SnapshotResolution snapshotResolution = snapshotResolutionCache.get( metadataFile );
 
                     // re-adjust to timestamp if present, otherwise retain the original -SNAPSHOT filename
-                    SnapshotVersion snapshotVersion = metadata.getSnapshotVersion();
-                    if ( snapshotVersion != null )
+                    if ( snapshotResolution != null )
                     {
-                        artifactVersion =
-                            artifactVersion.substring( 0, artifactVersion.length() - 8 ); // remove SNAPSHOT from end
-                        artifactVersion =
-                            artifactVersion + snapshotVersion.getTimestamp() + "-" + snapshotVersion.getBuildNumber();
+                        artifactVersion = snapshotResolution.getVersion( artifactVersion, null, "pom" );
                     }
                 }
                 catch ( XMLException e )
@@ -819,27 +826,28 @@ public String getFilePathWithVersion( final String requestPath, ManagedRepositor
             {
                 return filePath;
             }
-            ArchivaRepositoryMetadata archivaRepositoryMetadata = MavenMetadataReader.read( metadataFile );
-            int buildNumber = archivaRepositoryMetadata.getSnapshotVersion().getBuildNumber();
-            String timestamp = archivaRepositoryMetadata.getSnapshotVersion().getTimestamp();
+            SnapshotResolution snapshotResolution = snapshotResolutionCache.get( metadataFile );
 
             // MRM-1846
-            if ( buildNumber < 1 && timestamp == null )
+            if ( snapshotResolution == null || !snapshotResolution.isTimestamped() )
             {
                 return filePath;
             }
 
             // org/apache/archiva/archiva-checksum/1.4-M4-SNAPSHOT/archiva-checksum-1.4-M4-SNAPSHOT.jar
             // ->  archiva-checksum-1.4-M4-20130425.081822-1.jar
+            // prefer the snapshotVersions entry of the artifact, as it can differ from the latest build
+
+            String timestampedVersion = snapshotResolution.getVersion( artifactReference.getVersion(),
+                                                                       artifactReference.getClassifier(),
+                                                                       ArtifactExtensionMapping.getExtension(
+                                                                           artifactReference.getType() ) );
 
             filePath = StringUtils.replace( filePath, //
                                             artifactReference.getArtifactId() //
                                                 + "-" + artifactReference.getVersion(), //
                                             artifactReference.getArtifactId() //
-                                                + "-" + StringUtils.remove( artifactReference.getVersion(),
-                                                                            "-" + VersionUtil.SNAPSHOT ) //
-                                                + "-" + timestamp //
-                                                + "-" + buildNumber );
+                                                + "-" + timestampedVersion );
 
             throw new RelocationException( "/repository/" + managedRepositoryContent.getRepository().getId() +
                                                ( StringUtils.startsWith( filePath, "/" ) ? "" : "/" ) + filePath,
@@ -882,22 +890,18 @@ private static void populateArtifactMetadataFromFile( ArtifactMetadata metadata,
     {
         metadata.setWhenGathered( new Date() );
         metadata.setFileLastModified( file.lastModified() );
-        ChecksummedFile checksummedFile = new ChecksummedFile( file );
-        try
-        {
-            metadata.setMd5( checksummedFile.calculateChecksum( ChecksumAlgorithm.MD5 ) );
-        }
-        catch ( IOException e )
-        {
-            LOGGER.error( "Unable to checksum file {}: {},MD5", file, e.getMessage() );
-        }
+        ChecksummedFile checksummedFile = new ChecksummedFile( file, checksumCache );
         try
         {
-            metadata.setSha1( checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+            // read once for both, and remembered for the other consumers of the file
+            Map<ChecksumAlgorithm, String> checksums =
+                checksummedFile.calculateChecksums( Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 ) );
+            metadata.setMd5( checksums.get( ChecksumAlgorithm.MD5 ) );
+            metadata.setSha1( checksums.get( ChecksumAlgorithm.SHA1 ) );
         }
         catch ( IOException e )
         {
-            LOGGER.error( "Unable to checksum file {}: {},SHA1", file, e.getMessage() );
+            LOGGER.error( "Unable to checksum file {}: {}", file, e.getMessage() );
         }
         metadata.setSize( file.length() );
     }
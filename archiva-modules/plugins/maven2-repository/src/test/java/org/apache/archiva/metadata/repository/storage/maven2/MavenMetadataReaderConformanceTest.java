@@ -0,0 +1,182 @@
+package org.apache.archiva.metadata.repository.storage.maven2;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.model.ArchivaRepositoryMetadata;
+import org.apache.archiva.model.Plugin;
+import org.apache.archiva.model.SnapshotVersion;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.archiva.xml.XMLException;
+import org.apache.archiva.xml.XMLReader;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.dom4j.Element;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Checks that the streaming {@link MavenMetadataReader} reads every maven-metadata.xml file of the test repositories
+ * the same way as the DOM / XPath based reading it replaced.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MavenMetadataReaderConformanceTest
+    extends TestCase
+{
+    private static final String[] DIRECTORIES =
+        { "src/test/repositories", "src/test/resources", "target/test-repository" };
+
+    @Test
+    public void testConformance()
+        throws Exception
+    {
+        int count = 0;
+        for ( String directory : DIRECTORIES )
+        {
+            File dir = new File( directory );
+            if ( !dir.isDirectory() )
+            {
+                continue;
+            }
+            Collection<File> files = FileUtils.listFiles( dir, new String[]{ "xml" }, true );
+            for ( File file : files )
+            {
+                if ( file.getName().startsWith( "maven-metadata" ) )
+                {
+                    assertConformance( file );
+                    count++;
+                }
+            }
+        }
+        assertTrue( "no metadata file found", count > 0 );
+    }
+
+    private void assertConformance( File file )
+    {
+        ArchivaRepositoryMetadata expected;
+        try
+        {
+            expected = readWithDom( file );
+        }
+        catch ( XMLException e )
+        {
+            try
+            {
+                MavenMetadataReader.read( file );
+                fail( "invalid metadata was read: " + file );
+            }
+            catch ( XMLException e1 )
+            {
+                // expected
+            }
+            return;
+        }
+
+        ArchivaRepositoryMetadata actual;
+        try
+        {
+            actual = MavenMetadataReader.read( file );
+        }
+        catch ( XMLException e )
+        {
+            throw new AssertionError( "unable to read " + file + ": " + e.getMessage() );
+        }
+
+        String message = file.getPath();
+        assertEquals( message, expected.getGroupId(), actual.getGroupId() );
+        assertEquals( message, expected.getArtifactId(), actual.getArtifactId() );
+        assertEquals( message, expected.getVersion(), actual.getVersion() );
+        assertEquals( message, expected.getLastUpdated(), actual.getLastUpdated() );
+        assertEquals( message, expected.getLatestVersion(), actual.getLatestVersion() );
+        assertEquals( message, expected.getReleasedVersion(), actual.getReleasedVersion() );
+        assertEquals( message, expected.getAvailableVersions(), actual.getAvailableVersions() );
+        assertEquals( message, expected.getPlugins(), actual.getPlugins() );
+        assertEquals( message, expected.getFileSize(), actual.getFileSize() );
+        assertEquals( message, expected.getFileLastModified(), actual.getFileLastModified() );
+
+        SnapshotVersion expectedSnapshot = expected.getSnapshotVersion();
+        SnapshotVersion actualSnapshot = actual.getSnapshotVersion();
+        if ( expectedSnapshot == null )
+        {
+            assertNull( message, actualSnapshot );
+        }
+        else
+        {
+            assertNotNull( message, actualSnapshot );
+            assertEquals( message, expectedSnapshot.getTimestamp(), actualSnapshot.getTimestamp() );
+            assertEquals( message, expectedSnapshot.getBuildNumber(), actualSnapshot.getBuildNumber() );
+        }
+    }
+
+    /**
+     * The DOM / XPath based reading, as done by previous versions of {@link MavenMetadataReader}.
+     */
+    private ArchivaRepositoryMetadata readWithDom( File metadataFile )
+        throws XMLException
+    {
+        XMLReader xml = new XMLReader( "metadata", metadataFile );
+        xml.removeNamespaces();
+
+        ArchivaRepositoryMetadata metadata = new ArchivaRepositoryMetadata();
+
+        metadata.setGroupId( xml.getElementText( "//metadata/groupId" ) );
+        metadata.setArtifactId( xml.getElementText( "//metadata/artifactId" ) );
+        metadata.setVersion( xml.getElementText( "//metadata/version" ) );
+        metadata.setFileLastModified( new Date( metadataFile.lastModified() ) );
+        metadata.setFileSize( metadataFile.length() );
+
+        metadata.setLastUpdated( xml.getElementText( "//metadata/versioning/lastUpdated" ) );
+        metadata.setLatestVersion( xml.getElementText( "//metadata/versioning/latest" ) );
+        metadata.setReleasedVersion( xml.getElementText( "//metadata/versioning/release" ) );
+        List<String> versions = xml.getElementListText( "//metadata/versioning/versions/version" );
+        metadata.setAvailableVersions( versions == null ? new ArrayList<String>() : versions );
+
+        Element snapshotElem = xml.getElement( "//metadata/versioning/snapshot" );
+        if ( snapshotElem != null )
+        {
+            SnapshotVersion snapshot = new SnapshotVersion();
+            snapshot.setTimestamp( snapshotElem.elementTextTrim( "timestamp" ) );
+            String tmp = snapshotElem.elementTextTrim( "buildNumber" );
+            if ( NumberUtils.isNumber( tmp ) )
+            {
+                snapshot.setBuildNumber( NumberUtils.toInt( tmp ) );
+            }
+            metadata.setSnapshotVersion( snapshot );
+        }
+
+        for ( Element plugin : xml.getElementList( "//metadata/plugins/plugin" ) )
+        {
+            Plugin p = new Plugin();
+            p.setPrefix( plugin.elementTextTrim( "prefix" ) );
+            p.setArtifactId( plugin.elementTextTrim( "artifactId" ) );
+            p.setName( plugin.elementTextTrim( "name" ) );
+            metadata.addPlugin( p );
+        }
+
+        return metadata;
+    }
+}
@@ -20,10 +20,16 @@
  */
 
 import junit.framework.TestCase;
+import org.apache.archiva.maven2.metadata.DefaultSnapshotResolutionCache;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
+import org.apache.archiva.maven2.metadata.SnapshotResolution;
+import org.apache.archiva.maven2.metadata.SnapshotResolutionCache;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
 import org.apache.archiva.model.Plugin;
+import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
 import org.apache.archiva.xml.XMLException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -43,6 +49,10 @@
 {
     private File defaultRepoDir;
 
+    private EhcacheCache cache;
+
+    private SnapshotResolutionCache snapshotResolutionCache;
+
     @Test
     public void testGroupMetadata()
         throws XMLException
@@ -116,12 +126,61 @@ public void testProjectVersionMetadata()
         assertEquals( "20080801151215", metadata.getLastUpdated() );
     }
 
+    @Test
+    public void testSnapshotResolution()
+        throws XMLException
+    {
+        File metadataFile = new File( defaultRepoDir, "org/apache/apache/5-SNAPSHOT/maven-metadata.xml" );
+
+        SnapshotResolution resolution = snapshotResolutionCache.get( metadataFile );
+
+        assertNotNull( resolution );
+        assertEquals( "20080801.151215", resolution.getTimestamp() );
+        assertEquals( 1, resolution.getBuildNumber() );
+        assertEquals( "5-20080801.151215-1", resolution.getVersion( "5-SNAPSHOT", null, "pom" ) );
+        assertSame( resolution, snapshotResolutionCache.get( metadataFile ) );
+    }
+
+    @Test
+    public void testSnapshotResolutionRefreshedWhenMetadataChanges()
+        throws Exception
+    {
+        File metadataFile = File.createTempFile( "maven-metadata", ".xml", new File( "target" ) );
+        metadataFile.deleteOnExit();
+        FileUtils.copyFile( new File( defaultRepoDir, "org/apache/apache/5-SNAPSHOT/maven-metadata.xml" ),
+                            metadataFile );
+
+        assertEquals( 1, snapshotResolutionCache.get( metadataFile ).getBuildNumber() );
+
+        String content = FileUtils.readFileToString( metadataFile );
+        FileUtils.writeStringToFile( metadataFile, content.replace( "<buildNumber>1</buildNumber>",
+                                                                    "<buildNumber>12</buildNumber>" ) );
+
+        assertEquals( 12, snapshotResolutionCache.get( metadataFile ).getBuildNumber() );
+    }
+
     @Before
     @Override
+    @SuppressWarnings( "unchecked" )
     public void setUp()
         throws Exception
     {
         super.setUp();
         defaultRepoDir = new File( "target/test-repository" );
+
+        cache = new EhcacheCache();
+        cache.setName( "snapshotResolutions-test" );
+        cache.setMaxElementsInMemory( 16 );
+        cache.initialize();
+        snapshotResolutionCache = new DefaultSnapshotResolutionCache( cache );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        cache.dispose();
+        super.tearDown();
     }
 }
\ No newline at end of file
@@ -54,9 +54,11 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
 import org.apache.archiva.metadata.repository.cassandra.model.ArtifactMetadataModel;
 import org.apache.archiva.metadata.repository.cassandra.model.MetadataFacetModel;
 import org.apache.archiva.metadata.repository.cassandra.model.Namespace;
@@ -1352,6 +1354,19 @@ public void updateArtifact( String repositoryId, String namespaceId, String proj
         projectMetadata.setNamespace( namespaceId );
         updateProject( repositoryId, projectMetadata );
 
+        Mutator<String> mutator = HFactory.createMutator( keyspace, ss );
+        updateArtifact( repositoryId, namespace, projectId, projectVersion, artifactMeta, mutator );
+        mutator.execute();
+    }
+
+    /**
+     * Update an artifact of an existing project, adding the rows to create to the mutator rather than writing them.
+     */
+    private void updateArtifact( String repositoryId, Namespace namespace, String projectId, String projectVersion,
+                                 ArtifactMetadata artifactMeta, Mutator<String> mutator )
+    {
+        String namespaceId = namespace.getName();
+
         String key = new ArtifactMetadataModel.KeyBuilder().withNamespace( namespace ).withProject( projectId ).withId(
             artifactMeta.getId() ).withProjectVersion( projectVersion ).build();
 
@@ -1375,7 +1390,7 @@ public void updateArtifact( String repositoryId, String namespaceId, String proj
         {
             String cf = this.cassandraArchivaManager.getArtifactMetadataFamilyName();
             // create
-            this.artifactMetadataTemplate.createMutator() //
+            mutator //
                 .addInsertion( key, cf, column( ID.toString(), artifactMeta.getId() ) )//
                 .addInsertion( key, cf, column( REPOSITORY_NAME.toString(), repositoryId ) ) //
                 .addInsertion( key, cf, column( NAMESPACE_ID.toString(), namespaceId ) ) //
@@ -1386,8 +1401,7 @@ public void updateArtifact( String repositoryId, String namespaceId, String proj
                 .addInsertion( key, cf, column( SIZE.toString(), artifactMeta.getSize() ) ) //
                 .addInsertion( key, cf, column( MD5.toString(), artifactMeta.getMd5() ) ) //
                 .addInsertion( key, cf, column( SHA1.toString(), artifactMeta.getSha1() ) ) //
-                .addInsertion( key, cf, column( WHEN_GATHERED.toString(), artifactMeta.getWhenGathered().getTime() ) )//
-                .execute();
+                .addInsertion( key, cf, column( WHEN_GATHERED.toString(), artifactMeta.getWhenGathered().getTime() ) );
         }
 
         key = new ProjectVersionMetadataModel.KeyBuilder() //
@@ -1415,13 +1429,12 @@ public void updateArtifact( String repositoryId, String namespaceId, String proj
         {
             String cf = this.cassandraArchivaManager.getProjectVersionMetadataFamilyName();
 
-            projectVersionMetadataTemplate.createMutator() //
+            mutator //
                 .addInsertion( key, cf, column( NAMESPACE_ID.toString(), namespace.getName() ) ) //
                 .addInsertion( key, cf, column( REPOSITORY_NAME.toString(), repositoryId ) ) //
                 .addInsertion( key, cf, column( PROJECT_VERSION.toString(), projectVersion ) ) //
                 .addInsertion( key, cf, column( PROJECT_ID.toString(), projectId ) ) //
-                .addInsertion( key, cf, column( VERSION.toString(), artifactMeta.getVersion() ) ) //
-                .execute();
+                .addInsertion( key, cf, column( VERSION.toString(), artifactMeta.getVersion() ) );
 
         }
 
@@ -1437,10 +1450,54 @@ public void updateArtifact( String repositoryId, String namespaceId, String proj
                                                        : artifactMeta.getFileLastModified().getTime() );
 
         // now facets
-        updateFacets( artifactMeta, artifactMetadataModel );
+        updateFacets( artifactMeta, artifactMetadataModel, mutator );
 
     }
 
+    /**
+     * Looks up or creates each namespace and project once per batch, and writes the rows of the new artifacts with a
+     * single multi-row mutation before updating the project versions.
+     */
+    @Override
+    public void updateMetadata( String repositoryId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        Map<String, Namespace> namespaces = new HashMap<>();
+        Set<String> projects = new HashSet<>();
+        Mutator<String> mutator = HFactory.createMutator( keyspace, ss );
+        for ( MetadataUpdate update : updates )
+        {
+            Namespace namespace = namespaces.get( update.getNamespace() );
+            if ( namespace == null )
+            {
+                namespace = updateOrAddNamespace( repositoryId, update.getNamespace() );
+                namespaces.put( update.getNamespace(), namespace );
+            }
+            if ( projects.add( update.getNamespace() + ":" + update.getProjectId() ) )
+            {
+                ProjectMetadata projectMetadata = new ProjectMetadata();
+                projectMetadata.setId( update.getProjectId() );
+                projectMetadata.setNamespace( update.getNamespace() );
+                updateProject( repositoryId, projectMetadata );
+            }
+            if ( update.getArtifact() != null )
+            {
+                updateArtifact( repositoryId, namespace, update.getProjectId(), update.getProjectVersion(),
+                                update.getArtifact(), mutator );
+            }
+        }
+        mutator.execute();
+
+        for ( MetadataUpdate update : updates )
+        {
+            if ( update.getProjectVersionMetadata() != null )
+            {
+                updateProjectVersion( repositoryId, update.getNamespace(), update.getProjectId(),
+                                      update.getProjectVersionMetadata() );
+            }
+        }
+    }
+
     @Override
     public Collection<String> getArtifactVersions( final String repoId, final String namespace, final String projectId,
                                                    final String projectVersion )
@@ -1477,6 +1534,17 @@ public Collection<String> getArtifactVersions( final String repoId, final String
     private void updateFacets( final FacetedMetadata facetedMetadata,
                                final ArtifactMetadataModel artifactMetadataModel )
     {
+        Mutator<String> mutator = metadataFacetTemplate.createMutator();
+        updateFacets( facetedMetadata, artifactMetadataModel, mutator );
+        mutator.execute();
+    }
+
+    /**
+     * @param mutator the mutator to add the new facet rows to, the previous rows being removed straight away
+     */
+    private void updateFacets( final FacetedMetadata facetedMetadata,
+                               final ArtifactMetadataModel artifactMetadataModel, final Mutator<String> mutator )
+    {
 
         String cf = cassandraArchivaManager.getMetadataFacetFamilyName();
 
@@ -1511,7 +1579,7 @@ private void updateFacets( final FacetedMetadata facetedMetadata,
             {
                 String key = new MetadataFacetModel.KeyBuilder().withKey( entry.getKey() ).withArtifactMetadataModel(
                     artifactMetadataModel ).withFacetId( facetId ).withName( metadataFacet.getName() ).build();
-                Mutator<String> mutator = metadataFacetTemplate.createMutator() //
+                mutator //
                     .addInsertion( key, cf, column( REPOSITORY_NAME.toString(), artifactMetadataModel.getRepositoryId() ) ) //
                     .addInsertion( key, cf, column( NAMESPACE_ID.toString(), artifactMetadataModel.getNamespace() ) ) //
                     .addInsertion( key, cf, column( PROJECT_ID.toString(), artifactMetadataModel.getProject() ) ) //
@@ -1524,8 +1592,6 @@ private void updateFacets( final FacetedMetadata facetedMetadata,
                 {
                     mutator.addInsertion( key, cf, column( NAME.toString(), metadataFacet.getName() ) );
                 }
-
-                mutator.execute();
             }
         }
     }
@@ -2029,6 +2095,48 @@ public List<ArtifactMetadata> getArtifacts( final String repositoryId )
         return artifactMetadatas;
     }
 
+    /**
+     * Page through the artifact metadata rows of the repository in the order of their keys, the page token being the
+     * key of the last row of the previous page.
+     */
+    @Override
+    public ArtifactMetadataPage getArtifacts( final String repositoryId, String pageToken, int limit )
+        throws MetadataRepositoryException
+    {
+        if ( limit <= 0 )
+        {
+            throw new IllegalArgumentException( "The limit of a page must be greater than 0: " + limit );
+        }
+        // the range starts with the last row of the previous page, and one more row tells whether there is a next page
+        RangeSlicesQuery<String, String, String> query = HFactory //
+            .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
+            .setColumnFamily( cassandraArchivaManager.getArtifactMetadataFamilyName() ) //
+            .setColumnNames( ArtifactMetadataModel.COLUMNS ) //
+            .addEqualsExpression( REPOSITORY_NAME.toString(), repositoryId ) //
+            .setKeys( pageToken != null ? pageToken : "", "" ) //
+            .setRowCount( pageToken != null ? limit + 2 : limit + 1 );
+
+        QueryResult<OrderedRows<String, String, String>> result = query.execute();
+
+        List<ArtifactMetadata> artifactMetadatas = new ArrayList<>( limit );
+        String lastKey = null;
+        for ( Row<String, String, String> row : result.get() )
+        {
+            if ( row.getKey().equals( pageToken ) )
+            {
+                continue;
+            }
+            if ( artifactMetadatas.size() == limit )
+            {
+                return new ArtifactMetadataPage( artifactMetadatas, lastKey );
+            }
+            artifactMetadatas.add( mapArtifactMetadataStringColumnSlice( row.getColumnSlice() ) );
+            lastKey = row.getKey();
+        }
+
+        return new ArtifactMetadataPage( artifactMetadatas, null );
+    }
+
 
     @Override
     public Collection<ProjectVersionReference> getProjectReferences( String repoId, String namespace, String projectId,
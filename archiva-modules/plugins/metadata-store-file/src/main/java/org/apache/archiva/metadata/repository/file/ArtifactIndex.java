@@ -0,0 +1,387 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A persistent secondary index of the file metadata repository, mapping terms (eg. a checksum) to the keys of the
+ * artifacts having them.
+ * <p>
+ * Each term is stored in its own small file, holding the term on the first line and one artifact key per line, so
+ * that a lookup only reads the entries of that term. The index may hold stale keys (eg. when a whole project is
+ * removed), so callers check the artifacts they load and clean up the terms they found stale.
+ * </p>
+ * <p>
+ * An index can also keep a dictionary of its terms, grouped by their first characters, to find the terms starting
+ * with a given text without listing all of them.
+ * </p>
+ */
+class ArtifactIndex
+{
+    private static final Object LOCK = new Object();
+
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private static final String DICTIONARY_DIRECTORY = ".terms";
+
+    private static final int MAX_FILE_NAME_LENGTH = 120;
+
+    private final File directory;
+
+    private final int dictionaryPrefixLength;
+
+    ArtifactIndex( File directory )
+    {
+        this( directory, 0 );
+    }
+
+    /**
+     * @param dictionaryPrefixLength the number of first characters grouping the terms in the dictionary, 0 to keep no
+     *                               dictionary
+     */
+    ArtifactIndex( File directory, int dictionaryPrefixLength )
+    {
+        this.directory = directory;
+        this.dictionaryPrefixLength = dictionaryPrefixLength;
+    }
+
+    /**
+     * @return <code>true</code> if the index was built from the whole repository, and maintained since
+     */
+    boolean isComplete()
+    {
+        return new File( directory, COMPLETE_MARKER ).exists();
+    }
+
+    void markComplete()
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            directory.mkdirs();
+            FileUtils.touch( new File( directory, COMPLETE_MARKER ) );
+        }
+    }
+
+    /**
+     * Add a key to a term, if it isn't already present.
+     */
+    void add( String term, ArtifactKey key )
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            if ( !read( term ).contains( key ) )
+            {
+                append( term, key );
+            }
+        }
+    }
+
+    /**
+     * Add a key to a term without checking whether it is already present, for terms that can have many keys.
+     * Lookups ignore the duplicates.
+     */
+    void append( String term, ArtifactKey key )
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            File file = getFile( term );
+            boolean created = !file.exists();
+            if ( created )
+            {
+                file.getParentFile().mkdirs();
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8,
+                                                                  StandardOpenOption.CREATE,
+                                                                  StandardOpenOption.APPEND ))
+            {
+                if ( created )
+                {
+                    writer.write( term );
+                    writer.newLine();
+                }
+                writer.write( key.toLine() );
+                writer.newLine();
+            }
+            if ( created )
+            {
+                addToDictionary( term );
+            }
+        }
+    }
+
+    void remove( String term, ArtifactKey key )
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            Set<ArtifactKey> keys = read( term );
+            if ( keys.remove( key ) )
+            {
+                replace( term, keys );
+            }
+        }
+    }
+
+    /**
+     * Replace the keys of a term, removing the term if there are none.
+     */
+    void replace( String term, Collection<ArtifactKey> keys )
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            File file = getFile( term );
+            if ( keys.isEmpty() )
+            {
+                Files.deleteIfExists( file.toPath() );
+                return;
+            }
+            boolean created = !file.exists();
+            file.getParentFile().mkdirs();
+            try (BufferedWriter writer = Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8 ))
+            {
+                writer.write( term );
+                writer.newLine();
+                for ( ArtifactKey key : keys )
+                {
+                    writer.write( key.toLine() );
+                    writer.newLine();
+                }
+            }
+            if ( created )
+            {
+                addToDictionary( term );
+            }
+        }
+    }
+
+    Set<ArtifactKey> get( String term )
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            return read( term );
+        }
+    }
+
+    /**
+     * @return all the terms of the index
+     */
+    List<String> terms()
+        throws IOException
+    {
+        List<String> terms = new ArrayList<>();
+        synchronized ( LOCK )
+        {
+            File[] shards = directory.listFiles();
+            if ( shards == null )
+            {
+                return terms;
+            }
+            for ( File shard : shards )
+            {
+                File[] files = shard.getName().equals( DICTIONARY_DIRECTORY ) ? null : shard.listFiles();
+                if ( files == null )
+                {
+                    continue;
+                }
+                for ( File file : files )
+                {
+                    String term = readTerm( file );
+                    if ( term != null )
+                    {
+                        terms.add( term );
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Find the terms starting with a text in the dictionary of the index. The result may include terms that no longer
+     * have any key.
+     */
+    Set<String> terms( String prefix )
+        throws IOException
+    {
+        Set<String> terms = new LinkedHashSet<>();
+        synchronized ( LOCK )
+        {
+            File dictionary = new File( directory, DICTIONARY_DIRECTORY );
+            if ( prefix.length() >= dictionaryPrefixLength )
+            {
+                readDictionary( new File( dictionary, toFileName( getDictionaryGroup( prefix ) ) ), prefix, terms );
+            }
+            else
+            {
+                // a short prefix spans several groups
+                File[] files = dictionary.listFiles();
+                if ( files != null )
+                {
+                    for ( File file : files )
+                    {
+                        readDictionary( file, prefix, terms );
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+
+    private void addToDictionary( String term )
+        throws IOException
+    {
+        if ( dictionaryPrefixLength <= 0 )
+        {
+            return;
+        }
+        File dictionary = new File( directory, DICTIONARY_DIRECTORY );
+        dictionary.mkdirs();
+        try (BufferedWriter writer = Files.newBufferedWriter(
+            new File( dictionary, toFileName( getDictionaryGroup( term ) ) ).toPath(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND ))
+        {
+            writer.write( term );
+            writer.newLine();
+        }
+    }
+
+    private String getDictionaryGroup( String term )
+    {
+        return term.length() > dictionaryPrefixLength ? term.substring( 0, dictionaryPrefixLength ) : term;
+    }
+
+    private static void readDictionary( File file, String prefix, Set<String> terms )
+        throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ))
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.startsWith( prefix ) )
+                {
+                    terms.add( line );
+                }
+            }
+        }
+        catch ( NoSuchFileException e )
+        {
+            // no term in this group
+        }
+    }
+
+    void clear()
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            FileUtils.deleteDirectory( directory );
+        }
+    }
+
+    private Set<ArtifactKey> read( String term )
+        throws IOException
+    {
+        Set<ArtifactKey> keys = new LinkedHashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader( getFile( term ).toPath(), StandardCharsets.UTF_8 ))
+        {
+            String line = reader.readLine();
+            if ( !term.equals( line ) )
+            {
+                // another term with a shortened file name
+                return keys;
+            }
+            while ( ( line = reader.readLine() ) != null )
+            {
+                ArtifactKey key = ArtifactKey.fromLine( line );
+                if ( key != null )
+                {
+                    keys.add( key );
+                }
+            }
+        }
+        catch ( NoSuchFileException e )
+        {
+            // no key for this term
+        }
+        return keys;
+    }
+
+    private static String readTerm( File file )
+        throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ))
+        {
+            return reader.readLine();
+        }
+        catch ( NoSuchFileException e )
+        {
+            return null;
+        }
+    }
+
+    private File getFile( String term )
+    {
+        String shard = String.format( "%02x", term.hashCode() & 0xff );
+        return new File( new File( directory, shard ), toFileName( term ) );
+    }
+
+    private static String toFileName( String term )
+    {
+        String name;
+        try
+        {
+            name = URLEncoder.encode( term, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+        if ( name.length() > MAX_FILE_NAME_LENGTH )
+        {
+            // the term is read from the file content, the name only needs to be unique enough
+            name = name.substring( 0, MAX_FILE_NAME_LENGTH ) + "~" + Integer.toHexString( term.hashCode() );
+        }
+        // avoid names such as "." and ".."
+        return "_" + name;
+    }
+}
@@ -0,0 +1,123 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Identifies an artifact of the file metadata repository in the secondary indexes: its project version directory and
+ * its id.
+ */
+final class ArtifactKey
+{
+    private static final char SEPARATOR = '\t';
+
+    private final String namespace;
+
+    private final String project;
+
+    private final String projectVersion;
+
+    private final String id;
+
+    ArtifactKey( String namespace, String project, String projectVersion, String id )
+    {
+        this.namespace = namespace;
+        this.project = project;
+        this.projectVersion = projectVersion;
+        this.id = id;
+    }
+
+    String getNamespace()
+    {
+        return namespace;
+    }
+
+    String getProject()
+    {
+        return project;
+    }
+
+    String getProjectVersion()
+    {
+        return projectVersion;
+    }
+
+    String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return the key of the project version directory the artifact belongs to
+     */
+    String getProjectVersionKey()
+    {
+        return namespace + SEPARATOR + project + SEPARATOR + projectVersion;
+    }
+
+    String toLine()
+    {
+        return getProjectVersionKey() + SEPARATOR + id;
+    }
+
+    /**
+     * @return the key, or <code>null</code> if the line isn't a valid key
+     */
+    static ArtifactKey fromLine( String line )
+    {
+        String[] parts = line.split( String.valueOf( SEPARATOR ), -1 );
+        if ( parts.length != 4 )
+        {
+            return null;
+        }
+        return new ArtifactKey( parts[0], parts[1], parts[2], parts[3] );
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+        ArtifactKey that = (ArtifactKey) o;
+        return namespace.equals( that.namespace ) && project.equals( that.project )
+            && projectVersion.equals( that.projectVersion ) && id.equals( that.id );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = namespace.hashCode();
+        result = 31 * result + project.hashCode();
+        result = 31 * result + projectVersion.hashCode();
+        result = 31 * result + id.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return namespace + ":" + project + ":" + projectVersion + ":" + id;
+    }
+}
@@ -0,0 +1,132 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A read only copy of a parsed properties file, shared by the readers of the file metadata repository through the
+ * {@link PropertiesCache}. The properties grouped under a prefix (eg. the properties of a facet) are computed once.
+ */
+final class CachedProperties
+    extends Properties
+{
+    private final ConcurrentMap<String, Map<String, String>> subProperties = new ConcurrentHashMap<>();
+
+    private boolean sealed;
+
+    CachedProperties( Properties properties )
+    {
+        for ( String name : properties.stringPropertyNames() )
+        {
+            super.put( name, properties.getProperty( name ) );
+        }
+        sealed = true;
+    }
+
+    /**
+     * @return a modifiable copy of the properties
+     */
+    Properties copy()
+    {
+        Properties properties = new Properties();
+        for ( Map.Entry<Object, Object> entry : entrySet() )
+        {
+            properties.put( entry.getKey(), entry.getValue() );
+        }
+        return properties;
+    }
+
+    /**
+     * Get the properties starting with a prefix, with the prefix removed from their name.
+     */
+    Map<String, String> getSubProperties( String prefix )
+    {
+        Map<String, String> properties = subProperties.get( prefix );
+        if ( properties == null )
+        {
+            Map<String, String> map = new HashMap<>();
+            for ( Map.Entry<Object, Object> entry : entrySet() )
+            {
+                String name = (String) entry.getKey();
+                if ( name.startsWith( prefix ) )
+                {
+                    map.put( name.substring( prefix.length() ), (String) entry.getValue() );
+                }
+            }
+            properties = Collections.unmodifiableMap( map );
+            subProperties.putIfAbsent( prefix, properties );
+        }
+        return properties;
+    }
+
+    @Override
+    public synchronized Object put( Object key, Object value )
+    {
+        if ( sealed )
+        {
+            throw new UnsupportedOperationException( "cached properties are read only" );
+        }
+        return super.put( key, value );
+    }
+
+    @Override
+    public synchronized Object remove( Object key )
+    {
+        throw new UnsupportedOperationException( "cached properties are read only" );
+    }
+
+    @Override
+    public synchronized void putAll( Map<?, ?> t )
+    {
+        throw new UnsupportedOperationException( "cached properties are read only" );
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        throw new UnsupportedOperationException( "cached properties are read only" );
+    }
+
+    @Override
+    public Set<Object> keySet()
+    {
+        return Collections.unmodifiableSet( super.keySet() );
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet()
+    {
+        return Collections.unmodifiableSet( super.entrySet() );
+    }
+
+    @Override
+    public Collection<Object> values()
+    {
+        return Collections.unmodifiableCollection( super.values() );
+    }
+}
@@ -34,9 +34,11 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,10 +46,16 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -56,12 +64,16 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TimeZone;
 
 public class FileMetadataRepository
     implements MetadataRepository
@@ -70,6 +82,8 @@
 
     private final ArchivaConfiguration configuration;
 
+    private final PropertiesCache propertiesCache;
+
     private Logger log = LoggerFactory.getLogger( FileMetadataRepository.class );
 
     private static final String PROJECT_METADATA_KEY = "project-metadata";
@@ -80,11 +94,70 @@
 
     private static final String METADATA_KEY = "metadata";
 
+    private static final CachedProperties EMPTY_PROPERTIES = new CachedProperties( new Properties() );
+
+    private static final String INDEX_DIRECTORY = "index";
+
+    private static final String CHECKSUMS_INDEX = "checksums";
+
+    private static final String WHEN_GATHERED_INDEX = "when-gathered";
+
+    private static final String PROPERTIES_INDEX = "properties";
+
+    /**
+     * Number of first characters of the words grouping them in the dictionary of the property index.
+     */
+    private static final int PROPERTIES_DICTIONARY_PREFIX_LENGTH = 3;
+
+    /**
+     * Number of modified files kept in memory by a session before they are written without waiting for save().
+     */
+    private static final int MAX_PENDING_WRITES = 1000;
+
+    /**
+     * Force the modified files to the disk before replacing the previous ones when a session is saved.
+     */
+    private static final boolean SYNC_WRITES = Boolean.getBoolean( "archiva.metadata.file.syncWrites" );
+
+    /**
+     * Serializes the checks and the replacement of the properties files of the sessions being saved.
+     */
+    private static final Object SAVE_LOCK = new Object();
+
+    /**
+     * Properties files modified by this session and not written yet. Several updates of the same file (eg. of each
+     * artifact of a project version) only write it once.
+     */
+    private final Map<File, CachedProperties> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * Length and modification time of the properties files of {@link #pendingWrites} when this session read them, to
+     * detect the files replaced by another session in the meantime.
+     */
+    private final Map<File, FileVersion> pendingWriteVersions = new HashMap<>();
+
+    /**
+     * Index changes of this session, applied once the properties files they point to are written.
+     */
+    private final List<IndexUpdate> pendingIndexUpdates = new ArrayList<>();
+
+    /**
+     * Property index terms added by this session, applied once the properties files they point to are written.
+     */
+    private final List<TermUpdate> pendingTermUpdates = new ArrayList<>();
+
+    /**
+     * Repositories whose indexes are rebuilt from the files once the pending files are written, as a failed save
+     * replaced only some of the files.
+     */
+    private final Set<String> staleIndexes = new HashSet<>();
+
     public FileMetadataRepository( Map<String, MetadataFacetFactory> metadataFacetFactories,
-                                   ArchivaConfiguration configuration )
+                                   ArchivaConfiguration configuration, PropertiesCache propertiesCache )
     {
         this.metadataFacetFactories = metadataFacetFactories;
         this.configuration = configuration;
+        this.propertiesCache = propertiesCache;
     }
 
     private File getBaseDirectory( String repoId )
@@ -107,35 +180,44 @@ private File getDirectory( String repoId )
         return new File( getBaseDirectory( repoId ), "content" );
     }
 
-    @Override
-    public void updateProject( String repoId, ProjectMetadata project )
+    private ArtifactIndex getIndex( String repoId, String name )
+        throws IOException
     {
-        updateProject( repoId, project.getNamespace(), project.getId() );
+        return new ArtifactIndex( new File( getBaseDirectory( repoId ), INDEX_DIRECTORY + "/" + name ),
+                                  PROPERTIES_INDEX.equals( name ) ? PROPERTIES_DICTIONARY_PREFIX_LENGTH : 0 );
     }
 
-    private void updateProject( String repoId, String namespace, String id )
+    @Override
+    public void updateProject( String repoId, ProjectMetadata project )
+        throws MetadataRepositoryException
     {
-        // TODO: this is a more braindead implementation than we would normally expect, for prototyping purposes
-        updateNamespace( repoId, namespace );
-
         try
         {
-            File namespaceDirectory = new File( getDirectory( repoId ), namespace );
-            Properties properties = new Properties();
-            properties.setProperty( "namespace", namespace );
-            properties.setProperty( "id", id );
-            writeProperties( properties, new File( namespaceDirectory, id ), PROJECT_METADATA_KEY );
+            updateProject( repoId, project.getNamespace(), project.getId() );
         }
         catch ( IOException e )
         {
-            // TODO!
-            log.error( e.getMessage(), e );
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
     }
 
+    private void updateProject( String repoId, String namespace, String id )
+        throws IOException
+    {
+        // TODO: this is a more braindead implementation than we would normally expect, for prototyping purposes
+        writeNamespace( repoId, namespace );
+
+        File namespaceDirectory = new File( getDirectory( repoId ), namespace );
+        Properties properties = new Properties();
+        properties.setProperty( "namespace", namespace );
+        properties.setProperty( "id", id );
+        writeProperties( properties, new File( namespaceDirectory, id ), PROJECT_METADATA_KEY );
+    }
+
     @Override
     public void updateProjectVersion( String repoId, String namespace, String projectId,
                                       ProjectVersionMetadata versionMetadata )
+        throws MetadataRepositoryException
     {
 
         try
@@ -146,98 +228,105 @@ public void updateProjectVersion( String repoId, String namespace, String projec
                 new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + versionMetadata.getId() );
 
             Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
-            // remove properties that are not references or artifacts
-            for ( Object key : new ArrayList( properties.keySet() ) )
-            {
-                String name = (String) key;
-                if ( !name.contains( ":" ) && !name.equals( "facetIds" ) )
-                {
-                    properties.remove( name );
-                }
+            setProjectVersionProperties( repoId, namespace, projectId, versionMetadata, properties );
 
-                // clear the facet contents so old properties are no longer written
-                clearMetadataFacetProperties( versionMetadata.getFacetList(), properties, "" );
-            }
-            properties.setProperty( "id", versionMetadata.getId() );
-            setProperty( properties, "name", versionMetadata.getName() );
-            setProperty( properties, "description", versionMetadata.getDescription() );
-            setProperty( properties, "url", versionMetadata.getUrl() );
-            setProperty( properties, "incomplete", String.valueOf( versionMetadata.isIncomplete() ) );
-            if ( versionMetadata.getScm() != null )
-            {
-                setProperty( properties, "scm.connection", versionMetadata.getScm().getConnection() );
-                setProperty( properties, "scm.developerConnection", versionMetadata.getScm().getDeveloperConnection() );
-                setProperty( properties, "scm.url", versionMetadata.getScm().getUrl() );
-            }
-            if ( versionMetadata.getCiManagement() != null )
-            {
-                setProperty( properties, "ci.system", versionMetadata.getCiManagement().getSystem() );
-                setProperty( properties, "ci.url", versionMetadata.getCiManagement().getUrl() );
-            }
-            if ( versionMetadata.getIssueManagement() != null )
-            {
-                setProperty( properties, "issue.system", versionMetadata.getIssueManagement().getSystem() );
-                setProperty( properties, "issue.url", versionMetadata.getIssueManagement().getUrl() );
-            }
-            if ( versionMetadata.getOrganization() != null )
-            {
-                setProperty( properties, "org.name", versionMetadata.getOrganization().getName() );
-                setProperty( properties, "org.url", versionMetadata.getOrganization().getUrl() );
-            }
-            int i = 0;
-            for ( License license : versionMetadata.getLicenses() )
-            {
-                setProperty( properties, "license." + i + ".name", license.getName() );
-                setProperty( properties, "license." + i + ".url", license.getUrl() );
-                i++;
-            }
-            i = 0;
-            for ( MailingList mailingList : versionMetadata.getMailingLists() )
-            {
-                setProperty( properties, "mailingList." + i + ".archive", mailingList.getMainArchiveUrl() );
-                setProperty( properties, "mailingList." + i + ".name", mailingList.getName() );
-                setProperty( properties, "mailingList." + i + ".post", mailingList.getPostAddress() );
-                setProperty( properties, "mailingList." + i + ".unsubscribe", mailingList.getUnsubscribeAddress() );
-                setProperty( properties, "mailingList." + i + ".subscribe", mailingList.getSubscribeAddress() );
-                setProperty( properties, "mailingList." + i + ".otherArchives",
-                             join( mailingList.getOtherArchives() ) );
-                i++;
-            }
-            i = 0;
-            ProjectVersionReference reference = new ProjectVersionReference();
-            reference.setNamespace( namespace );
-            reference.setProjectId( projectId );
-            reference.setProjectVersion( versionMetadata.getId() );
-            reference.setReferenceType( ProjectVersionReference.ReferenceType.DEPENDENCY );
-            for ( Dependency dependency : versionMetadata.getDependencies() )
+            writeProjectVersionProperties( repoId, namespace, projectId, versionMetadata.getId(), properties,
+                                           directory );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void setProjectVersionProperties( String repoId, String namespace, String projectId,
+                                              ProjectVersionMetadata versionMetadata, Properties properties )
+        throws IOException
+    {
+        // remove properties that are not references or artifacts
+        for ( Object key : new ArrayList( properties.keySet() ) )
+        {
+            String name = (String) key;
+            if ( !name.contains( ":" ) && !name.equals( "facetIds" ) )
             {
-                setProperty( properties, "dependency." + i + ".classifier", dependency.getClassifier() );
-                setProperty( properties, "dependency." + i + ".scope", dependency.getScope() );
-                setProperty( properties, "dependency." + i + ".systemPath", dependency.getSystemPath() );
-                setProperty( properties, "dependency." + i + ".artifactId", dependency.getArtifactId() );
-                setProperty( properties, "dependency." + i + ".groupId", dependency.getGroupId() );
-                setProperty( properties, "dependency." + i + ".version", dependency.getVersion() );
-                setProperty( properties, "dependency." + i + ".type", dependency.getType() );
-                setProperty( properties, "dependency." + i + ".optional", String.valueOf( dependency.isOptional() ) );
-
-                updateProjectReference( repoId, dependency.getGroupId(), dependency.getArtifactId(),
-                                        dependency.getVersion(), reference );
-
-                i++;
+                properties.remove( name );
             }
-            Set<String> facetIds = new LinkedHashSet<String>( versionMetadata.getFacetIds() );
-            facetIds.addAll( Arrays.asList( properties.getProperty( "facetIds", "" ).split( "," ) ) );
-            properties.setProperty( "facetIds", join( facetIds ) );
 
-            updateProjectVersionFacets( versionMetadata, properties );
-
-            writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+            // clear the facet contents so old properties are no longer written
+            clearMetadataFacetProperties( versionMetadata.getFacetList(), properties, "" );
         }
-        catch ( IOException e )
+        properties.setProperty( "id", versionMetadata.getId() );
+        setProperty( properties, "name", versionMetadata.getName() );
+        setProperty( properties, "description", versionMetadata.getDescription() );
+        setProperty( properties, "url", versionMetadata.getUrl() );
+        setProperty( properties, "incomplete", String.valueOf( versionMetadata.isIncomplete() ) );
+        if ( versionMetadata.getScm() != null )
         {
-            // TODO
-            log.error( e.getMessage(), e );
+            setProperty( properties, "scm.connection", versionMetadata.getScm().getConnection() );
+            setProperty( properties, "scm.developerConnection", versionMetadata.getScm().getDeveloperConnection() );
+            setProperty( properties, "scm.url", versionMetadata.getScm().getUrl() );
+        }
+        if ( versionMetadata.getCiManagement() != null )
+        {
+            setProperty( properties, "ci.system", versionMetadata.getCiManagement().getSystem() );
+            setProperty( properties, "ci.url", versionMetadata.getCiManagement().getUrl() );
+        }
+        if ( versionMetadata.getIssueManagement() != null )
+        {
+            setProperty( properties, "issue.system", versionMetadata.getIssueManagement().getSystem() );
+            setProperty( properties, "issue.url", versionMetadata.getIssueManagement().getUrl() );
+        }
+        if ( versionMetadata.getOrganization() != null )
+        {
+            setProperty( properties, "org.name", versionMetadata.getOrganization().getName() );
+            setProperty( properties, "org.url", versionMetadata.getOrganization().getUrl() );
+        }
+        int i = 0;
+        for ( License license : versionMetadata.getLicenses() )
+        {
+            setProperty( properties, "license." + i + ".name", license.getName() );
+            setProperty( properties, "license." + i + ".url", license.getUrl() );
+            i++;
+        }
+        i = 0;
+        for ( MailingList mailingList : versionMetadata.getMailingLists() )
+        {
+            setProperty( properties, "mailingList." + i + ".archive", mailingList.getMainArchiveUrl() );
+            setProperty( properties, "mailingList." + i + ".name", mailingList.getName() );
+            setProperty( properties, "mailingList." + i + ".post", mailingList.getPostAddress() );
+            setProperty( properties, "mailingList." + i + ".unsubscribe", mailingList.getUnsubscribeAddress() );
+            setProperty( properties, "mailingList." + i + ".subscribe", mailingList.getSubscribeAddress() );
+            setProperty( properties, "mailingList." + i + ".otherArchives",
+                         join( mailingList.getOtherArchives() ) );
+            i++;
+        }
+        i = 0;
+        ProjectVersionReference reference = new ProjectVersionReference();
+        reference.setNamespace( namespace );
+        reference.setProjectId( projectId );
+        reference.setProjectVersion( versionMetadata.getId() );
+        reference.setReferenceType( ProjectVersionReference.ReferenceType.DEPENDENCY );
+        for ( Dependency dependency : versionMetadata.getDependencies() )
+        {
+            setProperty( properties, "dependency." + i + ".classifier", dependency.getClassifier() );
+            setProperty( properties, "dependency." + i + ".scope", dependency.getScope() );
+            setProperty( properties, "dependency." + i + ".systemPath", dependency.getSystemPath() );
+            setProperty( properties, "dependency." + i + ".artifactId", dependency.getArtifactId() );
+            setProperty( properties, "dependency." + i + ".groupId", dependency.getGroupId() );
+            setProperty( properties, "dependency." + i + ".version", dependency.getVersion() );
+            setProperty( properties, "dependency." + i + ".type", dependency.getType() );
+            setProperty( properties, "dependency." + i + ".optional", String.valueOf( dependency.isOptional() ) );
+
+            updateProjectReference( repoId, dependency.getGroupId(), dependency.getArtifactId(),
+                                    dependency.getVersion(), reference );
+
+            i++;
         }
+        Set<String> facetIds = new LinkedHashSet<String>( versionMetadata.getFacetIds() );
+        facetIds.addAll( Arrays.asList( properties.getProperty( "facetIds", "" ).split( "," ) ) );
+        properties.setProperty( "facetIds", join( facetIds ) );
+
+        updateProjectVersionFacets( versionMetadata, properties );
     }
 
     private void updateProjectVersionFacets( ProjectVersionMetadata versionMetadata, Properties properties )
@@ -275,46 +364,44 @@ private static void clearMetadataFacetProperties( Collection<MetadataFacet> face
 
     private void updateProjectReference( String repoId, String namespace, String projectId, String projectVersion,
                                          ProjectVersionReference reference )
+        throws IOException
     {
-        try
-        {
-            File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
+        File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
-            int i = Integer.parseInt( properties.getProperty( "ref:lastReferenceNum", "-1" ) ) + 1;
-            setProperty( properties, "ref:lastReferenceNum", Integer.toString( i ) );
-            setProperty( properties, "ref:reference." + i + ".namespace", reference.getNamespace() );
-            setProperty( properties, "ref:reference." + i + ".projectId", reference.getProjectId() );
-            setProperty( properties, "ref:reference." + i + ".projectVersion", reference.getProjectVersion() );
-            setProperty( properties, "ref:reference." + i + ".referenceType", reference.getReferenceType().toString() );
+        Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+        int i = Integer.parseInt( properties.getProperty( "ref:lastReferenceNum", "-1" ) ) + 1;
+        setProperty( properties, "ref:lastReferenceNum", Integer.toString( i ) );
+        setProperty( properties, "ref:reference." + i + ".namespace", reference.getNamespace() );
+        setProperty( properties, "ref:reference." + i + ".projectId", reference.getProjectId() );
+        setProperty( properties, "ref:reference." + i + ".projectVersion", reference.getProjectVersion() );
+        setProperty( properties, "ref:reference." + i + ".referenceType", reference.getReferenceType().toString() );
 
-            writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
-        }
-        catch ( IOException e )
-        {
-            // TODO
-            log.error( e.getMessage(), e );
-        }
+        writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
     }
 
     @Override
     public void updateNamespace( String repoId, String namespace )
+        throws MetadataRepositoryException
     {
         try
         {
-            File namespaceDirectory = new File( getDirectory( repoId ), namespace );
-            Properties properties = new Properties();
-            properties.setProperty( "namespace", namespace );
-            writeProperties( properties, namespaceDirectory, NAMESPACE_METADATA_KEY );
-
+            writeNamespace( repoId, namespace );
         }
         catch ( IOException e )
         {
-            // TODO!
-            log.error( e.getMessage(), e );
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
     }
 
+    private void writeNamespace( String repoId, String namespace )
+        throws IOException
+    {
+        File namespaceDirectory = new File( getDirectory( repoId ), namespace );
+        Properties properties = new Properties();
+        properties.setProperty( "namespace", namespace );
+        writeProperties( properties, namespaceDirectory, NAMESPACE_METADATA_KEY );
+    }
+
     @Override
     public List<String> getMetadataFacets( String repoId, String facetId )
         throws MetadataRepositoryException
@@ -349,11 +436,12 @@ private void recurse( List<String> facets, String prefix, File directory )
             {
                 if ( dir.isDirectory() )
                 {
-                    recurse( facets, prefix + "/" + dir.getName(), dir );
-                }
-                else if ( dir.getName().equals( METADATA_KEY + ".properties" ) )
-                {
-                    facets.add( prefix.substring( 1 ) );
+                    String name = prefix + "/" + dir.getName();
+                    if ( exists( dir, METADATA_KEY ) )
+                    {
+                        facets.add( name.substring( 1 ) );
+                    }
+                    recurse( facets, name, dir );
                 }
             }
         }
@@ -362,13 +450,13 @@ else if ( dir.getName().equals( METADATA_KEY + ".properties" ) )
     @Override
     public MetadataFacet getMetadataFacet( String repositoryId, String facetId, String name )
     {
-        Properties properties;
+        CachedProperties properties;
         try
         {
             properties =
                 readProperties( new File( getMetadataDirectory( repositoryId, facetId ), name ), METADATA_KEY );
         }
-        catch ( FileNotFoundException e )
+        catch ( FileNotFoundException | NoSuchFileException e )
         {
             return null;
         }
@@ -383,19 +471,14 @@ public MetadataFacet getMetadataFacet( String repositoryId, String facetId, Stri
         if ( metadataFacetFactory != null )
         {
             metadataFacet = metadataFacetFactory.createMetadataFacet( repositoryId, name );
-            Map<String, String> map = new HashMap<>();
-            for ( Object key : new ArrayList( properties.keySet() ) )
-            {
-                String property = (String) key;
-                map.put( property, properties.getProperty( property ) );
-            }
-            metadataFacet.fromProperties( map );
+            metadataFacet.fromProperties( new HashMap<>( properties.getSubProperties( "" ) ) );
         }
         return metadataFacet;
     }
 
     @Override
     public void addMetadataFacet( String repositoryId, MetadataFacet metadataFacet )
+        throws MetadataRepositoryException
     {
         Properties properties = new Properties();
         properties.putAll( metadataFacet.toProperties() );
@@ -408,8 +491,7 @@ public void addMetadataFacet( String repositoryId, MetadataFacet metadataFacet )
         }
         catch ( IOException e )
         {
-            // TODO!
-            log.error( e.getMessage(), e );
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
     }
 
@@ -419,6 +501,7 @@ public void removeMetadataFacets( String repositoryId, String facetId )
     {
         try
         {
+            flush();
             File dir = getMetadataDirectory( repositoryId, facetId );
             FileUtils.deleteDirectory( dir );
         }
@@ -434,6 +517,7 @@ public void removeMetadataFacet( String repoId, String facetId, String name )
     {
         try
         {
+            flush();
             File dir = new File( getMetadataDirectory( repoId, facetId ), name );
             FileUtils.deleteDirectory( dir );
         }
@@ -449,57 +533,250 @@ public List<ArtifactMetadata> getArtifactsByDateRange( String repoId, Date start
     {
         try
         {
-            // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-            //  of this information (eg. in Lucene, as before)
+            flush();
+            ArtifactIndex index = getIndex( repoId, WHEN_GATHERED_INDEX );
+            ensureIndexes( repoId, index );
+
+            // buckets are days, compared as yyyyMMdd strings
+            String startBucket = startTime != null ? toDayBucket( startTime ) : null;
+            String endBucket = endTime != null ? toDayBucket( endTime ) : null;
 
             List<ArtifactMetadata> artifacts = new ArrayList<>();
-            for ( String ns : getRootNamespaces( repoId ) )
+            for ( String bucket : index.terms() )
             {
-                getArtifactsByDateRange( artifacts, repoId, ns, startTime, endTime );
+                if ( ( startBucket != null && bucket.compareTo( startBucket ) < 0 ) || ( endBucket != null
+                    && bucket.compareTo( endBucket ) > 0 ) )
+                {
+                    continue;
+                }
+
+                Set<ArtifactKey> keys = index.get( bucket );
+                Set<ArtifactKey> validKeys = new LinkedHashSet<>();
+                for ( Map.Entry<ArtifactKey, ArtifactMetadata> entry : getArtifacts( repoId, keys ).entrySet() )
+                {
+                    ArtifactMetadata artifact = entry.getValue();
+                    if ( artifact.getWhenGathered() == null || !bucket.equals(
+                        toDayBucket( artifact.getWhenGathered() ) ) )
+                    {
+                        // gathered again since, it is in another bucket
+                        continue;
+                    }
+                    validKeys.add( entry.getKey() );
+                    if ( startTime == null || startTime.before( artifact.getWhenGathered() ) )
+                    {
+                        if ( endTime == null || endTime.after( artifact.getWhenGathered() ) )
+                        {
+                            artifacts.add( artifact );
+                        }
+                    }
+                }
+                if ( validKeys.size() < keys.size() )
+                {
+                    // drop the stale and duplicate entries
+                    index.replace( bucket, validKeys );
+                }
             }
             Collections.sort( artifacts, new ArtifactComparator() );
             return artifacts;
         }
-        catch ( MetadataResolutionException e )
+        catch ( IOException | MetadataResolutionException e )
         {
             throw new MetadataRepositoryException( e.getMessage(), e );
         }
     }
 
-    private void getArtifactsByDateRange( List<ArtifactMetadata> artifacts, String repoId, String ns, Date startTime,
-                                          Date endTime )
+    /**
+     * Load the artifacts of index entries, reading each project version only once. Entries for artifacts that no
+     * longer exist are left out.
+     */
+    private Map<ArtifactKey, ArtifactMetadata> getArtifacts( String repoId, Collection<ArtifactKey> keys )
+        throws MetadataResolutionException
+    {
+        Map<String, List<ArtifactKey>> keysByProjectVersion = new LinkedHashMap<>();
+        for ( ArtifactKey key : keys )
+        {
+            List<ArtifactKey> projectVersionKeys = keysByProjectVersion.get( key.getProjectVersionKey() );
+            if ( projectVersionKeys == null )
+            {
+                projectVersionKeys = new ArrayList<>();
+                keysByProjectVersion.put( key.getProjectVersionKey(), projectVersionKeys );
+            }
+            projectVersionKeys.add( key );
+        }
+
+        Map<ArtifactKey, ArtifactMetadata> artifacts = new LinkedHashMap<>();
+        for ( List<ArtifactKey> projectVersionKeys : keysByProjectVersion.values() )
+        {
+            ArtifactKey first = projectVersionKeys.get( 0 );
+            Map<String, ArtifactMetadata> artifactsById = new HashMap<>();
+            for ( ArtifactMetadata artifact : getArtifacts( repoId, first.getNamespace(), first.getProject(),
+                                                            first.getProjectVersion() ) )
+            {
+                artifactsById.put( artifact.getId(), artifact );
+            }
+            for ( ArtifactKey key : projectVersionKeys )
+            {
+                ArtifactMetadata artifact = artifactsById.get( key.getId() );
+                if ( artifact != null )
+                {
+                    artifacts.put( key, artifact );
+                }
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Rebuild the checksum and date indexes of a repository from its content, eg. after the content was changed
+     * outside of this repository implementation. They are also rebuilt when first used.
+     *
+     * @param repoId the repository
+     * @throws MetadataRepositoryException
+     */
+    public void rebuildIndexes( String repoId )
         throws MetadataRepositoryException
     {
         try
         {
-            for ( String namespace : getNamespaces( repoId, ns ) )
+            flush();
+
+            ArtifactIndex checksums = getIndex( repoId, CHECKSUMS_INDEX );
+            ArtifactIndex whenGathered = getIndex( repoId, WHEN_GATHERED_INDEX );
+            ArtifactIndex properties = getIndex( repoId, PROPERTIES_INDEX );
+            checksums.clear();
+            whenGathered.clear();
+            properties.clear();
+
+            for ( ArtifactMetadata artifact : getArtifacts( repoId ) )
             {
-                getArtifactsByDateRange( artifacts, repoId, ns + "." + namespace, startTime, endTime );
+                ArtifactKey key = new ArtifactKey( artifact.getNamespace(), artifact.getProject(),
+                                                   artifact.getProjectVersion(), artifact.getId() );
+                indexArtifact( checksums, whenGathered, key, artifact );
             }
+            for ( String namespace : getRootNamespaces( repoId ) )
+            {
+                indexProperties( properties, repoId, namespace );
+            }
+
+            checksums.markComplete();
+            whenGathered.markComplete();
+            properties.markComplete();
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void indexProperties( ArtifactIndex index, String repoId, String ns )
+        throws IOException, MetadataResolutionException
+    {
+        for ( String namespace : getNamespaces( repoId, ns ) )
+        {
+            indexProperties( index, repoId, ns + "." + namespace );
+        }
 
-            for ( String project : getProjects( repoId, ns ) )
+        for ( String project : getProjects( repoId, ns ) )
+        {
+            for ( String version : getProjectVersions( repoId, ns, project ) )
             {
-                for ( String version : getProjectVersions( repoId, ns, project ) )
+                File directory = new File( getDirectory( repoId ), ns + "/" + project + "/" + version );
+                CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY );
+                for ( Map.Entry<String, String> term : SearchTerms.getTerms(
+                    SearchTerms.getProperties( properties ) ) )
                 {
-                    for ( ArtifactMetadata artifact : getArtifacts( repoId, ns, project, version ) )
-                    {
-                        if ( startTime == null || startTime.before( artifact.getWhenGathered() ) )
-                        {
-                            if ( endTime == null || endTime.after( artifact.getWhenGathered() ) )
-                            {
-                                artifacts.add( artifact );
-                            }
-                        }
-                    }
+                    index.append( term.getKey(), new ArtifactKey( ns, project, version, term.getValue() ) );
                 }
             }
         }
-        catch ( MetadataResolutionException e )
+    }
+
+    private void ensureIndexes( String repoId, ArtifactIndex index )
+        throws MetadataRepositoryException
+    {
+        if ( !index.isComplete() )
         {
-            throw new MetadataRepositoryException( e.getMessage(), e );
+            synchronized ( FileMetadataRepository.class )
+            {
+                if ( !index.isComplete() )
+                {
+                    log.info( "Building the checksum and date indexes of repository {}", repoId );
+                    rebuildIndexes( repoId );
+                }
+            }
         }
     }
 
+    private static void indexArtifact( ArtifactIndex checksums, ArtifactIndex whenGathered, ArtifactKey key,
+                                       ArtifactMetadata artifact )
+        throws IOException
+    {
+        if ( artifact.getMd5() != null )
+        {
+            checksums.add( artifact.getMd5(), key );
+        }
+        if ( artifact.getSha1() != null )
+        {
+            checksums.add( artifact.getSha1(), key );
+        }
+        if ( artifact.getWhenGathered() != null )
+        {
+            whenGathered.append( toDayBucket( artifact.getWhenGathered() ), key );
+        }
+    }
+
+    private void updateIndexes( IndexUpdate update )
+    {
+        try
+        {
+            ArtifactIndex checksums = getIndex( update.repoId, CHECKSUMS_INDEX );
+            if ( update.oldMd5 != null && !update.oldMd5.equals( update.md5 ) )
+            {
+                checksums.remove( update.oldMd5, update.key );
+            }
+            if ( update.oldSha1 != null && !update.oldSha1.equals( update.sha1 ) )
+            {
+                checksums.remove( update.oldSha1, update.key );
+            }
+            if ( update.md5 != null && !update.md5.equals( update.oldMd5 ) )
+            {
+                checksums.add( update.md5, update.key );
+            }
+            if ( update.sha1 != null && !update.sha1.equals( update.oldSha1 ) )
+            {
+                checksums.add( update.sha1, update.key );
+            }
+
+            // the previous date bucket entry becomes stale, it is cleaned up by the next query reading it
+            if ( update.whenGathered != null )
+            {
+                String bucket = toDayBucket( update.whenGathered );
+                if ( update.oldWhenGathered == null || !bucket.equals(
+                    toDayBucket( new Date( Long.parseLong( update.oldWhenGathered ) ) ) ) )
+                {
+                    getIndex( update.repoId, WHEN_GATHERED_INDEX ).append( bucket, update.key );
+                }
+            }
+        }
+        catch ( IOException | NumberFormatException e )
+        {
+            // TODO
+            log.error( "Unable to update the indexes for {}: {}", update.key, e.getMessage(), e );
+        }
+    }
+
+    private void removeFromIndexes( String repoId, ArtifactKey key, Properties properties )
+    {
+        pendingIndexUpdates.add( new IndexUpdate( repoId, key, properties, null, null, null ) );
+    }
+
+    private static String toDayBucket( Date date )
+    {
+        SimpleDateFormat format = new SimpleDateFormat( "yyyyMMdd", Locale.US );
+        format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        return format.format( date );
+    }
+
     @Override
     public Collection<ArtifactMetadata> getArtifacts( String repoId, String namespace, String projectId,
                                                       String projectVersion )
@@ -511,7 +788,7 @@ public Collection<ArtifactMetadata> getArtifacts( String repoId, String namespac
 
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+            CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY );
 
             for ( Map.Entry entry : properties.entrySet() )
             {
@@ -575,24 +852,12 @@ else if ( "facetIds".equals( field ) )
                                 else
                                 {
                                     MetadataFacet facet = factory.createMetadataFacet();
-                                    String prefix = propertyPrefix + facet.getFacetId();
-                                    Map<String, String> map = new HashMap<>();
-                                    for ( Object key : new ArrayList( properties.keySet() ) )
-                                    {
-                                        String property = (String) key;
-                                        if ( property.startsWith( prefix ) )
-                                        {
-                                            map.put( property.substring( prefix.length() + 1 ),
-                                                     properties.getProperty( property ) );
-                                        }
-                                    }
-                                    facet.fromProperties( map );
+                                    String prefix = propertyPrefix + facet.getFacetId() + ":";
+                                    facet.fromProperties( new HashMap<>( properties.getSubProperties( prefix ) ) );
                                     artifact.addFacet( facet );
                                 }
                             }
                         }
-
-                        updateArtifactFacets( artifact, properties );
                     }
                 }
             }
@@ -607,19 +872,191 @@ else if ( "facetIds".equals( field ) )
     @Override
     public void save()
     {
-        // it's all instantly persisted
+        try
+        {
+            flush();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to save the file metadata repository: " + e.getMessage(), e );
+        }
     }
 
     @Override
     public void close()
+        throws MetadataRepositoryException
     {
-        // nothing additional to close
+        // changes were written as they were made before, keep saving the sessions that are not saved explicitly
+        try
+        {
+            flush();
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     @Override
     public void revert()
     {
-        log.warn( "Attempted to revert a session, but the file-based repository storage doesn't support it" );
+        // only discards the changes not written yet: large sessions and removals write them earlier
+        pendingWrites.clear();
+        pendingWriteVersions.clear();
+        pendingIndexUpdates.clear();
+        pendingTermUpdates.clear();
+        staleIndexes.clear();
+    }
+
+    /**
+     * Write the properties files modified by this session, each one to a temporary file which then replaces the
+     * previous one so that readers and crashes never see a partially written file. The indexes are updated once
+     * the files are in place.
+     * <p>
+     * If another session replaced one of the files since this session read it, none of them is replaced and the save
+     * fails: the changes of this session were made on the previous content and would overwrite the other ones. The
+     * caller can revert and apply its changes again on the current content.
+     * </p>
+     * <p>
+     * The changes not written when the save fails stay pending, so that they are written by the next save unless the
+     * session is reverted.
+     * </p>
+     */
+    private void flush()
+        throws IOException
+    {
+        if ( pendingWrites.isEmpty() && pendingIndexUpdates.isEmpty() && pendingTermUpdates.isEmpty() )
+        {
+            return;
+        }
+
+        Map<File, File> temporaryFiles = new LinkedHashMap<>();
+        boolean replaced = false;
+        try
+        {
+            for ( Map.Entry<File, CachedProperties> entry : pendingWrites.entrySet() )
+            {
+                File file = entry.getKey();
+                file.getParentFile().mkdirs();
+                File temporaryFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+                temporaryFiles.put( file, temporaryFile );
+                try (FileChannel channel = FileChannel.open( temporaryFile.toPath(), StandardOpenOption.WRITE );
+                     OutputStream os = Channels.newOutputStream( channel ))
+                {
+                    entry.getValue().store( os, null );
+                    if ( SYNC_WRITES )
+                    {
+                        channel.force( false );
+                    }
+                }
+            }
+
+            synchronized ( SAVE_LOCK )
+            {
+                for ( File file : temporaryFiles.keySet() )
+                {
+                    FileVersion version = pendingWriteVersions.get( file );
+                    if ( version != null && !version.isCurrent( file ) )
+                    {
+                        throw new IOException( "Properties file " + file + " was changed by another session" );
+                    }
+                }
+
+                for ( Iterator<Map.Entry<File, File>> i = temporaryFiles.entrySet().iterator(); i.hasNext(); )
+                {
+                    Map.Entry<File, File> entry = i.next();
+                    File file = entry.getKey();
+                    replaced = true;
+                    try
+                    {
+                        Files.move( entry.getValue().toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE );
+                    }
+                    catch ( AtomicMoveNotSupportedException e )
+                    {
+                        Files.move( entry.getValue().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+                    }
+                    propertiesCache.put( file, pendingWrites.remove( file ) );
+                    pendingWriteVersions.remove( file );
+                    i.remove();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // the files not written stay pending
+            for ( Map.Entry<File, File> entry : temporaryFiles.entrySet() )
+            {
+                propertiesCache.remove( entry.getKey() );
+                Files.deleteIfExists( entry.getValue().toPath() );
+            }
+
+            if ( replaced )
+            {
+                // some files were replaced already, rebuild the indexes from the files rather than guess, once the
+                // pending files are written too
+                for ( IndexUpdate update : pendingIndexUpdates )
+                {
+                    staleIndexes.add( update.repoId );
+                }
+                for ( TermUpdate update : pendingTermUpdates )
+                {
+                    staleIndexes.add( update.repoId );
+                }
+                pendingIndexUpdates.clear();
+                pendingTermUpdates.clear();
+                clearIndexes( staleIndexes );
+            }
+            throw e;
+        }
+
+        if ( !staleIndexes.isEmpty() )
+        {
+            // these indexes are rebuilt from the files rather than updated
+            for ( Iterator<IndexUpdate> i = pendingIndexUpdates.iterator(); i.hasNext(); )
+            {
+                if ( staleIndexes.contains( i.next().repoId ) )
+                {
+                    i.remove();
+                }
+            }
+            for ( Iterator<TermUpdate> i = pendingTermUpdates.iterator(); i.hasNext(); )
+            {
+                if ( staleIndexes.contains( i.next().repoId ) )
+                {
+                    i.remove();
+                }
+            }
+            clearIndexes( staleIndexes );
+            staleIndexes.clear();
+        }
+
+        try
+        {
+            for ( IndexUpdate update : pendingIndexUpdates )
+            {
+                updateIndexes( update );
+            }
+            for ( TermUpdate update : pendingTermUpdates )
+            {
+                getIndex( update.repoId, PROPERTIES_INDEX ).append( update.term, update.key );
+            }
+        }
+        finally
+        {
+            pendingIndexUpdates.clear();
+            pendingTermUpdates.clear();
+        }
+    }
+
+    private void clearIndexes( Set<String> repositoryIds )
+        throws IOException
+    {
+        for ( String repoId : repositoryIds )
+        {
+            getIndex( repoId, CHECKSUMS_INDEX ).clear();
+            getIndex( repoId, WHEN_GATHERED_INDEX ).clear();
+            getIndex( repoId, PROPERTIES_INDEX ).clear();
+        }
     }
 
     @Override
@@ -665,19 +1102,30 @@ public List<ArtifactMetadata> getArtifactsByChecksum( String repositoryId, Strin
     {
         try
         {
-            // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-            //  of this information (eg. in Lucene, as before)
-            // alternatively, we could build a referential tree in the content repository, however it would need some levels
-            // of depth to avoid being too broad to be useful (eg. /repository/checksums/a/ab/abcdef1234567)
+            flush();
+            ArtifactIndex index = getIndex( repositoryId, CHECKSUMS_INDEX );
+            ensureIndexes( repositoryId, index );
 
+            Set<ArtifactKey> keys = index.get( checksum );
+            Set<ArtifactKey> validKeys = new LinkedHashSet<>();
             List<ArtifactMetadata> artifacts = new ArrayList<>();
-            for ( String ns : getRootNamespaces( repositoryId ) )
+            for ( Map.Entry<ArtifactKey, ArtifactMetadata> entry : getArtifacts( repositoryId, keys ).entrySet() )
+            {
+                ArtifactMetadata artifact = entry.getValue();
+                if ( checksum.equals( artifact.getMd5() ) || checksum.equals( artifact.getSha1() ) )
+                {
+                    validKeys.add( entry.getKey() );
+                    artifacts.add( artifact );
+                }
+            }
+            if ( validKeys.size() < keys.size() )
             {
-                getArtifactsByChecksum( artifacts, repositoryId, ns, checksum );
+                // drop the entries of artifacts removed along with their project or namespace
+                index.replace( checksum, validKeys );
             }
             return artifacts;
         }
-        catch ( MetadataResolutionException e )
+        catch ( IOException | MetadataResolutionException e )
         {
             throw new MetadataRepositoryException( e.getMessage(), e );
         }
@@ -689,6 +1137,7 @@ public void removeNamespace( String repositoryId, String project )
     {
         try
         {
+            flush();
             File namespaceDirectory = new File( getDirectory( repositoryId ), project );
             FileUtils.deleteDirectory( namespaceDirectory );
             //Properties properties = new Properties();
@@ -717,6 +1166,10 @@ public void removeArtifact( ArtifactMetadata artifactMetadata, String baseVersio
 
             String id = artifactMetadata.getId();
 
+            removeFromIndexes( artifactMetadata.getRepositoryId(),
+                               new ArtifactKey( artifactMetadata.getNamespace(), artifactMetadata.getProject(),
+                                                baseVersion, id ), properties );
+
             properties.remove( "artifact:updated:" + id );
             properties.remove( "artifact:whenGathered:" + id );
             properties.remove( "artifact:size:" + id );
@@ -750,10 +1203,13 @@ public void removeArtifact( String repoId, String namespace, String project, Str
     {
         try
         {
+            flush();
             File directory = new File( getDirectory( repoId ), namespace + "/" + project + "/" + version );
 
             Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
 
+            removeFromIndexes( repoId, new ArtifactKey( namespace, project, version, id ), properties );
+
             properties.remove( "artifact:updated:" + id );
             properties.remove( "artifact:whenGathered:" + id );
             properties.remove( "artifact:size:" + id );
@@ -805,8 +1261,10 @@ public void removeRepository( String repoId )
     {
         try
         {
+            flush();
             File dir = getDirectory( repoId );
             FileUtils.deleteDirectory( dir );
+            FileUtils.deleteDirectory( new File( getBaseDirectory( repoId ), INDEX_DIRECTORY ) );
         }
         catch ( IOException e )
         {
@@ -814,56 +1272,210 @@ public void removeRepository( String repoId )
         }
     }
 
-    private void getArtifactsByChecksum( List<ArtifactMetadata> artifacts, String repositoryId, String ns,
-                                         String checksum )
-        throws MetadataRepositoryException
-    {
-        try
-        {
-            for ( String namespace : getNamespaces( repositoryId, ns ) )
-            {
-                getArtifactsByChecksum( artifacts, repositoryId, ns + "." + namespace, checksum );
-            }
+    @Override
+    public List<ArtifactMetadata> getArtifactsByProjectVersionMetadata( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, String.valueOf( SearchTerms.PROJECT_VERSION_FACET ), key, value, true );
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByMetadata( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, String.valueOf( SearchTerms.ARTIFACT_FACET ), key, value, true );
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByProperty( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, String.valueOf( SearchTerms.PROJECT_VERSION_PROPERTY ), key, value,
+                              true );
+    }
+
+    /**
+     * Find the artifacts having a property of one of the kinds matching a text, using the property index: each word
+     * of the text gives the project versions or artifacts having that word (or, if not exact, a word starting with it)
+     * in a property value. The candidates found for all the words are then checked against their current properties,
+     * and the stale index entries found along the way are dropped.
+     *
+     * @param kinds the kinds of properties, see {@link SearchTerms}
+     * @param key   the property key, <code>null</code> for any
+     * @param exact whether the whole value must be equal to the text
+     */
+    private List<ArtifactMetadata> findArtifacts( String repositoryId, String kinds, String key, String text,
+                                                  boolean exact )
+        throws MetadataRepositoryException
+    {
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        List<String> words = SearchTerms.getWords( text );
+        if ( words.isEmpty() )
+        {
+            return artifacts;
+        }
+
+        Collection<String> repositoryIds =
+            repositoryId != null ? Collections.singletonList( repositoryId ) : getRepositories();
+        try
+        {
+            flush();
+
+            for ( String repoId : repositoryIds )
+            {
+                ArtifactIndex index = getIndex( repoId, PROPERTIES_INDEX );
+                ensureIndexes( repoId, index );
+
+                // the keys found for all the words, with the terms they were found with
+                Map<ArtifactKey, Set<String>> candidates = null;
+                for ( String word : words )
+                {
+                    Map<ArtifactKey, Set<String>> keys = new LinkedHashMap<>();
+                    for ( String term : index.terms( word ) )
+                    {
+                        if ( SearchTerms.matches( term, word, !exact, kinds, key ) )
+                        {
+                            for ( ArtifactKey artifactKey : index.get( term ) )
+                            {
+                                if ( candidates == null || candidates.containsKey( artifactKey ) )
+                                {
+                                    Set<String> terms = keys.get( artifactKey );
+                                    if ( terms == null )
+                                    {
+                                        terms = new HashSet<>();
+                                        keys.put( artifactKey, terms );
+                                    }
+                                    terms.add( term );
+                                }
+                            }
+                        }
+                    }
+                    if ( candidates != null )
+                    {
+                        for ( Map.Entry<ArtifactKey, Set<String>> entry : keys.entrySet() )
+                        {
+                            entry.getValue().addAll( candidates.get( entry.getKey() ) );
+                        }
+                    }
+                    candidates = keys;
+                }
+
+                Map<String, List<ArtifactKey>> keysByProjectVersion = new LinkedHashMap<>();
+                for ( ArtifactKey candidate : candidates.keySet() )
+                {
+                    List<ArtifactKey> projectVersionKeys = keysByProjectVersion.get( candidate.getProjectVersionKey() );
+                    if ( projectVersionKeys == null )
+                    {
+                        projectVersionKeys = new ArrayList<>();
+                        keysByProjectVersion.put( candidate.getProjectVersionKey(), projectVersionKeys );
+                    }
+                    projectVersionKeys.add( candidate );
+                }
 
-            for ( String project : getProjects( repositoryId, ns ) )
-            {
-                for ( String version : getProjectVersions( repositoryId, ns, project ) )
+                Map<String, Set<ArtifactKey>> staleKeys = new HashMap<>();
+                for ( List<ArtifactKey> projectVersionKeys : keysByProjectVersion.values() )
                 {
-                    for ( ArtifactMetadata artifact : getArtifacts( repositoryId, ns, project, version ) )
+                    ArtifactKey first = projectVersionKeys.get( 0 );
+                    File directory = new File( getDirectory( repoId ),
+                                               first.getNamespace() + "/" + first.getProject() + "/"
+                                                   + first.getProjectVersion() );
+                    List<SearchTerms.Property> properties = SearchTerms.getProperties(
+                        readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY ) );
+                    Set<Map.Entry<String, String>> currentTerms = SearchTerms.getTerms( properties );
+
+                    Set<String> matchingIds = new HashSet<>();
+                    for ( ArtifactKey candidate : projectVersionKeys )
                     {
-                        if ( checksum.equals( artifact.getMd5() ) || checksum.equals( artifact.getSha1() ) )
+                        for ( String term : candidates.get( candidate ) )
                         {
-                            artifacts.add( artifact );
+                            if ( !currentTerms.contains(
+                                new AbstractMap.SimpleImmutableEntry<>( term, candidate.getId() ) ) )
+                            {
+                                Set<ArtifactKey> keys = staleKeys.get( term );
+                                if ( keys == null )
+                                {
+                                    keys = new HashSet<>();
+                                    staleKeys.put( term, keys );
+                                }
+                                keys.add( candidate );
+                            }
+                        }
+                        if ( matches( properties, candidate.getId(), kinds, key, text, words, exact ) )
+                        {
+                            matchingIds.add( candidate.getId() );
+                        }
+                    }
+
+                    if ( !matchingIds.isEmpty() )
+                    {
+                        for ( ArtifactMetadata artifact : getArtifacts( repoId, first.getNamespace(),
+                                                                        first.getProject(),
+                                                                        first.getProjectVersion() ) )
+                        {
+                            // an empty id stands for all the artifacts of a project version
+                            if ( matchingIds.contains( "" ) || matchingIds.contains( artifact.getId() ) )
+                            {
+                                artifacts.add( artifact );
+                            }
                         }
                     }
                 }
+
+                for ( Map.Entry<String, Set<ArtifactKey>> entry : staleKeys.entrySet() )
+                {
+                    Set<ArtifactKey> keys = index.get( entry.getKey() );
+                    keys.removeAll( entry.getValue() );
+                    index.replace( entry.getKey(), keys );
+                }
             }
         }
-        catch ( MetadataResolutionException e )
+        catch ( IOException | MetadataResolutionException e )
         {
             throw new MetadataRepositoryException( e.getMessage(), e );
         }
+        return artifacts;
     }
 
-    @Override
-    public List<ArtifactMetadata> getArtifactsByProjectVersionMetadata( String key, String value, String repositoryId )
-        throws MetadataRepositoryException
-    {
-        throw new UnsupportedOperationException( "not yet implemented in File backend" );
-    }
-
-    @Override
-    public List<ArtifactMetadata> getArtifactsByMetadata( String key, String value, String repositoryId )
-        throws MetadataRepositoryException
-    {
-        throw new UnsupportedOperationException( "not yet implemented in File backend" );
-    }
-
-    @Override
-    public List<ArtifactMetadata> getArtifactsByProperty( String key, String value, String repositoryId )
-        throws MetadataRepositoryException
+    /**
+     * @return whether a property of the project version, or of the artifact, matches the text
+     */
+    private static boolean matches( List<SearchTerms.Property> properties, String artifactId, String kinds,
+                                    String key, String text, List<String> words, boolean exact )
     {
-        throw new UnsupportedOperationException( "getArtifactsByProperty not yet implemented in File backend" );
+        List<String> valueWords = new ArrayList<>();
+        for ( SearchTerms.Property property : properties )
+        {
+            if ( property.getArtifactId().equals( artifactId ) && kinds.indexOf( property.getKind() ) >= 0 && (
+                key == null || key.equals( property.getKey() ) ) )
+            {
+                if ( exact && text.equals( property.getValue() ) )
+                {
+                    return true;
+                }
+                valueWords.addAll( SearchTerms.getWords( property.getValue() ) );
+            }
+        }
+        if ( exact )
+        {
+            return false;
+        }
+        for ( String word : words )
+        {
+            boolean found = false;
+            for ( String valueWord : valueWords )
+            {
+                if ( valueWord.startsWith( word ) )
+                {
+                    found = true;
+                    break;
+                }
+            }
+            if ( !found )
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     private File getMetadataDirectory( String repoId, String facetId )
@@ -898,53 +1510,154 @@ private void setProperty( Properties properties, String name, String value )
     @Override
     public void updateArtifact( String repoId, String namespace, String projectId, String projectVersion,
                                 ArtifactMetadata artifact )
+        throws MetadataRepositoryException
     {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( projectVersion );
+        updateProjectVersion( repoId, namespace, projectId, metadata );
+
         try
         {
-            ProjectVersionMetadata metadata = new ProjectVersionMetadata();
-            metadata.setId( projectVersion );
-            updateProjectVersion( repoId, namespace, projectId, metadata );
-
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
             Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
 
-            clearMetadataFacetProperties( artifact.getFacetList(), properties,
-                                          "artifact:facet:" + artifact.getId() + ":" );
+            // pending before the write, which may flush the session
+            pendingIndexUpdates.add(
+                setArtifactProperties( repoId, namespace, projectId, projectVersion, artifact, properties ) );
+
+            writeProjectVersionProperties( repoId, namespace, projectId, projectVersion, properties, directory );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Set the properties of an artifact in the properties of its project version.
+     *
+     * @return the change of the indexes, to apply once the properties are written
+     */
+    private IndexUpdate setArtifactProperties( String repoId, String namespace, String projectId,
+                                               String projectVersion, ArtifactMetadata artifact,
+                                               Properties properties )
+    {
+        String id = artifact.getId();
+        IndexUpdate indexUpdate =
+            new IndexUpdate( repoId, new ArtifactKey( namespace, projectId, projectVersion, id ), properties,
+                             artifact.getMd5(), artifact.getSha1(), artifact.getWhenGathered() );
+
+        clearMetadataFacetProperties( artifact.getFacetList(), properties, "artifact:facet:" + id + ":" );
 
-            String id = artifact.getId();
-            properties.setProperty( "artifact:updated:" + id,
-                                    Long.toString( artifact.getFileLastModified().getTime() ) );
-            properties.setProperty( "artifact:whenGathered:" + id,
-                                    Long.toString( artifact.getWhenGathered().getTime() ) );
-            properties.setProperty( "artifact:size:" + id, Long.toString( artifact.getSize() ) );
-            if ( artifact.getMd5() != null )
+        properties.setProperty( "artifact:updated:" + id, Long.toString( artifact.getFileLastModified().getTime() ) );
+        properties.setProperty( "artifact:whenGathered:" + id, Long.toString( artifact.getWhenGathered().getTime() ) );
+        properties.setProperty( "artifact:size:" + id, Long.toString( artifact.getSize() ) );
+        if ( artifact.getMd5() != null )
+        {
+            properties.setProperty( "artifact:md5:" + id, artifact.getMd5() );
+        }
+        if ( artifact.getSha1() != null )
+        {
+            properties.setProperty( "artifact:sha1:" + id, artifact.getSha1() );
+        }
+        properties.setProperty( "artifact:version:" + id, artifact.getVersion() );
+
+        Set<String> facetIds = new LinkedHashSet<String>( artifact.getFacetIds() );
+        String property = "artifact:facetIds:" + id;
+        facetIds.addAll( Arrays.asList( properties.getProperty( property, "" ).split( "," ) ) );
+        properties.setProperty( property, join( facetIds ) );
+
+        updateArtifactFacets( artifact, properties );
+
+        return indexUpdate;
+    }
+
+    /**
+     * Groups the updates by project version, so that the properties of each project version are read, compared with
+     * the previous ones for the property index and written once for the whole batch rather than once per update.
+     */
+    @Override
+    public void updateMetadata( String repoId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        Map<String, List<MetadataUpdate>> projectVersions = new LinkedHashMap<>();
+        for ( MetadataUpdate update : updates )
+        {
+            String key = update.getNamespace() + "/" + update.getProjectId() + "/" + update.getProjectVersion();
+            List<MetadataUpdate> projectVersionUpdates = projectVersions.get( key );
+            if ( projectVersionUpdates == null )
             {
-                properties.setProperty( "artifact:md5:" + id, artifact.getMd5() );
+                projectVersionUpdates = new ArrayList<>();
+                projectVersions.put( key, projectVersionUpdates );
             }
-            if ( artifact.getSha1() != null )
+            projectVersionUpdates.add( update );
+        }
+
+        for ( Map.Entry<String, List<MetadataUpdate>> entry : projectVersions.entrySet() )
+        {
+            MetadataUpdate first = entry.getValue().get( 0 );
+            String namespace = first.getNamespace();
+            String projectId = first.getProjectId();
+            String projectVersion = first.getProjectVersion();
+            try
             {
-                properties.setProperty( "artifact:sha1:" + id, artifact.getSha1() );
-            }
-            properties.setProperty( "artifact:version:" + id, artifact.getVersion() );
+                updateProject( repoId, namespace, projectId );
 
-            Set<String> facetIds = new LinkedHashSet<String>( artifact.getFacetIds() );
-            String property = "artifact:facetIds:" + id;
-            facetIds.addAll( Arrays.asList( properties.getProperty( property, "" ).split( "," ) ) );
-            properties.setProperty( property, join( facetIds ) );
+                File directory = new File( getDirectory( repoId ), entry.getKey() );
 
-            updateArtifactFacets( artifact, properties );
+                Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+                List<IndexUpdate> indexUpdates = new ArrayList<>();
+                for ( MetadataUpdate update : entry.getValue() )
+                {
+                    if ( update.getArtifact() != null )
+                    {
+                        indexUpdates.add(
+                            setArtifactProperties( repoId, namespace, projectId, projectVersion, update.getArtifact(),
+                                                   properties ) );
+                    }
+                    ProjectVersionMetadata versionMetadata = update.getProjectVersionMetadata();
+                    if ( versionMetadata == null && update.getArtifact() != null )
+                    {
+                        // as updateArtifact() does
+                        versionMetadata = new ProjectVersionMetadata();
+                        versionMetadata.setId( projectVersion );
+                    }
+                    if ( versionMetadata != null )
+                    {
+                        setProjectVersionProperties( repoId, namespace, projectId, versionMetadata, properties );
+                    }
+                }
 
-            writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
-        }
-        catch ( IOException e )
-        {
-            // TODO
-            log.error( e.getMessage(), e );
+                // pending before the write, which may flush the session
+                pendingIndexUpdates.addAll( indexUpdates );
+
+                writeProjectVersionProperties( repoId, namespace, projectId, projectVersion, properties, directory );
+            }
+            catch ( IOException e )
+            {
+                throw new MetadataRepositoryException( e.getMessage(), e );
+            }
         }
     }
 
+    /**
+     * Read a properties file to modify it.
+     *
+     * @return a modifiable copy of the properties, empty if the file doesn't exist
+     */
     private Properties readOrCreateProperties( File directory, String propertiesKey )
+    {
+        CachedProperties properties = readOrCreateCachedProperties( directory, propertiesKey );
+        return properties.isEmpty() ? new Properties() : properties.copy();
+    }
+
+    /**
+     * Read a properties file, sharing the parsed content with the other readers.
+     *
+     * @return the read only properties, empty if the file doesn't exist
+     */
+    private CachedProperties readOrCreateCachedProperties( File directory, String propertiesKey )
     {
         try
         {
@@ -959,19 +1672,15 @@ private Properties readOrCreateProperties( File directory, String propertiesKey
             // TODO
             log.error( e.getMessage(), e );
         }
-        return new Properties();
+        return EMPTY_PROPERTIES;
     }
 
-    private Properties readProperties( File directory, String propertiesKey )
+    private CachedProperties readProperties( File directory, String propertiesKey )
         throws IOException
     {
-        Properties properties = new Properties();
-        try (InputStream in = Files.newInputStream( new File( directory, propertiesKey + ".properties" ).toPath() ))
-        {
-
-            properties.load( in );
-        }
-        return properties;
+        File file = new File( directory, propertiesKey + ".properties" );
+        CachedProperties properties = pendingWrites.get( file );
+        return properties != null ? properties : propertiesCache.get( file );
     }
 
     @Override
@@ -982,7 +1691,7 @@ public ProjectMetadata getProject( String repoId, String namespace, String proje
         {
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_METADATA_KEY );
+            CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_METADATA_KEY );
 
             ProjectMetadata project = null;
 
@@ -1011,7 +1720,7 @@ public ProjectVersionMetadata getProjectVersion( String repoId, String namespace
         {
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+            CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY );
             String id = properties.getProperty( "id" );
             ProjectVersionMetadata versionMetadata = null;
             if ( id != null )
@@ -1158,23 +1867,12 @@ public ProjectVersionMetadata getProjectVersion( String repoId, String namespace
                         else
                         {
                             MetadataFacet facet = factory.createMetadataFacet();
-                            Map<String, String> map = new HashMap<>();
-                            for ( Object key : new ArrayList( properties.keySet() ) )
-                            {
-                                String property = (String) key;
-                                if ( property.startsWith( facet.getFacetId() ) )
-                                {
-                                    map.put( property.substring( facet.getFacetId().length() + 1 ),
-                                             properties.getProperty( property ) );
-                                }
-                            }
-                            facet.fromProperties( map );
+                            String prefix = facet.getFacetId() + ":";
+                            facet.fromProperties( new HashMap<>( properties.getSubProperties( prefix ) ) );
                             versionMetadata.addFacet( facet );
                         }
                     }
                 }
-
-                updateProjectVersionFacets( versionMetadata, properties );
             }
             return versionMetadata;
         }
@@ -1193,7 +1891,7 @@ public Collection<String> getArtifactVersions( String repoId, String namespace,
         {
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+            CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY );
 
             Set<String> versions = new HashSet<String>();
             for ( Map.Entry entry : properties.entrySet() )
@@ -1221,7 +1919,7 @@ public Collection<ProjectVersionReference> getProjectReferences( String repoId,
         {
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
 
-            Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
+            CachedProperties properties = readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY );
             int numberOfRefs = Integer.parseInt( properties.getProperty( "ref:lastReferenceNum", "-1" ) ) + 1;
 
             List<ProjectVersionReference> references = new ArrayList<>();
@@ -1256,23 +1954,9 @@ public Collection<String> getNamespaces( String repoId, String baseNamespace )
     {
         try
         {
-            List<String> allNamespaces = new ArrayList<>();
-            File directory = getDirectory( repoId );
-            File[] files = directory.listFiles();
-            if ( files != null )
-            {
-                for ( File namespace : files )
-                {
-                    if ( new File( namespace, NAMESPACE_METADATA_KEY + ".properties" ).exists() )
-                    {
-                        allNamespaces.add( namespace.getName() );
-                    }
-                }
-            }
-
             Set<String> namespaces = new LinkedHashSet<>();
             int fromIndex = baseNamespace != null ? baseNamespace.length() + 1 : 0;
-            for ( String namespace : allNamespaces )
+            for ( String namespace : getAllNamespaces( repoId ) )
             {
                 if ( baseNamespace == null || namespace.startsWith( baseNamespace + "." ) )
                 {
@@ -1295,6 +1979,28 @@ public Collection<String> getNamespaces( String repoId, String baseNamespace )
         }
     }
 
+    /**
+     * @return the full names of the namespaces of a repository
+     */
+    private List<String> getAllNamespaces( String repoId )
+        throws IOException
+    {
+        List<String> allNamespaces = new ArrayList<>();
+        File directory = getDirectory( repoId );
+        File[] files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File namespace : files )
+            {
+                if ( exists( namespace, NAMESPACE_METADATA_KEY ) )
+                {
+                    allNamespaces.add( namespace.getName() );
+                }
+            }
+        }
+        return allNamespaces;
+    }
+
     @Override
     public Collection<String> getProjects( String repoId, String namespace )
         throws MetadataResolutionException
@@ -1308,7 +2014,7 @@ public Collection<String> getProjects( String repoId, String namespace )
             {
                 for ( File project : files )
                 {
-                    if ( new File( project, PROJECT_METADATA_KEY + ".properties" ).exists() )
+                    if ( exists( project, PROJECT_METADATA_KEY ) )
                     {
                         projects.add( project.getName() );
                     }
@@ -1335,7 +2041,7 @@ public Collection<String> getProjectVersions( String repoId, String namespace, S
             {
                 for ( File projectVersion : files )
                 {
-                    if ( new File( projectVersion, PROJECT_VERSION_METADATA_KEY + ".properties" ).exists() )
+                    if ( exists( projectVersion, PROJECT_VERSION_METADATA_KEY ) )
                     {
                         projectVersions.add( projectVersion.getName() );
                     }
@@ -1355,6 +2061,7 @@ public void removeProject( String repositoryId, String namespace, String project
     {
         try
         {
+            flush();
             File directory = new File( getDirectory( repositoryId ), namespace + "/" + projectId );
             FileUtils.deleteDirectory( directory );
         }
@@ -1370,6 +2077,7 @@ public void removeProjectVersion( String repoId, String namespace, String projec
     {
         try
         {
+            flush();
             File directory = new File( getDirectory( repoId ), namespace + "/" + projectId + "/" + projectVersion );
             FileUtils.deleteDirectory( directory );
         }
@@ -1380,13 +2088,131 @@ public void removeProjectVersion( String repoId, String namespace, String projec
 
     }
 
+    /**
+     * Write the properties of a project version, adding the terms of its new property values to the property index.
+     * The terms of the values no longer there are left in the index, queries check and clean them up.
+     */
+    private void writeProjectVersionProperties( String repoId, String namespace, String projectId,
+                                                String projectVersion, Properties properties, File directory )
+        throws IOException
+    {
+        Set<Map.Entry<String, String>> terms = SearchTerms.getTerms( SearchTerms.getProperties( properties ) );
+        terms.removeAll( SearchTerms.getTerms(
+            SearchTerms.getProperties( readOrCreateCachedProperties( directory, PROJECT_VERSION_METADATA_KEY ) ) ) );
+        for ( Map.Entry<String, String> term : terms )
+        {
+            pendingTermUpdates.add( new TermUpdate( repoId, term.getKey(),
+                                                    new ArtifactKey( namespace, projectId, projectVersion,
+                                                                     term.getValue() ) ) );
+        }
+
+        writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+    }
+
+    /**
+     * Keep the new content of a properties file until the session is saved. The directory is created straight away
+     * so that the listings of this session include it.
+     */
     private void writeProperties( Properties properties, File directory, String propertiesKey )
         throws IOException
     {
+        File file = new File( directory, propertiesKey + ".properties" );
+        // taken before reading the file so that a change made meanwhile is detected rather than overwritten
+        FileVersion version = pendingWrites.containsKey( file ) ? null : new FileVersion( file );
+        CachedProperties current = readOrCreateCachedProperties( directory, propertiesKey );
+        if ( current != EMPTY_PROPERTIES && current.equals( properties ) )
+        {
+            // eg. the namespace and project files, updated along with each project version
+            return;
+        }
+
         directory.mkdirs();
-        try (OutputStream os = Files.newOutputStream( new File( directory, propertiesKey + ".properties" ).toPath() ))
+        pendingWrites.put( file, new CachedProperties( properties ) );
+        if ( version != null )
+        {
+            pendingWriteVersions.put( file, version );
+        }
+        if ( pendingWrites.size() >= MAX_PENDING_WRITES )
+        {
+            flush();
+        }
+    }
+
+    private boolean exists( File directory, String propertiesKey )
+    {
+        File file = new File( directory, propertiesKey + ".properties" );
+        return pendingWrites.containsKey( file ) || file.exists();
+    }
+
+    /**
+     * The length and modification time of a file, both <code>0</code> if it doesn't exist.
+     */
+    private static class FileVersion
+    {
+        private final long length;
+
+        private final long lastModified;
+
+        FileVersion( File file )
+        {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean isCurrent( File file )
+        {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * The checksums and date of an artifact before and after a change, <code>null</code> after a removal.
+     */
+    private static class IndexUpdate
+    {
+        private final String repoId;
+
+        private final ArtifactKey key;
+
+        private final String oldMd5;
+
+        private final String oldSha1;
+
+        private final String oldWhenGathered;
+
+        private final String md5;
+
+        private final String sha1;
+
+        private final Date whenGathered;
+
+        private IndexUpdate( String repoId, ArtifactKey key, Properties oldProperties, String md5, String sha1,
+                             Date whenGathered )
+        {
+            this.repoId = repoId;
+            this.key = key;
+            this.oldMd5 = oldProperties.getProperty( "artifact:md5:" + key.getId() );
+            this.oldSha1 = oldProperties.getProperty( "artifact:sha1:" + key.getId() );
+            this.oldWhenGathered = oldProperties.getProperty( "artifact:whenGathered:" + key.getId() );
+            this.md5 = md5;
+            this.sha1 = sha1;
+            this.whenGathered = whenGathered != null ? new Date( whenGathered.getTime() ) : null;
+        }
+    }
+
+    private static class TermUpdate
+    {
+        private final String repoId;
+
+        private final String term;
+
+        private final ArtifactKey key;
+
+        private TermUpdate( String repoId, String term, ArtifactKey key )
         {
-            properties.store( os, null );
+            this.repoId = repoId;
+            this.term = term;
+            this.key = key;
         }
     }
 
@@ -1431,6 +2257,85 @@ public List<ArtifactMetadata> getArtifacts( String repoId )
         }
     }
 
+    /**
+     * Go through the namespace, project and project version directories in name order, the page token being the
+     * namespace, project, project version and id of the last artifact of the previous page.
+     */
+    @Override
+    public ArtifactMetadataPage getArtifacts( String repoId, String pageToken, int limit )
+        throws MetadataRepositoryException
+    {
+        if ( limit <= 0 )
+        {
+            throw new IllegalArgumentException( "The limit of a page must be greater than 0: " + limit );
+        }
+        String[] start = pageToken != null ? pageToken.split( "/", 4 ) : null;
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( String namespace : sort( getAllNamespaces( repoId ) ) )
+            {
+                if ( start != null && namespace.compareTo( start[0] ) < 0 )
+                {
+                    continue;
+                }
+                boolean startNamespace = start != null && namespace.equals( start[0] );
+                for ( String project : sort( getProjects( repoId, namespace ) ) )
+                {
+                    if ( startNamespace && project.compareTo( start[1] ) < 0 )
+                    {
+                        continue;
+                    }
+                    boolean startProject = startNamespace && project.equals( start[1] );
+                    for ( String version : sort( getProjectVersions( repoId, namespace, project ) ) )
+                    {
+                        if ( startProject && version.compareTo( start[2] ) < 0 )
+                        {
+                            continue;
+                        }
+                        boolean startVersion = startProject && version.equals( start[2] );
+                        List<ArtifactMetadata> versionArtifacts =
+                            new ArrayList<>( getArtifacts( repoId, namespace, project, version ) );
+                        Collections.sort( versionArtifacts, new Comparator<ArtifactMetadata>()
+                        {
+                            @Override
+                            public int compare( ArtifactMetadata artifact1, ArtifactMetadata artifact2 )
+                            {
+                                return artifact1.getId().compareTo( artifact2.getId() );
+                            }
+                        } );
+                        for ( ArtifactMetadata artifact : versionArtifacts )
+                        {
+                            if ( startVersion && artifact.getId().compareTo( start[3] ) <= 0 )
+                            {
+                                continue;
+                            }
+                            if ( artifacts.size() == limit )
+                            {
+                                ArtifactMetadata last = artifacts.get( limit - 1 );
+                                return new ArtifactMetadataPage( artifacts, last.getNamespace() + "/"
+                                    + last.getProject() + "/" + last.getProjectVersion() + "/" + last.getId() );
+                            }
+                            artifacts.add( artifact );
+                        }
+                    }
+                }
+            }
+            return new ArtifactMetadataPage( artifacts, null );
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private static List<String> sort( Collection<String> names )
+    {
+        List<String> list = new ArrayList<>( names );
+        Collections.sort( list );
+        return list;
+    }
+
     private void getArtifacts( List<ArtifactMetadata> artifacts, String repoId, String ns )
         throws MetadataResolutionException
     {
@@ -1455,13 +2360,18 @@ private void getArtifacts( List<ArtifactMetadata> artifacts, String repoId, Stri
     public List<ArtifactMetadata> searchArtifacts( String text, String repositoryId, boolean exact )
         throws MetadataRepositoryException
     {
-        throw new UnsupportedOperationException( "searchArtifacts not yet implemented in File backend" );
+        return searchArtifacts( null, text, repositoryId, exact );
     }
 
+    /**
+     * Search the project version properties and facets. Unless exact, each word of the text must start a word of the
+     * values.
+     */
     @Override
     public List<ArtifactMetadata> searchArtifacts( String key, String text, String repositoryId, boolean exact )
         throws MetadataRepositoryException
     {
-        throw new UnsupportedOperationException( "searchArtifacts not yet implemented in File backend" );
+        return findArtifacts( repositoryId, String.valueOf( new char[]{ SearchTerms.PROJECT_VERSION_PROPERTY,
+            SearchTerms.PROJECT_VERSION_FACET } ), key, text, exact );
     }
 }
@@ -63,6 +63,10 @@
     @Inject
     private ApplicationContext applicationContext;
 
+    @Inject
+    @Named( value = "propertiesCache#file" )
+    private PropertiesCache propertiesCache;
+
     @PostConstruct
     public void initialize()
     {
@@ -83,7 +87,8 @@ public void initialize()
     @Override
     public RepositorySession createSession()
     {
-        MetadataRepository metadataRepository = new FileMetadataRepository( metadataFacetFactories, configuration );
+        MetadataRepository metadataRepository =
+            new FileMetadataRepository( metadataFacetFactories, configuration, propertiesCache );
 
         return new RepositorySession( metadataRepository, metadataResolver );
     }
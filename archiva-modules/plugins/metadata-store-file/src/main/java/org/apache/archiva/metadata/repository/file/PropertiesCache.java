@@ -0,0 +1,146 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.components.cache.Cache;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PropertiesCache - the parsed properties files of the file metadata repository, shared by all the repository
+ * sessions, kept in the <code>cache#fileMetadataProperties</code> cache by absolute path.
+ * <p>
+ * Each file is parsed once and then served from the cache until it is replaced: the length and the modification time
+ * of the file are compared with the ones it had when it was parsed or written by a session.
+ * </p>
+ *
+ * @since 2.2.3
+ */
+@Service( "propertiesCache#file" )
+public class PropertiesCache
+{
+    private final Cache<String, CacheEntry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public PropertiesCache( @Named( "cache#fileMetadataProperties" ) Cache<String, CacheEntry> cache )
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Get the read only content of a properties file, parsing it if it isn't known or has changed.
+     *
+     * @throws NoSuchFileException if the file doesn't exist
+     */
+    CachedProperties get( File file )
+        throws IOException
+    {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        CacheEntry entry = cache.get( key );
+        if ( entry != null && lastModified != 0L && entry.lastModified == lastModified && entry.length == length )
+        {
+            hits.incrementAndGet();
+            return entry.properties;
+        }
+        misses.incrementAndGet();
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream( file.toPath() ))
+        {
+            properties.load( in );
+        }
+        catch ( NoSuchFileException e )
+        {
+            remove( file );
+            throw e;
+        }
+        CachedProperties cached = new CachedProperties( properties );
+        cache.put( key, new CacheEntry( lastModified, length, cached ) );
+        return cached;
+    }
+
+    /**
+     * Register the content just written to a properties file by the repository.
+     */
+    void put( File file, CachedProperties properties )
+    {
+        cache.put( file.getAbsolutePath(), new CacheEntry( file.lastModified(), file.length(), properties ) );
+    }
+
+    void remove( File file )
+    {
+        cache.remove( file.getAbsolutePath() );
+    }
+
+    public void clear()
+    {
+        cache.clear();
+        hits.set( 0 );
+        misses.set( 0 );
+    }
+
+    /**
+     * @return the number of reads served from the cache
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of reads that had to parse the file
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    static class CacheEntry
+    {
+        private final long lastModified;
+
+        private final long length;
+
+        private final CachedProperties properties;
+
+        private CacheEntry( long lastModified, long length, CachedProperties properties )
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.properties = properties;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The terms of the property index of the file metadata repository. A term is a lower case word of a property value,
+ * followed by the kind and the key of the property, eg. <code>apache\tporg.name</code>, so that the terms of a word, or
+ * of the words starting with a given text, sort together.
+ */
+final class SearchTerms
+{
+    /**
+     * Project version properties, eg. <code>url</code> or <code>scm.url</code>.
+     */
+    static final char PROJECT_VERSION_PROPERTY = 'p';
+
+    /**
+     * Properties of the project version facets.
+     */
+    static final char PROJECT_VERSION_FACET = 'v';
+
+    /**
+     * Properties of the artifact facets.
+     */
+    static final char ARTIFACT_FACET = 'a';
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String ARTIFACT_FACET_PREFIX = "artifact:facet:";
+
+    private SearchTerms()
+    {
+        // no op
+    }
+
+    /**
+     * A searchable property of a project version, or of one of its artifacts.
+     */
+    static final class Property
+    {
+        private final char kind;
+
+        private final String key;
+
+        private final String artifactId;
+
+        private final String value;
+
+        private Property( char kind, String key, String artifactId, String value )
+        {
+            this.kind = kind;
+            this.key = key;
+            this.artifactId = artifactId;
+            this.value = value;
+        }
+
+        char getKind()
+        {
+            return kind;
+        }
+
+        String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * @return the artifact of an artifact facet property, an empty string for the project version properties
+         */
+        String getArtifactId()
+        {
+            return artifactId;
+        }
+
+        String getValue()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Get the searchable properties of the content of a <code>version-metadata.properties</code> file. The artifact
+     * fields, the references and the dependencies are left out.
+     */
+    static List<Property> getProperties( Properties properties )
+    {
+        Set<String> facetIds = new HashSet<>( Arrays.asList( properties.getProperty( "facetIds", "" ).split( "," ) ) );
+
+        List<Property> result = new ArrayList<>();
+        for ( String name : properties.stringPropertyNames() )
+        {
+            int separator = name.indexOf( ':' );
+            if ( separator < 0 )
+            {
+                if ( !name.equals( "id" ) && !name.equals( "incomplete" ) && !name.equals( "facetIds" )
+                    && !name.startsWith( "dependency." ) )
+                {
+                    result.add( new Property( PROJECT_VERSION_PROPERTY, name, "", properties.getProperty( name ) ) );
+                }
+            }
+            else if ( name.startsWith( ARTIFACT_FACET_PREFIX ) )
+            {
+                // artifact:facet:<artifact id>:<facet id>:<key>
+                int idEnd = name.indexOf( ':', ARTIFACT_FACET_PREFIX.length() );
+                int facetIdEnd = idEnd < 0 ? -1 : name.indexOf( ':', idEnd + 1 );
+                if ( facetIdEnd > 0 )
+                {
+                    result.add( new Property( ARTIFACT_FACET, name.substring( facetIdEnd + 1 ),
+                                              name.substring( ARTIFACT_FACET_PREFIX.length(), idEnd ),
+                                              properties.getProperty( name ) ) );
+                }
+            }
+            else if ( separator > 0 && facetIds.contains( name.substring( 0, separator ) ) )
+            {
+                // <facet id>:<key>
+                result.add( new Property( PROJECT_VERSION_FACET, name.substring( separator + 1 ), "",
+                                          properties.getProperty( name ) ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the terms of the properties, along with the artifact each one belongs to
+     */
+    static Set<Map.Entry<String, String>> getTerms( List<Property> properties )
+    {
+        Set<Map.Entry<String, String>> terms = new LinkedHashSet<>();
+        for ( Property property : properties )
+        {
+            for ( String word : getWords( property.value ) )
+            {
+                terms.add( new AbstractMap.SimpleImmutableEntry<>( toTerm( word, property.kind, property.key ),
+                                                                   property.artifactId ) );
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Split a value in lower case words. A value without any letter or digit is kept as a single word.
+     */
+    static List<String> getWords( String value )
+    {
+        List<String> words = new ArrayList<>();
+        String text = value.toLowerCase( Locale.ENGLISH );
+        int start = -1;
+        for ( int i = 0; i <= text.length(); i++ )
+        {
+            if ( i < text.length() && Character.isLetterOrDigit( text.charAt( i ) ) )
+            {
+                if ( start < 0 )
+                {
+                    start = i;
+                }
+            }
+            else if ( start >= 0 )
+            {
+                words.add( text.substring( start, i ) );
+                start = -1;
+            }
+        }
+        if ( words.isEmpty() )
+        {
+            String trimmed = text.trim();
+            if ( trimmed.length() > 0 && trimmed.indexOf( SEPARATOR ) < 0 && trimmed.indexOf( '\n' ) < 0
+                && trimmed.indexOf( '\r' ) < 0 )
+            {
+                words.add( trimmed );
+            }
+        }
+        return words;
+    }
+
+    static String toTerm( String word, char kind, String key )
+    {
+        return word + SEPARATOR + kind + key;
+    }
+
+    /**
+     * @return whether the term is for a word (or a word starting with the text if <code>prefix</code> is set), of a
+     *         property of one of the kinds and, unless <code>null</code>, of that key
+     */
+    static boolean matches( String term, String word, boolean prefix, String kinds, String key )
+    {
+        int separator = term.lastIndexOf( SEPARATOR );
+        if ( separator < 0 || separator + 1 >= term.length() )
+        {
+            return false;
+        }
+        String termWord = term.substring( 0, separator );
+        if ( prefix ? !termWord.startsWith( word ) : !termWord.equals( word ) )
+        {
+            return false;
+        }
+        if ( kinds.indexOf( term.charAt( separator + 1 ) ) < 0 )
+        {
+            return false;
+        }
+        return key == null || key.equals( term.substring( separator + 2 ) );
+    }
+}
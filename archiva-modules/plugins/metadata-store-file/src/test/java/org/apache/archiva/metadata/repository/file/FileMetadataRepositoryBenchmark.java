@@ -0,0 +1,60 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.util.HashMap;
+
+public class FileMetadataRepositoryBenchmark
+    extends AbstractMetadataRepositoryBenchmark
+{
+    @Inject
+    @Named( value = "propertiesCache#file" )
+    private PropertiesCache propertiesCache;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        File directory = new File( "target/benchmark-repositories" );
+        FileUtils.deleteDirectory( directory );
+
+        propertiesCache.clear();
+        this.repository = new FileMetadataRepository( new HashMap<String, MetadataFacetFactory>(),
+                                                      FileMetadataRepositoryTest.createTestConfiguration(
+                                                          directory, REPO_ID ), propertiesCache );
+    }
+
+    @Override
+    protected String getBackendName()
+    {
+        return "file";
+    }
+}
@@ -19,17 +19,36 @@
  * under the License.
  */
 
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.commons.io.FileUtils;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.junit.Before;
-import org.junit.Ignore;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Named;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -37,6 +56,9 @@
 public class FileMetadataRepositoryTest
     extends AbstractMetadataRepositoryTest
 {
+    @Inject
+    @Named( value = "propertiesCache#file" )
+    private PropertiesCache propertiesCache;
 
     @Before
     @Override
@@ -53,111 +75,301 @@ public void setUp()
         ArchivaConfiguration config = createTestConfiguration( directory );
         Map<String, MetadataFacetFactory> factories = createTestMetadataFacetFactories();
 
-        this.repository = new FileMetadataRepository( factories, config );
+        propertiesCache.clear();
+        this.repository = new FileMetadataRepository( factories, config, propertiesCache );
     }
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadata()
+    @Test
+    public void testGetArtifactsByChecksumAfterProjectRemoved()
         throws Exception
     {
-        // TODO not implemented
-    }
+        ArtifactMetadata artifact = createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        ArtifactMetadata other = createIndexedArtifact( "project-b", "abc", new Date( 2000L ) );
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadataNoRepository()
-        throws Exception
-    {
-        // TODO not implemented
+        List<ArtifactMetadata> artifacts = sortById( repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+        assertEquals( Arrays.asList( artifact, other ), artifacts );
+
+        repository.removeProject( TEST_REPO_ID, TEST_NAMESPACE, "project-a" );
+
+        assertEquals( Collections.singletonList( other ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+        assertEquals( Collections.singletonList( other ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
     }
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadataAllRepositories()
+    @Test
+    public void testGetArtifactsByDateRangeAfterGatheredAgain()
         throws Exception
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, new Date( 5000L ) ) );
+
+        Date later = new Date( TimeUnit.DAYS.toMillis( 3 ) );
+        artifact.setWhenGathered( later );
+        artifact.setSha1( "def" );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, artifact );
+
+        assertEquals( Collections.emptyList(),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, new Date( 5000L ) ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, new Date( 5000L ), null ) );
+        assertEquals( Collections.emptyList(), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "def" ) );
     }
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByMetadataAllRepositories()
+    @Test
+    public void testIndexesRebuiltWhenMissing()
         throws Exception
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+
+        FileUtils.deleteDirectory( new File( "target/test-repositories/" + TEST_REPO_ID + "/.archiva/index" ) );
+
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+
+        ( (FileMetadataRepository) repository ).rebuildIndexes( TEST_REPO_ID );
+
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
     }
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByPropertySingleResult()
+    @Test
+    public void testProjectVersionReadFromCacheUntilFileChanged()
         throws Exception
     {
-        // TODO not implemented
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( TEST_PROJECT_VERSION );
+        metadata.setName( "cached name" );
+        repository.updateProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, metadata );
+        repository.save();
+
+        long misses = propertiesCache.getMisses();
+        assertEquals( "cached name",
+                      repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_PROJECT_VERSION ).getName() );
+        assertEquals( "cached name",
+                      repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_PROJECT_VERSION ).getName() );
+        assertEquals( misses, propertiesCache.getMisses() );
+
+        File file = new File( "target/test-repositories/" + TEST_REPO_ID + "/.archiva/content/" + TEST_NAMESPACE + "/"
+                                  + TEST_PROJECT + "/" + TEST_PROJECT_VERSION + "/version-metadata.properties" );
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream( file ))
+        {
+            properties.load( in );
+        }
+        properties.setProperty( "name", "name changed outside of the repository" );
+        try (OutputStream out = new FileOutputStream( file ))
+        {
+            properties.store( out, null );
+        }
+
+        assertEquals( "name changed outside of the repository",
+                      repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                    TEST_PROJECT_VERSION ).getName() );
+        assertEquals( misses + 1, propertiesCache.getMisses() );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByKey()
+    @Test
+    public void testChangesVisibleToOtherSessionsOnceSaved()
         throws Exception
     {
-        // TODO not implemented
+        FileMetadataRepository otherSession =
+            new FileMetadataRepository( createTestMetadataFacetFactories(),
+                                        createTestConfiguration( new File( "target/test-repositories" ) ),
+                                        propertiesCache );
+
+        ArtifactMetadata artifact = createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      new ArrayList<>( repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a",
+                                                                TEST_PROJECT_VERSION ) ) );
+        assertTrue(
+            otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ).isEmpty() );
+
+        repository.save();
+
+        assertEquals( Collections.singletonList( artifact ),
+                      new ArrayList<>( otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a",
+                                                                  TEST_PROJECT_VERSION ) ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      otherSession.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+
+        createIndexedArtifact( "project-b", "abc", new Date( 2000L ) );
+        repository.revert();
+
+        assertEquals( Collections.singletonList( "project-a" ),
+                      repository.getProjects( TEST_REPO_ID, TEST_NAMESPACE ) );
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByKeyExact()
+    @Test
+    public void testSaveFailsWhenFileChangedByAnotherSession()
         throws Exception
     {
-        // TODO not implemented
+        FileMetadataRepository otherSession =
+            new FileMetadataRepository( createTestMetadataFacetFactories(),
+                                        createTestConfiguration( new File( "target/test-repositories" ) ),
+                                        propertiesCache );
+
+        ArtifactMetadata artifact = createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        repository.save();
+
+        ArtifactMetadata first = createArtifact( "first", "def" );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, first );
+        ArtifactMetadata second = createArtifact( "second", "ghi" );
+        otherSession.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, second );
+        otherSession.save();
+
+        try
+        {
+            repository.save();
+            fail( "the artifacts saved by the other session should not be overwritten" );
+        }
+        catch ( RuntimeException e )
+        {
+            // expected
+        }
+        // the changes stay pending in the session, without overwriting the ones of the other session
+        assertEquals( Arrays.asList( first, artifact ), sortById(
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ) ) );
+        assertEquals( Arrays.asList( second, artifact ), sortById(
+            otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ) ) );
+        assertTrue( repository.getArtifactsByChecksum( TEST_REPO_ID, "def" ).isEmpty() );
+
+        // the changes applied again on the current content are saved along with the ones of the other session
+        repository.revert();
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, first );
+        repository.save();
+
+        assertEquals( Arrays.asList( first, second, artifact ), sortById(
+            otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ) ) );
+        assertEquals( Collections.singletonList( first ), repository.getArtifactsByChecksum( TEST_REPO_ID, "def" ) );
+        assertEquals( Collections.singletonList( second ), repository.getArtifactsByChecksum( TEST_REPO_ID, "ghi" ) );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullText()
+    @Test
+    public void testWritesKeptWhenAutoFlushFails()
         throws Exception
     {
-        // TODO not implemented
+        FileMetadataRepository otherSession =
+            new FileMetadataRepository( createTestMetadataFacetFactories(),
+                                        createTestConfiguration( new File( "target/test-repositories" ) ),
+                                        propertiesCache );
+
+        createIndexedArtifact( "project-a", "abc", new Date( 1000L ) );
+        repository.save();
+
+        ArtifactMetadata first = createArtifact( "first", "def" );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, first );
+        ArtifactMetadata second = createArtifact( "second", "ghi" );
+        otherSession.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, second );
+        otherSession.save();
+
+        // enough projects for the session to write its changes before it is saved, which conflicts
+        int projects = 0;
+        try
+        {
+            while ( projects < 1000 )
+            {
+                projects++;
+                createIndexedArtifact( "other-" + projects, "sha" + projects, new Date( 1000L ) );
+            }
+            fail( "the artifacts saved by the other session should not be overwritten" );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            // expected
+        }
+
+        // none of the changes is lost, including the ones of the update that failed
+        for ( int i = 1; i <= projects; i++ )
+        {
+            assertEquals( 1, repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "other-" + i,
+                                                      TEST_PROJECT_VERSION ).size() );
+        }
+        assertEquals( Collections.singletonList( "project-a" ),
+                      new ArrayList<>( otherSession.getProjects( TEST_REPO_ID, TEST_NAMESPACE ) ) );
+
+        // and they are all saved once the conflicting change is applied again on the current content
+        repository.revert();
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION, first );
+        for ( int i = 1; i <= projects; i++ )
+        {
+            createIndexedArtifact( "other-" + i, "sha" + i, new Date( 1000L ) );
+        }
+        repository.save();
+
+        assertEquals( projects + 1, otherSession.getProjects( TEST_REPO_ID, TEST_NAMESPACE ).size() );
+        assertEquals( 3, otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a",
+                                                    TEST_PROJECT_VERSION ).size() );
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextExact()
-        throws Exception
+    private static ArtifactMetadata createArtifact( String classifier, String sha1 )
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( "project-a-" + TEST_PROJECT_VERSION + "-" + classifier + ".jar" );
+        artifact.setWhenGathered( new Date( 2000L ) );
+        artifact.setFileLastModified( 1234567890L );
+        artifact.setSize( 10 );
+        artifact.setVersion( TEST_PROJECT_VERSION );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setNamespace( TEST_NAMESPACE );
+        artifact.setProject( "project-a" );
+        artifact.setProjectVersion( TEST_PROJECT_VERSION );
+        artifact.setSha1( sha1 );
+        return artifact;
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKeyAllRepos()
-        throws Exception
+    private ArtifactMetadata createIndexedArtifact( String projectId, String sha1, Date whenGathered )
+        throws MetadataRepositoryException
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( projectId + "-" + TEST_PROJECT_VERSION + ".jar" );
+        artifact.setWhenGathered( whenGathered );
+        artifact.setFileLastModified( 1234567890L );
+        artifact.setSize( 10 );
+        artifact.setVersion( TEST_PROJECT_VERSION );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setNamespace( TEST_NAMESPACE );
+        artifact.setProject( projectId );
+        artifact.setProjectVersion( TEST_PROJECT_VERSION );
+        artifact.setSha1( sha1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, projectId, TEST_PROJECT_VERSION, artifact );
+        return artifact;
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKey()
-        throws Exception
+    private static List<ArtifactMetadata> sortById( Collection<ArtifactMetadata> artifacts )
     {
-        // TODO not implemented
+        List<ArtifactMetadata> list = new ArrayList<>( artifacts );
+        Collections.sort( list, new Comparator<ArtifactMetadata>()
+        {
+            @Override
+            public int compare( ArtifactMetadata a1, ArtifactMetadata a2 )
+            {
+                return a1.getId().compareTo( a2.getId() );
+            }
+        } );
+        return list;
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextByFacet()
-        throws Exception
+    protected static ArchivaConfiguration createTestConfiguration( File directory )
     {
-        // TODO not implemented
+        return createTestConfiguration( directory, TEST_REPO_ID, OTHER_REPO_ID );
     }
 
-    protected static ArchivaConfiguration createTestConfiguration( File directory )
+    /**
+     * @return a configuration of managed repositories located in sub directories of the directory
+     */
+    static ArchivaConfiguration createTestConfiguration( File directory, String... repositoryIds )
     {
         ArchivaConfiguration config = mock( ArchivaConfiguration.class );
         Configuration configData = new Configuration();
-        configData.addManagedRepository( createManagedRepository( TEST_REPO_ID, directory ) );
-        configData.addManagedRepository( createManagedRepository( "other-repo", directory ) );
+        for ( String repositoryId : repositoryIds )
+        {
+            configData.addManagedRepository( createManagedRepository( repositoryId, directory ) );
+        }
         when( config.getConfiguration() ).thenReturn( configData );
         return config;
     }
@@ -32,9 +32,11 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
 import org.apache.commons.lang.StringUtils;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.slf4j.Logger;
@@ -68,12 +70,14 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * TODO below: revise storage format for project version metadata
@@ -185,6 +189,13 @@ public void updateArtifact( String repositoryId, String namespace, String projec
     {
         updateNamespace( repositoryId, namespace );
 
+        updateArtifactNode( repositoryId, namespace, projectId, projectVersion, artifactMeta );
+    }
+
+    private void updateArtifactNode( String repositoryId, String namespace, String projectId, String projectVersion,
+                                     ArtifactMetadata artifactMeta )
+        throws MetadataRepositoryException
+    {
         try
         {
             Node node =
@@ -242,6 +253,13 @@ public void updateProjectVersion( String repositoryId, String namespace, String
     {
         updateProject( repositoryId, namespace, projectId );
 
+        updateProjectVersionNode( repositoryId, namespace, projectId, versionMetadata );
+    }
+
+    private void updateProjectVersionNode( String repositoryId, String namespace, String projectId,
+                                           ProjectVersionMetadata versionMetadata )
+        throws MetadataRepositoryException
+    {
         try
         {
             Node versionNode =
@@ -366,6 +384,34 @@ public void updateProjectVersion( String repositoryId, String namespace, String
         }
     }
 
+    /**
+     * The nodes of the batch are only changed in the JCR session, to be written by a single save, and the namespace
+     * and project nodes are looked up once per batch rather than for each update.
+     */
+    @Override
+    public void updateMetadata( String repositoryId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        Set<String> projects = new HashSet<>();
+        for ( MetadataUpdate update : updates )
+        {
+            if ( projects.add( update.getNamespace() + ":" + update.getProjectId() ) )
+            {
+                updateProject( repositoryId, update.getNamespace(), update.getProjectId() );
+            }
+            if ( update.getArtifact() != null )
+            {
+                updateArtifactNode( repositoryId, update.getNamespace(), update.getProjectId(),
+                                    update.getProjectVersion(), update.getArtifact() );
+            }
+            if ( update.getProjectVersionMetadata() != null )
+            {
+                updateProjectVersionNode( repositoryId, update.getNamespace(), update.getProjectId(),
+                                          update.getProjectVersionMetadata() );
+            }
+        }
+    }
+
     @Override
     public void updateNamespace( String repositoryId, String namespace )
         throws MetadataRepositoryException
@@ -844,6 +890,92 @@ public List<ArtifactMetadata> getArtifacts( String repositoryId )
         return artifacts;
     }
 
+    /**
+     * Walk the content of the repository in path order, the children of each node sorted by name, the page token being
+     * the path of the last artifact of the previous page relative to the content. Each page resumes after that path
+     * without going through the previous pages, even if the artifact was removed in between.
+     */
+    @Override
+    public ArtifactMetadataPage getArtifacts( String repositoryId, String pageToken, int limit )
+        throws MetadataRepositoryException
+    {
+        if ( limit <= 0 )
+        {
+            throw new IllegalArgumentException( "The limit of a page must be greater than 0: " + limit );
+        }
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            Node root = getJcrSession().getRootNode();
+            String contentPath = getRepositoryPath( repositoryId ) + "/content";
+            if ( !root.hasNode( contentPath ) )
+            {
+                return new ArtifactMetadataPage( artifacts, null );
+            }
+            Node content = root.getNode( contentPath );
+
+            List<Node> artifactNodes = new ArrayList<>();
+            boolean more = addArtifactNodes( content, pageToken != null ? pageToken.split( "/" ) : null, 0, limit,
+                                             artifactNodes );
+            for ( Node n : artifactNodes )
+            {
+                artifacts.add( getArtifactFromNode( repositoryId, n ) );
+            }
+            String nextPageToken = null;
+            if ( more )
+            {
+                nextPageToken =
+                    artifactNodes.get( artifactNodes.size() - 1 ).getPath().substring( content.getPath().length() + 1 );
+            }
+            return new ArtifactMetadataPage( artifacts, nextPageToken );
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Add the artifact nodes under a node, in path order, up to the limit.
+     *
+     * @param after the names of the path of the last artifact of the previous page, <code>null</code> if the node is
+     *              past it
+     * @param depth the depth of the children of the node in that path
+     * @return <code>true</code> if there are more artifacts than the limit
+     */
+    private static boolean addArtifactNodes( Node node, String[] after, int depth, int limit, List<Node> artifactNodes )
+        throws RepositoryException
+    {
+        TreeMap<String, Node> children = new TreeMap<>();
+        for ( Node child : JcrUtils.getChildNodes( node ) )
+        {
+            children.put( child.getName(), child );
+        }
+        String from = after != null && depth < after.length ? after[depth] : null;
+        for ( Node child : ( from != null ? children.tailMap( from, true ) : children ).values() )
+        {
+            boolean onPath = from != null && child.getName().equals( from );
+            if ( child.isNodeType( ARTIFACT_NODE_TYPE ) )
+            {
+                if ( onPath )
+                {
+                    // the last artifact of the previous page
+                    continue;
+                }
+                if ( artifactNodes.size() == limit )
+                {
+                    return true;
+                }
+                artifactNodes.add( child );
+            }
+            else if ( addArtifactNodes( child, onPath ? after : null, depth + 1, limit, artifactNodes ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static String getArtifactQuery( String repositoryId )
     {
         return "SELECT * FROM [" + ARTIFACT_NODE_TYPE + "] AS artifact WHERE ISDESCENDANTNODE(artifact,'/" +
@@ -19,8 +19,11 @@
  * under the License.
  */
 
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -28,6 +31,11 @@
 import org.springframework.context.ApplicationContext;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
 import javax.jcr.Repository;
@@ -90,5 +98,49 @@ public void tearDown()
         super.tearDown();
     }
 
+    @Test
+    public void testPagesInPathOrderResumedAfterRemovedArtifact()
+        throws Exception
+    {
+        createArtifact( "project-c" );
+        createArtifact( "project-a" );
+        ArtifactMetadata removed = createArtifact( "project-b" );
+        repository.save();
+
+        ArtifactMetadataPage page = repository.getArtifacts( TEST_REPO_ID, null, 2 );
+        assertEquals( Arrays.asList( "project-a", "project-b" ), getProjects( page ) );
+        assertNotNull( page.getNextPageToken() );
+
+        repository.removeArtifact( removed, TEST_PROJECT_VERSION );
+        repository.save();
 
+        page = repository.getArtifacts( TEST_REPO_ID, page.getNextPageToken(), 2 );
+        assertEquals( Collections.singletonList( "project-c" ), getProjects( page ) );
+        assertNull( page.getNextPageToken() );
+    }
+
+    private ArtifactMetadata createArtifact( String projectId )
+        throws MetadataRepositoryException
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( projectId + "-" + TEST_PROJECT_VERSION + ".jar" );
+        artifact.setWhenGathered( new Date() );
+        artifact.setVersion( TEST_PROJECT_VERSION );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setNamespace( TEST_NAMESPACE );
+        artifact.setProject( projectId );
+        artifact.setProjectVersion( TEST_PROJECT_VERSION );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, projectId, TEST_PROJECT_VERSION, artifact );
+        return artifact;
+    }
+
+    private static List<String> getProjects( ArtifactMetadataPage page )
+    {
+        List<String> projects = new ArrayList<>();
+        for ( ArtifactMetadata artifact : page.getArtifacts() )
+        {
+            projects.add( artifact.getProject() );
+        }
+        return projects;
+    }
 }
@@ -0,0 +1,1536 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.CiManagement;
+import org.apache.archiva.metadata.model.Dependency;
+import org.apache.archiva.metadata.model.IssueManagement;
+import org.apache.archiva.metadata.model.License;
+import org.apache.archiva.metadata.model.MailingList;
+import org.apache.archiva.metadata.model.MetadataFacet;
+import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.model.Organization;
+import org.apache.archiva.metadata.model.ProjectMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionReference;
+import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
+import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A metadata repository session backed by a {@link KeyValueStore}. Each namespace, project, project version and
+ * artifact is a record whose key starts with the kind of record and the repository, followed by its coordinates, so
+ * that the records below a namespace, project or project version are next to each other in the store:
+ * <pre>
+ * namespace/&lt;repository&gt;/&lt;namespace&gt;
+ * project/&lt;repository&gt;/&lt;namespace&gt;/&lt;project&gt;
+ * version/&lt;repository&gt;/&lt;namespace&gt;/&lt;project&gt;/&lt;version&gt;
+ * artifact/&lt;repository&gt;/&lt;namespace&gt;/&lt;project&gt;/&lt;version&gt;/&lt;artifact&gt;
+ * </pre>
+ * The checksums and gathering dates of the artifacts are indexed by empty records whose keys start with the checksum
+ * or date, followed by the coordinates of the artifact.
+ * <p>
+ * The changes of a session are only visible to the session until it is saved, when they are committed to the store
+ * as a single batch. Closing or reverting the session discards the changes not saved.
+ */
+public class KeyValueMetadataRepository
+    implements MetadataRepository
+{
+    private static final char SEPARATOR = '/';
+
+    /**
+     * Greater than the characters of the keys, to end the range of the keys starting with a prefix.
+     */
+    private static final char LAST_CHARACTER = '\uffff';
+
+    private static final String REPOSITORIES = "repository";
+
+    private static final String NAMESPACES = "namespace";
+
+    private static final String PROJECTS = "project";
+
+    private static final String PROJECT_VERSIONS = "version";
+
+    private static final String ARTIFACTS = "artifact";
+
+    private static final String REFERENCES = "reference";
+
+    private static final String FACETS = "facet";
+
+    private static final String CHECKSUMS = "checksum";
+
+    private static final String WHEN_GATHERED = "when-gathered";
+
+    private static final List<String> REPOSITORY_RECORDS =
+        Arrays.asList( NAMESPACES, PROJECTS, PROJECT_VERSIONS, ARTIFACTS, REFERENCES, FACETS, CHECKSUMS,
+                       WHEN_GATHERED );
+
+    /**
+     * The project version properties describing the record rather than the project version.
+     */
+    private static final List<String> INTERNAL_PROPERTIES = Arrays.asList( "id", "incomplete", "facetIds" );
+
+    private final Logger log = LoggerFactory.getLogger( KeyValueMetadataRepository.class );
+
+    private final Map<String, MetadataFacetFactory> metadataFacetFactories;
+
+    private final KeyValueStore store;
+
+    /**
+     * The changes of the session, a <code>null</code> value marking a removed key.
+     */
+    private final SortedMap<String, String> changes = new TreeMap<>();
+
+    public KeyValueMetadataRepository( Map<String, MetadataFacetFactory> metadataFacetFactories,
+                                       KeyValueStore store )
+    {
+        this.metadataFacetFactories = metadataFacetFactories;
+        this.store = store;
+    }
+
+    @Override
+    public void updateProject( String repositoryId, ProjectMetadata project )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            updateProject( repositoryId, project.getNamespace(), project.getId() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void updateProject( String repositoryId, String namespace, String projectId )
+        throws IOException
+    {
+        updateNamespaceRecord( repositoryId, namespace );
+        putIfAbsent( key( PROJECTS, repositoryId, namespace, projectId ) );
+    }
+
+    @Override
+    public void updateNamespace( String repositoryId, String namespace )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            updateNamespaceRecord( repositoryId, namespace );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void updateNamespaceRecord( String repositoryId, String namespace )
+        throws IOException
+    {
+        putIfAbsent( key( REPOSITORIES, repositoryId ) );
+        putIfAbsent( key( NAMESPACES, repositoryId, namespace ) );
+    }
+
+    @Override
+    public void updateProjectVersion( String repositoryId, String namespace, String projectId,
+                                      ProjectVersionMetadata versionMetadata )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            updateProject( repositoryId, namespace, projectId );
+
+            String version = versionMetadata.getId();
+            String key = key( PROJECT_VERSIONS, repositoryId, namespace, projectId, version );
+            Map<String, String> oldRecord = getRecord( key );
+
+            Map<String, String> record = new TreeMap<>();
+            Set<String> facetIds = new LinkedHashSet<>( versionMetadata.getFacetIds() );
+            if ( oldRecord != null )
+            {
+                // the facets not given are kept
+                copyFacetProperties( oldRecord, record, versionMetadata.getFacetIds() );
+                facetIds.addAll( split( oldRecord.get( "facetIds" ) ) );
+                removeReferences( repositoryId, namespace, projectId, version, oldRecord );
+            }
+
+            record.put( "id", version );
+            setProperty( record, "name", versionMetadata.getName() );
+            setProperty( record, "description", versionMetadata.getDescription() );
+            setProperty( record, "url", versionMetadata.getUrl() );
+            setProperty( record, "incomplete", String.valueOf( versionMetadata.isIncomplete() ) );
+            if ( versionMetadata.getScm() != null )
+            {
+                setProperty( record, "scm.connection", versionMetadata.getScm().getConnection() );
+                setProperty( record, "scm.developerConnection", versionMetadata.getScm().getDeveloperConnection() );
+                setProperty( record, "scm.url", versionMetadata.getScm().getUrl() );
+            }
+            if ( versionMetadata.getCiManagement() != null )
+            {
+                setProperty( record, "ci.system", versionMetadata.getCiManagement().getSystem() );
+                setProperty( record, "ci.url", versionMetadata.getCiManagement().getUrl() );
+            }
+            if ( versionMetadata.getIssueManagement() != null )
+            {
+                setProperty( record, "issue.system", versionMetadata.getIssueManagement().getSystem() );
+                setProperty( record, "issue.url", versionMetadata.getIssueManagement().getUrl() );
+            }
+            if ( versionMetadata.getOrganization() != null )
+            {
+                setProperty( record, "org.name", versionMetadata.getOrganization().getName() );
+                setProperty( record, "org.url", versionMetadata.getOrganization().getUrl() );
+            }
+            int i = 0;
+            for ( License license : versionMetadata.getLicenses() )
+            {
+                setProperty( record, "license." + i + ".name", license.getName() );
+                setProperty( record, "license." + i + ".url", license.getUrl() );
+                i++;
+            }
+            i = 0;
+            for ( MailingList mailingList : versionMetadata.getMailingLists() )
+            {
+                setProperty( record, "mailingList." + i + ".archive", mailingList.getMainArchiveUrl() );
+                setProperty( record, "mailingList." + i + ".name", mailingList.getName() );
+                setProperty( record, "mailingList." + i + ".post", mailingList.getPostAddress() );
+                setProperty( record, "mailingList." + i + ".unsubscribe", mailingList.getUnsubscribeAddress() );
+                setProperty( record, "mailingList." + i + ".subscribe", mailingList.getSubscribeAddress() );
+                setProperty( record, "mailingList." + i + ".otherArchives", join( mailingList.getOtherArchives() ) );
+                i++;
+            }
+            i = 0;
+            for ( Dependency dependency : versionMetadata.getDependencies() )
+            {
+                setProperty( record, "dependency." + i + ".classifier", dependency.getClassifier() );
+                setProperty( record, "dependency." + i + ".scope", dependency.getScope() );
+                setProperty( record, "dependency." + i + ".systemPath", dependency.getSystemPath() );
+                setProperty( record, "dependency." + i + ".artifactId", dependency.getArtifactId() );
+                setProperty( record, "dependency." + i + ".groupId", dependency.getGroupId() );
+                setProperty( record, "dependency." + i + ".version", dependency.getVersion() );
+                setProperty( record, "dependency." + i + ".type", dependency.getType() );
+                setProperty( record, "dependency." + i + ".optional", String.valueOf( dependency.isOptional() ) );
+                i++;
+            }
+            addReferences( repositoryId, namespace, projectId, version, record );
+
+            record.put( "facetIds", join( facetIds ) );
+            putFacetProperties( record, versionMetadata.getFacetList() );
+
+            putRecord( key, record );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Record that the project version is used by the dependencies of another one.
+     */
+    private void addReferences( String repositoryId, String namespace, String projectId, String version,
+                                Map<String, String> record )
+    {
+        for ( List<String> dependency : getDependencies( record ) )
+        {
+            changes.put( key( REFERENCES, repositoryId, dependency.get( 0 ), dependency.get( 1 ), dependency.get( 2 ),
+                              namespace, projectId, version ),
+                         ProjectVersionReference.ReferenceType.DEPENDENCY.toString() );
+        }
+    }
+
+    private void removeReferences( String repositoryId, String namespace, String projectId, String version,
+                                   Map<String, String> record )
+    {
+        for ( List<String> dependency : getDependencies( record ) )
+        {
+            changes.put( key( REFERENCES, repositoryId, dependency.get( 0 ), dependency.get( 1 ), dependency.get( 2 ),
+                              namespace, projectId, version ), null );
+        }
+    }
+
+    /**
+     * @return the group id, artifact id and version of the dependencies of a project version record
+     */
+    private static List<List<String>> getDependencies( Map<String, String> record )
+    {
+        List<List<String>> dependencies = new ArrayList<>();
+        for ( int i = 0; record.containsKey( "dependency." + i + ".artifactId" ); i++ )
+        {
+            String groupId = record.get( "dependency." + i + ".groupId" );
+            String artifactId = record.get( "dependency." + i + ".artifactId" );
+            String version = record.get( "dependency." + i + ".version" );
+            if ( groupId != null && version != null )
+            {
+                dependencies.add( Arrays.asList( groupId, artifactId, version ) );
+            }
+        }
+        return dependencies;
+    }
+
+    @Override
+    public void updateArtifact( String repositoryId, String namespace, String projectId, String projectVersion,
+                                ArtifactMetadata artifact )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            if ( get( key( PROJECT_VERSIONS, repositoryId, namespace, projectId, projectVersion ) ) == null )
+            {
+                ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+                metadata.setId( projectVersion );
+                updateProjectVersion( repositoryId, namespace, projectId, metadata );
+            }
+
+            String id = artifact.getId();
+            String key = key( ARTIFACTS, repositoryId, namespace, projectId, projectVersion, id );
+            Map<String, String> oldRecord = getRecord( key );
+
+            Map<String, String> record = new TreeMap<>();
+            Set<String> facetIds = new LinkedHashSet<>( artifact.getFacetIds() );
+            if ( oldRecord != null )
+            {
+                copyFacetProperties( oldRecord, record, artifact.getFacetIds() );
+                facetIds.addAll( split( oldRecord.get( "facetIds" ) ) );
+            }
+
+            if ( artifact.getFileLastModified() != null )
+            {
+                record.put( "updated", Long.toString( artifact.getFileLastModified().getTime() ) );
+            }
+            if ( artifact.getWhenGathered() != null )
+            {
+                record.put( "whenGathered", Long.toString( artifact.getWhenGathered().getTime() ) );
+            }
+            record.put( "size", Long.toString( artifact.getSize() ) );
+            setProperty( record, "md5", artifact.getMd5() );
+            setProperty( record, "sha1", artifact.getSha1() );
+            setProperty( record, "version", artifact.getVersion() );
+            record.put( "facetIds", join( facetIds ) );
+            putFacetProperties( record, artifact.getFacetList() );
+
+            updateIndexes( repositoryId, namespace, projectId, projectVersion, id, oldRecord, record );
+            putRecord( key, record );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * The changes of a session are already held until it is saved and then written to the store at once, the updates
+     * are simply applied in turn.
+     */
+    @Override
+    public void updateMetadata( String repositoryId, Collection<MetadataUpdate> updates )
+        throws MetadataRepositoryException
+    {
+        for ( MetadataUpdate update : updates )
+        {
+            if ( update.getArtifact() != null )
+            {
+                updateArtifact( repositoryId, update.getNamespace(), update.getProjectId(), update.getProjectVersion(),
+                                update.getArtifact() );
+            }
+            if ( update.getProjectVersionMetadata() != null )
+            {
+                updateProjectVersion( repositoryId, update.getNamespace(), update.getProjectId(),
+                                      update.getProjectVersionMetadata() );
+            }
+            else if ( update.getArtifact() == null )
+            {
+                ProjectMetadata project = new ProjectMetadata();
+                project.setNamespace( update.getNamespace() );
+                project.setId( update.getProjectId() );
+                updateProject( repositoryId, project );
+            }
+        }
+    }
+
+    /**
+     * Update the index records of an artifact.
+     *
+     * @param oldRecord the record before the change, <code>null</code> for a new artifact
+     * @param record    the record after the change, <code>null</code> for a removed artifact
+     */
+    private void updateIndexes( String repositoryId, String namespace, String projectId, String projectVersion,
+                                String id, Map<String, String> oldRecord, Map<String, String> record )
+    {
+        Set<String> oldKeys = getIndexKeys( repositoryId, namespace, projectId, projectVersion, id, oldRecord );
+        Set<String> keys = getIndexKeys( repositoryId, namespace, projectId, projectVersion, id, record );
+        for ( String key : oldKeys )
+        {
+            if ( !keys.contains( key ) )
+            {
+                changes.put( key, null );
+            }
+        }
+        for ( String key : keys )
+        {
+            if ( !oldKeys.contains( key ) )
+            {
+                changes.put( key, "" );
+            }
+        }
+    }
+
+    private static Set<String> getIndexKeys( String repositoryId, String namespace, String projectId,
+                                             String projectVersion, String id, Map<String, String> record )
+    {
+        Set<String> keys = new HashSet<>();
+        if ( record != null )
+        {
+            for ( String checksum : Arrays.asList( record.get( "md5" ), record.get( "sha1" ) ) )
+            {
+                if ( checksum != null )
+                {
+                    keys.add( key( CHECKSUMS, repositoryId, checksum, namespace, projectId, projectVersion, id ) );
+                }
+            }
+            String whenGathered = record.get( "whenGathered" );
+            if ( whenGathered != null )
+            {
+                keys.add( key( WHEN_GATHERED, repositoryId, toSortableTime( Long.parseLong( whenGathered ) ),
+                               namespace, projectId, projectVersion, id ) );
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Encode a time so that the order of the encoded times is the order of the times: the sign bit is flipped and the
+     * result written as a fixed length hexadecimal number.
+     */
+    private static String toSortableTime( long time )
+    {
+        return String.format( "%016x", time ^ Long.MIN_VALUE );
+    }
+
+    @Override
+    public List<String> getMetadataFacets( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            return new ArrayList<>( list( prefix( FACETS, repositoryId, facetId ) ).keySet() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public boolean hasMetadataFacet( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        return !getMetadataFacets( repositoryId, facetId ).isEmpty();
+    }
+
+    @Override
+    public MetadataFacet getMetadataFacet( String repositoryId, String facetId, String name )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            Map<String, String> record = getRecord( key( FACETS, repositoryId, facetId, name ) );
+            MetadataFacetFactory metadataFacetFactory = metadataFacetFactories.get( facetId );
+            if ( record == null || metadataFacetFactory == null )
+            {
+                return null;
+            }
+            MetadataFacet metadataFacet = metadataFacetFactory.createMetadataFacet( repositoryId, name );
+            metadataFacet.fromProperties( new HashMap<>( record ) );
+            return metadataFacet;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void addMetadataFacet( String repositoryId, MetadataFacet metadataFacet )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            putIfAbsent( key( REPOSITORIES, repositoryId ) );
+            putRecord( key( FACETS, repositoryId, metadataFacet.getFacetId(), metadataFacet.getName() ),
+                       new TreeMap<>( metadataFacet.toProperties() ) );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void removeMetadataFacets( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            removeAll( prefix( FACETS, repositoryId, facetId ) );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void removeMetadataFacet( String repositoryId, String facetId, String name )
+        throws MetadataRepositoryException
+    {
+        changes.put( key( FACETS, repositoryId, facetId, name ), null );
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByDateRange( String repositoryId, Date startTime, Date endTime )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            String prefix = prefix( WHEN_GATHERED, repositoryId );
+            String fromKey = startTime != null ? prefix + toSortableTime( startTime.getTime() ) : prefix;
+            String toKey = endTime != null && endTime.getTime() < Long.MAX_VALUE
+                ? prefix + toSortableTime( endTime.getTime() + 1 )
+                : prefix + LAST_CHARACTER;
+
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( String key : scan( fromKey, toKey ).keySet() )
+            {
+                String[] path = split( key.substring( prefix.length() ), 5 );
+                ArtifactMetadata artifact = getArtifact( repositoryId, path[1], path[2], path[3], path[4] );
+                // skip the entries left by concurrent updates of the artifact
+                if ( artifact != null && artifact.getWhenGathered() != null && toSortableTime(
+                    artifact.getWhenGathered().getTime() ).equals( path[0] ) )
+                {
+                    artifacts.add( artifact );
+                }
+            }
+            return artifacts;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<String> getRepositories()
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            return new ArrayList<>( list( prefix( REPOSITORIES ) ).keySet() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByChecksum( String repositoryId, String checksum )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( String key : list( prefix( CHECKSUMS, repositoryId, checksum ) ).keySet() )
+            {
+                String[] path = split( key, 4 );
+                ArtifactMetadata artifact = getArtifact( repositoryId, path[0], path[1], path[2], path[3] );
+                if ( artifact != null && ( checksum.equals( artifact.getMd5() ) || checksum.equals(
+                    artifact.getSha1() ) ) )
+                {
+                    artifacts.add( artifact );
+                }
+            }
+            return artifacts;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByProjectVersionMetadata( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, false, true, key, value, true );
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByMetadata( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( String repoId : getRepositories( repositoryId ) )
+            {
+                String prefix = prefix( ARTIFACTS, repoId );
+                for ( Map.Entry<String, String> entry : list( prefix ).entrySet() )
+                {
+                    SortedMap<String, String> record = Records.decode( entry.getValue() );
+                    if ( getFacetValues( record, key ).contains( value ) )
+                    {
+                        String[] path = split( entry.getKey(), 4 );
+                        artifacts.add( toArtifact( repoId, path[0], path[1], path[2], path[3], record ) );
+                    }
+                }
+            }
+            return artifacts;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifactsByProperty( String key, String value, String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, true, false, key, value, true );
+    }
+
+    @Override
+    public List<ArtifactMetadata> searchArtifacts( String text, String repositoryId, boolean exact )
+        throws MetadataRepositoryException
+    {
+        return searchArtifacts( null, text, repositoryId, exact );
+    }
+
+    /**
+     * Search the project version properties and facets. Unless exact, the values only have to contain the text,
+     * ignoring the case.
+     */
+    @Override
+    public List<ArtifactMetadata> searchArtifacts( String key, String text, String repositoryId, boolean exact )
+        throws MetadataRepositoryException
+    {
+        return findArtifacts( repositoryId, true, true, key, text, exact );
+    }
+
+    /**
+     * Find the artifacts of the project versions having a property matching a text, going through the project
+     * versions of the repositories.
+     *
+     * @param repositoryId the repository, <code>null</code> for all of them
+     * @param properties   whether to match the properties of the project versions
+     * @param facets       whether to match the properties of the facets of the project versions
+     * @param key          the property key, <code>null</code> for any
+     * @param exact        whether the whole value must be equal to the text
+     */
+    private List<ArtifactMetadata> findArtifacts( String repositoryId, boolean properties, boolean facets, String key,
+                                                  String text, boolean exact )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            String lowerCaseText = text.toLowerCase( Locale.ENGLISH );
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( String repoId : getRepositories( repositoryId ) )
+            {
+                for ( Map.Entry<String, String> entry : list( prefix( PROJECT_VERSIONS, repoId ) ).entrySet() )
+                {
+                    SortedMap<String, String> record = Records.decode( entry.getValue() );
+                    List<String> values = new ArrayList<>();
+                    if ( properties )
+                    {
+                        values.addAll( getPropertyValues( record, key ) );
+                    }
+                    if ( facets )
+                    {
+                        values.addAll( getFacetValues( record, key ) );
+                    }
+
+                    for ( String value : values )
+                    {
+                        if ( exact ? value.equals( text ) : value.toLowerCase( Locale.ENGLISH ).contains(
+                            lowerCaseText ) )
+                        {
+                            String[] path = split( entry.getKey(), 3 );
+                            artifacts.addAll( getArtifacts( repoId, path[0], path[1], path[2] ) );
+                            break;
+                        }
+                    }
+                }
+            }
+            return artifacts;
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private List<String> getRepositories( String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return repositoryId != null
+            ? Collections.singletonList( repositoryId )
+            : new ArrayList<>( getRepositories() );
+    }
+
+    /**
+     * @param key the property key, <code>null</code> for all the properties
+     */
+    private static List<String> getPropertyValues( Map<String, String> record, String key )
+    {
+        List<String> values = new ArrayList<>();
+        for ( Map.Entry<String, String> entry : record.entrySet() )
+        {
+            String name = entry.getKey();
+            if ( ( key == null || key.equals( name ) ) && name.indexOf( ':' ) < 0 && !INTERNAL_PROPERTIES.contains(
+                name ) )
+            {
+                values.add( entry.getValue() );
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param key the facet property key, <code>null</code> for all the properties
+     */
+    private static List<String> getFacetValues( SortedMap<String, String> record, String key )
+    {
+        List<String> values = new ArrayList<>();
+        for ( String facetId : split( record.get( "facetIds" ) ) )
+        {
+            Map<String, String> facetProperties = getFacetProperties( record, facetId );
+            if ( key == null )
+            {
+                values.addAll( facetProperties.values() );
+            }
+            else if ( facetProperties.containsKey( key ) )
+            {
+                values.add( facetProperties.get( key ) );
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void removeArtifact( String repositoryId, String namespace, String project, String version, String id )
+        throws MetadataRepositoryException
+    {
+        // as with the other metadata stores, the project version goes along with the artifact
+        removeProjectVersion( repositoryId, namespace, project, version );
+    }
+
+    @Override
+    public void removeArtifact( ArtifactMetadata artifactMetadata, String baseVersion )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            removeArtifactRecord( artifactMetadata.getRepositoryId(), artifactMetadata.getNamespace(),
+                                  artifactMetadata.getProject(), baseVersion, artifactMetadata.getId() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Remove the artifacts of a project version having a facet equal to the given one.
+     */
+    @Override
+    public void removeArtifact( String repositoryId, String namespace, String project, String projectVersion,
+                                MetadataFacet metadataFacet )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            for ( ArtifactMetadata artifact : getArtifacts( repositoryId, namespace, project, projectVersion ) )
+            {
+                if ( metadataFacet.equals( artifact.getFacet( metadataFacet.getFacetId() ) ) )
+                {
+                    removeArtifactRecord( repositoryId, namespace, project, projectVersion, artifact.getId() );
+                }
+            }
+        }
+        catch ( IOException | MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private void removeArtifactRecord( String repositoryId, String namespace, String projectId,
+                                       String projectVersion, String id )
+        throws IOException
+    {
+        String key = key( ARTIFACTS, repositoryId, namespace, projectId, projectVersion, id );
+        Map<String, String> record = getRecord( key );
+        if ( record != null )
+        {
+            updateIndexes( repositoryId, namespace, projectId, projectVersion, id, record, null );
+            changes.put( key, null );
+        }
+    }
+
+    @Override
+    public void removeRepository( String repositoryId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            for ( String records : REPOSITORY_RECORDS )
+            {
+                removeAll( prefix( records, repositoryId ) );
+            }
+            changes.put( key( REPOSITORIES, repositoryId ), null );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Remove a namespace and its projects, the namespaces below it are kept.
+     */
+    @Override
+    public void removeNamespace( String repositoryId, String namespace )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            changes.put( key( NAMESPACES, repositoryId, namespace ), null );
+            removeAll( prefix( PROJECTS, repositoryId, namespace ) );
+            removeContent( repositoryId, namespace );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void removeProject( String repositoryId, String namespace, String projectId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            changes.put( key( PROJECTS, repositoryId, namespace, projectId ), null );
+            removeContent( repositoryId, namespace, projectId );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void removeProjectVersion( String repositoryId, String namespace, String projectId, String projectVersion )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            removeContent( repositoryId, namespace, projectId, projectVersion );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Remove the project versions below a namespace, project or project version, along with their artifacts, index
+     * entries and references.
+     *
+     * @param path the namespace, project and project version, as far as given
+     */
+    private void removeContent( String repositoryId, String... path )
+        throws IOException
+    {
+        String versionsPrefix = prefix( PROJECT_VERSIONS, repositoryId );
+        String prefix = path.length == 3
+            ? key( PROJECT_VERSIONS, path( repositoryId, path ) )
+            : prefix( PROJECT_VERSIONS, path( repositoryId, path ) );
+        for ( Map.Entry<String, String> entry : scan( prefix, prefix + LAST_CHARACTER ).entrySet() )
+        {
+            if ( path.length == 3 && !entry.getKey().equals( prefix ) )
+            {
+                continue;
+            }
+            String[] coordinates = split( entry.getKey().substring( versionsPrefix.length() ), 3 );
+            removeReferences( repositoryId, coordinates[0], coordinates[1], coordinates[2],
+                              Records.decode( entry.getValue() ) );
+            changes.put( entry.getKey(), null );
+        }
+
+        String artifactsPrefix = prefix( ARTIFACTS, repositoryId );
+        String contentPrefix = prefix( ARTIFACTS, path( repositoryId, path ) );
+        for ( Map.Entry<String, String> entry : list( contentPrefix ).entrySet() )
+        {
+            String key = contentPrefix + entry.getKey();
+            String[] coordinates = split( key.substring( artifactsPrefix.length() ), 4 );
+            updateIndexes( repositoryId, coordinates[0], coordinates[1], coordinates[2], coordinates[3],
+                           Records.decode( entry.getValue() ), null );
+            changes.put( key, null );
+        }
+
+        removeAll( prefix( REFERENCES, path( repositoryId, path ) ) );
+    }
+
+    @Override
+    public List<ArtifactMetadata> getArtifacts( String repositoryId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( Map.Entry<String, String> entry : list( prefix( ARTIFACTS, repositoryId ) ).entrySet() )
+            {
+                String[] path = split( entry.getKey(), 4 );
+                artifacts.add( toArtifact( repositoryId, path[0], path[1], path[2], path[3],
+                                           Records.decode( entry.getValue() ) ) );
+            }
+            return artifacts;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Read the artifact records of the repository in key order, the page token being the end of the key of the last
+     * record of the previous page.
+     */
+    @Override
+    public ArtifactMetadataPage getArtifacts( String repositoryId, String pageToken, int limit )
+        throws MetadataRepositoryException
+    {
+        if ( limit <= 0 )
+        {
+            throw new IllegalArgumentException( "The limit of a page must be greater than 0: " + limit );
+        }
+        try
+        {
+            String prefix = prefix( ARTIFACTS, repositoryId );
+            // the first key after the one of the token
+            String fromKey = pageToken != null ? prefix + pageToken + '\u0000' : prefix;
+            String toKey = prefix + LAST_CHARACTER;
+
+            SortedMap<String, String> records = store.scan( fromKey, toKey, limit + 1 );
+            // when the store has more records, the changes of the session only apply up to the last one read
+            String lastReadKey = records.size() > limit ? records.lastKey() : null;
+            String endKey = lastReadKey != null ? lastReadKey + '\u0000' : toKey;
+            for ( Map.Entry<String, String> change : changes.subMap( fromKey, endKey ).entrySet() )
+            {
+                if ( change.getValue() != null )
+                {
+                    records.put( change.getKey(), change.getValue() );
+                }
+                else
+                {
+                    records.remove( change.getKey() );
+                }
+            }
+
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            String nextKey = lastReadKey;
+            String lastKey = null;
+            for ( Map.Entry<String, String> entry : records.entrySet() )
+            {
+                if ( artifacts.size() == limit )
+                {
+                    nextKey = lastKey;
+                    break;
+                }
+                String[] path = split( entry.getKey().substring( prefix.length() ), 4 );
+                artifacts.add( toArtifact( repositoryId, path[0], path[1], path[2], path[3],
+                                           Records.decode( entry.getValue() ) ) );
+                lastKey = entry.getKey();
+            }
+            return new ArtifactMetadataPage( artifacts, nextKey != null ? nextKey.substring( prefix.length() ) : null );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public ProjectMetadata getProject( String repoId, String namespace, String projectId )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            if ( get( key( PROJECTS, repoId, namespace, projectId ) ) == null )
+            {
+                return null;
+            }
+            ProjectMetadata project = new ProjectMetadata();
+            project.setNamespace( namespace );
+            project.setId( projectId );
+            return project;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public ProjectVersionMetadata getProjectVersion( String repoId, String namespace, String projectId,
+                                                     String projectVersion )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            SortedMap<String, String> record =
+                getRecord( key( PROJECT_VERSIONS, repoId, namespace, projectId, projectVersion ) );
+            return record != null ? toProjectVersion( record ) : null;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    private ProjectVersionMetadata toProjectVersion( SortedMap<String, String> record )
+    {
+        ProjectVersionMetadata versionMetadata = new ProjectVersionMetadata();
+        versionMetadata.setId( record.get( "id" ) );
+        versionMetadata.setName( record.get( "name" ) );
+        versionMetadata.setDescription( record.get( "description" ) );
+        versionMetadata.setUrl( record.get( "url" ) );
+        versionMetadata.setIncomplete( Boolean.valueOf( record.get( "incomplete" ) ) );
+
+        String scmConnection = record.get( "scm.connection" );
+        String scmDeveloperConnection = record.get( "scm.developerConnection" );
+        String scmUrl = record.get( "scm.url" );
+        if ( scmConnection != null || scmDeveloperConnection != null || scmUrl != null )
+        {
+            Scm scm = new Scm();
+            scm.setConnection( scmConnection );
+            scm.setDeveloperConnection( scmDeveloperConnection );
+            scm.setUrl( scmUrl );
+            versionMetadata.setScm( scm );
+        }
+
+        String ciSystem = record.get( "ci.system" );
+        String ciUrl = record.get( "ci.url" );
+        if ( ciSystem != null || ciUrl != null )
+        {
+            CiManagement ci = new CiManagement();
+            ci.setSystem( ciSystem );
+            ci.setUrl( ciUrl );
+            versionMetadata.setCiManagement( ci );
+        }
+
+        String issueSystem = record.get( "issue.system" );
+        String issueUrl = record.get( "issue.url" );
+        if ( issueSystem != null || issueUrl != null )
+        {
+            IssueManagement issueManagement = new IssueManagement();
+            issueManagement.setSystem( issueSystem );
+            issueManagement.setUrl( issueUrl );
+            versionMetadata.setIssueManagement( issueManagement );
+        }
+
+        String orgName = record.get( "org.name" );
+        String orgUrl = record.get( "org.url" );
+        if ( orgName != null || orgUrl != null )
+        {
+            Organization org = new Organization();
+            org.setName( orgName );
+            org.setUrl( orgUrl );
+            versionMetadata.setOrganization( org );
+        }
+
+        for ( int i = 0; record.containsKey( "license." + i + ".name" ) || record.containsKey(
+            "license." + i + ".url" ); i++ )
+        {
+            License license = new License();
+            license.setName( record.get( "license." + i + ".name" ) );
+            license.setUrl( record.get( "license." + i + ".url" ) );
+            versionMetadata.addLicense( license );
+        }
+
+        for ( int i = 0; record.containsKey( "mailingList." + i + ".name" ); i++ )
+        {
+            MailingList mailingList = new MailingList();
+            mailingList.setName( record.get( "mailingList." + i + ".name" ) );
+            mailingList.setMainArchiveUrl( record.get( "mailingList." + i + ".archive" ) );
+            mailingList.setOtherArchives( split( record.get( "mailingList." + i + ".otherArchives" ) ) );
+            mailingList.setPostAddress( record.get( "mailingList." + i + ".post" ) );
+            mailingList.setSubscribeAddress( record.get( "mailingList." + i + ".subscribe" ) );
+            mailingList.setUnsubscribeAddress( record.get( "mailingList." + i + ".unsubscribe" ) );
+            versionMetadata.addMailingList( mailingList );
+        }
+
+        for ( int i = 0; record.containsKey( "dependency." + i + ".artifactId" ); i++ )
+        {
+            Dependency dependency = new Dependency();
+            dependency.setArtifactId( record.get( "dependency." + i + ".artifactId" ) );
+            dependency.setGroupId( record.get( "dependency." + i + ".groupId" ) );
+            dependency.setClassifier( record.get( "dependency." + i + ".classifier" ) );
+            dependency.setOptional( Boolean.valueOf( record.get( "dependency." + i + ".optional" ) ) );
+            dependency.setScope( record.get( "dependency." + i + ".scope" ) );
+            dependency.setSystemPath( record.get( "dependency." + i + ".systemPath" ) );
+            dependency.setType( record.get( "dependency." + i + ".type" ) );
+            dependency.setVersion( record.get( "dependency." + i + ".version" ) );
+            versionMetadata.addDependency( dependency );
+        }
+
+        for ( String facetId : split( record.get( "facetIds" ) ) )
+        {
+            MetadataFacetFactory factory = metadataFacetFactories.get( facetId );
+            if ( factory == null )
+            {
+                log.error( "Attempted to load unknown project version metadata facet: {}", facetId );
+            }
+            else
+            {
+                MetadataFacet facet = factory.createMetadataFacet();
+                facet.fromProperties( getFacetProperties( record, facet.getFacetId() ) );
+                versionMetadata.addFacet( facet );
+            }
+        }
+        return versionMetadata;
+    }
+
+    @Override
+    public Collection<String> getArtifactVersions( String repoId, String namespace, String projectId,
+                                                   String projectVersion )
+        throws MetadataResolutionException
+    {
+        Set<String> versions = new HashSet<>();
+        for ( ArtifactMetadata artifact : getArtifacts( repoId, namespace, projectId, projectVersion ) )
+        {
+            versions.add( artifact.getVersion() );
+        }
+        return versions;
+    }
+
+    @Override
+    public Collection<ProjectVersionReference> getProjectReferences( String repoId, String namespace, String projectId,
+                                                                     String projectVersion )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            List<ProjectVersionReference> references = new ArrayList<>();
+            for ( Map.Entry<String, String> entry : list(
+                prefix( REFERENCES, repoId, namespace, projectId, projectVersion ) ).entrySet() )
+            {
+                String[] path = split( entry.getKey(), 3 );
+                ProjectVersionReference reference = new ProjectVersionReference();
+                reference.setNamespace( path[0] );
+                reference.setProjectId( path[1] );
+                reference.setProjectVersion( path[2] );
+                reference.setReferenceType( ProjectVersionReference.ReferenceType.valueOf( entry.getValue() ) );
+                references.add( reference );
+            }
+            return references;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<String> getRootNamespaces( String repoId )
+        throws MetadataResolutionException
+    {
+        return getNamespaces( repoId, null );
+    }
+
+    @Override
+    public Collection<String> getNamespaces( String repoId, String baseNamespace )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            Set<String> namespaces = new LinkedHashSet<>();
+            int fromIndex = baseNamespace != null ? baseNamespace.length() + 1 : 0;
+            for ( String namespace : list( prefix( NAMESPACES, repoId ) ).keySet() )
+            {
+                if ( baseNamespace == null || namespace.startsWith( baseNamespace + "." ) )
+                {
+                    int i = namespace.indexOf( '.', fromIndex );
+                    namespaces.add( i >= 0 ? namespace.substring( fromIndex, i ) : namespace.substring( fromIndex ) );
+                }
+            }
+            return new ArrayList<>( namespaces );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<String> getProjects( String repoId, String namespace )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            return new ArrayList<>( list( prefix( PROJECTS, repoId, namespace ) ).keySet() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<String> getProjectVersions( String repoId, String namespace, String projectId )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            return new ArrayList<>( list( prefix( PROJECT_VERSIONS, repoId, namespace, projectId ) ).keySet() );
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<ArtifactMetadata> getArtifacts( String repoId, String namespace, String projectId,
+                                                      String projectVersion )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            List<ArtifactMetadata> artifacts = new ArrayList<>();
+            for ( Map.Entry<String, String> entry : list(
+                prefix( ARTIFACTS, repoId, namespace, projectId, projectVersion ) ).entrySet() )
+            {
+                artifacts.add( toArtifact( repoId, namespace, projectId, projectVersion, entry.getKey(),
+                                           Records.decode( entry.getValue() ) ) );
+            }
+            return artifacts;
+        }
+        catch ( IOException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    private ArtifactMetadata getArtifact( String repoId, String namespace, String projectId, String projectVersion,
+                                          String id )
+        throws IOException
+    {
+        SortedMap<String, String> record =
+            getRecord( key( ARTIFACTS, repoId, namespace, projectId, projectVersion, id ) );
+        return record != null ? toArtifact( repoId, namespace, projectId, projectVersion, id, record ) : null;
+    }
+
+    private ArtifactMetadata toArtifact( String repoId, String namespace, String projectId, String projectVersion,
+                                         String id, SortedMap<String, String> record )
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setRepositoryId( repoId );
+        artifact.setNamespace( namespace );
+        artifact.setProject( projectId );
+        artifact.setProjectVersion( projectVersion );
+        artifact.setVersion( record.containsKey( "version" ) ? record.get( "version" ) : projectVersion );
+        artifact.setId( id );
+        if ( record.containsKey( "updated" ) )
+        {
+            artifact.setFileLastModified( Long.parseLong( record.get( "updated" ) ) );
+        }
+        if ( record.containsKey( "whenGathered" ) )
+        {
+            artifact.setWhenGathered( new Date( Long.parseLong( record.get( "whenGathered" ) ) ) );
+        }
+        artifact.setSize( Long.parseLong( record.get( "size" ) ) );
+        artifact.setMd5( record.get( "md5" ) );
+        artifact.setSha1( record.get( "sha1" ) );
+
+        for ( String facetId : split( record.get( "facetIds" ) ) )
+        {
+            MetadataFacetFactory factory = metadataFacetFactories.get( facetId );
+            if ( factory == null )
+            {
+                log.error( "Attempted to load unknown artifact metadata facet: {}", facetId );
+            }
+            else
+            {
+                MetadataFacet facet = factory.createMetadataFacet();
+                facet.fromProperties( getFacetProperties( record, facet.getFacetId() ) );
+                artifact.addFacet( facet );
+            }
+        }
+        return artifact;
+    }
+
+    @Override
+    public void save()
+    {
+        try
+        {
+            store.write( changes );
+            changes.clear();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to save the metadata repository: " + e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        // the changes not saved are discarded, the repository session saves them first if needed
+        changes.clear();
+    }
+
+    @Override
+    public void revert()
+    {
+        changes.clear();
+    }
+
+    @Override
+    public boolean canObtainAccess( Class<?> aClass )
+    {
+        return false;
+    }
+
+    @Override
+    public <T> T obtainAccess( Class<T> aClass )
+    {
+        throw new IllegalArgumentException(
+            "Access using " + aClass + " is not supported on the key-value metadata storage" );
+    }
+
+    /**
+     * Copy the facet properties of a record, except those of the facets being replaced.
+     */
+    private static void copyFacetProperties( Map<String, String> from, Map<String, String> to,
+                                             Collection<String> replacedFacetIds )
+    {
+        for ( Map.Entry<String, String> entry : from.entrySet() )
+        {
+            String name = entry.getKey();
+            if ( name.indexOf( ':' ) < 0 )
+            {
+                continue;
+            }
+            boolean replaced = false;
+            for ( String facetId : replacedFacetIds )
+            {
+                replaced |= name.startsWith( facetId + ":" );
+            }
+            if ( !replaced )
+            {
+                to.put( name, entry.getValue() );
+            }
+        }
+    }
+
+    private static void putFacetProperties( Map<String, String> record, Collection<MetadataFacet> facets )
+    {
+        for ( MetadataFacet facet : facets )
+        {
+            for ( Map.Entry<String, String> entry : facet.toProperties().entrySet() )
+            {
+                record.put( facet.getFacetId() + ":" + entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    private static Map<String, String> getFacetProperties( SortedMap<String, String> record, String facetId )
+    {
+        Map<String, String> properties = new HashMap<>();
+        String prefix = facetId + ":";
+        for ( Map.Entry<String, String> entry : record.subMap( prefix, prefix + LAST_CHARACTER ).entrySet() )
+        {
+            properties.put( entry.getKey().substring( prefix.length() ), entry.getValue() );
+        }
+        return properties;
+    }
+
+    private static void setProperty( Map<String, String> record, String name, String value )
+    {
+        if ( value != null )
+        {
+            record.put( name, value );
+        }
+    }
+
+    private static String join( Collection<String> values )
+    {
+        StringBuilder s = new StringBuilder();
+        if ( values != null )
+        {
+            for ( String value : values )
+            {
+                if ( value.length() > 0 )
+                {
+                    s.append( s.length() > 0 ? "," : "" ).append( value );
+                }
+            }
+        }
+        return s.toString();
+    }
+
+    private static List<String> split( String values )
+    {
+        return values != null && values.length() > 0
+            ? Arrays.asList( values.split( "," ) )
+            : Collections.<String>emptyList();
+    }
+
+    /**
+     * Split the end of a key into a given number of path elements, the last one taking the rest of the key.
+     */
+    private static String[] split( String key, int elements )
+    {
+        String[] path = key.split( String.valueOf( SEPARATOR ), elements );
+        if ( path.length < elements )
+        {
+            throw new IllegalStateException( "Unexpected metadata key: " + key );
+        }
+        return path;
+    }
+
+    private static String key( String records, String... path )
+    {
+        StringBuilder key = new StringBuilder( records );
+        for ( String element : path )
+        {
+            key.append( SEPARATOR ).append( element );
+        }
+        return key.toString();
+    }
+
+    private static String prefix( String records, String... path )
+    {
+        return key( records, path ) + SEPARATOR;
+    }
+
+    private static String[] path( String repositoryId, String... path )
+    {
+        String[] elements = new String[path.length + 1];
+        elements[0] = repositoryId;
+        System.arraycopy( path, 0, elements, 1, path.length );
+        return elements;
+    }
+
+    private String get( String key )
+        throws IOException
+    {
+        return changes.containsKey( key ) ? changes.get( key ) : store.get( key );
+    }
+
+    private SortedMap<String, String> getRecord( String key )
+        throws IOException
+    {
+        String value = get( key );
+        return value != null ? Records.decode( value ) : null;
+    }
+
+    private void putRecord( String key, Map<String, String> record )
+    {
+        changes.put( key, Records.encode( record ) );
+    }
+
+    private void putIfAbsent( String key )
+        throws IOException
+    {
+        if ( get( key ) == null )
+        {
+            changes.put( key, "" );
+        }
+    }
+
+    /**
+     * Read the records of a range of keys, as changed by the session.
+     */
+    private SortedMap<String, String> scan( String fromKey, String toKey )
+        throws IOException
+    {
+        SortedMap<String, String> records = store.scan( fromKey, toKey );
+        for ( Map.Entry<String, String> change : changes.subMap( fromKey, toKey ).entrySet() )
+        {
+            if ( change.getValue() != null )
+            {
+                records.put( change.getKey(), change.getValue() );
+            }
+            else
+            {
+                records.remove( change.getKey() );
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the records whose key starts with a prefix, by the rest of their key
+     */
+    private SortedMap<String, String> list( String prefix )
+        throws IOException
+    {
+        SortedMap<String, String> records = new TreeMap<>();
+        for ( Map.Entry<String, String> entry : scan( prefix, prefix + LAST_CHARACTER ).entrySet() )
+        {
+            records.put( entry.getKey().substring( prefix.length() ), entry.getValue() );
+        }
+        return records;
+    }
+
+    private void removeAll( String prefix )
+        throws IOException
+    {
+        for ( String key : scan( prefix, prefix + LAST_CHARACTER ).keySet() )
+        {
+            changes.put( key, null );
+        }
+    }
+}
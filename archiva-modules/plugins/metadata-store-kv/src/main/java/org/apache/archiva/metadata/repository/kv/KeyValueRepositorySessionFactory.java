@@ -0,0 +1,159 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataResolver;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+import org.apache.archiva.metadata.repository.RepositorySessionFactoryBean;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates the sessions of the key-value metadata repository, all of them sharing the store opened when the factory
+ * is initialised. The store is kept in the directory given by the <code>archiva.metadata.kv.directory</code> system
+ * property, by default <code>${appserver.base}/data/metadata-kv</code>. The initial import of large repositories can
+ * use the sessions of {@link #createBulkLoadSession()}, the store being in bulk load mode while any of them is open.
+ */
+@Service( "repositorySessionFactory#kv" )
+public class KeyValueRepositorySessionFactory
+    implements RepositorySessionFactory
+{
+    private Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private ApplicationContext applicationContext;
+
+    @Inject
+    private MetadataResolver metadataResolver;
+
+    @Inject
+    private RepositorySessionFactoryBean repositorySessionFactoryBean;
+
+    private Map<String, MetadataFacetFactory> metadataFacetFactories;
+
+    private KeyValueStore store;
+
+    @PostConstruct
+    public void initialize()
+        throws IOException
+    {
+        // skip initialisation if not kv
+        if ( !StringUtils.equals( repositorySessionFactoryBean.getId(), "kv" ) )
+        {
+            return;
+        }
+
+        Map<String, MetadataFacetFactory> tmpMetadataFacetFactories =
+            applicationContext.getBeansOfType( MetadataFacetFactory.class );
+        // olamy with spring the "id" is now "metadataFacetFactory#hint"
+        // whereas was only hint with plexus so let remove  metadataFacetFactory#
+        metadataFacetFactories = new HashMap<>( tmpMetadataFacetFactories.size() );
+        for ( Map.Entry<String, MetadataFacetFactory> entry : tmpMetadataFacetFactories.entrySet() )
+        {
+            metadataFacetFactories.put( StringUtils.substringAfterLast( entry.getKey(), "#" ), entry.getValue() );
+        }
+
+        File directory = new File( System.getProperty( "archiva.metadata.kv.directory",
+                                                       new File( System.getProperty( "appserver.base", "." ),
+                                                                 "data/metadata-kv" ).getPath() ) );
+        store = new KeyValueStore( directory );
+        logger.info( "Opened the key-value metadata store in {}", directory );
+    }
+
+    @PreDestroy
+    public void close()
+        throws IOException
+    {
+        if ( store != null )
+        {
+            store.close();
+        }
+    }
+
+    @Override
+    public RepositorySession createSession()
+    {
+        MetadataRepository metadataRepository = new KeyValueMetadataRepository( metadataFacetFactories, store );
+
+        return new RepositorySession( metadataRepository, metadataResolver );
+    }
+
+    /**
+     * Create a session for an import: the store is in bulk load mode until the last import session is closed, which
+     * writes everything to the disk and merges the segments. The batches saved meanwhile by any session may be lost
+     * if Archiva crashes.
+     *
+     * @see KeyValueStore#setBulkLoad(boolean)
+     */
+    public RepositorySession createBulkLoadSession()
+        throws IOException
+    {
+        store.beginBulkLoad();
+        MetadataRepository metadataRepository = new KeyValueMetadataRepository( metadataFacetFactories, store );
+
+        return new RepositorySession( metadataRepository, metadataResolver )
+        {
+            private boolean closed;
+
+            @Override
+            public void close()
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    if ( !closed )
+                    {
+                        closed = true;
+                        endBulkLoad();
+                    }
+                }
+            }
+        };
+    }
+
+    private void endBulkLoad()
+    {
+        try
+        {
+            store.endBulkLoad();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to leave the bulk load mode: " + e.getMessage(), e );
+        }
+    }
+}
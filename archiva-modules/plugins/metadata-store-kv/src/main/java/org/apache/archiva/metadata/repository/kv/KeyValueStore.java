@@ -0,0 +1,858 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded key-value store, keeping its keys in order so that the records sharing a key prefix can be read
+ * together. The store lives in a single directory, which only one process can open at a time:
+ * <ul>
+ * <li>each committed batch of changes is appended to a write-ahead log as a single checksummed record, then applied to
+ * a sorted table in memory;</li>
+ * <li>when the memory table grows past a threshold it is written as an immutable sorted {@link Segment} file, listed
+ * in the manifest, and the log is emptied;</li>
+ * <li>lookups read the memory table, then the segments from the newest one;</li>
+ * <li>once there are too many segments they are merged into one, dropping the removed keys.</li>
+ * </ul>
+ * When opened, the store replays the batches of the log that were completely written, so a batch is either entirely
+ * there or not at all after a crash. Batches are forced to the disk when committed, unless in bulk load mode.
+ * <p>
+ * Keys are compared with {@link String#compareTo(String)}. The store is safe for use by concurrent threads: readers
+ * share a lock, writers and maintenance take it exclusively.
+ */
+public final class KeyValueStore
+    implements Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger( KeyValueStore.class );
+
+    private static final long MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final long BULK_LOAD_MEMORY_THRESHOLD = 64 * 1024 * 1024;
+
+    private static final int MAX_SEGMENTS = 8;
+
+    private static final String LOCK_FILE = "lock";
+
+    private static final String MANIFEST_FILE = "manifest";
+
+    private static final String LOG_FILE = "store.log";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * Per record of the memory table, on top of the characters of the key and value.
+     */
+    private static final int RECORD_OVERHEAD = 64;
+
+    /**
+     * The directories of the stores open in this process.
+     */
+    private static final Set<File> OPEN_DIRECTORIES = new HashSet<>();
+
+    private final File directory;
+
+    private final long memoryThreshold;
+
+    private final int maxSegments;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final FileChannel lockChannel;
+
+    private final FileLock fileLock;
+
+    private final FileChannel logChannel;
+
+    private long logPosition;
+
+    /**
+     * The changes not yet written to a segment, a <code>null</code> value marking a removed key.
+     */
+    private TreeMap<String, String> memory = new TreeMap<>();
+
+    private long memorySize;
+
+    /**
+     * The segments, from the newest to the oldest.
+     */
+    private List<Segment> segments = new ArrayList<>();
+
+    private int nextSegmentNumber = 1;
+
+    private boolean bulkLoad;
+
+    /**
+     * Number of the imports begun and not yet ended, the store being in bulk load mode while there is any.
+     */
+    private int bulkLoads;
+
+    private boolean closed;
+
+    public KeyValueStore( File directory )
+        throws IOException
+    {
+        this( directory, MEMORY_THRESHOLD, MAX_SEGMENTS );
+    }
+
+    KeyValueStore( File directory, long memoryThreshold, int maxSegments )
+        throws IOException
+    {
+        this.directory = directory.getAbsoluteFile();
+        this.memoryThreshold = memoryThreshold;
+        this.maxSegments = maxSegments;
+
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new IOException( "Unable to create the store directory " + directory );
+        }
+        // a second lock from this process would fail, or be released along with the first one on some systems
+        synchronized ( OPEN_DIRECTORIES )
+        {
+            if ( !OPEN_DIRECTORIES.add( directory.getCanonicalFile() ) )
+            {
+                throw new IOException( "The store " + directory + " is already open" );
+            }
+        }
+
+        FileChannel lockFileChannel = null;
+        FileChannel channel = null;
+        try
+        {
+            lockFileChannel = FileChannel.open( new File( directory, LOCK_FILE ).toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE );
+            fileLock = lockFileChannel.tryLock();
+            if ( fileLock == null )
+            {
+                throw new IOException( "The store " + directory + " is used by another process" );
+            }
+            openSegments();
+            channel = FileChannel.open( new File( directory, LOG_FILE ).toPath(), StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE );
+            replay( channel );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            for ( Segment segment : segments )
+            {
+                segment.close();
+            }
+            if ( channel != null )
+            {
+                channel.close();
+            }
+            if ( lockFileChannel != null )
+            {
+                lockFileChannel.close();
+            }
+            synchronized ( OPEN_DIRECTORIES )
+            {
+                OPEN_DIRECTORIES.remove( directory.getCanonicalFile() );
+            }
+            throw e;
+        }
+        lockChannel = lockFileChannel;
+        logChannel = channel;
+    }
+
+    /**
+     * Open the segments listed in the manifest, deleting the files left over by an interrupted flush or merge.
+     */
+    private void openSegments()
+        throws IOException
+    {
+        File manifest = new File( directory, MANIFEST_FILE );
+        List<String> names = manifest.exists()
+            ? Files.readAllLines( manifest.toPath(), StandardCharsets.UTF_8 )
+            : Collections.<String>emptyList();
+        Set<String> live = new HashSet<>();
+        for ( String name : names )
+        {
+            if ( name.length() > 0 )
+            {
+                segments.add( new Segment( new File( directory, name ) ) );
+                live.add( name );
+                int number = Integer.parseInt(
+                    name.substring( SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length() ) );
+                nextSegmentNumber = Math.max( nextSegmentNumber, number + 1 );
+            }
+        }
+
+        File[] files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                String name = file.getName();
+                if ( ( name.startsWith( SEGMENT_PREFIX ) && !live.contains( name ) ) || name.endsWith( ".tmp" ) )
+                {
+                    log.debug( "Deleting unused store file {}", file );
+                    Files.delete( file.toPath() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the batches of the log, up to the first one that was not completely written.
+     */
+    private void replay( FileChannel channel )
+        throws IOException
+    {
+        long length = channel.size();
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream( new FileInputStream( new File( directory, LOG_FILE ) ) ) ))
+        {
+            while ( position + 8 <= length )
+            {
+                int batchLength = in.readInt();
+                int checksum = in.readInt();
+                if ( batchLength < 4 || position + 8 + batchLength > length )
+                {
+                    break;
+                }
+                byte[] batch = new byte[batchLength];
+                in.readFully( batch );
+                CRC32 crc = new CRC32();
+                crc.update( batch );
+                if ( (int) crc.getValue() != checksum )
+                {
+                    break;
+                }
+                apply( decode( batch ) );
+                position += 8 + batchLength;
+            }
+        }
+        catch ( EOFException e )
+        {
+            // a batch not completely written
+        }
+
+        if ( position < length )
+        {
+            log.warn( "Discarding {} bytes of incomplete changes at the end of the log of {}", length - position,
+                      directory );
+            channel.truncate( position );
+            channel.force( true );
+        }
+        logPosition = position;
+    }
+
+    /**
+     * @return the value of the key, <code>null</code> if there is none
+     */
+    public String get( String key )
+        throws IOException
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkOpen();
+            if ( memory.containsKey( key ) )
+            {
+                return memory.get( key );
+            }
+            for ( Segment segment : segments )
+            {
+                Map.Entry<String, String> entry = segment.find( key );
+                if ( entry != null )
+                {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read the records of a range of keys.
+     *
+     * @param fromKey the first key, inclusive
+     * @param toKey   the last key, exclusive
+     * @return the records of the range in key order
+     */
+    public SortedMap<String, String> scan( String fromKey, String toKey )
+        throws IOException
+    {
+        return scan( fromKey, toKey, Integer.MAX_VALUE );
+    }
+
+    /**
+     * Read the first records of a range of keys, merging the memory table and the segments as they are read so that
+     * only the records returned are held in memory.
+     *
+     * @param fromKey the first key, inclusive
+     * @param toKey   the last key, exclusive
+     * @param limit   the maximum number of records to read
+     * @return the records read in key order
+     */
+    public SortedMap<String, String> scan( String fromKey, String toKey, int limit )
+        throws IOException
+    {
+        TreeMap<String, String> records = new TreeMap<>();
+        List<Segment.Cursor> cursors = new ArrayList<>();
+        lock.readLock().lock();
+        try
+        {
+            checkOpen();
+            Iterator<Map.Entry<String, String>> memoryRecords =
+                memory.subMap( fromKey, toKey ).entrySet().iterator();
+            Map.Entry<String, String> memoryRecord = memoryRecords.hasNext() ? memoryRecords.next() : null;
+            String[] keys = new String[segments.size()];
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                cursors.add( segments.get( i ).cursor( fromKey ) );
+                keys[i] = next( cursors.get( i ), fromKey, toKey );
+            }
+
+            while ( records.size() < limit )
+            {
+                String key = memoryRecord != null ? memoryRecord.getKey() : null;
+                for ( String k : keys )
+                {
+                    if ( k != null && ( key == null || k.compareTo( key ) < 0 ) )
+                    {
+                        key = k;
+                    }
+                }
+                if ( key == null )
+                {
+                    break;
+                }
+
+                // the memory table is the newest, then the segments from the newest
+                String value = null;
+                boolean found = false;
+                if ( memoryRecord != null && key.equals( memoryRecord.getKey() ) )
+                {
+                    value = memoryRecord.getValue();
+                    found = true;
+                    memoryRecord = memoryRecords.hasNext() ? memoryRecords.next() : null;
+                }
+                for ( int i = 0; i < keys.length; i++ )
+                {
+                    if ( key.equals( keys[i] ) )
+                    {
+                        if ( !found )
+                        {
+                            value = cursors.get( i ).getValue();
+                            found = true;
+                        }
+                        keys[i] = next( cursors.get( i ), fromKey, toKey );
+                    }
+                }
+                if ( value != null )
+                {
+                    records.put( key, value );
+                }
+            }
+        }
+        finally
+        {
+            try
+            {
+                for ( Segment.Cursor cursor : cursors )
+                {
+                    cursor.close();
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Move a cursor to its next record in a range of keys.
+     *
+     * @return the key of the record, <code>null</code> if there are no more records in the range
+     */
+    private static String next( Segment.Cursor cursor, String fromKey, String toKey )
+        throws IOException
+    {
+        while ( cursor.next() )
+        {
+            String key = cursor.getKey();
+            if ( key.compareTo( toKey ) >= 0 )
+            {
+                return null;
+            }
+            if ( key.compareTo( fromKey ) >= 0 )
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Commit a batch of changes: either all of them are kept, or none is.
+     *
+     * @param changes the new values of the keys, <code>null</code> to remove a key
+     */
+    public void write( Map<String, String> changes )
+        throws IOException
+    {
+        if ( changes.isEmpty() )
+        {
+            return;
+        }
+        byte[] batch = encode( changes );
+        CRC32 crc = new CRC32();
+        crc.update( batch );
+        ByteBuffer buffer = ByteBuffer.allocate( 8 + batch.length );
+        buffer.putInt( batch.length ).putInt( (int) crc.getValue() ).put( batch ).flip();
+
+        lock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            long position = logPosition;
+            try
+            {
+                while ( buffer.hasRemaining() )
+                {
+                    position += logChannel.write( buffer, position );
+                }
+                if ( !bulkLoad )
+                {
+                    logChannel.force( false );
+                }
+            }
+            catch ( IOException e )
+            {
+                // don't leave a partial batch in front of the next ones
+                logChannel.truncate( logPosition );
+                throw e;
+            }
+            logPosition = position;
+
+            apply( changes );
+            if ( memorySize >= ( bulkLoad ? Math.max( memoryThreshold, BULK_LOAD_MEMORY_THRESHOLD )
+                : memoryThreshold ) )
+            {
+                flushMemory();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Switch the bulk load mode, meant for the initial import of large repositories: the batches are no longer forced
+     * to the disk when committed, so a crash may lose the latest ones, and the memory table is allowed to grow larger
+     * while the merge of the segments is put off. Leaving the mode writes everything to the disk.
+     */
+    public void setBulkLoad( boolean bulkLoad )
+        throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            if ( this.bulkLoad && !bulkLoad )
+            {
+                this.bulkLoad = false;
+                flushMemory();
+                if ( segments.size() > 1 )
+                {
+                    merge();
+                }
+            }
+            this.bulkLoad = bulkLoad;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Begin an import, entering the bulk load mode if no other import is running.
+     */
+    public void beginBulkLoad()
+        throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            if ( bulkLoads++ == 0 )
+            {
+                setBulkLoad( true );
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * End an import, leaving the bulk load mode once all the imports begun have ended.
+     */
+    public void endBulkLoad()
+        throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( bulkLoads == 0 )
+            {
+                return;
+            }
+            if ( --bulkLoads == 0 && !closed )
+            {
+                setBulkLoad( false );
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean isBulkLoad()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return bulkLoad;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    int getSegmentCount()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return segments.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply( Map<String, String> changes )
+    {
+        for ( Map.Entry<String, String> entry : changes.entrySet() )
+        {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            memory.put( key, value );
+            memorySize += RECORD_OVERHEAD + 2 * ( key.length() + ( value != null ? value.length() : 0 ) );
+        }
+    }
+
+    /**
+     * Write the memory table as the newest segment, then empty the log.
+     */
+    private void flushMemory()
+        throws IOException
+    {
+        if ( memory.isEmpty() )
+        {
+            return;
+        }
+        File file = newSegmentFile();
+        try (Segment.Writer writer = new Segment.Writer( file ))
+        {
+            for ( Map.Entry<String, String> entry : memory.entrySet() )
+            {
+                writer.add( entry.getKey(), entry.getValue() );
+            }
+            writer.finish();
+        }
+
+        List<Segment> newSegments = new ArrayList<>();
+        newSegments.add( new Segment( file ) );
+        newSegments.addAll( segments );
+        writeManifest( newSegments );
+        segments = newSegments;
+
+        memory = new TreeMap<>();
+        memorySize = 0;
+        logChannel.truncate( 0 );
+        logChannel.force( true );
+        logPosition = 0;
+
+        if ( !bulkLoad && segments.size() > maxSegments )
+        {
+            merge();
+        }
+    }
+
+    /**
+     * Merge all the segments into one, in a single pass over their records.
+     */
+    private void merge()
+        throws IOException
+    {
+        long start = System.currentTimeMillis();
+        File file = newSegmentFile();
+        List<Segment.Cursor> cursors = new ArrayList<>();
+        boolean empty = true;
+        try (Segment.Writer writer = new Segment.Writer( file ))
+        {
+            for ( Segment segment : segments )
+            {
+                cursors.add( segment.cursor( null ) );
+            }
+            String[] keys = new String[cursors.size()];
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                keys[i] = cursors.get( i ).next() ? cursors.get( i ).getKey() : null;
+            }
+
+            while ( true )
+            {
+                String key = null;
+                for ( String k : keys )
+                {
+                    if ( k != null && ( key == null || k.compareTo( key ) < 0 ) )
+                    {
+                        key = k;
+                    }
+                }
+                if ( key == null )
+                {
+                    break;
+                }
+
+                // the segments are ordered from the newest, so the first one having the key has its value
+                String value = null;
+                boolean found = false;
+                for ( int i = 0; i < keys.length; i++ )
+                {
+                    if ( key.equals( keys[i] ) )
+                    {
+                        Segment.Cursor cursor = cursors.get( i );
+                        if ( !found )
+                        {
+                            value = cursor.getValue();
+                            found = true;
+                        }
+                        keys[i] = cursor.next() ? cursor.getKey() : null;
+                    }
+                }
+                if ( value != null )
+                {
+                    writer.add( key, value );
+                    empty = false;
+                }
+            }
+            writer.finish();
+        }
+        finally
+        {
+            for ( Segment.Cursor cursor : cursors )
+            {
+                cursor.close();
+            }
+        }
+
+        List<Segment> newSegments = new ArrayList<>();
+        if ( empty )
+        {
+            Files.delete( file.toPath() );
+        }
+        else
+        {
+            newSegments.add( new Segment( file ) );
+        }
+        writeManifest( newSegments );
+
+        List<Segment> oldSegments = segments;
+        segments = newSegments;
+        for ( Segment segment : oldSegments )
+        {
+            segment.close();
+            Files.delete( segment.getFile().toPath() );
+        }
+        log.debug( "Merged {} segments of {} in {}ms", oldSegments.size(), directory,
+                   System.currentTimeMillis() - start );
+    }
+
+    private File newSegmentFile()
+    {
+        return new File( directory, String.format( "%s%06d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX ) );
+    }
+
+    private void writeManifest( List<Segment> segments )
+        throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        for ( Segment segment : segments )
+        {
+            content.append( segment.getFile().getName() ).append( '\n' );
+        }
+
+        File manifest = new File( directory, MANIFEST_FILE );
+        File temp = new File( directory, MANIFEST_FILE + ".tmp" );
+        try (FileChannel channel = FileChannel.open( temp.toPath(), StandardOpenOption.CREATE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING,
+                                                     StandardOpenOption.WRITE ))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( content.toString().getBytes( StandardCharsets.UTF_8 ) );
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+            channel.force( true );
+        }
+        try
+        {
+            Files.move( temp.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            Files.move( temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private static byte[] encode( Map<String, String> changes )
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( changes.size() );
+        for ( Map.Entry<String, String> entry : changes.entrySet() )
+        {
+            Segment.writeRecord( out, entry.getKey(), entry.getValue() );
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> decode( byte[] batch )
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( batch ) );
+        int count = in.readInt();
+        Map<String, String> changes = new TreeMap<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            String key = Segment.readString( in );
+            if ( key == null )
+            {
+                throw new IOException( "Invalid batch in the log" );
+            }
+            changes.put( key, Segment.readString( in ) );
+        }
+        return changes;
+    }
+
+    private void checkOpen()
+    {
+        if ( closed )
+        {
+            throw new IllegalStateException( "The store " + directory + " is closed" );
+        }
+    }
+
+    /**
+     * Write the memory table to a segment and release the store.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( closed )
+            {
+                return;
+            }
+            closed = true;
+            try
+            {
+                bulkLoad = false;
+                flushMemory();
+            }
+            finally
+            {
+                for ( Segment segment : segments )
+                {
+                    segment.close();
+                }
+                logChannel.close();
+                fileLock.release();
+                lockChannel.close();
+                synchronized ( OPEN_DIRECTORIES )
+                {
+                    OPEN_DIRECTORIES.remove( directory.getCanonicalFile() );
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+}
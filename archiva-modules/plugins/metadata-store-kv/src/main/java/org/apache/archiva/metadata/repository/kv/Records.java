@@ -0,0 +1,109 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Encodes the records of the metadata repository, maps of properties, as values of the store: a line per property,
+ * the key and value separated by <code>=</code>, with the line breaks, <code>=</code> and <code>\</code> characters
+ * escaped.
+ */
+final class Records
+{
+    private Records()
+    {
+        // static methods only
+    }
+
+    static String encode( Map<String, String> record )
+    {
+        StringBuilder value = new StringBuilder();
+        for ( Map.Entry<String, String> entry : record.entrySet() )
+        {
+            escape( value, entry.getKey() );
+            value.append( '=' );
+            escape( value, entry.getValue() );
+            value.append( '\n' );
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return the properties of the record, sorted by key
+     */
+    static SortedMap<String, String> decode( String value )
+    {
+        SortedMap<String, String> record = new TreeMap<>();
+        StringBuilder key = new StringBuilder();
+        StringBuilder current = key;
+        StringBuilder propertyValue = new StringBuilder();
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( c == '\\' && i + 1 < value.length() )
+            {
+                char escaped = value.charAt( ++i );
+                current.append( escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped );
+            }
+            else if ( c == '=' && current == key )
+            {
+                current = propertyValue;
+            }
+            else if ( c == '\n' )
+            {
+                record.put( key.toString(), propertyValue.toString() );
+                key.setLength( 0 );
+                propertyValue.setLength( 0 );
+                current = key;
+            }
+            else
+            {
+                current.append( c );
+            }
+        }
+        return record;
+    }
+
+    private static void escape( StringBuilder value, String s )
+    {
+        for ( int i = 0; i < s.length(); i++ )
+        {
+            char c = s.charAt( i );
+            switch ( c )
+            {
+                case '\n':
+                    value.append( "\\n" );
+                    break;
+                case '\r':
+                    value.append( "\\r" );
+                    break;
+                case '=':
+                case '\\':
+                    value.append( '\\' ).append( c );
+                    break;
+                default:
+                    value.append( c );
+            }
+        }
+    }
+}
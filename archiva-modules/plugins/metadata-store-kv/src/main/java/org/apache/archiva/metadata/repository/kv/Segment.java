@@ -0,0 +1,415 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable file of records sorted by key, written by {@link KeyValueStore} when its memory table is full or when
+ * it merges its segments. A removed key is kept as a record without value until the segments are merged, so that it
+ * hides the value of the key in the older segments.
+ * <p>
+ * The records are followed by a sparse index holding every {@link #INDEX_INTERVAL}th key, loaded when the segment is
+ * opened: a lookup reads a single interval of records. The records are read with positional reads, so that the
+ * segment can be shared by concurrent readers and the operating system caches the parts being used.
+ */
+final class Segment
+    implements Closeable
+{
+    static final int INDEX_INTERVAL = 64;
+
+    private static final int MAGIC = 0x41524b56;
+
+    /**
+     * The offset of the index, the number of index entries and the magic number.
+     */
+    private static final int FOOTER_LENGTH = 16;
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final long dataLength;
+
+    private final String[] indexKeys;
+
+    private final long[] indexOffsets;
+
+    Segment( File file )
+        throws IOException
+    {
+        this.file = file;
+        this.channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try
+        {
+            long size = channel.size();
+            ByteBuffer footer = ByteBuffer.allocate( FOOTER_LENGTH );
+            while ( size >= FOOTER_LENGTH && footer.hasRemaining() )
+            {
+                if ( channel.read( footer, size - FOOTER_LENGTH + footer.position() ) < 0 )
+                {
+                    break;
+                }
+            }
+            footer.flip();
+            if ( footer.remaining() < FOOTER_LENGTH )
+            {
+                throw new IOException( "Segment file too short: " + file );
+            }
+            dataLength = footer.getLong();
+            int count = footer.getInt();
+            if ( footer.getInt() != MAGIC || dataLength < 0 || dataLength > size - FOOTER_LENGTH || count < 0 )
+            {
+                throw new IOException( "Invalid segment file: " + file );
+            }
+
+            indexKeys = new String[count];
+            indexOffsets = new long[count];
+            try (DataInputStream in = open( dataLength, size - FOOTER_LENGTH ))
+            {
+                for ( int i = 0; i < count; i++ )
+                {
+                    indexKeys[i] = readString( in );
+                    indexOffsets[i] = in.readLong();
+                }
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Look up a key.
+     *
+     * @return the record of the key, having a <code>null</code> value if the key was removed, or <code>null</code> if
+     *         the segment has no record for the key
+     */
+    Map.Entry<String, String> find( String key )
+        throws IOException
+    {
+        int i = floorIndex( key );
+        if ( i < 0 )
+        {
+            return null;
+        }
+        try (Cursor cursor = new Cursor( indexOffsets[i] ))
+        {
+            while ( cursor.next() )
+            {
+                int comparison = cursor.getKey().compareTo( key );
+                if ( comparison == 0 )
+                {
+                    return new AbstractMap.SimpleImmutableEntry<>( key, cursor.getValue() );
+                }
+                if ( comparison > 0 )
+                {
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Open a cursor over the records, starting at the beginning of the index interval holding a key: the records
+     * before the key still have to be skipped.
+     */
+    Cursor cursor( String fromKey )
+        throws IOException
+    {
+        int i = fromKey != null ? floorIndex( fromKey ) : -1;
+        return new Cursor( i >= 0 ? indexOffsets[i] : 0 );
+    }
+
+    private int floorIndex( String key )
+    {
+        int i = Arrays.binarySearch( indexKeys, key );
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private DataInputStream open( long position, long end )
+    {
+        return new DataInputStream(
+            new BufferedInputStream( new ChannelInputStream( channel, position, end ), READ_BUFFER_SIZE ) );
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Write a record, as a key and a value preceded by their lengths in bytes, a removed key having no value and a
+     * length of <code>-1</code>.
+     *
+     * @return the number of bytes written
+     */
+    static int writeRecord( DataOutput out, String key, String value )
+        throws IOException
+    {
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( keyBytes.length );
+        out.write( keyBytes );
+        if ( value == null )
+        {
+            out.writeInt( -1 );
+            return 8 + keyBytes.length;
+        }
+        byte[] valueBytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( valueBytes.length );
+        out.write( valueBytes );
+        return 8 + keyBytes.length + valueBytes.length;
+    }
+
+    /**
+     * Read a string written as its length in bytes followed by its bytes.
+     *
+     * @return the string, <code>null</code> for a length of <code>-1</code>
+     */
+    static String readString( DataInput in )
+        throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Iterates over the records of the segment in key order.
+     */
+    final class Cursor
+        implements Closeable
+    {
+        private final DataInputStream in;
+
+        private long position;
+
+        private String key;
+
+        private String value;
+
+        private Cursor( long position )
+        {
+            this.position = position;
+            this.in = open( position, dataLength );
+        }
+
+        /**
+         * Move to the next record.
+         *
+         * @return <code>false</code> if there are no more records
+         */
+        boolean next()
+            throws IOException
+        {
+            if ( position >= dataLength )
+            {
+                key = null;
+                value = null;
+                return false;
+            }
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully( keyBytes );
+            key = new String( keyBytes, StandardCharsets.UTF_8 );
+            position += 8 + keyBytes.length;
+
+            int valueLength = in.readInt();
+            if ( valueLength < 0 )
+            {
+                value = null;
+            }
+            else
+            {
+                byte[] valueBytes = new byte[valueLength];
+                in.readFully( valueBytes );
+                value = new String( valueBytes, StandardCharsets.UTF_8 );
+                position += valueLength;
+            }
+            return true;
+        }
+
+        String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * @return the value of the current record, <code>null</code> if the key was removed
+         */
+        String getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a new segment from records given in key order.
+     */
+    static final class Writer
+        implements Closeable
+    {
+        private final FileOutputStream file;
+
+        private final DataOutputStream out;
+
+        private final List<String> indexKeys = new ArrayList<>();
+
+        private final List<Long> indexOffsets = new ArrayList<>();
+
+        private long offset;
+
+        private int count;
+
+        Writer( File file )
+            throws IOException
+        {
+            this.file = new FileOutputStream( file );
+            this.out = new DataOutputStream( new BufferedOutputStream( this.file, 65536 ) );
+        }
+
+        /**
+         * @param value the value, <code>null</code> to record the removal of the key
+         */
+        void add( String key, String value )
+            throws IOException
+        {
+            if ( count++ % INDEX_INTERVAL == 0 )
+            {
+                indexKeys.add( key );
+                indexOffsets.add( offset );
+            }
+            offset += writeRecord( out, key, value );
+        }
+
+        /**
+         * Write the index and force the segment to the disk.
+         */
+        void finish()
+            throws IOException
+        {
+            for ( int i = 0; i < indexKeys.size(); i++ )
+            {
+                byte[] key = indexKeys.get( i ).getBytes( StandardCharsets.UTF_8 );
+                out.writeInt( key.length );
+                out.write( key );
+                out.writeLong( indexOffsets.get( i ) );
+            }
+            out.writeLong( offset );
+            out.writeInt( indexKeys.size() );
+            out.writeInt( MAGIC );
+            out.flush();
+            file.getFD().sync();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a range of a file with positional reads, leaving the position of the channel alone.
+     */
+    private static final class ChannelInputStream
+        extends InputStream
+    {
+        private final FileChannel channel;
+
+        private final long end;
+
+        private long position;
+
+        private ChannelInputStream( FileChannel channel, long position, long end )
+        {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            byte[] b = new byte[1];
+            return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( position >= end )
+            {
+                return -1;
+            }
+            int n = channel.read( ByteBuffer.wrap( b, off, (int) Math.min( len, end - position ) ), position );
+            if ( n > 0 )
+            {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.File;
+import java.util.HashMap;
+
+public class KeyValueMetadataRepositoryBenchmark
+    extends AbstractMetadataRepositoryBenchmark
+{
+    private static final File DIRECTORY = new File( "target/benchmark-stores/metadata" );
+
+    private KeyValueStore store;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        FileUtils.deleteDirectory( DIRECTORY );
+        store = new KeyValueStore( DIRECTORY );
+
+        this.repository = new KeyValueMetadataRepository( new HashMap<String, MetadataFacetFactory>(), store );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        store.close();
+
+        super.tearDown();
+    }
+
+    @Override
+    protected String getBackendName()
+    {
+        return "kv";
+    }
+}
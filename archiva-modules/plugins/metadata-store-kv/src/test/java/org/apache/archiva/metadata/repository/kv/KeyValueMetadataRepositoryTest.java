@@ -0,0 +1,164 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class KeyValueMetadataRepositoryTest
+    extends AbstractMetadataRepositoryTest
+{
+    private static final File DIRECTORY = new File( "target/test-stores/metadata" );
+
+    private KeyValueStore store;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        FileUtils.deleteDirectory( DIRECTORY );
+        store = new KeyValueStore( DIRECTORY );
+
+        this.repository = new KeyValueMetadataRepository( createTestMetadataFacetFactories(), store );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        store.close();
+
+        super.tearDown();
+    }
+
+    @Test
+    public void testChangesVisibleToOtherSessionsOnceSaved()
+        throws Exception
+    {
+        KeyValueMetadataRepository otherSession =
+            new KeyValueMetadataRepository( createTestMetadataFacetFactories(), store );
+
+        ArtifactMetadata artifact = createArtifact( "project-a", "abc" );
+        assertEquals( Collections.singletonList( artifact ), new ArrayList<>(
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ) ) );
+        assertTrue(
+            otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ).isEmpty() );
+
+        repository.save();
+
+        assertEquals( Collections.singletonList( artifact ), new ArrayList<>(
+            otherSession.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, "project-a", TEST_PROJECT_VERSION ) ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      otherSession.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+
+        createArtifact( "project-b", "abc" );
+        repository.revert();
+
+        assertEquals( Collections.singletonList( "project-a" ),
+                      repository.getProjects( TEST_REPO_ID, TEST_NAMESPACE ) );
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+    }
+
+    @Test
+    public void testSavedChangesKeptWhenReopened()
+        throws Exception
+    {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( TEST_PROJECT_VERSION );
+        metadata.setName( "saved name" );
+        repository.updateProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, metadata );
+        ArtifactMetadata artifact = createArtifact( TEST_PROJECT, "abc" );
+        repository.save();
+        createArtifact( "project-b", "abc" );
+        store.close();
+
+        store = new KeyValueStore( DIRECTORY );
+        repository = new KeyValueMetadataRepository( createTestMetadataFacetFactories(), store );
+
+        assertEquals( "saved name", repository.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                  TEST_PROJECT_VERSION ).getName() );
+        assertEquals( Collections.singletonList( TEST_PROJECT ),
+                      repository.getProjects( TEST_REPO_ID, TEST_NAMESPACE ) );
+        assertEquals( Collections.singletonList( artifact ), repository.getArtifactsByChecksum( TEST_REPO_ID, "abc" ) );
+    }
+
+    @Test
+    public void testPagesIncludeChangesNotSaved()
+        throws Exception
+    {
+        createArtifact( "project-a", "abc" );
+        ArtifactMetadata removed = createArtifact( "project-b", "abc" );
+        ArtifactMetadata artifact = createArtifact( "project-c", "abc" );
+        repository.save();
+        repository.removeArtifact( removed, TEST_PROJECT_VERSION );
+        ArtifactMetadata added = createArtifact( "project-d", "abc" );
+
+        List<String> projects = new ArrayList<>();
+        String pageToken = null;
+        do
+        {
+            ArtifactMetadataPage page = repository.getArtifacts( TEST_REPO_ID, pageToken, 1 );
+            for ( ArtifactMetadata a : page.getArtifacts() )
+            {
+                projects.add( a.getProject() );
+            }
+            pageToken = page.getNextPageToken();
+        }
+        while ( pageToken != null );
+
+        assertEquals( Arrays.asList( "project-a", artifact.getProject(), added.getProject() ), projects );
+    }
+
+    private ArtifactMetadata createArtifact( String projectId, String sha1 )
+        throws MetadataRepositoryException
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( projectId + "-" + TEST_PROJECT_VERSION + ".jar" );
+        artifact.setWhenGathered( new Date( 1000L ) );
+        artifact.setFileLastModified( 1234567890L );
+        artifact.setSize( 10 );
+        artifact.setVersion( TEST_PROJECT_VERSION );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setNamespace( TEST_NAMESPACE );
+        artifact.setProject( projectId );
+        artifact.setProjectVersion( TEST_PROJECT_VERSION );
+        artifact.setSha1( sha1 );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, projectId, TEST_PROJECT_VERSION, artifact );
+        return artifact;
+    }
+}
@@ -0,0 +1,241 @@
+package org.apache.archiva.metadata.repository.kv;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyValueStoreTest
+{
+    private File directory = new File( "target/test-stores/store" );
+
+    private KeyValueStore store;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( directory.getParentFile() );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        if ( store != null )
+        {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testWriteAndScan()
+        throws Exception
+    {
+        store = new KeyValueStore( directory );
+
+        store.write( changes( "a/1", "one", "a/2", "two", "b/1", "three" ) );
+
+        assertEquals( "two", store.get( "a/2" ) );
+        assertNull( store.get( "a/3" ) );
+        assertEquals( Arrays.asList( "a/1", "a/2" ),
+                      Arrays.asList( store.scan( "a/", "a/\uffff" ).keySet().toArray() ) );
+
+        store.write( changes( "a/1", null ) );
+
+        assertNull( store.get( "a/1" ) );
+        assertEquals( Collections.singletonMap( "a/2", "two" ), store.scan( "a/", "a/\uffff" ) );
+    }
+
+    @Test
+    public void testRemovedKeysHideOlderSegments()
+        throws Exception
+    {
+        store = new KeyValueStore( directory, 1, 100 );
+
+        store.write( changes( "a/1", "one", "a/2", "two" ) );
+        store.write( changes( "a/1", null ) );
+        store.write( changes( "a/2", "new two" ) );
+
+        assertEquals( 3, store.getSegmentCount() );
+        assertNull( store.get( "a/1" ) );
+        assertEquals( Collections.singletonMap( "a/2", "new two" ), store.scan( "a/", "a/\uffff" ) );
+    }
+
+    @Test
+    public void testSegmentsMerged()
+        throws Exception
+    {
+        store = new KeyValueStore( directory, 1, 3 );
+
+        SortedMap<String, String> expected = new TreeMap<>();
+        for ( int i = 0; i < 500; i++ )
+        {
+            String key = String.format( "key/%03d", i % 200 );
+            String value = i % 7 == 0 ? null : "value " + i;
+            store.write( changes( key, value ) );
+            if ( value != null )
+            {
+                expected.put( key, value );
+            }
+            else
+            {
+                expected.remove( key );
+            }
+        }
+
+        assertTrue( store.getSegmentCount() <= 3 );
+        assertEquals( expected, store.scan( "key/", "key/\uffff" ) );
+        assertEquals( expected.get( "key/150" ), store.get( "key/150" ) );
+        assertEquals( expected, store.scan( "", "\uffff" ) );
+    }
+
+    @Test
+    public void testReopen()
+        throws Exception
+    {
+        store = new KeyValueStore( directory, 1, 100 );
+        store.write( changes( "a/1", "one", "a/2", "two" ) );
+        store.write( changes( "a/2", null ) );
+        store.close();
+
+        store = new KeyValueStore( directory );
+
+        assertEquals( Collections.singletonMap( "a/1", "one" ), store.scan( "a/", "a/\uffff" ) );
+    }
+
+    @Test
+    public void testCommittedChangesReplayedAfterCrash()
+        throws Exception
+    {
+        store = new KeyValueStore( directory );
+        store.write( changes( "a/1", "one" ) );
+        store.write( changes( "a/2", "two", "a/3", "three" ) );
+
+        // the files of a process that died without closing the store, with a batch not completely written
+        File copy = new File( directory.getParentFile(), "copy" );
+        FileUtils.copyDirectory( directory, copy );
+        try (OutputStream out = new FileOutputStream( new File( copy, "store.log" ), true ))
+        {
+            out.write( new byte[]{ 0, 0, 0, 42, 1, 2, 3 } );
+        }
+
+        try (KeyValueStore recovered = new KeyValueStore( copy ))
+        {
+            assertEquals( changes( "a/1", "one", "a/2", "two", "a/3", "three" ), recovered.scan( "a/", "a/\uffff" ) );
+
+            recovered.write( changes( "a/4", "four" ) );
+        }
+
+        try (KeyValueStore recovered = new KeyValueStore( copy ))
+        {
+            assertEquals( "four", recovered.get( "a/4" ) );
+        }
+    }
+
+    @Test
+    public void testBulkLoad()
+        throws Exception
+    {
+        store = new KeyValueStore( directory, 1, 2 );
+        store.setBulkLoad( true );
+        for ( int i = 0; i < 10; i++ )
+        {
+            store.write( changes( "key/" + i, "value " + i ) );
+        }
+        store.setBulkLoad( false );
+
+        assertEquals( 1, store.getSegmentCount() );
+        assertEquals( 10, store.scan( "key/", "key/\uffff" ).size() );
+    }
+
+    @Test
+    public void testBulkLoadUntilTheLastImportEnds()
+        throws Exception
+    {
+        store = new KeyValueStore( directory, 1, 2 );
+        store.beginBulkLoad();
+        store.beginBulkLoad();
+        for ( int i = 0; i < 10; i++ )
+        {
+            store.write( changes( "key/" + i, "value " + i ) );
+        }
+
+        store.endBulkLoad();
+        assertTrue( store.isBulkLoad() );
+
+        store.endBulkLoad();
+        assertFalse( store.isBulkLoad() );
+        assertEquals( 1, store.getSegmentCount() );
+        assertEquals( 10, store.scan( "key/", "key/\uffff" ).size() );
+
+        // an import ended twice doesn't end the next one
+        store.endBulkLoad();
+        store.beginBulkLoad();
+        assertTrue( store.isBulkLoad() );
+        store.endBulkLoad();
+        assertFalse( store.isBulkLoad() );
+    }
+
+    @Test
+    public void testOpenedOnce()
+        throws Exception
+    {
+        store = new KeyValueStore( directory );
+        try
+        {
+            new KeyValueStore( directory );
+            fail( "the store should not be opened twice" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    private static SortedMap<String, String> changes( String... keysAndValues )
+    {
+        Map<String, String> changes = new HashMap<>();
+        for ( int i = 0; i < keysAndValues.length; i += 2 )
+        {
+            changes.put( keysAndValues[i], keysAndValues[i + 1] );
+        }
+        return new TreeMap<>( changes );
+    }
+}
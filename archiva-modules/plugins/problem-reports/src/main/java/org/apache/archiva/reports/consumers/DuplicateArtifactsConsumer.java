@@ -21,11 +21,13 @@
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.ConfigurationNames;
 import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
+import org.apache.archiva.consumers.CheckpointableConsumer;
 import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
@@ -52,7 +54,11 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Search the artifact repository of known SHA1 Checksums for potential duplicate artifacts.
@@ -63,7 +69,7 @@
 @Scope ( "prototype" )
 public class DuplicateArtifactsConsumer
     extends AbstractMonitoredConsumer
-    implements KnownRepositoryContentConsumer, RegistryListener
+    implements KnownRepositoryContentConsumer, CheckpointableConsumer, RegistryListener
 {
     private Logger log = LoggerFactory.getLogger( DuplicateArtifactsConsumer.class );
 
@@ -77,6 +83,10 @@
     @Inject
     private FileTypes filetypes;
 
+    @Inject
+    @Named ( value = "checksumCache#default" )
+    private ChecksumCache checksumCache;
+
     /**
      * FIXME: this could be multiple implementations and needs to be configured.
      */
@@ -98,6 +108,30 @@
 
     private RepositorySession repositorySession;
 
+    /**
+     * Maximum number of checksums held by a scan of an entire repository. Once reached, the checksums not held are
+     * looked up in the metadata repository.
+     */
+    private int maxScanChecksums = Integer.getInteger( "archiva.duplicates.maxScanChecksums", 200000 );
+
+    private boolean executeOnEntireRepo;
+
+    /**
+     * Whether the scan resumed from a checkpoint: the artifacts walked before it are only known to the metadata
+     * repository.
+     */
+    private boolean resumed;
+
+    /**
+     * Path of the first artifact seen with each SHA-1 checksum during a scan of an entire repository.
+     */
+    private final Map<String, String> scanChecksums = new HashMap<>();
+
+    /**
+     * Checksums whose first artifact has been reported as duplicated during the scan.
+     */
+    private final Set<String> reportedChecksums = new HashSet<>();
+
     @Override
     public String getId()
     {
@@ -129,6 +163,10 @@ public void beginScan( ManagedRepository repo, Date whenGathered )
         repoId = repo.getId();
         this.repositoryDir = new File( repo.getLocation() );
         repositorySession = repositorySessionFactory.createSession();
+        executeOnEntireRepo = false;
+        resumed = false;
+        scanChecksums.clear();
+        reportedChecksums.clear();
     }
 
     @Override
@@ -136,6 +174,7 @@ public void beginScan( ManagedRepository repo, Date whenGathered, boolean execut
         throws ConsumerException
     {
         beginScan( repo, whenGathered );
+        this.executeOnEntireRepo = executeOnEntireRepo;
     }
 
     @Override
@@ -144,12 +183,9 @@ public void processFile( String path )
     {
         File artifactFile = new File( this.repositoryDir, path );
 
-        // TODO: would be quicker to somehow make sure it ran after the update database consumer, or as a part of that
-        //  perhaps could use an artifact context that is retained for all consumers? First in can set the SHA-1
-        //  alternatively this could come straight from the storage resolver, which could populate the artifact metadata
-        //  in the later parse call with the desired checksum and use that
+        // the checksum calculated by the other consumers of the scan is reused from the checksum cache
         String checksumSha1;
-        ChecksummedFile checksummedFile = new ChecksummedFile( artifactFile );
+        ChecksummedFile checksummedFile = new ChecksummedFile( artifactFile, checksumCache );
         try
         {
             checksumSha1 = checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 );
@@ -161,6 +197,26 @@ public void processFile( String path )
 
         MetadataRepository metadataRepository = repositorySession.getRepository();
 
+        // a scan of an entire repository sees every artifact, so it looks for the duplicates among the artifacts it
+        // has seen rather than querying the metadata repository for each of them
+        if ( executeOnEntireRepo )
+        {
+            String firstPath = scanChecksums.get( checksumSha1 );
+            if ( firstPath != null )
+            {
+                reportScanDuplicate( metadataRepository, path, checksumSha1, firstPath );
+                return;
+            }
+            if ( scanChecksums.size() < maxScanChecksums )
+            {
+                scanChecksums.put( checksumSha1, path );
+                if ( !resumed )
+                {
+                    return;
+                }
+            }
+        }
+
         Collection<ArtifactMetadata> results;
         try
         {
@@ -200,30 +256,75 @@ public void processFile( String path )
                     continue;
                 }
 
-                RepositoryProblemFacet problem = new RepositoryProblemFacet();
-                problem.setRepositoryId( repoId );
-                problem.setNamespace( originalArtifact.getNamespace() );
-                problem.setProject( originalArtifact.getProject() );
-                problem.setVersion( originalArtifact.getVersion() );
-                problem.setId( id );
                 // FIXME: need to get the right storage resolver for the repository the dupe artifact is in, it might be
                 //       a different type
-                // FIXME: we need the project version here, not the artifact version
-                problem.setMessage( "Duplicate Artifact Detected: " + path + " <--> " + pathTranslator.toPath(
-                    dupArtifact.getNamespace(), dupArtifact.getProject(), dupArtifact.getVersion(),
-                    dupArtifact.getId() ) );
-                problem.setProblem( "duplicate-artifact" );
+                addProblem( metadataRepository, path, originalArtifact,
+                            pathTranslator.toPath( dupArtifact.getNamespace(), dupArtifact.getProject(),
+                                                   dupArtifact.getVersion(), dupArtifact.getId() ) );
+            }
+        }
+    }
 
-                try
-                {
-                    metadataRepository.addMetadataFacet( repoId, problem );
-                }
-                catch ( MetadataRepositoryException e )
-                {
-                    throw new ConsumerException( e.getMessage(), e );
-                }
+    /**
+     * Report an artifact having the checksum of an artifact seen before in the scan, along with the artifact seen
+     * first if it has not been reported yet.
+     */
+    private void reportScanDuplicate( MetadataRepository metadataRepository, String path, String checksumSha1,
+                                      String firstPath )
+        throws ConsumerException
+    {
+        ArtifactMetadata originalArtifact;
+        try
+        {
+            originalArtifact = pathTranslator.getArtifactForPath( repoId, path );
+        }
+        catch ( Exception e )
+        {
+            log.warn( "Not reporting problem for invalid artifact in checksum check: {}", e.getMessage() );
+            return;
+        }
+
+        if ( reportedChecksums.add( checksumSha1 ) )
+        {
+            ArtifactMetadata firstArtifact = null;
+            try
+            {
+                firstArtifact = pathTranslator.getArtifactForPath( repoId, firstPath );
+            }
+            catch ( Exception e )
+            {
+                log.warn( "Not reporting problem for invalid artifact in checksum check: {}", e.getMessage() );
+            }
+            if ( firstArtifact != null )
+            {
+                addProblem( metadataRepository, firstPath, firstArtifact, path );
             }
         }
+        addProblem( metadataRepository, path, originalArtifact, firstPath );
+    }
+
+    private void addProblem( MetadataRepository metadataRepository, String path, ArtifactMetadata originalArtifact,
+                             String dupPath )
+        throws ConsumerException
+    {
+        RepositoryProblemFacet problem = new RepositoryProblemFacet();
+        problem.setRepositoryId( repoId );
+        problem.setNamespace( originalArtifact.getNamespace() );
+        problem.setProject( originalArtifact.getProject() );
+        problem.setVersion( originalArtifact.getVersion() );
+        problem.setId( path.substring( path.lastIndexOf( '/' ) + 1 ) );
+        // FIXME: we need the project version here, not the artifact version
+        problem.setMessage( "Duplicate Artifact Detected: " + path + " <--> " + dupPath );
+        problem.setProblem( "duplicate-artifact" );
+
+        try
+        {
+            metadataRepository.addMetadataFacet( repoId, problem );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            throw new ConsumerException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -236,6 +337,8 @@ public void processFile( String path, boolean executeOnEntireRepo )
     @Override
     public void completeScan()
     {
+        scanChecksums.clear();
+        reportedChecksums.clear();
         repositorySession.close();
     }
 
@@ -245,6 +348,33 @@ public void completeScan( boolean executeOnEntireRepo )
         completeScan();
     }
 
+    /**
+     * Save the problems reported so far, a scan resumed from the checkpoint doesn't report them again.
+     */
+    @Override
+    public void checkpoint()
+        throws ConsumerException
+    {
+        try
+        {
+            repositorySession.save();
+        }
+        catch ( RuntimeException e )
+        {
+            throw new ConsumerException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * The checksums of the artifacts walked before the checkpoint are not known to the scan, so the artifacts not
+     * matching any artifact seen by the scan are looked up in the metadata repository too.
+     */
+    @Override
+    public void resume()
+    {
+        resumed = true;
+    }
+
     @Override
     public void afterConfigurationChange( Registry registry, String propertyName, Object propertyValue )
     {
@@ -30,6 +30,7 @@
 import org.apache.archiva.metadata.repository.storage.RepositoryPathTranslator;
 import org.apache.archiva.metadata.model.facets.RepositoryProblemFacet;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,6 +64,8 @@
 
     private MetadataRepository metadataRepository;
 
+    private RepositorySession session;
+
     private static final String TEST_REPO = "test-repo";
 
     private static final String TEST_CHECKSUM = "edf5938e646956f445c6ecb719d44579cdeed974";
@@ -101,7 +104,7 @@ public void setUp()
 
         metadataRepository = mock( MetadataRepository.class );
 
-        RepositorySession session = mock( RepositorySession.class );
+        session = mock( RepositorySession.class );
         when( session.getRepository() ).thenReturn( metadataRepository );
 
         RepositorySessionFactory factory = applicationContext.getBean( RepositorySessionFactory.class );
@@ -156,6 +159,55 @@ public void testConsumerArtifactDuplicated()
         assertProblem( problem );
     }
 
+    @Test
+    public void testConsumerArtifactDuplicatedInEntireRepositoryScan()
+        throws Exception
+    {
+        String copyPath = "com/example/test/test-artifact/1.0/test-artifact-1.0.jar";
+        File copy = new File( config.getLocation(), copyPath );
+        FileUtils.copyFile( new File( config.getLocation(), TEST_FILE ), copy );
+        when( pathTranslator.getArtifactForPath( TEST_REPO, copyPath ) ).thenReturn( createMetadata( "1.0" ) );
+
+        try
+        {
+            consumer.beginScan( config, new Date(), true );
+            consumer.processFile( TEST_FILE, true );
+            consumer.processFile( copyPath, true );
+            consumer.completeScan();
+        }
+        finally
+        {
+            copy.delete();
+        }
+
+        // both artifacts are reported without looking for them in the metadata repository
+        verify( metadataRepository, never() ).getArtifactsByChecksum( TEST_REPO, TEST_CHECKSUM );
+        ArgumentCaptor<RepositoryProblemFacet> argument = ArgumentCaptor.forClass( RepositoryProblemFacet.class );
+        verify( metadataRepository, times( 2 ) ).addMetadataFacet( eq( TEST_REPO ), argument.capture() );
+        assertProblem( argument.getAllValues().get( 0 ) );
+        assertEquals( "1.0", argument.getAllValues().get( 1 ).getVersion() );
+    }
+
+    @Test
+    public void testConsumerArtifactDuplicatedInResumedEntireRepositoryScan()
+        throws Exception
+    {
+        // the copy was walked before the checkpoint the scan resumes from
+        when( metadataRepository.getArtifactsByChecksum( TEST_REPO, TEST_CHECKSUM ) ).thenReturn(
+            Arrays.asList( TEST_METADATA, createMetadata( "1.0" ) ) );
+
+        consumer.beginScan( config, new Date(), true );
+        consumer.resume();
+        consumer.processFile( TEST_FILE, true );
+        consumer.checkpoint();
+        consumer.completeScan();
+
+        ArgumentCaptor<RepositoryProblemFacet> argument = ArgumentCaptor.forClass( RepositoryProblemFacet.class );
+        verify( metadataRepository ).addMetadataFacet( eq( TEST_REPO ), argument.capture() );
+        assertProblem( argument.getValue() );
+        verify( session ).save();
+    }
+
     @Test
     public void testConsumerArtifactDuplicatedButSelfNotInMetadataRepository()
         throws Exception
@@ -26,8 +26,10 @@
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataResolutionException;
 import org.apache.archiva.metadata.repository.filter.Filter;
 import org.apache.archiva.metadata.repository.storage.RepositoryPathTranslator;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
@@ -48,9 +50,12 @@
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Pattern;
 
@@ -76,6 +81,11 @@
 
     private static final String METADATA_FILENAME = "maven-metadata.xml";
 
+    /**
+     * The number of artifacts read from the metadata repository at a time.
+     */
+    private static final int PAGE_SIZE = 1000;
+
     @Inject
     public Maven2RepositoryMerger(
         @Named (value = "archivaConfiguration#default") ArchivaConfiguration archivaConfiguration,
@@ -97,12 +107,18 @@ public void merge( MetadataRepository metadataRepository, String sourceRepoId, S
 
         try
         {
-            List<ArtifactMetadata> artifactsInSourceRepo = metadataRepository.getArtifacts( sourceRepoId );
-            for ( ArtifactMetadata artifactMetadata : artifactsInSourceRepo )
+            String pageToken = null;
+            do
             {
-                artifactMetadata.setRepositoryId( targetRepoId );
-                createFolderStructure( sourceRepoId, targetRepoId, artifactMetadata );
+                ArtifactMetadataPage page = metadataRepository.getArtifacts( sourceRepoId, pageToken, PAGE_SIZE );
+                for ( ArtifactMetadata artifactMetadata : page.getArtifacts() )
+                {
+                    artifactMetadata.setRepositoryId( targetRepoId );
+                    createFolderStructure( sourceRepoId, targetRepoId, artifactMetadata );
+                }
+                pageToken = page.getNextPageToken();
             }
+            while ( pageToken != null );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -126,14 +142,20 @@ public void merge( MetadataRepository metadataRepository, String sourceRepoId, S
     {
         try
         {
-            List<ArtifactMetadata> sourceArtifacts = metadataRepository.getArtifacts( sourceRepoId );
-            for ( ArtifactMetadata metadata : sourceArtifacts )
+            String pageToken = null;
+            do
             {
-                if ( filter.accept( metadata ) )
+                ArtifactMetadataPage page = metadataRepository.getArtifacts( sourceRepoId, pageToken, PAGE_SIZE );
+                for ( ArtifactMetadata metadata : page.getArtifacts() )
                 {
-                    createFolderStructure( sourceRepoId, targetRepoId, metadata );
+                    if ( filter.accept( metadata ) )
+                    {
+                        createFolderStructure( sourceRepoId, targetRepoId, metadata );
+                    }
                 }
+                pageToken = page.getNextPageToken();
             }
+            while ( pageToken != null );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -374,25 +396,40 @@ public List<ArtifactMetadata> getConflictingArtifacts( MetadataRepository metada
     {
         try
         {
-            List<ArtifactMetadata> targetArtifacts = metadataRepository.getArtifacts( targetRepo );
-            List<ArtifactMetadata> sourceArtifacts = metadataRepository.getArtifacts( sourceRepo );
             List<ArtifactMetadata> conflictsArtifacts = new ArrayList<>();
 
-            for ( ArtifactMetadata targetArtifact : targetArtifacts )
+            // go through the source artifacts, looking up the target artifacts of their project versions
+            String pageToken = null;
+            do
             {
-                for ( ArtifactMetadata sourceArtifact : sourceArtifacts )
+                ArtifactMetadataPage page = metadataRepository.getArtifacts( sourceRepo, pageToken, PAGE_SIZE );
+                Map<String, Collection<ArtifactMetadata>> targetArtifacts = new HashMap<>();
+                for ( ArtifactMetadata sourceArtifact : page.getArtifacts() )
                 {
-                    if ( isEquals( targetArtifact, sourceArtifact ) )
+                    String projectVersionKey = sourceArtifact.getNamespace() + ":" + sourceArtifact.getProject() + ":"
+                        + sourceArtifact.getProjectVersion();
+                    Collection<ArtifactMetadata> projectVersionArtifacts = targetArtifacts.get( projectVersionKey );
+                    if ( projectVersionArtifacts == null )
                     {
-                        if ( !conflictsArtifacts.contains( sourceArtifact ) )
+                        projectVersionArtifacts =
+                            metadataRepository.getArtifacts( targetRepo, sourceArtifact.getNamespace(),
+                                                             sourceArtifact.getProject(),
+                                                             sourceArtifact.getProjectVersion() );
+                        targetArtifacts.put( projectVersionKey, projectVersionArtifacts );
+                    }
+
+                    for ( ArtifactMetadata targetArtifact : projectVersionArtifacts )
+                    {
+                        if ( isEquals( targetArtifact, sourceArtifact ) )
                         {
                             conflictsArtifacts.add( sourceArtifact );
+                            break;
                         }
                     }
                 }
+                pageToken = page.getNextPageToken();
             }
-
-            sourceArtifacts.removeAll( conflictsArtifacts );
+            while ( pageToken != null );
 
             return conflictsArtifacts;
         }
@@ -400,6 +437,10 @@ public List<ArtifactMetadata> getConflictingArtifacts( MetadataRepository metada
         {
             throw new RepositoryMergerException( e.getMessage(), e );
         }
+        catch ( MetadataResolutionException e )
+        {
+            throw new RepositoryMergerException( e.getMessage(), e );
+        }
     }
 
     private boolean isEquals( ArtifactMetadata sourceArtifact, ArtifactMetadata targetArtifact )
@@ -25,6 +25,7 @@
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.apache.archiva.configuration.RepositoryScanningConfiguration;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.repository.ArtifactMetadataPage;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
 import org.junit.Before;
@@ -114,9 +115,10 @@ public void testMerge()
         c.addManagedRepository( targetRepo );
         configuration.save( c );
 
-        when( metadataRepository.getArtifacts( TEST_REPO_ID ) ).thenReturn( getArtifacts() );
+        when( metadataRepository.getArtifacts( eq( TEST_REPO_ID ), (String) isNull(), anyInt() ) ).thenReturn(
+            new ArtifactMetadataPage( getArtifacts(), null ) );
         repositoryMerger.merge( metadataRepository, TEST_REPO_ID, "target-rep" );
-        verify( metadataRepository ).getArtifacts( TEST_REPO_ID );
+        verify( metadataRepository ).getArtifacts( eq( TEST_REPO_ID ), (String) isNull(), anyInt() );
         assertTrue( mergedArtifact.exists() );
         assertTrue( mavenMetadata.exists() );
         assertTrue( pom.exists() );
@@ -164,12 +166,15 @@ public void testMergeWithOutConflictArtifacts()
             "/target/test-repository/com/example/test/test-artifact/1.0-SNAPSHOT/test-artifact-1.0-20100308.230825-1.jar" );
         targetRepoFile.setReadOnly();
 
-        when( metadataRepository.getArtifacts( sourceRepoId ) ).thenReturn( sourceRepoArtifactsList );
-        when( metadataRepository.getArtifacts( TEST_REPO_ID ) ).thenReturn( targetRepoArtifactsList );
+        when( metadataRepository.getArtifacts( eq( sourceRepoId ), (String) isNull(), anyInt() ) ).thenReturn(
+            new ArtifactMetadataPage( sourceRepoArtifactsList, null ) );
+        when( metadataRepository.getArtifacts( TEST_REPO_ID, "com.example.test", "test-artifact",
+                                               "1.0-SNAPSHOT" ) ).thenReturn( targetRepoArtifactsList );
 
         assertEquals( 1, repositoryMerger.getConflictingArtifacts( metadataRepository, sourceRepoId,
                                                                    TEST_REPO_ID ).size() );
-        verify( metadataRepository ).getArtifacts( TEST_REPO_ID );
+        verify( metadataRepository ).getArtifacts( TEST_REPO_ID, "com.example.test", "test-artifact",
+                                                   "1.0-SNAPSHOT" );
     }
 
 }
\ No newline at end of file